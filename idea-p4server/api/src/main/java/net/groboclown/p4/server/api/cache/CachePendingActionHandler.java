@@ -20,6 +20,7 @@ import net.groboclown.p4.server.api.P4ServerName;
 import net.groboclown.p4.server.api.config.ClientConfig;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.Collection;
 import java.util.Optional;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -46,6 +47,7 @@ public interface CachePendingActionHandler {
         Stream<ActionChoice> getActions();
         Optional<P4CommandRunner.ClientAction<?>> getClientActionById(@NotNull String actionId);
         boolean removeActionById(@NotNull String actionId);
+        int removeActionsById(@NotNull Collection<String> actionIds);
         void addAction(@NotNull P4CommandRunner.ClientAction<?> action);
         void addAction(@NotNull P4CommandRunner.ServerAction<?> action);
     }
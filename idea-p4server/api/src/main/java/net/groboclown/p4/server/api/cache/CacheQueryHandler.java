@@ -53,4 +53,13 @@ public interface CacheQueryHandler {
 
     // See #193
     int getEstimateSize();
+
+    /**
+     * A stamp that changes whenever the cached data changes.  Callers that keep
+     * values derived from this cache can compare the stamp against the one read
+     * before the values were computed to discover if they need to be recomputed.
+     *
+     * @return current version stamp of the cache.
+     */
+    long getCacheVersion();
 }
@@ -14,20 +14,38 @@
 
 package net.groboclown.p4.server.api.commands.client;
 
+import com.intellij.openapi.vcs.FilePath;
 import net.groboclown.p4.server.api.P4CommandRunner;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 
 public class ListOpenedFilesChangesQuery
         implements P4CommandRunner.ClientQuery<ListOpenedFilesChangesResult> {
     private final File root;
+    private final List<FilePath> files;
     private final int maxChangelistResults;
     private final int maxFileResults;
 
     public ListOpenedFilesChangesQuery(@Nullable File root, int maxFileResults, int maxChangelistResults) {
+        this(root, null, maxFileResults, maxChangelistResults);
+    }
+
+    /**
+     * @param root client root directory
+     * @param files if not null, only the opened state of these files is loaded; the pending
+     *      changelists are not.
+     * @param maxFileResults maximum number of files to return
+     * @param maxChangelistResults maximum number of changelists to return
+     */
+    public ListOpenedFilesChangesQuery(@Nullable File root, @Nullable Collection<FilePath> files,
+            int maxFileResults, int maxChangelistResults) {
         this.root = root;
+        this.files = files == null ? null : new ArrayList<>(files);
         this.maxFileResults = maxFileResults;
         this.maxChangelistResults = maxChangelistResults;
     }
@@ -55,4 +73,12 @@ public class ListOpenedFilesChangesQuery
     public File getRoot() {
         return root;
     }
+
+    /**
+     * @return the files to check, or null if all the opened files and pending changelists are loaded.
+     */
+    @Nullable
+    public List<FilePath> getFiles() {
+        return files;
+    }
 }
@@ -14,11 +14,13 @@
 
 package net.groboclown.p4.server.api.commands.client;
 
+import com.intellij.openapi.vcs.FilePath;
 import net.groboclown.p4.server.api.P4CommandRunner;
 import net.groboclown.p4.server.api.config.ClientConfig;
 import net.groboclown.p4.server.api.values.P4LocalChangelist;
 import net.groboclown.p4.server.api.values.P4LocalFile;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -29,12 +31,23 @@ public class ListOpenedFilesChangesResult
     private final ClientConfig config;
     private final List<P4LocalFile> openedFiles;
     private final List<P4LocalChangelist> pendingChangelists;
+    private final List<FilePath> queriedFiles;
 
     public ListOpenedFilesChangesResult(@NotNull ClientConfig config, @NotNull Collection<P4LocalFile> openedFiles,
             @NotNull Collection<P4LocalChangelist> pendingChangelists) {
+        this(config, openedFiles, pendingChangelists, null);
+    }
+
+    /**
+     * @param queriedFiles if not null, the files the query was limited to.  The opened files are then
+     *      the ones among the queried files that are open, and the pending changelists are not loaded.
+     */
+    public ListOpenedFilesChangesResult(@NotNull ClientConfig config, @NotNull Collection<P4LocalFile> openedFiles,
+            @NotNull Collection<P4LocalChangelist> pendingChangelists, @Nullable Collection<FilePath> queriedFiles) {
         this.config = config;
         this.openedFiles = new ArrayList<>(openedFiles);
         this.pendingChangelists = new ArrayList<>(pendingChangelists);
+        this.queriedFiles = queriedFiles == null ? null : new ArrayList<>(queriedFiles);
     }
 
     @NotNull
@@ -51,4 +64,13 @@ public class ListOpenedFilesChangesResult
         return pendingChangelists;
     }
 
+    /**
+     * @return the files the query was limited to, or null if the result contains all the
+     *      opened files and pending changelists.
+     */
+    @Nullable
+    public List<FilePath> getQueriedFiles() {
+        return queriedFiles;
+    }
+
 }
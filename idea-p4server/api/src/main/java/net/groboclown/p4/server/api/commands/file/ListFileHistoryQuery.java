@@ -23,10 +23,27 @@ public class ListFileHistoryQuery
         implements P4CommandRunner.ClientQuery<ListFileHistoryResult> {
     private final FilePath file;
     private final int maxResults;
+    private final int minRevision;
+    private final int maxRevision;
 
     public ListFileHistoryQuery(@NotNull FilePath file, int maxResults) {
+        this(file, maxResults, 0, 0);
+    }
+
+    /**
+     * Query for a window of the file's history, so that only the requested
+     * revisions are fetched from the server.
+     *
+     * @param file file to query
+     * @param maxResults maximum number of revisions to return, or a value &lt;= 0 for no limit.
+     * @param minRevision oldest revision to return, or a value &lt;= 0 to start at the first revision.
+     * @param maxRevision newest revision to return, or a value &lt;= 0 to end at the head revision.
+     */
+    public ListFileHistoryQuery(@NotNull FilePath file, int maxResults, int minRevision, int maxRevision) {
         this.file = file;
         this.maxResults = maxResults;
+        this.minRevision = minRevision;
+        this.maxRevision = maxRevision;
     }
 
     @NotNull
@@ -48,4 +65,16 @@ public class ListFileHistoryQuery
     public int getMaxResults() {
         return maxResults;
     }
+
+    public int getMinRevision() {
+        return minRevision;
+    }
+
+    public int getMaxRevision() {
+        return maxRevision;
+    }
+
+    public boolean hasRevisionRange() {
+        return minRevision > 0 || maxRevision > 0;
+    }
 }
@@ -29,11 +29,31 @@ public class ListFileHistoryResult
         implements P4CommandRunner.ClientResult {
     private final ClientConfig config;
     private final VcsFileRevisionFactory factory;
+    private final int resultCount;
+    private final int oldestRevision;
+    private final boolean inheritedRevisions;
 
     public ListFileHistoryResult(@NotNull ClientConfig config,
             @NotNull VcsFileRevisionFactory factory) {
+        this(config, factory, 0, 0, false);
+    }
+
+    /**
+     * @param config client configuration
+     * @param factory creates the revisions
+     * @param resultCount number of revisions returned for the requested file itself.
+     * @param oldestRevision lowest revision number returned for the requested file, or 0 if none were returned.
+     * @param inheritedRevisions true if revisions from other files, through branching or renames,
+     *      are included.
+     */
+    public ListFileHistoryResult(@NotNull ClientConfig config,
+            @NotNull VcsFileRevisionFactory factory, int resultCount, int oldestRevision,
+            boolean inheritedRevisions) {
         this.config = config;
         this.factory = factory;
+        this.resultCount = resultCount;
+        this.oldestRevision = oldestRevision;
+        this.inheritedRevisions = inheritedRevisions;
     }
 
     @NotNull
@@ -47,6 +67,23 @@ public class ListFileHistoryResult
         return factory.create(formatter, loader);
     }
 
+    public int getResultCount() {
+        return resultCount;
+    }
+
+    /**
+     * Used to find where the next, older page of history starts.
+     *
+     * @return the lowest revision number of the requested file in this result, or 0 if there were none.
+     */
+    public int getOldestRevision() {
+        return oldestRevision;
+    }
+
+    public boolean hasInheritedRevisions() {
+        return inheritedRevisions;
+    }
+
 
     public interface VcsFileRevisionFactory {
         List<VcsFileRevision> create(@Nullable HistoryMessageFormatter formatter,
@@ -14,21 +14,35 @@
 
 package net.groboclown.p4.server.api.commands.sync;
 
+import com.intellij.openapi.vcs.FilePath;
 import net.groboclown.p4.server.api.P4CommandRunner;
 import net.groboclown.p4.server.api.commands.client.ListOpenedFilesChangesResult;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 
 public class SyncListOpenedFilesChangesQuery
         implements P4CommandRunner.SyncClientQuery<ListOpenedFilesChangesResult> {
     private final File root;
+    private final List<FilePath> files;
     private final int maxChangelistResults;
     private final int maxFileResults;
 
     public SyncListOpenedFilesChangesQuery(@Nullable File root, int maxChangelistResults, int maxFileResults) {
+        this(root, null, maxChangelistResults, maxFileResults);
+    }
+
+    /**
+     * @see net.groboclown.p4.server.api.commands.client.ListOpenedFilesChangesQuery#getFiles()
+     */
+    public SyncListOpenedFilesChangesQuery(@Nullable File root, @Nullable Collection<FilePath> files,
+            int maxChangelistResults, int maxFileResults) {
         this.root = root;
+        this.files = files == null ? null : new ArrayList<>(files);
         this.maxChangelistResults = maxChangelistResults;
         this.maxFileResults = maxFileResults;
     }
@@ -56,4 +70,9 @@ public class SyncListOpenedFilesChangesQuery
     public File getRoot() {
         return root;
     }
+
+    @Nullable
+    public List<FilePath> getFiles() {
+        return files;
+    }
 }
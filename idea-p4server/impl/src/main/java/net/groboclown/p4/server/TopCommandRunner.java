@@ -56,6 +56,7 @@ import net.groboclown.p4.server.api.commands.client.ListClientsForUserQuery;
 import net.groboclown.p4.server.api.commands.client.ListClientsForUserResult;
 import net.groboclown.p4.server.api.commands.client.ListOpenedFilesChangesQuery;
 import net.groboclown.p4.server.api.commands.client.ListOpenedFilesChangesResult;
+import net.groboclown.p4.server.api.commands.file.AddEditAction;
 import net.groboclown.p4.server.api.commands.file.AnnotateFileQuery;
 import net.groboclown.p4.server.api.commands.file.AnnotateFileResult;
 import net.groboclown.p4.server.api.commands.file.FetchFilesAction;
@@ -72,6 +73,7 @@ import net.groboclown.p4.server.api.commands.file.ListFilesQuery;
 import net.groboclown.p4.server.api.commands.file.ListFilesResult;
 import net.groboclown.p4.server.api.commands.file.MoveFileAction;
 import net.groboclown.p4.server.api.commands.file.MoveFileResult;
+import net.groboclown.p4.server.api.commands.file.RevertFileAction;
 import net.groboclown.p4.server.api.commands.server.ListLabelsQuery;
 import net.groboclown.p4.server.api.commands.server.ListLabelsResult;
 import net.groboclown.p4.server.api.commands.server.LoginAction;
@@ -98,6 +100,7 @@ import net.groboclown.p4.server.api.messagebus.UserSelectedOfflineMessage;
 import net.groboclown.p4.server.api.values.P4FileAction;
 import net.groboclown.p4.server.api.values.P4FileType;
 import net.groboclown.p4.server.impl.AbstractServerCommandRunner;
+import net.groboclown.p4.server.impl.cache.PendingActionReplayPlanner;
 import net.groboclown.p4.server.impl.commands.AnswerUtil;
 import net.groboclown.p4.server.impl.commands.DoneActionAnswer;
 import net.groboclown.p4.server.impl.commands.DoneQueryAnswer;
@@ -113,8 +116,8 @@ import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.function.BiFunction;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 
 /**
@@ -401,7 +404,12 @@ public class TopCommandRunner extends AbstractP4CommandRunner
             @NotNull GetFileContentsQuery query) {
         return onlineQuery(config,
                 () -> server.getFileContents(config, query),
-                () -> new ErrorQueryAnswerImpl<>(AnswerUtil.createOfflineError())
+                () -> {
+                    GetFileContentsResult cached = server.getCachedFileContents(config, query);
+                    return cached == null
+                            ? new ErrorQueryAnswerImpl<>(AnswerUtil.createOfflineError())
+                            : new DoneQueryAnswer<>(cached);
+                }
         );
     }
 
@@ -609,37 +617,42 @@ public class TopCommandRunner extends AbstractP4CommandRunner
      */
     @NotNull
     @Override
-    @SuppressWarnings("unchecked")
     public ActionAnswer<Void> sendCachedPendingRequests(@NotNull ClientConfig clientConfig) {
         LOG.info("Re-sending all pending requests for " + clientConfig);
         // This needs to be protected by sending ONLY on reconnect.  If it's done more  often than that,
         // then this causes 2-4 additional messages that don't need to be sent.
         try {
             // Note: must be serially applied, because the pending actions have a strict order.
+            // Neighboring actions that can be sent as one server command are grouped, which keeps
+            // that order.
             // Also note: the error catching is only logged; user reporting is done by
             // event listeners.
-            return pendingActionCache.copyActions(clientConfig)
-                .reduce(new DoneActionAnswer<>(null),
-                    (BiFunction<ActionAnswer, ActionChoice, ActionAnswer>) (answer, action) -> answer.mapActionAsync((x) ->
-                            action.when(
-                                    (c) -> perform(clientConfig, c),
-                                    (s) -> perform(new OptionalClientServerConfig(clientConfig), s)
-                            ).whenCompleted((ev) -> {
-                                try {
-                                    pendingActionCache.writeActions(clientConfig.getClientServerRef(),
-                                            (cache) -> cache.removeActionById(action.getActionId()));
-                                } catch (InterruptedException ex) {
-                                    InternalErrorMessage.send(project).cacheLockTimeoutError(new ErrorEvent<>(
-                                            new VcsInterruptedException(ex)));
-                                }
-                                // Note: does not notify the file state of updates.
-                            }).whenServerError((ex) -> {
-                                // This will be bubbled up to the outer error trap.
-                                // Additionally, the underlying code has its own error reporting.
-                                LOG.debug("Problem committing pending action " + action, ex);
-                            }).whenOffline(() ->
-                                    LOG.warn("Went offline while committing pending action " + action))),
-                    (actionLeft, actionRight) -> actionLeft.mapActionAsync((x) -> actionRight))
+            List<List<ActionChoice>> groups = PendingActionReplayPlanner.plan(
+                    pendingActionCache.copyActions(clientConfig).collect(Collectors.toList()));
+            ActionAnswer<Object> ret = new DoneActionAnswer<>(null);
+            for (final List<ActionChoice> group : groups) {
+                ret = ret.mapActionAsync((x) -> replayPendingActions(clientConfig, group)
+                        .whenCompleted((ev) -> {
+                            List<String> actionIds = new ArrayList<>(group.size());
+                            for (ActionChoice action : group) {
+                                actionIds.add(action.getActionId());
+                            }
+                            try {
+                                pendingActionCache.writeActions(clientConfig.getClientServerRef(),
+                                        (cache) -> cache.removeActionsById(actionIds));
+                            } catch (InterruptedException ex) {
+                                InternalErrorMessage.send(project).cacheLockTimeoutError(new ErrorEvent<>(
+                                        new VcsInterruptedException(ex)));
+                            }
+                            // Note: does not notify the file state of updates.
+                        }).whenServerError((ex) -> {
+                            // This will be bubbled up to the outer error trap.
+                            // Additionally, the underlying code has its own error reporting.
+                            LOG.debug("Problem committing pending actions " + group, ex);
+                        }).whenOffline(() ->
+                                LOG.warn("Went offline while committing pending actions " + group)));
+            }
+            return ret.mapAction((x) -> (Void) null)
                 .whenServerError((e) ->
                         LOG.warn("Encountered unexpected error: " + e))
                 .whenOffline(() ->
@@ -650,6 +663,79 @@ public class TopCommandRunner extends AbstractP4CommandRunner
         }
     }
 
+    @SuppressWarnings("unchecked")
+    @NotNull
+    private ActionAnswer<Object> replayPendingActions(@NotNull ClientConfig clientConfig,
+            @NotNull List<ActionChoice> group) {
+        List<ClientAction<?>> grouped = PendingActionReplayPlanner.getGroupedClientActions(group);
+        if (grouped != null) {
+            return performFileActions(clientConfig, (List<ClientAction<ClientResult>>) (List<?>) grouped)
+                    .mapAction((results) -> results);
+        }
+        ActionAnswer<Object> ret = new DoneActionAnswer<>(null);
+        for (final ActionChoice action : group) {
+            ret = ret.mapActionAsync((x) -> action.when(
+                    (c) -> perform(clientConfig, c).mapAction((r) -> (Object) r),
+                    (s) -> perform(new OptionalClientServerConfig(clientConfig), s).mapAction((r) -> (Object) r)));
+        }
+        return ret;
+    }
+
+    // The grouped form of performFileAction, for file actions replayed as one server command.
+    @NotNull
+    private <R extends ClientResult> ActionAnswer<List<R>> performFileActions(@NotNull ClientConfig config,
+            @NotNull List<ClientAction<R>> actions) {
+        for (ClientAction<R> action : actions) {
+            sendFileActionEvent(config, action, null, null);
+        }
+        return onlineExec(config,
+                () -> server.performAll(config, actions)
+                        .whenCompleted((results) -> {
+                            for (int i = 0; i < actions.size(); i++) {
+                                sendFileActionEvent(config, actions.get(i), results.get(i), null);
+                            }
+                        })
+                        .whenServerError((t) -> {
+                            for (ClientAction<R> action : actions) {
+                                sendFileActionEvent(config, action, null, t);
+                            }
+                        }),
+                OfflineActionAnswerImpl::new
+        );
+    }
+
+    // Sends the same file events as AbstractP4CommandRunner.perform does for the file action.
+    private static void sendFileActionEvent(@NotNull ClientConfig config, @NotNull ClientAction<?> action,
+            @Nullable ClientResult result, @Nullable Throwable error) {
+        final FilePath file;
+        final P4FileType fileType;
+        final P4FileAction fileAction;
+        switch (action.getCmd()) {
+            case ADD_EDIT_FILE:
+                file = ((AddEditAction) action).getFile();
+                fileType = ((AddEditAction) action).getFileType();
+                fileAction = P4FileAction.ADD_EDIT;
+                break;
+            case REVERT_FILE:
+                file = ((RevertFileAction) action).getFile();
+                fileType = null;
+                fileAction = P4FileAction.REVERTED;
+                break;
+            default:
+                throw new IllegalArgumentException("not a grouped file action: " + action.getCmd());
+        }
+        if (result != null) {
+            FileActionMessage.sendEvent(new FileActionMessage.Event(config.getClientServerRef(),
+                    file, fileAction, fileType, action, result));
+        } else if (error != null) {
+            FileActionMessage.sendEvent(new FileActionMessage.Event(config.getClientServerRef(),
+                    file, fileAction, fileType, action, error));
+        } else {
+            FileActionMessage.sendEvent(new FileActionMessage.Event(config.getClientServerRef(),
+                    file, fileAction, fileType, action));
+        }
+    }
+
     private <R> ActionAnswer<R> onlineExec(@NotNull ClientConfig clientConfig, Supplier<ActionAnswer<R>> serverExec,
             Supplier<ActionAnswer<R>> cacheExec) {
         return onlineExec(new OptionalClientServerConfig(clientConfig), serverExec, cacheExec);
@@ -44,9 +44,13 @@ import net.groboclown.p4.server.api.commands.user.ListUsersQuery;
 import net.groboclown.p4.server.api.commands.user.ListUsersResult;
 import net.groboclown.p4.server.api.config.ClientConfig;
 import net.groboclown.p4.server.api.config.OptionalClientServerConfig;
+import net.groboclown.p4.server.impl.commands.DoneActionAnswer;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -66,9 +70,22 @@ public abstract class AbstractServerCommandRunner {
                 @NotNull ClientConfig config, @NotNull P4CommandRunner.ClientAction<R> action);
     }
 
+    /**
+     * Runs several actions with the same command as a single server command.
+     */
+    public interface ClientActionGroupRunner<R extends P4CommandRunner.ClientResult> {
+        /**
+         * @return one result per action, in the same order as the actions.
+         */
+        P4CommandRunner.ActionAnswer<List<R>> performAll(
+                @NotNull ClientConfig config, @NotNull List<P4CommandRunner.ClientAction<R>> actions);
+    }
+
 
     private final Map<P4CommandRunner.ServerActionCmd, ServerActionRunner<?>> serverActionRunners = new HashMap<>();
     private final Map<P4CommandRunner.ClientActionCmd, ClientActionRunner<?>> clientActionRunners = new HashMap<>();
+    private final Map<P4CommandRunner.ClientActionCmd, ClientActionGroupRunner<?>> clientActionGroupRunners =
+            new HashMap<>();
 
 
     protected void register(@NotNull P4CommandRunner.ServerActionCmd cmd, @NotNull ServerActionRunner<?> runner) {
@@ -79,6 +96,11 @@ public abstract class AbstractServerCommandRunner {
         clientActionRunners.put(cmd, runner);
     }
 
+    protected void registerGroup(@NotNull P4CommandRunner.ClientActionCmd cmd,
+            @NotNull ClientActionGroupRunner<?> runner) {
+        clientActionGroupRunners.put(cmd, runner);
+    }
+
 
 
     @SuppressWarnings("unchecked")
@@ -104,6 +126,40 @@ public abstract class AbstractServerCommandRunner {
         return ((ClientActionRunner<R>) runner).perform(config, action);
     }
 
+    /**
+     * Perform actions that all have the same command.  If the command has a group runner,
+     * they are sent to the server together; otherwise, they run one after another.
+     *
+     * @return one result per action, in the same order as the actions.
+     */
+    @SuppressWarnings("unchecked")
+    @NotNull
+    public <R extends P4CommandRunner.ClientResult> P4CommandRunner.ActionAnswer<List<R>> performAll(
+            @NotNull ClientConfig config, @NotNull List<P4CommandRunner.ClientAction<R>> actions) {
+        if (actions.isEmpty()) {
+            return new DoneActionAnswer<>(new ArrayList<>());
+        }
+        P4CommandRunner.ClientActionCmd cmd = actions.get(0).getCmd();
+        for (P4CommandRunner.ClientAction<R> action : actions) {
+            if (action.getCmd() != cmd) {
+                throw new IllegalArgumentException("actions must have the same command: " + actions);
+            }
+        }
+        ClientActionGroupRunner<?> groupRunner = clientActionGroupRunners.get(cmd);
+        if (groupRunner != null) {
+            return ((ClientActionGroupRunner<R>) groupRunner).performAll(config, actions);
+        }
+
+        P4CommandRunner.ActionAnswer<List<R>> ret = new DoneActionAnswer<>(new ArrayList<>(actions.size()));
+        for (P4CommandRunner.ClientAction<R> action : actions) {
+            ret = ret.mapActionAsync((results) -> perform(config, action).mapAction((result) -> {
+                results.add(result);
+                return results;
+            }));
+        }
+        return ret;
+    }
+
     /**
      * Force all connections to close, if any are open in a pool.
      *
@@ -141,6 +197,18 @@ public abstract class AbstractServerCommandRunner {
             @NotNull ClientConfig config,
             @NotNull GetFileContentsQuery query);
 
+    /**
+     * Find the file contents without going to the server, for use while offline.
+     *
+     * @return the locally stored contents, or null if they aren't available.
+     */
+    @Nullable
+    public GetFileContentsResult getCachedFileContents(
+            @NotNull ClientConfig config,
+            @NotNull GetFileContentsQuery query) {
+        return null;
+    }
+
     @NotNull
     public abstract P4CommandRunner.QueryAnswer<ListFileHistoryResult> listFilesHistory(
             @NotNull ClientConfig config, @NotNull ListFileHistoryQuery query);
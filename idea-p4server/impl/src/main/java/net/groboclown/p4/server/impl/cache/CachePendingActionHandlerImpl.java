@@ -25,10 +25,13 @@ import net.groboclown.p4.server.impl.cache.store.ProjectCacheStore;
 import org.jetbrains.annotations.NotNull;
 
 import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.Set;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Stream;
@@ -158,6 +161,27 @@ public class CachePendingActionHandlerImpl implements CachePendingActionHandler
             return false;
         }
 
+        @Override
+        public int removeActionsById(@NotNull Collection<String> actionIds) {
+            // One pass over the list, rather than one per removed action.
+            Set<String> remaining = new HashSet<>(actionIds);
+            int removed = 0;
+            Iterator<ActionStore.PendingAction> iter = actions.iterator();
+            while (iter.hasNext() && !remaining.isEmpty()) {
+                ActionStore.PendingAction action = iter.next();
+                if (isInSources(action) && remaining.remove(
+                        action.clientAction != null
+                            ? action.clientAction.getActionId()
+                            : action.serverAction != null
+                                ? action.serverAction.getActionId()
+                                : null)) {
+                    iter.remove();
+                    removed++;
+                }
+            }
+            return removed;
+        }
+
         @Override
         public void addAction(@NotNull P4CommandRunner.ClientAction<?> action) {
             if (clientSourceId == null) {
@@ -17,6 +17,7 @@ package net.groboclown.p4.server.impl.cache;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vcs.FilePath;
+import net.groboclown.p4.server.api.ClientServerRef;
 import net.groboclown.p4.server.api.P4CommandRunner;
 import net.groboclown.p4.server.api.P4ServerName;
 import net.groboclown.p4.server.api.cache.CacheQueryHandler;
@@ -50,15 +51,20 @@ import net.groboclown.p4.server.impl.values.P4LocalFileImpl;
 import org.jetbrains.annotations.NotNull;
 
 import javax.annotation.Nullable;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.function.Consumer;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
- * Unoptimized code.
+ * Answers queries from the cached server state, with the pending actions applied on top of it.
+ * The combined view for each client is kept between calls, and is only brought up to date when
+ * the project cache version or the pending action version changes.
  */
 public class CacheQueryHandlerImpl implements CacheQueryHandler {
     private static final Logger LOG = Logger.getInstance(CacheQueryHandler.class);
@@ -68,6 +74,11 @@ public class CacheQueryHandlerImpl implements CacheQueryHandler {
     private final Project project;
     private final ProjectCacheStore cache;
 
+    // Materialized views of the cached server state plus the pending actions, per client.
+    private final Object overlayLock = new Object();
+    private final Map<ClientServerRef, FileOverlay> fileOverlays = new HashMap<>();
+    private final Map<ClientServerRef, ChangelistOverlay> changelistOverlays = new HashMap<>();
+
     public CacheQueryHandlerImpl(@Nullable Project project, @NotNull ProjectCacheStore cache) {
         this.project = project;
         this.cache = cache;
@@ -77,186 +88,92 @@ public class CacheQueryHandlerImpl implements CacheQueryHandler {
     @NotNull
     @Override
     public Collection<P4LocalChangelist> getCachedOpenedChangelists(@NotNull ClientConfig config) {
-        final Map<P4ChangelistId, P4LocalChangelistImpl.Builder> changelists = new HashMap<>();
-        try {
-            cache.getChangelistCacheStore().getPendingChangelists().forEach(
-                    (cl) -> changelists.put(cl.getChangelistId(), new P4LocalChangelistImpl.Builder().withSrc(cl)));
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("cached pending changelists: " + changelists.keySet());
-            }
-
-            cache.read(config, (store) ->
-                    store.getChangelists().forEach(
-                            (cl) -> changelists
-                                    .put(cl.getChangelistId(), new P4LocalChangelistImpl.Builder().withSrc(cl))));
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("cached pending + cached queried changelists: " + changelists.keySet());
+        final long cacheVersion = cache.getVersion();
+        final long actionVersion = cache.getPendingActionVersion();
+        final ClientServerRef ref = config.getClientServerRef();
+        final BaseSnapshot<P4LocalChangelist> prevBase;
+        synchronized (overlayLock) {
+            ChangelistOverlay prev = changelistOverlays.get(ref);
+            if (prev != null && prev.isCurrent(cacheVersion, actionVersion)) {
+                return prev.result;
             }
+            // The snapshot is immutable, so it can be compared after the lock is released.
+            prevBase = prev == null ? null : prev.base;
+        }
 
-            pendingClientActions(config, (action) -> {
-                switch (action.getCmd()) {
-                    
-                    // case CREATE_CHANGELIST:
-                    // create changelist action should already have been handled by the
-                    // IdeChangelistCacheStore and P4ChangeProvider.
-
-                    case DELETE_CHANGELIST: {
-                        DeleteChangelistAction a = toDeleteChangelistAction(action);
-                        // Remove the changelist entirely from the returned list.
-                        changelists.remove(a.getChangelistId());
-                        break;
-                    }
-                    case MOVE_FILES_TO_CHANGELIST: {
-                        MoveFilesToChangelistAction a = toMoveFilesToChangelistAction(action);
-                        for (P4LocalChangelistImpl.Builder builder: changelists.values()) {
-                            if (builder.is(a.getChangelistId())) {
-                                builder.addFiles(a.getFiles());
-                            } else {
-                                builder.removeFiles(a.getFiles());
-                            }
-                        }
-                        break;
-                    }
-                    case EDIT_CHANGELIST_DESCRIPTION: {
-                        EditChangelistAction a = toEditChangelistAction(action);
-                        P4LocalChangelistImpl.Builder builder = changelists.get(a.getChangelistId());
-                        if (builder != null) {
-                            builder.withComment(a.getComment());
-                        }
-                        break;
-                    }
-                    case ADD_JOB_TO_CHANGELIST: {
-                        AddJobToChangelistAction a = toAddJobToChangelistAction(action);
-                        P4LocalChangelistImpl.Builder builder = changelists.get(a.getChangelistId());
-                        if (builder != null) {
-                            builder.withJob(a.getJob());
-                        }
-                        break;
-                    }
-                    case REMOVE_JOB_FROM_CHANGELIST: {
-                        RemoveJobFromChangelistAction a = toRemoveJobFromChangelistAction(action);
-                        P4LocalChangelistImpl.Builder builder = changelists.get(a.getChangelistId());
-                        if (builder != null) {
-                            builder.withJobRemoved(a.getJob());
-                        }
-                    }
+        try {
+            // Read the cached data outside the overlay lock, so that a slow cache lock
+            // doesn't also hold up the other overlay readers.
+            final long pendingVersion = cache.getChangelistCacheStore().getVersion();
+            final List<P4LocalChangelist> pendingChangelists =
+                    cache.getChangelistCacheStore().getPendingChangelists();
+            final BaseSnapshot<P4LocalChangelist> base = cache.read(config, new BaseSnapshot<>(pendingVersion), (store) ->
+                    prevBase != null && prevBase.isSame(store, store.getVersion(), pendingVersion)
+                            ? null
+                            : new BaseSnapshot<>(store, store.getVersion(), pendingVersion, store.getChangelists()));
+            final List<ActionStore.PendingAction> actions = pendingClientActions(config);
+
+            synchronized (overlayLock) {
+                ChangelistOverlay overlay = changelistOverlays.computeIfAbsent(ref, (r) -> new ChangelistOverlay());
+                if (base != null && !overlay.isSameBase(base.source, base.sourceVersion, base.pendingVersion)) {
+                    overlay.setBase(base, pendingChangelists);
                 }
-            });
+                overlay.update(cacheVersion, actionVersion, actions);
+                return overlay.result;
+            }
         } catch (InterruptedException e) {
             reportCacheWaitError(e);
+            return Collections.emptyList();
         }
-
-        if (LOG.isDebugEnabled()) {
-            LOG.debug("final evaluated cached changelists: " + changelists.keySet());
-        }
-
-        return changelists.values().stream().map(P4LocalChangelistImpl.Builder::build).collect(Collectors.toList());
     }
 
     @NotNull
     @Override
     public Collection<P4LocalFile> getCachedOpenedFiles(@NotNull ClientConfig config) {
-        Map<FilePath, P4LocalFileImpl.Builder> files = new HashMap<>();
-        try {
-            cache.read(config, (store) -> store.getFiles()
-                    .forEach((file) -> files.put(file.getFilePath(), new P4LocalFileImpl.Builder().withLocalFile(file))));
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("cached opened files: " + files.keySet());
+        final long cacheVersion = cache.getVersion();
+        final long actionVersion = cache.getPendingActionVersion();
+        final ClientServerRef ref = config.getClientServerRef();
+        final BaseSnapshot<P4LocalFile> prevBase;
+        synchronized (overlayLock) {
+            FileOverlay prev = fileOverlays.get(ref);
+            if (prev != null && prev.isCurrent(cacheVersion, actionVersion)) {
+                return prev.result;
             }
+            prevBase = prev == null ? null : prev.base;
+        }
 
-            // Because we read the pending actions in order of their behavior,
-            // this will (should?) update each file with the correct status.
-
-            pendingClientActions(config, (action) -> {
-                switch (action.getCmd()) {
-                    case MOVE_FILE: {
-                        MoveFileAction a = toMoveFileAction(action);
-                        P4LocalFileImpl.Builder srcBuilder = files.get(a.getSourceFile());
-                        P4LocalFileImpl.Builder tgtBuilder = files.get(a.getTargetFile());
-                        if (srcBuilder == null) {
-                            srcBuilder = new P4LocalFileImpl.Builder()
-                                    .withLocal(a.getSourceFile())
-                                    .withHave(new P4Revision(-1));
-                            files.put(a.getSourceFile(), srcBuilder);
-                        }
-                        srcBuilder
-                                .withAction(P4FileAction.MOVE_DELETE)
-                                .withResolveType(P4ResolveType.NO_RESOLVE)
-                                .withChangelist(a.getChangelistId());
-                        if (tgtBuilder == null) {
-                            tgtBuilder = new P4LocalFileImpl.Builder()
-                                    .withLocal(a.getTargetFile())
-                                    .withHave(new P4Revision(-1));
-                            files.put(a.getTargetFile(), tgtBuilder);
-                        }
-                        tgtBuilder
-                                .withAction(P4FileAction.MOVE_ADD_EDIT)
-                                .withIntegrateFrom(srcBuilder.getDepot())
-                                .withResolveType(P4ResolveType.NO_RESOLVE)
-                                .withChangelist(a.getChangelistId());
-                        break;
-                    }
-                    case ADD_EDIT_FILE: {
-                        AddEditAction a = toAddEditAction(action);
-                        P4LocalFileImpl.Builder builder = files.get(a.getFile());
-                        if (builder == null) {
-                            builder = new P4LocalFileImpl.Builder()
-                                    .withLocal(a.getFile())
-                                    .withHave(new P4Revision(-1));
-                            files.put(a.getFile(), builder);
-                        }
-                        builder
-                                .withAction(P4FileAction.ADD_EDIT)
-                                .withResolveType(P4ResolveType.NO_RESOLVE)
-                                .withChangelist(a.getChangelistId());
-                        break;
-                    }
-                    case DELETE_FILE: {
-                        DeleteFileAction a = toDeleteFileAction(action);
-                        P4LocalFileImpl.Builder builder = files.get(a.getFile());
-                        if (builder == null) {
-                            builder = new P4LocalFileImpl.Builder()
-                                    .withLocal(a.getFile())
-                                    .withHave(new P4Revision(-1));
-                            files.put(a.getFile(), builder);
-                        }
-                        builder
-                                .withAction(P4FileAction.DELETE)
-                                .withResolveType(P4ResolveType.NO_RESOLVE)
-                                .withChangelist(a.getChangelistId());
-                        break;
-                    }
-                    case REVERT_FILE: {
-                        RevertFileAction a = toRevertFileAction(action);
-                        files.remove(a.getFile());
-                        break;
-                    }
-                    case MOVE_FILES_TO_CHANGELIST: {
-                        MoveFilesToChangelistAction a = toMoveFilesToChangelistAction(action);
-                        for (FilePath affectedFile : a.getAffectedFiles()) {
-                            P4LocalFileImpl.Builder builder = files.get(affectedFile);
-                            if (builder != null) {
-                                builder.withChangelist(a.getChangelistId());
-                            } else {
-                                // If the builder is null, then that means that the file isn't marked as open.
-                                // This is a potential bug.
-                                // TODO Is a warning sufficient?  May need a notify
-                                // LOG.error here will stop us in our tracks and make the plugin unusable.
-                                LOG.warn("Encountered Move Files to Changelist pending action with not open file: " +
-                                        affectedFile);
-                            }
-                        }
-                    }
+        try {
+            final BaseSnapshot<P4LocalFile> base = cache.read(config, new BaseSnapshot<>(0), (store) ->
+                    prevBase != null && prevBase.isSame(store, store.getVersion(), 0)
+                            ? null
+                            : new BaseSnapshot<>(store, store.getVersion(), 0, store.getFiles()));
+            final List<ActionStore.PendingAction> actions = pendingClientActions(config);
+
+            synchronized (overlayLock) {
+                FileOverlay overlay = fileOverlays.computeIfAbsent(ref, (r) -> new FileOverlay());
+                if (base != null && !overlay.isSameBase(base.source, base.sourceVersion, base.pendingVersion)) {
+                    overlay.setBase(base);
                 }
-            });
-
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("final evaluated cached opened files: " + files.keySet());
+                overlay.update(cacheVersion, actionVersion, actions);
+                return overlay.result;
             }
         } catch (InterruptedException e) {
             reportCacheWaitError(e);
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * The most recent change to the client's opened files, after bringing them up to date.
+     * Later changes are linked from it, so an index of the opened files can follow them
+     * rather than going through all the opened files again.
+     */
+    @NotNull
+    OpenedFileChanges getOpenedFileChanges(@NotNull ClientConfig config) {
+        getCachedOpenedFiles(config);
+        synchronized (overlayLock) {
+            return fileOverlays.computeIfAbsent(config.getClientServerRef(), (r) -> new FileOverlay()).published;
         }
-        return files.values().stream().map(P4LocalFileImpl.Builder::build).collect(Collectors.toList());
     }
 
     @Nullable
@@ -309,14 +226,20 @@ public class CacheQueryHandlerImpl implements CacheQueryHandler {
         return cache.getEstimateSize();
     }
 
+    @Override
+    public long getCacheVersion() {
+        return cache.getVersion();
+    }
+
     // TODO look at using the CachePendingActionHandler's read.
-    private void pendingClientActions(@NotNull ClientConfig config, @NotNull Consumer<P4CommandRunner.ClientAction<?>> f)
+    @NotNull
+    private List<ActionStore.PendingAction> pendingClientActions(@NotNull ClientConfig config)
             throws InterruptedException {
         final String sourceId = ActionStore.getSourceId(config);
-        cache.copyActions()
+        return cache.copyActions()
                 .stream()
                 .filter((a) -> a.clientAction != null && sourceId.equals(a.sourceId))
-                .forEach((a) -> f.accept(a.clientAction));
+                .collect(Collectors.toList());
     }
 
     private void reportCacheWaitError(InterruptedException e) {
@@ -328,6 +251,355 @@ public class CacheQueryHandlerImpl implements CacheQueryHandler {
         }
     }
 
+    /**
+     * The query cache contents that an overlay is built on top of.
+     */
+    private static class BaseSnapshot<T> {
+        final Object source;
+        final long sourceVersion;
+        final long pendingVersion;
+        final List<T> values;
+
+        // No query cache for the client.  The pending changelists can still change, so
+        // their version is kept to tell the snapshots apart.
+        BaseSnapshot(long pendingVersion) {
+            this.source = null;
+            this.sourceVersion = -1;
+            this.pendingVersion = pendingVersion;
+            this.values = Collections.emptyList();
+        }
+
+        BaseSnapshot(@NotNull Object source, long sourceVersion, long pendingVersion, @NotNull List<T> values) {
+            this.source = source;
+            this.sourceVersion = sourceVersion;
+            this.pendingVersion = pendingVersion;
+            this.values = new ArrayList<>(values);
+        }
+
+        boolean isSame(@Nullable Object source, long sourceVersion, long pendingVersion) {
+            return this.source == source && this.sourceVersion == sourceVersion
+                    && this.pendingVersion == pendingVersion;
+        }
+    }
+
+
+    /**
+     * A materialized view of the query cache with the pending actions replayed on top of it.
+     * Pending actions are usually only appended, so when the applied actions are still the
+     * start of the pending action list, only the new actions are replayed.  Any other change
+     * replays everything from the base.
+     */
+    private abstract static class Overlay<T> {
+        // Project cache and pending action versions the result was computed for.
+        long cacheVersion = -1;
+        long actionVersion = -1;
+        BaseSnapshot<T> base;
+        final List<ActionStore.PendingAction> applied = new ArrayList<>();
+
+        boolean isSameBase(@Nullable Object source, long sourceVersion, long pendingVersion) {
+            return base != null && base.isSame(source, sourceVersion, pendingVersion);
+        }
+
+        boolean isCurrent(long cacheVersion, long actionVersion) {
+            return this.cacheVersion == cacheVersion && this.actionVersion == actionVersion;
+        }
+
+        void update(long cacheVersion, long actionVersion, @NotNull List<ActionStore.PendingAction> actions) {
+            boolean incremental = actions.size() >= applied.size();
+            for (int i = 0; incremental && i < applied.size(); i++) {
+                incremental = applied.get(i) == actions.get(i);
+            }
+            if (!incremental) {
+                reset();
+                applied.clear();
+            }
+            for (int i = applied.size(); i < actions.size(); i++) {
+                apply(actions.get(i).clientAction);
+                applied.add(actions.get(i));
+            }
+            publish();
+            this.cacheVersion = cacheVersion;
+            this.actionVersion = actionVersion;
+        }
+
+        // Rebuild the working state from the base.
+        abstract void reset();
+
+        abstract void apply(@NotNull P4CommandRunner.ClientAction<?> action);
+
+        // Make the working state available as the result.
+        abstract void publish();
+    }
+
+
+    /**
+     * The opened files that changed when a client's opened files were published.  Each
+     * publish links the next one, so holding on to one lets the changes after it be found.
+     */
+    static final class OpenedFileChanges {
+        // Changed file -> its new state, or null if it's no longer open.  Null if everything
+        // was rebuilt from the query cache, and the changes must be read in full.
+        @Nullable
+        final Map<FilePath, P4LocalFile> changed;
+
+        volatile OpenedFileChanges next;
+
+        OpenedFileChanges(@Nullable Map<FilePath, P4LocalFile> changed) {
+            this.changed = changed;
+        }
+    }
+
+
+    private static class FileOverlay extends Overlay<P4LocalFile> {
+        private final Map<FilePath, P4LocalFileImpl.Builder> files = new HashMap<>();
+        private final Map<FilePath, P4LocalFile> built = new HashMap<>();
+        private final Set<FilePath> changed = new HashSet<>();
+        // Set when the working state was rebuilt from the base, which may have removed files.
+        private boolean rebuilt;
+        Collection<P4LocalFile> result = Collections.emptyList();
+        OpenedFileChanges published = new OpenedFileChanges(null);
+
+        void setBase(@NotNull BaseSnapshot<P4LocalFile> base) {
+            this.base = base;
+            reset();
+            applied.clear();
+        }
+
+        @Override
+        void reset() {
+            files.clear();
+            built.clear();
+            changed.clear();
+            rebuilt = true;
+            if (base != null) {
+                for (P4LocalFile file : base.values) {
+                    files.put(file.getFilePath(), new P4LocalFileImpl.Builder().withLocalFile(file));
+                    changed.add(file.getFilePath());
+                }
+            }
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("cached opened files: " + files.keySet());
+            }
+        }
+
+        // Because the pending actions are applied in order of their behavior,
+        // this will (should?) update each file with the correct status.
+        @Override
+        void apply(@NotNull P4CommandRunner.ClientAction<?> action) {
+            switch (action.getCmd()) {
+                case MOVE_FILE: {
+                    MoveFileAction a = toMoveFileAction(action);
+                    P4LocalFileImpl.Builder srcBuilder = files.get(a.getSourceFile());
+                    P4LocalFileImpl.Builder tgtBuilder = files.get(a.getTargetFile());
+                    if (srcBuilder == null) {
+                        srcBuilder = new P4LocalFileImpl.Builder()
+                                .withLocal(a.getSourceFile())
+                                .withHave(new P4Revision(-1));
+                        files.put(a.getSourceFile(), srcBuilder);
+                    }
+                    srcBuilder
+                            .withAction(P4FileAction.MOVE_DELETE)
+                            .withResolveType(P4ResolveType.NO_RESOLVE)
+                            .withChangelist(a.getChangelistId());
+                    if (tgtBuilder == null) {
+                        tgtBuilder = new P4LocalFileImpl.Builder()
+                                .withLocal(a.getTargetFile())
+                                .withHave(new P4Revision(-1));
+                        files.put(a.getTargetFile(), tgtBuilder);
+                    }
+                    tgtBuilder
+                            .withAction(P4FileAction.MOVE_ADD_EDIT)
+                            .withIntegrateFrom(srcBuilder.getDepot())
+                            .withResolveType(P4ResolveType.NO_RESOLVE)
+                            .withChangelist(a.getChangelistId());
+                    changed.add(a.getSourceFile());
+                    changed.add(a.getTargetFile());
+                    break;
+                }
+                case ADD_EDIT_FILE: {
+                    AddEditAction a = toAddEditAction(action);
+                    P4LocalFileImpl.Builder builder = files.get(a.getFile());
+                    if (builder == null) {
+                        builder = new P4LocalFileImpl.Builder()
+                                .withLocal(a.getFile())
+                                .withHave(new P4Revision(-1));
+                        files.put(a.getFile(), builder);
+                    }
+                    builder
+                            .withAction(P4FileAction.ADD_EDIT)
+                            .withResolveType(P4ResolveType.NO_RESOLVE)
+                            .withChangelist(a.getChangelistId());
+                    changed.add(a.getFile());
+                    break;
+                }
+                case DELETE_FILE: {
+                    DeleteFileAction a = toDeleteFileAction(action);
+                    P4LocalFileImpl.Builder builder = files.get(a.getFile());
+                    if (builder == null) {
+                        builder = new P4LocalFileImpl.Builder()
+                                .withLocal(a.getFile())
+                                .withHave(new P4Revision(-1));
+                        files.put(a.getFile(), builder);
+                    }
+                    builder
+                            .withAction(P4FileAction.DELETE)
+                            .withResolveType(P4ResolveType.NO_RESOLVE)
+                            .withChangelist(a.getChangelistId());
+                    changed.add(a.getFile());
+                    break;
+                }
+                case REVERT_FILE: {
+                    RevertFileAction a = toRevertFileAction(action);
+                    files.remove(a.getFile());
+                    changed.add(a.getFile());
+                    break;
+                }
+                case MOVE_FILES_TO_CHANGELIST: {
+                    MoveFilesToChangelistAction a = toMoveFilesToChangelistAction(action);
+                    for (FilePath affectedFile : a.getAffectedFiles()) {
+                        P4LocalFileImpl.Builder builder = files.get(affectedFile);
+                        if (builder != null) {
+                            builder.withChangelist(a.getChangelistId());
+                            changed.add(affectedFile);
+                        } else {
+                            // If the builder is null, then that means that the file isn't marked as open.
+                            // This is a potential bug.
+                            // TODO Is a warning sufficient?  May need a notify
+                            // LOG.error here will stop us in our tracks and make the plugin unusable.
+                            LOG.warn("Encountered Move Files to Changelist pending action with not open file: " +
+                                    affectedFile);
+                        }
+                    }
+                }
+            }
+        }
+
+        @Override
+        void publish() {
+            if (changed.isEmpty() && !rebuilt) {
+                return;
+            }
+            // Only the files touched since the last publish need to be built again.
+            final Map<FilePath, P4LocalFile> delta = rebuilt ? null : new HashMap<>();
+            for (FilePath file : changed) {
+                P4LocalFileImpl.Builder builder = files.get(file);
+                P4LocalFile value = builder == null ? null : builder.build();
+                if (value == null) {
+                    built.remove(file);
+                } else {
+                    built.put(file, value);
+                }
+                if (delta != null) {
+                    delta.put(file, value);
+                }
+            }
+            changed.clear();
+            rebuilt = false;
+            result = Collections.unmodifiableList(new ArrayList<>(built.values()));
+            OpenedFileChanges next = new OpenedFileChanges(delta);
+            published.next = next;
+            published = next;
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("final evaluated cached opened files: " + built.keySet());
+            }
+        }
+    }
+
+
+    private static class ChangelistOverlay extends Overlay<P4LocalChangelist> {
+        private final Map<P4ChangelistId, P4LocalChangelistImpl.Builder> changelists = new HashMap<>();
+        private List<P4LocalChangelist> pendingChangelists = Collections.emptyList();
+        Collection<P4LocalChangelist> result = Collections.emptyList();
+
+        void setBase(@NotNull BaseSnapshot<P4LocalChangelist> base,
+                @NotNull List<P4LocalChangelist> pendingChangelists) {
+            this.base = base;
+            this.pendingChangelists = pendingChangelists;
+            reset();
+            applied.clear();
+        }
+
+        @Override
+        void reset() {
+            changelists.clear();
+            pendingChangelists.forEach((cl) ->
+                    changelists.put(cl.getChangelistId(), new P4LocalChangelistImpl.Builder().withSrc(cl)));
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("cached pending changelists: " + changelists.keySet());
+            }
+            if (base != null) {
+                base.values.forEach((cl) ->
+                        changelists.put(cl.getChangelistId(), new P4LocalChangelistImpl.Builder().withSrc(cl)));
+            }
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("cached pending + cached queried changelists: " + changelists.keySet());
+            }
+        }
+
+        @Override
+        void apply(@NotNull P4CommandRunner.ClientAction<?> action) {
+            switch (action.getCmd()) {
+
+                // case CREATE_CHANGELIST:
+                // create changelist action should already have been handled by the
+                // IdeChangelistCacheStore and P4ChangeProvider.
+
+                case DELETE_CHANGELIST: {
+                    DeleteChangelistAction a = toDeleteChangelistAction(action);
+                    // Remove the changelist entirely from the returned list.
+                    changelists.remove(a.getChangelistId());
+                    break;
+                }
+                case MOVE_FILES_TO_CHANGELIST: {
+                    MoveFilesToChangelistAction a = toMoveFilesToChangelistAction(action);
+                    for (P4LocalChangelistImpl.Builder builder: changelists.values()) {
+                        if (builder.is(a.getChangelistId())) {
+                            builder.addFiles(a.getFiles());
+                        } else {
+                            builder.removeFiles(a.getFiles());
+                        }
+                    }
+                    break;
+                }
+                case EDIT_CHANGELIST_DESCRIPTION: {
+                    EditChangelistAction a = toEditChangelistAction(action);
+                    P4LocalChangelistImpl.Builder builder = changelists.get(a.getChangelistId());
+                    if (builder != null) {
+                        builder.withComment(a.getComment());
+                    }
+                    break;
+                }
+                case ADD_JOB_TO_CHANGELIST: {
+                    AddJobToChangelistAction a = toAddJobToChangelistAction(action);
+                    P4LocalChangelistImpl.Builder builder = changelists.get(a.getChangelistId());
+                    if (builder != null) {
+                        builder.withJob(a.getJob());
+                    }
+                    break;
+                }
+                case REMOVE_JOB_FROM_CHANGELIST: {
+                    RemoveJobFromChangelistAction a = toRemoveJobFromChangelistAction(action);
+                    P4LocalChangelistImpl.Builder builder = changelists.get(a.getChangelistId());
+                    if (builder != null) {
+                        builder.withJobRemoved(a.getJob());
+                    }
+                }
+            }
+        }
+
+        @Override
+        void publish() {
+            // There are few changelists, and a single action can touch all of them, so they are all rebuilt.
+            result = Collections.unmodifiableList(changelists.values().stream()
+                    .map(P4LocalChangelistImpl.Builder::build)
+                    .collect(Collectors.toList()));
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("final evaluated cached changelists: " + changelists.keySet());
+            }
+        }
+    }
+
+
     private static DeleteChangelistAction toDeleteChangelistAction(P4CommandRunner.ClientAction<?> action) {
         return (DeleteChangelistAction) action;
     }
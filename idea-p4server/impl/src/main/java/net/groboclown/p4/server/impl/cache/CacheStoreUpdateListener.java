@@ -52,6 +52,7 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
 import java.util.stream.Stream;
 
@@ -176,6 +177,67 @@ public class CacheStoreUpdateListener {
         }
     }
 
+    /**
+     * Update the opened state of just some files in the cache for the configuration.
+     *
+     * @param ref source
+     * @param queriedFiles files whose opened state was loaded
+     * @param openedFiles the queried files that are open for change in the source
+     * @return false if the cache couldn't be updated from just these files, in which case the
+     *      opened files and changelists need a full refresh.
+     */
+    public boolean updateOpenedFiles(ClientServerRef ref,
+            Collection<FilePath> queriedFiles,
+            Collection<P4LocalFile> openedFiles) {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Opened state for reference " + ref + " files " + queriedFiles);
+            LOG.debug("Opened files: " + openedFiles);
+        }
+
+        boolean ret = true;
+        for (RootedClientConfig root : getClientConfigRoots()) {
+            if (ref.equals(root.getClientConfig().getClientServerRef())) {
+                List<FilePath> rootQueried = new ArrayList<>();
+                for (FilePath file : queriedFiles) {
+                    if (isUnderRoot(root, file)) {
+                        rootQueried.add(file);
+                    }
+                }
+                List<P4LocalFile> rootOpened = new ArrayList<>();
+                for (P4LocalFile file : openedFiles) {
+                    if (isUnderRoot(root, file.getFilePath())) {
+                        rootOpened.add(file);
+                    }
+                }
+                if (rootQueried.isEmpty() && rootOpened.isEmpty()) {
+                    continue;
+                }
+                final AtomicBoolean updated = new AtomicBoolean(false);
+                try {
+                    cache.write(root.getClientConfig(),
+                            (store) -> updated.set(store.updateFiles(rootQueried, rootOpened)));
+                } catch (InterruptedException e) {
+                    InternalErrorMessage.send(project).cacheLockTimeoutError(new ErrorEvent<>(new VcsInterruptedException(
+                            "Could not write to the cache due to lock timeout", e)));
+                    return false;
+                }
+                if (!updated.get()) {
+                    ret = false;
+                }
+            }
+        }
+        return ret;
+    }
+
+    private static boolean isUnderRoot(@NotNull RootedClientConfig root, @NotNull FilePath file) {
+        for (VirtualFile vcsRoot : root.getProjectVcsRootDirs()) {
+            if (FileTreeUtil.isSameOrUnder(vcsRoot, file)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private Collection<RootedClientConfig> getClientConfigRoots() {
         ProjectConfigRegistry reg = ProjectConfigRegistry.getInstance(project);
         return reg == null ? Collections.emptyList() : reg.getRootedClientConfigs();
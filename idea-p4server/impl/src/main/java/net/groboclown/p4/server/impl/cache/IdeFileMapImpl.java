@@ -17,9 +17,9 @@ package net.groboclown.p4.server.impl.cache;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vcs.FilePath;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.vcsUtil.VcsUtil;
 import net.groboclown.p4.server.api.RootedClientConfig;
 import net.groboclown.p4.server.api.ProjectConfigRegistry;
-import net.groboclown.p4.server.api.cache.CacheQueryHandler;
 import net.groboclown.p4.server.api.cache.IdeFileMap;
 import net.groboclown.p4.server.api.config.ClientConfig;
 import net.groboclown.p4.server.api.values.P4LocalFile;
@@ -27,22 +27,33 @@ import net.groboclown.p4.server.api.values.P4RemoteFile;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.LinkedList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Stream;
 
 /**
- *
+ * Looks up opened files through per-client indexes.  When the cache reports that its
+ * contents changed, the indexes are brought up to date with just the opened files that
+ * changed, so the per-file lookups made by the decorators and change providers don't
+ * need to re-evaluate the whole opened file list each time.
  */
 public class IdeFileMapImpl implements IdeFileMap {
     private final Project project;
-    private final CacheQueryHandler cache;
+    private final CacheQueryHandlerImpl cache;
 
-    // Really unoptimized.
+    // client server unique ID -> index.
+    private final Map<String, OpenedFileIndex> indexes = new ConcurrentHashMap<>();
+    // Cache version when the indexes of clients no longer in the project were last dropped.
+    private volatile long prunedVersion = -1;
 
-    public IdeFileMapImpl(@NotNull Project project, @NotNull CacheQueryHandler queryHandler) {
+    public IdeFileMapImpl(@NotNull Project project, @NotNull CacheQueryHandlerImpl queryHandler) {
         this.project = project;
         this.cache = queryHandler;
     }
@@ -61,12 +72,7 @@ public class IdeFileMapImpl implements IdeFileMap {
         if (clientConfig == null) {
             return null;
         }
-        for (P4LocalFile openedFile : cache.getCachedOpenedFiles(clientConfig.getClientConfig())) {
-            if (file.equals(openedFile.getFilePath().getVirtualFile())) {
-                return openedFile;
-            }
-        }
-        return null;
+        return getIndex(clientConfig.getClientConfig()).forVirtualFile(file);
     }
 
     @Nullable
@@ -79,12 +85,7 @@ public class IdeFileMapImpl implements IdeFileMap {
         if (clientConfig == null) {
             return null;
         }
-        for (P4LocalFile openedFile : cache.getCachedOpenedFiles(clientConfig.getClientConfig())) {
-            if (file.equals(openedFile.getFilePath())) {
-                return openedFile;
-            }
-        }
-        return null;
+        return getIndex(clientConfig.getClientConfig()).forFilePath(file);
     }
 
     @Nullable
@@ -94,10 +95,9 @@ public class IdeFileMapImpl implements IdeFileMap {
             return null;
         }
         for (RootedClientConfig root : getClientConfigRoots()) {
-            for (P4LocalFile openedFile : cache.getCachedOpenedFiles(root.getClientConfig())) {
-                if (file.equals(openedFile.getDepotPath())) {
-                    return openedFile;
-                }
+            P4LocalFile ret = getIndex(root.getClientConfig()).forDepotPath(file.getDepotPath());
+            if (ret != null) {
+                return ret;
             }
         }
         return null;
@@ -106,9 +106,9 @@ public class IdeFileMapImpl implements IdeFileMap {
     @NotNull
     @Override
     public Stream<P4LocalFile> getLinkedFiles() {
-        List<P4LocalFile> ret = new LinkedList<>();
+        List<P4LocalFile> ret = new ArrayList<>();
         for (RootedClientConfig root : getClientConfigRoots()) {
-            ret.addAll(cache.getCachedOpenedFiles(root.getClientConfig()));
+            ret.addAll(getIndex(root.getClientConfig()).getFiles());
         }
         return ret.stream();
     }
@@ -116,7 +116,7 @@ public class IdeFileMapImpl implements IdeFileMap {
     @NotNull
     @Override
     public Stream<P4LocalFile> getLinkedFiles(@NotNull ClientConfig config) {
-        return cache.getCachedOpenedFiles(config).stream();
+        return getIndex(config).getFiles().stream();
     }
 
     @Override
@@ -134,4 +134,114 @@ public class IdeFileMapImpl implements IdeFileMap {
         ProjectConfigRegistry reg = ProjectConfigRegistry.getInstance(project);
         return reg == null ? Collections.emptyList() : reg.getRootedClientConfigs();
     }
+
+    @NotNull
+    private OpenedFileIndex getIndex(@NotNull ClientConfig config) {
+        // The version must be read before the files, so that a cache write that happens
+        // while the index is updated causes the next call to update it again.
+        final long version = cache.getCacheVersion();
+        if (version != prunedVersion) {
+            prunedVersion = version;
+            pruneIndexes();
+        }
+        OpenedFileIndex index = indexes.computeIfAbsent(config.getClientServerUniqueId(),
+                (id) -> new OpenedFileIndex());
+        index.update(version, config, cache);
+        return index;
+    }
+
+    int getIndexCount() {
+        return indexes.size();
+    }
+
+    // Drop the indexes for the clients that were removed from the project.
+    private void pruneIndexes() {
+        ProjectConfigRegistry reg = ProjectConfigRegistry.getInstance(project);
+        if (reg == null) {
+            return;
+        }
+        Set<String> current = new HashSet<>();
+        for (RootedClientConfig root : reg.getRootedClientConfigs()) {
+            current.add(root.getClientConfig().getClientServerUniqueId());
+        }
+        indexes.keySet().retainAll(current);
+    }
+
+
+    private static class OpenedFileIndex {
+        private long version = -1;
+        private CacheQueryHandlerImpl.OpenedFileChanges indexed;
+        private final Map<FilePath, P4LocalFile> byFilePath = new HashMap<>();
+        private final Map<String, P4LocalFile> byDepotPath = new HashMap<>();
+
+        synchronized void update(long version, @NotNull ClientConfig config, @NotNull CacheQueryHandlerImpl cache) {
+            if (this.version == version) {
+                return;
+            }
+            // The changes are absolute file states, so reading the opened files after the
+            // latest change is safe; any changes published in between are just applied again.
+            final CacheQueryHandlerImpl.OpenedFileChanges latest = cache.getOpenedFileChanges(config);
+            boolean rebuild = indexed == null;
+            while (!rebuild && indexed != latest) {
+                CacheQueryHandlerImpl.OpenedFileChanges next = indexed.next;
+                if (next == null || next.changed == null) {
+                    rebuild = true;
+                } else {
+                    next.changed.forEach(this::apply);
+                    indexed = next;
+                }
+            }
+            if (rebuild) {
+                rebuild(cache.getCachedOpenedFiles(config));
+                indexed = latest;
+            }
+            this.version = version;
+        }
+
+        @Nullable
+        synchronized P4LocalFile forVirtualFile(@NotNull VirtualFile file) {
+            P4LocalFile ret = byFilePath.get(VcsUtil.getFilePath(file));
+            if (ret != null && file.equals(ret.getFilePath().getVirtualFile())) {
+                return ret;
+            }
+            return null;
+        }
+
+        @Nullable
+        synchronized P4LocalFile forFilePath(@NotNull FilePath file) {
+            return byFilePath.get(file);
+        }
+
+        @Nullable
+        synchronized P4LocalFile forDepotPath(@NotNull String depotPath) {
+            return byDepotPath.get(depotPath);
+        }
+
+        @NotNull
+        synchronized List<P4LocalFile> getFiles() {
+            return new ArrayList<>(byFilePath.values());
+        }
+
+        private void rebuild(@NotNull Collection<P4LocalFile> files) {
+            byFilePath.clear();
+            byDepotPath.clear();
+            for (P4LocalFile file : files) {
+                // Earlier files take precedence, to match a linear search of the list.
+                byFilePath.putIfAbsent(file.getFilePath(), file);
+                if (file.getDepotPath() != null) {
+                    byDepotPath.putIfAbsent(file.getDepotPath().getDepotPath(), file);
+                }
+            }
+        }
+
+        private void apply(@NotNull FilePath path, @Nullable P4LocalFile file) {
+            P4LocalFile old = file == null ? byFilePath.remove(path) : byFilePath.put(path, file);
+            if (old != null && old.getDepotPath() != null) {
+                byDepotPath.remove(old.getDepotPath().getDepotPath(), old);
+            }
+            if (file != null && file.getDepotPath() != null) {
+                byDepotPath.put(file.getDepotPath().getDepotPath(), file);
+            }
+        }
+    }
 }
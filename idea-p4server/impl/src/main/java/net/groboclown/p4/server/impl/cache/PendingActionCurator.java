@@ -29,17 +29,20 @@ import net.groboclown.p4.server.api.commands.file.AddEditAction;
 import net.groboclown.p4.server.api.commands.file.DeleteFileAction;
 import net.groboclown.p4.server.api.commands.file.MoveFileAction;
 import net.groboclown.p4.server.api.commands.file.RevertFileAction;
-import net.groboclown.p4.server.api.commands.file.ShelveFilesAction;
 import net.groboclown.p4.server.api.util.EqualUtil;
 import net.groboclown.p4.server.api.values.P4ChangelistId;
 import net.groboclown.p4.server.impl.cache.store.ActionStore;
+import net.groboclown.p4.server.impl.cache.store.PendingActionList;
 import net.groboclown.p4.server.impl.connection.operations.MoveFile;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.NavigableSet;
+import java.util.TreeSet;
 
 /**
  * Examines newly added actions and checks how that impacts existing actions in the pending list.
@@ -159,6 +162,11 @@ class PendingActionCurator {
      * @param actions existing list of actions.
      */
     void curateActionList(@NotNull ActionStore.PendingAction added, @NotNull List<ActionStore.PendingAction> actions) {
+        if (actions instanceof PendingActionList) {
+            curateIndexedActionList(added, (PendingActionList) actions);
+            return;
+        }
+
         // Curate the pending list of actions.
         // Curation MUST be done in reverse order of the existing pending actions.
         final ListIterator<ActionStore.PendingAction> iter = actions.listIterator(actions.size());
@@ -185,6 +193,114 @@ class PendingActionCurator {
     }
 
 
+    /**
+     * The same curation as the list walk, but only looks at the existing actions that
+     * {@link #curate(ActionStore.PendingAction, ActionStore.PendingAction)} could do something other
+     * than keep both and continue for.
+     */
+    private void curateIndexedActionList(@NotNull ActionStore.PendingAction added,
+            @NotNull PendingActionList actions) {
+        long before = actions.getEndSequence();
+        candidateSearch:
+        while (true) {
+            for (long sequence : getCandidates(added, actions, before)) {
+                final int position = actions.getPosition(sequence);
+                if (position < 0) {
+                    continue;
+                }
+                final ActionStore.PendingAction existingAction = actions.get(position);
+                PendingActionCurator.CurateResult result = curate(added, existingAction);
+                final ActionStore.PendingAction previousAdded = added;
+                added = result.replacedAdded(added);
+                if (result.removeExisting) {
+                    actions.remove(position);
+                } else {
+                    actions.set(position, result.replacedExisting(existingAction));
+                }
+                if (result.removeAdded) {
+                    // Halt the add operation
+                    return;
+                }
+                if (result.stopSearch) {
+                    // Don't look further for curation.
+                    break candidateSearch;
+                }
+                if (added != previousAdded) {
+                    // The older actions that could collide with the replacement may be different.
+                    before = sequence;
+                    continue candidateSearch;
+                }
+            }
+            break;
+        }
+
+        actions.add(added);
+    }
+
+
+    // The existing actions, newest first, that the added action could collide with.  These are the
+    // duplicates, and the actions that the curate rules below compare against the added action.
+    @NotNull
+    private NavigableSet<Long> getCandidates(@NotNull ActionStore.PendingAction added,
+            @NotNull PendingActionList actions, long before) {
+        NavigableSet<Long> ret = new TreeSet<>(Comparator.reverseOrder());
+        ret.addAll(actions.getSequences(PendingActionList.actionIdKey(added.getActionId()), before));
+        if (added.clientAction != null) {
+            switch (added.clientAction.getCmd()) {
+                case MOVE_FILE:
+                case ADD_EDIT_FILE:
+                case DELETE_FILE:
+                case MOVE_FILES_TO_CHANGELIST:
+                    for (FilePath file : added.clientAction.getAffectedFiles()) {
+                        ret.addAll(actions.getSequences(PendingActionList.fileKey(file), before));
+                    }
+                    break;
+                case EDIT_CHANGELIST_DESCRIPTION:
+                case ADD_JOB_TO_CHANGELIST:
+                case REMOVE_JOB_FROM_CHANGELIST:
+                case DELETE_CHANGELIST: {
+                    P4ChangelistId changelistId = ActionStore.getAssociatedChangelistId(added.clientAction);
+                    if (changelistId != null) {
+                        ret.addAll(actions.getSequences(PendingActionList.changelistKey(changelistId), before));
+                    }
+                    break;
+                }
+                case CREATE_CHANGELIST:
+                    ret.addAll(actions.getSequences(PendingActionList.commandKey(added.clientAction.getCmd()),
+                            before));
+                    break;
+                case FETCH_FILES:
+                case SUBMIT_CHANGELIST:
+                    // Any existing client action removes these.
+                    addNewest(ret, actions.getSequences(PendingActionList.CLIENT_KEY, before));
+                    break;
+                default:
+                    break;
+            }
+        } else if (added.serverAction != null) {
+            switch (added.serverAction.getCmd()) {
+                case CREATE_JOB:
+                    ret.addAll(actions.getSequences(PendingActionList.commandKey(added.serverAction.getCmd()),
+                            before));
+                    break;
+                case LOGIN:
+                    // Any existing server action removes this.
+                    addNewest(ret, actions.getSequences(PendingActionList.SERVER_KEY, before));
+                    break;
+                default:
+                    break;
+            }
+        }
+        return ret;
+    }
+
+    private static void addNewest(@NotNull NavigableSet<Long> ret, @NotNull NavigableSet<Long> sequences) {
+        if (!sequences.isEmpty()) {
+            ret.add(sequences.first());
+        }
+    }
+
+
     /**
      *
      * @param added a new requested action to add to the pending list.
@@ -636,7 +752,7 @@ class PendingActionCurator {
     private CurateResult curateEditChangelistDescriptionRequest(
             @NotNull EditChangelistAction added,
             @NotNull P4CommandRunner.ClientAction<?> existing) {
-        if (! added.getChangelistId().equals(getAssociatedChangelistId(existing))) {
+        if (! added.getChangelistId().equals(ActionStore.getAssociatedChangelistId(existing))) {
             // They do not share the same changelist ID.  Keep both actions.
             return KEEP_BOTH_CONTINUE;
         }
@@ -695,7 +811,7 @@ class PendingActionCurator {
     private CurateResult curateAddJobToChangelistRequest(
             @NotNull AddJobToChangelistAction added,
             @NotNull P4CommandRunner.ClientAction<?> existing) {
-        if (! added.getChangelistId().equals(getAssociatedChangelistId(existing))) {
+        if (! added.getChangelistId().equals(ActionStore.getAssociatedChangelistId(existing))) {
             // They do not share the same changelist ID.  Keep both actions.
             return KEEP_BOTH_CONTINUE;
         }
@@ -762,7 +878,7 @@ class PendingActionCurator {
     private CurateResult curateRemoveJobFromChangelistRequest(
             @NotNull RemoveJobFromChangelistAction added,
             @NotNull P4CommandRunner.ClientAction<?> existing) {
-        if (! added.getChangelistId().equals(getAssociatedChangelistId(existing))) {
+        if (! added.getChangelistId().equals(ActionStore.getAssociatedChangelistId(existing))) {
             // They do not share the same changelist ID.  Keep both actions.
             return KEEP_BOTH_CONTINUE;
         }
@@ -863,7 +979,7 @@ class PendingActionCurator {
     private CurateResult curateDeleteChangelistRequest(
             @NotNull DeleteChangelistAction added,
             @NotNull P4CommandRunner.ClientAction<?> existing) {
-        if (! added.getChangelistId().equals(getAssociatedChangelistId(existing))) {
+        if (! added.getChangelistId().equals(ActionStore.getAssociatedChangelistId(existing))) {
             // They do not share the same changelist ID.  Keep both actions.
             return KEEP_BOTH_CONTINUE;
         }
@@ -931,39 +1047,4 @@ class PendingActionCurator {
         commonFiles.removeAll(b.getAffectedFiles());
         return aSize == commonFiles.size();
     }
-
-    @Nullable
-    private P4ChangelistId getAssociatedChangelistId(@NotNull P4CommandRunner.ClientAction<?> action) {
-        switch (action.getCmd()) {
-            case MOVE_FILE:
-                return ((MoveFileAction) action).getChangelistId();
-            case ADD_EDIT_FILE:
-                return ((AddEditAction) action).getChangelistId();
-            case DELETE_FILE:
-                return ((DeleteFileAction) action).getChangelistId();
-            case REVERT_FILE:
-                return null;
-            case MOVE_FILES_TO_CHANGELIST:
-                return ((MoveFilesToChangelistAction) action).getChangelistId();
-            case EDIT_CHANGELIST_DESCRIPTION:
-                return ((EditChangelistAction) action).getChangelistId();
-            case ADD_JOB_TO_CHANGELIST:
-                return ((AddJobToChangelistAction) action).getChangelistId();
-            case REMOVE_JOB_FROM_CHANGELIST:
-                return ((RemoveJobFromChangelistAction) action).getChangelistId();
-            case CREATE_CHANGELIST:
-                // No changelist created for this request!
-                return null;
-            case DELETE_CHANGELIST:
-                return ((DeleteChangelistAction) action).getChangelistId();
-            case FETCH_FILES:
-                return null;
-            case SUBMIT_CHANGELIST:
-                return ((SubmitChangelistAction) action).getChangelistId();
-            case SHELVE_FILES:
-                return ((ShelveFilesAction) action).getChangelistId();
-            default:
-                return null;
-        }
-    }
 }
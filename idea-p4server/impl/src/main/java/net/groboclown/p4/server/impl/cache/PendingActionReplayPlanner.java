@@ -0,0 +1,136 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.groboclown.p4.server.impl.cache;
+
+import com.intellij.openapi.vcs.FilePath;
+import net.groboclown.p4.server.api.P4CommandRunner;
+import net.groboclown.p4.server.api.cache.ActionChoice;
+import net.groboclown.p4.server.api.commands.file.AddEditAction;
+import net.groboclown.p4.server.api.commands.file.RevertFileAction;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Splits the pending actions into groups that can be sent to the server together.
+ * <p>
+ * Pending actions must run in order, so only neighboring actions are grouped, and
+ * only when they are the same kind of file action with the same settings; for
+ * example, adding or editing files into the same changelist, or reverting files.
+ * A group never contains the same file twice.  Every other action is in a group
+ * of its own.
+ */
+public class PendingActionReplayPlanner {
+    // Keeps the server command line to a reasonable size.
+    static final int MAX_GROUP_SIZE = 500;
+
+    private PendingActionReplayPlanner() {
+        // utility class
+    }
+
+
+    /**
+     * @param actions pending actions, in the order they must run.
+     * @return the actions in groups, in the same order.
+     */
+    @NotNull
+    public static List<List<ActionChoice>> plan(@NotNull List<ActionChoice> actions) {
+        List<List<ActionChoice>> ret = new ArrayList<>();
+        List<ActionChoice> group = null;
+        List<Object> groupKey = null;
+        Set<String> groupFiles = new HashSet<>();
+        for (ActionChoice action : actions) {
+            List<Object> key = getGroupKey(action);
+            if (group != null && key != null && key.equals(groupKey) && group.size() < MAX_GROUP_SIZE
+                    && addFiles(action, groupFiles)) {
+                group.add(action);
+                continue;
+            }
+            group = new ArrayList<>();
+            group.add(action);
+            ret.add(group);
+            groupKey = key;
+            groupFiles.clear();
+            addFiles(action, groupFiles);
+        }
+        return ret;
+    }
+
+
+    /**
+     * @return the client actions in the group, if the group can be run as a single command.
+     */
+    @Nullable
+    public static List<P4CommandRunner.ClientAction<?>> getGroupedClientActions(@NotNull List<ActionChoice> group) {
+        if (group.size() <= 1) {
+            return null;
+        }
+        List<P4CommandRunner.ClientAction<?>> ret = new ArrayList<>(group.size());
+        for (ActionChoice action : group) {
+            P4CommandRunner.ClientAction<?> client = getClientAction(action);
+            if (client == null) {
+                return null;
+            }
+            ret.add(client);
+        }
+        return ret;
+    }
+
+
+    // Actions with equal keys can run together.
+    @Nullable
+    private static List<Object> getGroupKey(@NotNull ActionChoice action) {
+        P4CommandRunner.ClientAction<?> client = getClientAction(action);
+        if (client == null) {
+            return null;
+        }
+        switch (client.getCmd()) {
+            case ADD_EDIT_FILE: {
+                // The file type isn't used when opening the file; the server decides it.
+                AddEditAction addEdit = (AddEditAction) client;
+                return Arrays.asList(client.getCmd(), addEdit.getChangelistId(), addEdit.getCharset());
+            }
+            case REVERT_FILE:
+                return Arrays.asList(client.getCmd(), ((RevertFileAction) client).isRevertOnlyIfUnchanged());
+            default:
+                return null;
+        }
+    }
+
+
+    @Nullable
+    private static P4CommandRunner.ClientAction<?> getClientAction(@NotNull ActionChoice action) {
+        return action.ifClient((c) -> (P4CommandRunner.ClientAction<?>) c);
+    }
+
+
+    // Returns false, without changing the set, if any of the action's files are already in the set.
+    private static boolean addFiles(@NotNull ActionChoice action, @NotNull Set<String> files) {
+        List<String> paths = new ArrayList<>();
+        for (FilePath file : action.getAffectedFiles()) {
+            if (files.contains(file.getPath())) {
+                return false;
+            }
+            paths.add(file.getPath());
+        }
+        files.addAll(paths);
+        return true;
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.groboclown.p4.server.impl.cache;
+
+import com.intellij.openapi.diagnostic.Logger;
+import net.groboclown.p4.server.api.async.Answer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.concurrency.AsyncPromise;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Keeps track of the refreshes that are running, so that only one refresh for a key runs
+ * at a time.  A refresh requested while another one is running may miss changes made after
+ * the running one started, so it doesn't join it; instead, one more refresh is started once
+ * the running one completes or fails.  All the requests that arrive in the meantime share
+ * that follow-up refresh.
+ *
+ * @param <K> what is being refreshed.
+ */
+public class RefreshTracker<K> {
+    private static final Logger LOG = Logger.getInstance(RefreshTracker.class);
+
+    private final Map<K, Running> active = new HashMap<>();
+
+
+    /**
+     * @param key what to refresh.
+     * @param start starts the refresh; called now if no refresh for the key is running,
+     *              otherwise once the running refresh ends, unless another request already
+     *              queued the follow-up refresh.
+     * @return the refresh that answers this request.
+     */
+    @NotNull
+    public Answer<?> refresh(@NotNull K key, @NotNull Supplier<Answer<?>> start) {
+        synchronized (active) {
+            Running running = active.get(key);
+            if (running == null) {
+                return startRefresh(key, start);
+            }
+            if (running.followUp == null) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Refresh already running for " + key + "; queueing another one after it");
+                }
+                running.followUpStart = start;
+                running.followUp = new AsyncPromise<>();
+                running.followUpAnswer = Answer.forPromise(running.followUp);
+            }
+            return running.followUpAnswer;
+        }
+    }
+
+
+    /**
+     * Start a refresh only if no refresh for the key is running or queued.  This is for
+     * partial refreshes, which must not run at the same time as a full refresh of the key.
+     *
+     * @param key what to refresh.
+     * @param start starts the refresh.
+     * @return the started refresh, or null if a refresh for the key is already running.
+     */
+    @Nullable
+    public Answer<?> refreshIfIdle(@NotNull K key, @NotNull Supplier<Answer<?>> start) {
+        synchronized (active) {
+            if (active.containsKey(key)) {
+                return null;
+            }
+            return startRefresh(key, start);
+        }
+    }
+
+
+    /**
+     * @return the number of refreshes still running.
+     */
+    public int getActiveCount() {
+        synchronized (active) {
+            return active.size();
+        }
+    }
+
+
+    // Must be called while holding the active lock.
+    @NotNull
+    private Answer<?> startRefresh(@NotNull K key, @NotNull Supplier<Answer<?>> start) {
+        final Answer<?> refresh = start.get();
+        final Running running = new Running();
+        active.put(key, running);
+        // The lock is reentrant, so a refresh that has already finished is removed right away.
+        refresh
+                .whenCompleted((x) -> end(key, running))
+                .whenFailed((e) -> end(key, running));
+        return refresh;
+    }
+
+
+    private void end(@NotNull K key, @NotNull Running running) {
+        final AsyncPromise<Object> followUp;
+        final Answer<?> next;
+        synchronized (active) {
+            if (active.get(key) != running) {
+                return;
+            }
+            active.remove(key);
+            followUp = running.followUp;
+            if (followUp == null) {
+                return;
+            }
+            next = startRefresh(key, running.followUpStart);
+        }
+        next
+                .whenCompleted(followUp::setResult)
+                .whenFailed(followUp::setError);
+    }
+
+
+    private static class Running {
+        Supplier<Answer<?>> followUpStart;
+        AsyncPromise<Object> followUp;
+        Answer<?> followUpAnswer;
+    }
+}
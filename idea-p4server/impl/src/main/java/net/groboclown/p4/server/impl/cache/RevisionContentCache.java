@@ -0,0 +1,296 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.groboclown.p4.server.impl.cache;
+
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps the contents of depot file revisions.  A depot path at a specific
+ * revision (<tt>//depot/a.txt#3</tt>) never changes, so once it's been
+ * downloaded, it can be shown again without going to the server, even
+ * while offline.
+ * <p>
+ * The contents are stored on disk, one file per revision, named by a hash of the
+ * server, depot path and revision.  The least recently used files are removed
+ * once the total size grows past the disk limit.  The most recently used
+ * contents are also kept in memory, up to a smaller limit.
+ * <p>
+ * Head revisions, changelist and label revision specifiers aren't cached, because
+ * what they point to can change.
+ */
+public class RevisionContentCache {
+    private static final Logger LOG = Logger.getInstance(RevisionContentCache.class);
+
+    public static final long DEFAULT_MAX_DISK_BYTES = 256L * 1024L * 1024L;
+    public static final long DEFAULT_MAX_MEMORY_BYTES = 16L * 1024L * 1024L;
+
+    private static final String SUFFIX = ".rev";
+    private static final Pattern FIXED_REVISION = Pattern.compile("^(//.+)#(\\d+)$");
+
+    private final File dir;
+    private final long maxDiskBytes;
+    private final long maxMemoryBytes;
+
+    // All the maps are in least recently used order, and guarded by the lock on this object.
+    private final LinkedHashMap<String, Long> diskEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, byte[]> memoryEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private long diskBytes;
+    private long memoryBytes;
+    private boolean diskLoaded;
+
+
+    public RevisionContentCache(@NotNull File dir) {
+        this(dir, DEFAULT_MAX_DISK_BYTES, DEFAULT_MAX_MEMORY_BYTES);
+    }
+
+    public RevisionContentCache(@NotNull File dir, long maxDiskBytes, long maxMemoryBytes) {
+        this.dir = dir;
+        this.maxDiskBytes = maxDiskBytes;
+        this.maxMemoryBytes = maxMemoryBytes;
+    }
+
+
+    /**
+     * Split a depot path with a fixed revision into the path and revision.
+     *
+     * @param depotPathRev depot path, possibly with a revision specifier.
+     * @return the depot path and revision, or null if the path does not name
+     *      a fixed revision.
+     */
+    @Nullable
+    public static Map.Entry<String, Integer> parseFixedRevision(@Nullable String depotPathRev) {
+        if (depotPathRev == null) {
+            return null;
+        }
+        Matcher m = FIXED_REVISION.matcher(depotPathRev);
+        if (!m.matches()) {
+            return null;
+        }
+        try {
+            int rev = Integer.parseInt(m.group(2));
+            return rev > 0 ? new AbstractMap.SimpleImmutableEntry<>(m.group(1), rev) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+
+    /**
+     * @return the cached contents, or null if the revision is not cached.
+     */
+    @Nullable
+    public byte[] get(@NotNull String serverPort, @NotNull String depotPath, int rev) {
+        if (rev <= 0) {
+            return null;
+        }
+        String key = getKey(serverPort, depotPath, rev);
+        String name = getFileName(key);
+        synchronized (this) {
+            byte[] ret = memoryEntries.get(name);
+            if (ret != null) {
+                diskEntries.get(name);
+                return ret.clone();
+            }
+            loadDiskEntries();
+            // Note: get, not containsKey, so that the use order is updated.
+            if (diskEntries.get(name) == null) {
+                return null;
+            }
+        }
+
+        byte[] ret = readEntry(new File(dir, name), key);
+        synchronized (this) {
+            if (ret == null) {
+                // Removed or corrupted.
+                Long size = diskEntries.remove(name);
+                if (size != null) {
+                    diskBytes -= size;
+                }
+                return null;
+            }
+            addToMemory(name, ret.clone());
+        }
+        return ret;
+    }
+
+
+    public void put(@NotNull String serverPort, @NotNull String depotPath, int rev, @Nullable byte[] contents) {
+        if (rev <= 0 || contents == null) {
+            return;
+        }
+        String key = getKey(serverPort, depotPath, rev);
+        String name = getFileName(key);
+        synchronized (this) {
+            addToMemory(name, contents.clone());
+            loadDiskEntries();
+            if (diskEntries.get(name) != null) {
+                return;
+            }
+        }
+
+        Long size = writeEntry(name, key, contents);
+        if (size == null) {
+            return;
+        }
+        synchronized (this) {
+            Long prev = diskEntries.put(name, size);
+            diskBytes += size - (prev == null ? 0 : prev);
+            Iterator<Map.Entry<String, Long>> iter = diskEntries.entrySet().iterator();
+            while (diskBytes > maxDiskBytes && iter.hasNext()) {
+                Map.Entry<String, Long> oldest = iter.next();
+                if (oldest.getKey().equals(name) && diskEntries.size() > 1) {
+                    continue;
+                }
+                iter.remove();
+                diskBytes -= oldest.getValue();
+                if (!new File(dir, oldest.getKey()).delete()) {
+                    LOG.debug("Could not remove cached revision " + oldest.getKey());
+                }
+            }
+        }
+    }
+
+
+    private void addToMemory(@NotNull String name, @NotNull byte[] contents) {
+        // Anything too big would push out everything else.
+        if (contents.length > maxMemoryBytes / 4) {
+            return;
+        }
+        byte[] prev = memoryEntries.put(name, contents);
+        memoryBytes += contents.length - (prev == null ? 0 : prev.length);
+        Iterator<byte[]> iter = memoryEntries.values().iterator();
+        while (memoryBytes > maxMemoryBytes && iter.hasNext()) {
+            memoryBytes -= iter.next().length;
+            iter.remove();
+        }
+    }
+
+
+    private void loadDiskEntries() {
+        if (diskLoaded) {
+            return;
+        }
+        diskLoaded = true;
+        File[] files = dir.listFiles((d, n) -> n.endsWith(SUFFIX));
+        if (files == null) {
+            return;
+        }
+        // Oldest first, so the least recently used are evicted first.
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            diskEntries.put(file.getName(), file.length());
+            diskBytes += file.length();
+        }
+    }
+
+
+    @Nullable
+    private byte[] readEntry(@NotNull File file, @NotNull String key) {
+        try {
+            byte[] data = Files.readAllBytes(file.toPath());
+            byte[] header = getHeader(key);
+            if (data.length < header.length || !Arrays.equals(header, Arrays.copyOf(data, header.length))) {
+                LOG.warn("Cached revision " + file + " does not match " + key);
+                return null;
+            }
+            // Keep the use order across restarts.
+            if (!file.setLastModified(System.currentTimeMillis())) {
+                LOG.debug("Could not update the last use time of " + file);
+            }
+            return Arrays.copyOfRange(data, header.length, data.length);
+        } catch (IOException e) {
+            LOG.debug("Could not read cached revision " + file, e);
+            return null;
+        }
+    }
+
+
+    @Nullable
+    private Long writeEntry(@NotNull String name, @NotNull String key, @NotNull byte[] contents) {
+        try {
+            Files.createDirectories(dir.toPath());
+            Path tmp = Files.createTempFile(dir.toPath(), "rev", ".tmp");
+            try {
+                byte[] header = getHeader(key);
+                ByteArrayOutputStream out = new ByteArrayOutputStream(header.length + contents.length);
+                out.write(header);
+                out.write(contents);
+                Files.write(tmp, out.toByteArray());
+                Path target = new File(dir, name).toPath();
+                try {
+                    Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+                return (long) (header.length + contents.length);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        } catch (IOException e) {
+            LOG.warn("Could not cache revision " + key, e);
+            return null;
+        }
+    }
+
+
+    @NotNull
+    private static String getKey(@NotNull String serverPort, @NotNull String depotPath, int rev) {
+        return serverPort + '\n' + depotPath + '#' + rev;
+    }
+
+
+    // The key is stored at the start of the file, to guard against hash collisions.
+    @NotNull
+    private static byte[] getHeader(@NotNull String key) {
+        return (key + '\n').getBytes(StandardCharsets.UTF_8);
+    }
+
+
+    @NotNull
+    private static String getFileName(@NotNull String key) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(hash.length * 2 + SUFFIX.length());
+            for (byte b : hash) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return sb.append(SUFFIX).toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every JVM must support SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -25,6 +25,7 @@ import net.groboclown.p4.server.api.commands.changelist.DeleteChangelistAction;
 import net.groboclown.p4.server.api.commands.changelist.EditChangelistAction;
 import net.groboclown.p4.server.api.commands.changelist.MoveFilesToChangelistAction;
 import net.groboclown.p4.server.api.commands.changelist.RemoveJobFromChangelistAction;
+import net.groboclown.p4.server.api.commands.changelist.SubmitChangelistAction;
 import net.groboclown.p4.server.api.commands.file.AddEditAction;
 import net.groboclown.p4.server.api.commands.file.DeleteFileAction;
 import net.groboclown.p4.server.api.commands.file.MoveFileAction;
@@ -33,8 +34,10 @@ import net.groboclown.p4.server.api.commands.file.ShelveFilesAction;
 import net.groboclown.p4.server.api.config.ClientConfig;
 import net.groboclown.p4.server.api.config.ServerConfig;
 import net.groboclown.p4.server.api.util.EqualUtil;
+import net.groboclown.p4.server.api.values.P4ChangelistId;
 import net.groboclown.p4.server.api.values.P4FileType;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 public class ActionStore {
     private static final Logger LOG = Logger.getInstance(ActionStore.class);
@@ -369,4 +372,43 @@ public class ActionStore {
         return "server:" + config.getUrl();
     }
 
+
+    /**
+     * @return the changelist that the action works with, or null if it doesn't have one.
+     */
+    @Nullable
+    public static P4ChangelistId getAssociatedChangelistId(@NotNull P4CommandRunner.ClientAction<?> action) {
+        switch (action.getCmd()) {
+            case MOVE_FILE:
+                return ((MoveFileAction) action).getChangelistId();
+            case ADD_EDIT_FILE:
+                return ((AddEditAction) action).getChangelistId();
+            case DELETE_FILE:
+                return ((DeleteFileAction) action).getChangelistId();
+            case REVERT_FILE:
+                return null;
+            case MOVE_FILES_TO_CHANGELIST:
+                return ((MoveFilesToChangelistAction) action).getChangelistId();
+            case EDIT_CHANGELIST_DESCRIPTION:
+                return ((EditChangelistAction) action).getChangelistId();
+            case ADD_JOB_TO_CHANGELIST:
+                return ((AddJobToChangelistAction) action).getChangelistId();
+            case REMOVE_JOB_FROM_CHANGELIST:
+                return ((RemoveJobFromChangelistAction) action).getChangelistId();
+            case CREATE_CHANGELIST:
+                // No changelist created for this request!
+                return null;
+            case DELETE_CHANGELIST:
+                return ((DeleteChangelistAction) action).getChangelistId();
+            case FETCH_FILES:
+                return null;
+            case SUBMIT_CHANGELIST:
+                return ((SubmitChangelistAction) action).getChangelistId();
+            case SHELVE_FILES:
+                return ((ShelveFilesAction) action).getChangelistId();
+            default:
+                return null;
+        }
+    }
+
 }
@@ -14,9 +14,12 @@
 
 package net.groboclown.p4.server.impl.cache.store;
 
+import com.intellij.openapi.vcs.FilePath;
 import net.groboclown.p4.server.api.ClientServerRef;
+import net.groboclown.p4.server.api.values.P4ChangelistId;
 import net.groboclown.p4.server.api.values.P4LocalChangelist;
 import net.groboclown.p4.server.api.values.P4LocalFile;
+import net.groboclown.p4.server.impl.values.P4LocalChangelistImpl;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.TestOnly;
 
@@ -24,7 +27,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * All the information for a single client config that was cached from queries.
@@ -40,6 +45,9 @@ public class ClientQueryCacheStore {
     private final List<P4LocalChangelist> changelists = new ArrayList<>();
     private final List<P4LocalFile> files = new ArrayList<>();
 
+    // Changes whenever the changelists or files are replaced.  Protected by the owning cache lock.
+    private long version = 0;
+
 
     public ClientQueryCacheStore(@NotNull ClientServerRef source) {
         this.source = source;
@@ -57,11 +65,13 @@ public class ClientQueryCacheStore {
 
     @TestOnly
     public void setChangelists(P4LocalChangelist... changelists) {
+        this.version++;
         this.changelists.clear();
         this.changelists.addAll(Arrays.asList(changelists));
     }
 
     public void setChangelists(Collection<P4LocalChangelist> changelists) {
+        this.version++;
         this.changelists.clear();
         this.changelists.addAll(changelists);
     }
@@ -77,10 +87,70 @@ public class ClientQueryCacheStore {
     }
 
     public void setFiles(Collection<P4LocalFile> files) {
+        this.version++;
         this.files.clear();
         this.files.addAll(files);
     }
 
+    /**
+     * Replace the opened state of just the queried files, keeping everything else.
+     *
+     * @param queriedFiles the files whose opened state was loaded.
+     * @param openedFiles the queried files which are opened.
+     * @return false, without changing anything, if an opened file is in a changelist that
+     *      isn't cached; the whole opened state needs to be loaded again.
+     */
+    public boolean updateFiles(@NotNull Collection<FilePath> queriedFiles,
+            @NotNull Collection<P4LocalFile> openedFiles) {
+        Set<P4ChangelistId> knownChangelists = new HashSet<>();
+        for (P4LocalChangelist changelist : changelists) {
+            knownChangelists.add(changelist.getChangelistId());
+        }
+        Set<String> paths = new HashSet<>();
+        for (FilePath file : queriedFiles) {
+            paths.add(file.getPath());
+        }
+        for (P4LocalFile file : openedFiles) {
+            if (!knownChangelists.contains(file.getChangelistId())) {
+                return false;
+            }
+            paths.add(file.getFilePath().getPath());
+        }
+
+        this.version++;
+        this.files.removeIf((f) -> paths.contains(f.getFilePath().getPath()));
+        this.files.addAll(openedFiles);
+        for (int i = 0; i < changelists.size(); i++) {
+            P4LocalChangelist changelist = changelists.get(i);
+            List<FilePath> contained = new ArrayList<>();
+            boolean changed = false;
+            for (FilePath file : changelist.getFiles()) {
+                if (paths.contains(file.getPath())) {
+                    changed = true;
+                } else {
+                    contained.add(file);
+                }
+            }
+            for (P4LocalFile file : openedFiles) {
+                if (changelist.getChangelistId().equals(file.getChangelistId())) {
+                    contained.add(file.getFilePath());
+                    changed = true;
+                }
+            }
+            if (changed) {
+                P4LocalChangelistImpl.Builder builder = new P4LocalChangelistImpl.Builder().withSrc(changelist);
+                builder.removeFiles(changelist.getFiles());
+                builder.addFiles(contained);
+                changelists.set(i, builder.build());
+            }
+        }
+        return true;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
     @NotNull
     public ClientServerRef getClientServerRef() {
         return source;
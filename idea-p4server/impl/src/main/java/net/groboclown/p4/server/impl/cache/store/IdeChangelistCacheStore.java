@@ -29,6 +29,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -44,6 +45,9 @@ public class IdeChangelistCacheStore {
 
     private final AtomicInteger pendingChangelistIdCounter = new AtomicInteger(-2);
 
+    // Incremented whenever the pending changelists change.
+    private final AtomicLong version = new AtomicLong();
+
     private final ReadWriteLock lock = new ReentrantReadWriteLock();
     private LockTimeoutProvider lockTimeout = new LockTimeoutProviderImpl();
 
@@ -133,6 +137,7 @@ public class IdeChangelistCacheStore {
                         .build();
 
                 pendingChangelists.put(actionId, pending);
+                version.incrementAndGet();
             }
             return pending;
         });
@@ -187,6 +192,7 @@ public class IdeChangelistCacheStore {
         lockTimeout.withWriteLock(lock, () -> {
             P4LocalChangelist pendingChange = pendingChangelists.remove(action.getActionId());
             if (pendingChange != null) {
+                version.incrementAndGet();
                 linkedChangelistIds.remove(pendingChange.getChangelistId());
             }
         });
@@ -199,6 +205,7 @@ public class IdeChangelistCacheStore {
             linkedChangelistIds.remove(changelistId);
             for (Map.Entry<String, P4LocalChangelist> entry : pendingChangelists.entrySet()) {
                 if (entry.getValue().getChangelistId().equals(changelistId)) {
+                    version.incrementAndGet();
                     pendingChangelists.remove(entry.getKey());
                     break;
                 }
@@ -207,6 +214,15 @@ public class IdeChangelistCacheStore {
     }
 
 
+    /**
+     *
+     * @return a stamp that changes whenever the pending changelists change.
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+
     @NotNull
     State getState()
             throws InterruptedException {
@@ -245,6 +261,7 @@ public class IdeChangelistCacheStore {
                     linkedChangelistIds.put(p4id, linkedChangelistState.linkedLocalChangeId);
                 }
 
+                version.incrementAndGet();
                 pendingChangelists.clear();
                 for (PendingChangelistState pendingChangelistState : state.pendingChangelistMap) {
                     P4LocalChangelist p4cl = P4LocalChangelistStore.read(pendingChangelistState.p4Changelist);
@@ -0,0 +1,227 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.groboclown.p4.server.impl.cache.store;
+
+import com.intellij.openapi.vcs.FilePath;
+import net.groboclown.p4.server.api.values.P4ChangelistId;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.RandomAccess;
+import java.util.TreeSet;
+
+/**
+ * The ordered list of pending actions, with an index so that the actions which
+ * share an action ID, a file, a changelist, or a command can be found without
+ * walking the whole list.
+ * <p>
+ * Each action is given a sequence number when it's added.  Sequence numbers
+ * increase along the list, and stay with the action's position in the list as
+ * other actions are removed, or as the action is replaced with {@link #set(int, ActionStore.PendingAction)}.
+ */
+public class PendingActionList extends AbstractList<ActionStore.PendingAction>
+        implements RandomAccess {
+    // Keys for any client action, or any server action.
+    public static final Object CLIENT_KEY = "client";
+    public static final Object SERVER_KEY = "server";
+
+    private final List<ActionStore.PendingAction> actions = new ArrayList<>();
+    private final List<Long> sequences = new ArrayList<>();
+    private final Map<Object, NavigableSet<Long>> index = new HashMap<>();
+    private long nextSequence;
+    // Changes with every change to the list contents, so readers can tell if the list changed without
+    // holding on to the list.
+    private volatile long version;
+
+
+    @NotNull
+    public static Object actionIdKey(@NotNull String actionId) {
+        return Arrays.asList("id", actionId);
+    }
+
+    @NotNull
+    public static Object fileKey(@NotNull FilePath file) {
+        return Arrays.asList("file", file);
+    }
+
+    @NotNull
+    public static Object changelistKey(@NotNull P4ChangelistId changelistId) {
+        // Matches the P4ChangelistId equality, independent of the implementation.
+        return Arrays.asList("cl", changelistId.getChangelistId(), changelistId.getClientServerRef());
+    }
+
+    @NotNull
+    public static Object commandKey(@NotNull Enum<?> cmd) {
+        return Arrays.asList("cmd", cmd);
+    }
+
+
+    @Override
+    public ActionStore.PendingAction get(int index) {
+        return actions.get(index);
+    }
+
+    @Override
+    public int size() {
+        return actions.size();
+    }
+
+    @Override
+    public ActionStore.PendingAction set(int index, ActionStore.PendingAction action) {
+        long sequence = sequences.get(index);
+        ActionStore.PendingAction ret = actions.set(index, action);
+        if (ret != action) {
+            unindex(ret, sequence);
+            index(action, sequence);
+            version++;
+        }
+        return ret;
+    }
+
+    @Override
+    public void add(int index, ActionStore.PendingAction action) {
+        if (index == actions.size()) {
+            long sequence = nextSequence++;
+            actions.add(action);
+            sequences.add(sequence);
+            index(action, sequence);
+        } else {
+            // Inserting keeps the sequence order only by numbering everything again.  The curator
+            // only ever appends, so this doesn't happen in practice.
+            actions.add(index, action);
+            reindex();
+        }
+        modCount++;
+        version++;
+    }
+
+    @Override
+    public ActionStore.PendingAction remove(int index) {
+        ActionStore.PendingAction ret = actions.remove(index);
+        unindex(ret, sequences.remove(index));
+        modCount++;
+        version++;
+        return ret;
+    }
+
+    @Override
+    public void clear() {
+        actions.clear();
+        sequences.clear();
+        index.clear();
+        modCount++;
+        version++;
+    }
+
+
+    /**
+     * The version increases whenever an action is added, removed, or replaced.  Unlike
+     * the list contents, it can be read without holding the owner's lock.
+     *
+     * @return the current list version.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+
+    /**
+     * @param key one of the index keys.
+     * @param beforeSequence only actions with a lower sequence number are returned.
+     * @return the sequence numbers of the matching actions, newest first.
+     */
+    @NotNull
+    public NavigableSet<Long> getSequences(@NotNull Object key, long beforeSequence) {
+        NavigableSet<Long> found = index.get(key);
+        if (found == null) {
+            return Collections.emptyNavigableSet();
+        }
+        return found.headSet(beforeSequence, false).descendingSet();
+    }
+
+    /**
+     * @return a sequence number higher than any in the list.
+     */
+    public long getEndSequence() {
+        return nextSequence;
+    }
+
+    /**
+     * @return the current position in the list of the action with the sequence number, or -1 if
+     *      it's no longer in the list.
+     */
+    public int getPosition(long sequence) {
+        int ret = Collections.binarySearch(sequences, sequence);
+        return ret < 0 ? -1 : ret;
+    }
+
+
+    private void index(@NotNull ActionStore.PendingAction action, long sequence) {
+        for (Object key : getKeys(action)) {
+            index.computeIfAbsent(key, (k) -> new TreeSet<>()).add(sequence);
+        }
+    }
+
+    private void unindex(@NotNull ActionStore.PendingAction action, long sequence) {
+        for (Object key : getKeys(action)) {
+            NavigableSet<Long> found = index.get(key);
+            if (found != null) {
+                found.remove(sequence);
+                if (found.isEmpty()) {
+                    index.remove(key);
+                }
+            }
+        }
+    }
+
+    private void reindex() {
+        sequences.clear();
+        index.clear();
+        nextSequence = 0;
+        for (ActionStore.PendingAction action : actions) {
+            long sequence = nextSequence++;
+            sequences.add(sequence);
+            index(action, sequence);
+        }
+    }
+
+    @NotNull
+    private static List<Object> getKeys(@NotNull ActionStore.PendingAction action) {
+        List<Object> ret = new ArrayList<>();
+        ret.add(actionIdKey(action.getActionId()));
+        if (action.clientAction != null) {
+            ret.add(CLIENT_KEY);
+            ret.add(commandKey(action.clientAction.getCmd()));
+            for (FilePath file : action.clientAction.getAffectedFiles()) {
+                ret.add(fileKey(file));
+            }
+            P4ChangelistId changelistId = ActionStore.getAssociatedChangelistId(action.clientAction);
+            if (changelistId != null) {
+                ret.add(changelistKey(changelistId));
+            }
+        } else if (action.serverAction != null) {
+            ret.add(SERVER_KEY);
+            ret.add(commandKey(action.serverAction.getCmd()));
+        }
+        return ret;
+    }
+}
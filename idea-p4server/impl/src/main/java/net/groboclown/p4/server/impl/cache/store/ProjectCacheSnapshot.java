@@ -0,0 +1,515 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.groboclown.p4.server.impl.cache.store;
+
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A binary file that holds the {@link ProjectCacheStore} state, so that it doesn't need
+ * to go into the IDE workspace file.
+ * <p>
+ * The state is split into sections: one for each server, one for each client, one for
+ * the pending actions, and one for the IDE changelist mappings.  The file is a list of
+ * section records, and the last record for a section is the current one.  Each write only
+ * appends the sections that changed since the file was last read or written.  Once the
+ * replaced records take up more room than the current ones, the file is rewritten with
+ * just the current records.
+ * <p>
+ * This is just a cache, so a damaged or out of date file is ignored rather than reported.
+ */
+public class ProjectCacheSnapshot {
+    private static final Logger LOG = Logger.getInstance(ProjectCacheSnapshot.class);
+
+    // "P4CS"
+    private static final int MAGIC = 0x50344353;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 5;
+
+    private static final int RECORD_SECTION = 1;
+    private static final int RECORD_REMOVED = 2;
+    private static final int FLAG_COMPRESSED = 1;
+
+    private static final int COMPRESS_MIN_SIZE = 1024;
+    private static final long COMPACT_MIN_SIZE = 64 * 1024;
+
+    private static final String CHANGELISTS_SECTION = "changelists";
+    private static final String ACTIONS_SECTION = "actions";
+    private static final String SERVER_SECTION_PREFIX = "server/";
+    private static final String CLIENT_SECTION_PREFIX = "client/";
+
+    private final File file;
+    private final boolean compress;
+
+    // What the file on disk holds: the checksum of the current record for each section, and
+    // the length of the valid part of the file.  A negative length means the file needs to be
+    // written from scratch.
+    private final Map<String, Long> writtenChecksums = new HashMap<>();
+    private long fileLength = -1;
+
+
+    /**
+     * The sections read from the file.  They're only decoded when asked for.
+     */
+    public static class Contents {
+        private final Map<String, Record> sections;
+
+        private Contents(@NotNull Map<String, Record> sections) {
+            this.sections = sections;
+        }
+
+        public boolean isEmpty() {
+            return sections.isEmpty();
+        }
+
+        @Nullable
+        public IdeChangelistCacheStore.State getChangelistState() {
+            Record record = sections.get(CHANGELISTS_SECTION);
+            if (record == null) {
+                return null;
+            }
+            ProjectCacheStore.State state = record.decode(CHANGELISTS_SECTION);
+            return state == null ? null : state.changelistState;
+        }
+
+        /**
+         * @return the servers, clients, and pending actions.  The changelist state is not included.
+         */
+        @NotNull
+        public ProjectCacheStore.State getState() {
+            ProjectCacheStore.State ret = new ProjectCacheStore.State();
+            ret.serverState = new ArrayList<>();
+            ret.clientState = new ArrayList<>();
+            ret.pendingActions = new ArrayList<>();
+            for (Map.Entry<String, Record> entry : sections.entrySet()) {
+                if (CHANGELISTS_SECTION.equals(entry.getKey())) {
+                    continue;
+                }
+                ProjectCacheStore.State state = entry.getValue().decode(entry.getKey());
+                if (state != null) {
+                    addAll(ret.serverState, state.serverState);
+                    addAll(ret.clientState, state.clientState);
+                    addAll(ret.pendingActions, state.pendingActions);
+                }
+            }
+            return ret;
+        }
+    }
+
+
+    public ProjectCacheSnapshot(@NotNull File file, boolean compress) {
+        this.file = file;
+        this.compress = compress;
+    }
+
+
+    @NotNull
+    public File getFile() {
+        return file;
+    }
+
+
+    /**
+     * Read the current sections from the file.  A missing or unreadable file has no sections.
+     *
+     * @return the file contents.
+     */
+    @NotNull
+    public synchronized Contents read() {
+        writtenChecksums.clear();
+        fileLength = -1;
+        Map<String, Record> sections = new LinkedHashMap<>();
+        if (!file.isFile()) {
+            return new Contents(sections);
+        }
+
+        byte[] data;
+        try {
+            data = Files.readAllBytes(file.toPath());
+        } catch (IOException e) {
+            LOG.info("Could not read the cache file " + file, e);
+            return new Contents(sections);
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        try {
+            if (data.length < HEADER_SIZE || in.readInt() != MAGIC || in.readUnsignedByte() != FORMAT_VERSION) {
+                LOG.info("Ignoring the cache file " + file + ", which is not in the current format");
+                return new Contents(sections);
+            }
+        } catch (IOException e) {
+            // Can't happen; the length was checked.
+            return new Contents(sections);
+        }
+
+        int pos = HEADER_SIZE;
+        while (pos < data.length) {
+            try {
+                int type = in.readUnsignedByte();
+                String key = in.readUTF();
+                int flags = in.readUnsignedByte();
+                int length = in.readInt();
+                if (length < 0 || length > in.available()) {
+                    throw new IOException("Invalid record length " + length);
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                long checksum = in.readInt() & 0xffffffffL;
+                if (checksum != getChecksum(payload)) {
+                    throw new IOException("Checksum mismatch for " + key);
+                }
+                if (type == RECORD_SECTION) {
+                    sections.put(key, new Record(flags, payload, checksum));
+                    writtenChecksums.put(key, checksum);
+                } else if (type == RECORD_REMOVED) {
+                    sections.remove(key);
+                    writtenChecksums.remove(key);
+                } else {
+                    throw new IOException("Unknown record type " + type);
+                }
+                pos = data.length - in.available();
+            } catch (IOException e) {
+                // Usually a write that didn't finish.  Everything up to here is still good; the
+                // rest is dropped by the next write.
+                LOG.info("Ignoring the end of the cache file " + file + " from byte " + pos, e);
+                break;
+            }
+        }
+        fileLength = pos;
+        return new Contents(sections);
+    }
+
+
+    /**
+     * Write the state to the file, appending just the sections that changed.
+     *
+     * @param state state to store
+     * @throws IOException if the file could not be written.
+     */
+    public synchronized void write(@NotNull ProjectCacheStore.State state)
+            throws IOException {
+        Map<String, Record> sections = toSections(state);
+        if (!canAppend()) {
+            rewrite(sections);
+            return;
+        }
+
+        List<String> removed = new ArrayList<>();
+        for (String key : writtenChecksums.keySet()) {
+            if (!sections.containsKey(key)) {
+                removed.add(key);
+            }
+        }
+        Map<String, Record> changed = new LinkedHashMap<>();
+        for (Map.Entry<String, Record> entry : sections.entrySet()) {
+            Long written = writtenChecksums.get(entry.getKey());
+            if (written == null || written != entry.getValue().checksum) {
+                changed.put(entry.getKey(), entry.getValue());
+            }
+        }
+        if (removed.isEmpty() && changed.isEmpty()) {
+            return;
+        }
+
+        byte[] records = toRecords(removed, changed);
+        long liveLength = HEADER_SIZE;
+        for (Map.Entry<String, Record> entry : sections.entrySet()) {
+            liveLength += getRecordSize(entry.getKey(), entry.getValue().payload.length);
+        }
+        long newLength = fileLength + records.length;
+        if (newLength > COMPACT_MIN_SIZE && newLength - liveLength > liveLength) {
+            rewrite(sections);
+            return;
+        }
+        append(records, removed, changed);
+    }
+
+
+    /**
+     * Write just the IDE changelist mappings, for when nothing else in the state could have
+     * changed since the file was read.  Only possible if the file is still as it was last
+     * read or written.
+     *
+     * @param changelistState IDE changelist mappings
+     * @return false if the file could not be appended to, and the whole state needs to be written.
+     * @throws IOException if the file could not be written.
+     */
+    public synchronized boolean writeChangelistState(@Nullable IdeChangelistCacheStore.State changelistState)
+            throws IOException {
+        if (!canAppend()) {
+            return false;
+        }
+        ProjectCacheStore.State section = new ProjectCacheStore.State();
+        section.changelistState = changelistState;
+        Record record = Record.encode(section, compress);
+        Long written = writtenChecksums.get(CHANGELISTS_SECTION);
+        if (written == null || written != record.checksum) {
+            List<String> removed = Collections.emptyList();
+            Map<String, Record> changed = Collections.singletonMap(CHANGELISTS_SECTION, record);
+            append(toRecords(removed, changed), removed, changed);
+        }
+        return true;
+    }
+
+
+    private boolean canAppend() {
+        return fileLength >= HEADER_SIZE && file.isFile() && file.length() >= fileLength;
+    }
+
+
+    private void append(@NotNull byte[] records, @NotNull List<String> removed, @NotNull Map<String, Record> changed)
+            throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            // Drop anything after the last good record.
+            raf.setLength(fileLength);
+            raf.seek(fileLength);
+            raf.write(records);
+        } catch (IOException e) {
+            // The file's state is unknown, so start over next time.
+            fileLength = -1;
+            throw e;
+        }
+        fileLength += records.length;
+        for (String key : removed) {
+            writtenChecksums.remove(key);
+        }
+        for (Map.Entry<String, Record> entry : changed.entrySet()) {
+            writtenChecksums.put(entry.getKey(), entry.getValue().checksum);
+        }
+    }
+
+
+    @NotNull
+    private static byte[] toRecords(@NotNull List<String> removed, @NotNull Map<String, Record> changed)
+            throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        for (String key : removed) {
+            writeRecord(out, RECORD_REMOVED, key, new Record(0, new byte[0], getChecksum(new byte[0])));
+        }
+        for (Map.Entry<String, Record> entry : changed.entrySet()) {
+            writeRecord(out, RECORD_SECTION, entry.getKey(), entry.getValue());
+        }
+        out.flush();
+        return buffer.toByteArray();
+    }
+
+
+    private void rewrite(@NotNull Map<String, Record> sections)
+            throws IOException {
+        writtenChecksums.clear();
+        fileLength = -1;
+
+        File parent = file.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Could not create directory " + parent);
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        long length;
+        try (OutputStream fileOut = new FileOutputStream(tmp)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut));
+            out.writeInt(MAGIC);
+            out.writeByte(FORMAT_VERSION);
+            for (Map.Entry<String, Record> entry : sections.entrySet()) {
+                writeRecord(out, RECORD_SECTION, entry.getKey(), entry.getValue());
+            }
+            out.flush();
+            length = out.size();
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        fileLength = length;
+        for (Map.Entry<String, Record> entry : sections.entrySet()) {
+            writtenChecksums.put(entry.getKey(), entry.getValue().checksum);
+        }
+    }
+
+
+    @NotNull
+    private Map<String, Record> toSections(@NotNull ProjectCacheStore.State state) {
+        Map<String, Record> ret = new LinkedHashMap<>();
+        ProjectCacheStore.State section = new ProjectCacheStore.State();
+        section.changelistState = state.changelistState;
+        ret.put(CHANGELISTS_SECTION, Record.encode(section, compress));
+
+        section = new ProjectCacheStore.State();
+        section.pendingActions = state.pendingActions == null
+                ? Collections.emptyList()
+                : state.pendingActions;
+        ret.put(ACTIONS_SECTION, Record.encode(section, compress));
+
+        if (state.serverState != null) {
+            for (ServerQueryCacheStore.State serverState : state.serverState) {
+                section = new ProjectCacheStore.State();
+                section.serverState = Collections.singletonList(serverState);
+                putUnique(ret, SERVER_SECTION_PREFIX + serverState.serverName, Record.encode(section, compress));
+            }
+        }
+        if (state.clientState != null) {
+            for (ClientQueryCacheStore.State clientState : state.clientState) {
+                section = new ProjectCacheStore.State();
+                section.clientState = Collections.singletonList(clientState);
+                String key = clientState.source == null
+                        ? CLIENT_SECTION_PREFIX
+                        : CLIENT_SECTION_PREFIX + clientState.source.serverPort + '/' + clientState.source.clientName;
+                putUnique(ret, key, Record.encode(section, compress));
+            }
+        }
+        return ret;
+    }
+
+
+    private static void putUnique(@NotNull Map<String, Record> sections, @NotNull String key, @NotNull Record record) {
+        String uniqueKey = key;
+        for (int i = 1; sections.containsKey(uniqueKey); i++) {
+            uniqueKey = key + '#' + i;
+        }
+        sections.put(uniqueKey, record);
+    }
+
+    private static void writeRecord(@NotNull DataOutputStream out, int type, @NotNull String key,
+            @NotNull Record record)
+            throws IOException {
+        out.writeByte(type);
+        out.writeUTF(key);
+        out.writeByte(record.flags);
+        out.writeInt(record.payload.length);
+        out.write(record.payload);
+        out.writeInt((int) record.checksum);
+    }
+
+    private static long getRecordSize(@NotNull String key, int payloadLength) {
+        // type, key, flags, payload length, payload, checksum.  Close enough for deciding when to
+        // rewrite the file; the key's modified UTF-8 length only differs for unusual characters.
+        return 1 + 2 + key.getBytes(StandardCharsets.UTF_8).length + 1 + 4 + payloadLength + 4;
+    }
+
+    private static long getChecksum(@NotNull byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        return crc.getValue();
+    }
+
+    private static <T> void addAll(@NotNull List<T> target, @Nullable List<T> values) {
+        if (values != null) {
+            target.addAll(values);
+        }
+    }
+
+
+    private static class Record {
+        private final int flags;
+        private final byte[] payload;
+        private final long checksum;
+
+        private Record(int flags, @NotNull byte[] payload, long checksum) {
+            this.flags = flags;
+            this.payload = payload;
+            this.checksum = checksum;
+        }
+
+        @NotNull
+        static Record encode(@NotNull ProjectCacheStore.State state, boolean compress) {
+            byte[] data = StateCodec.encode(state);
+            if (compress && data.length >= COMPRESS_MIN_SIZE) {
+                byte[] compressed = deflate(data);
+                if (compressed.length < data.length) {
+                    return new Record(FLAG_COMPRESSED, compressed, getChecksum(compressed));
+                }
+            }
+            return new Record(0, data, getChecksum(data));
+        }
+
+        @Nullable
+        ProjectCacheStore.State decode(@NotNull String key) {
+            try {
+                byte[] data = (flags & FLAG_COMPRESSED) != 0 ? inflate(payload) : payload;
+                return StateCodec.decode(data, ProjectCacheStore.State.class);
+            } catch (IOException | DataFormatException e) {
+                LOG.info("Ignoring unreadable cache section " + key, e);
+                return null;
+            }
+        }
+
+        @NotNull
+        private static byte[] deflate(@NotNull byte[] data) {
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try {
+                deflater.setInput(data);
+                deflater.finish();
+                ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2);
+                byte[] buffer = new byte[8192];
+                while (!deflater.finished()) {
+                    int count = deflater.deflate(buffer);
+                    out.write(buffer, 0, count);
+                }
+                return out.toByteArray();
+            } finally {
+                deflater.end();
+            }
+        }
+
+        @NotNull
+        private static byte[] inflate(@NotNull byte[] data)
+                throws DataFormatException {
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(data);
+                ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 2);
+                byte[] buffer = new byte[8192];
+                while (!inflater.finished()) {
+                    int count = inflater.inflate(buffer);
+                    if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new DataFormatException("Truncated compressed data");
+                    }
+                    out.write(buffer, 0, count);
+                }
+                return out.toByteArray();
+            } finally {
+                inflater.end();
+            }
+        }
+    }
+}
@@ -34,10 +34,12 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 
 /**
@@ -50,11 +52,18 @@ public class ProjectCacheStore {
     private final ReadWriteLock lock = new ReentrantReadWriteLock();
     private final Map<P4ServerName, ServerQueryCacheStore> serverQueryCache = new HashMap<>();
     private final Map<ClientServerRef, ClientQueryCacheStore> clientQueryCache = new HashMap<>();
-    private final List<ActionStore.PendingAction> pendingActions = new ArrayList<>();
+    // Indexed, so that curating a newly added action doesn't need to look at every pending action.
+    private final PendingActionList pendingActions = new PendingActionList();
     private final IdeChangelistCacheStore changelistCacheStore = new IdeChangelistCacheStore();
 
+    // Incremented whenever the cached content may have changed.
+    private final AtomicLong version = new AtomicLong();
+
     private LockTimeoutProvider lockTimeout = new LockTimeoutProviderImpl();
 
+    // The stored servers, clients, and actions, which aren't loaded until they're first used.
+    private volatile Supplier<State> lazyState;
+
 
     @SuppressWarnings("WeakerAccess")
     public static class State {
@@ -70,16 +79,19 @@ public class ProjectCacheStore {
 
     @TestOnly
     public void addCache(ServerQueryCacheStore store) {
+        version.incrementAndGet();
         serverQueryCache.put(store.getServerName(), store);
     }
 
     @TestOnly
     public void addCache(ClientQueryCacheStore store) {
+        version.incrementAndGet();
         clientQueryCache.put(store.getClientServerRef(), store);
     }
 
     @TestOnly
     public void addPendingAction(ActionStore.PendingAction action) {
+        version.incrementAndGet();
         pendingActions.add(action);
     }
 
@@ -87,6 +99,7 @@ public class ProjectCacheStore {
     @Nullable
     public State getState()
             throws InterruptedException {
+        loadLazyState();
         final State ret = new State();
 
         lockTimeout.withReadLock(lock, () -> {
@@ -114,46 +127,64 @@ public class ProjectCacheStore {
     public void setState(@Nullable State state)
             throws InterruptedException {
         lockTimeout.withWriteLock(lock, () -> {
+            lazyState = null;
+            version.incrementAndGet();
             serverQueryCache.clear();
             clientQueryCache.clear();
             pendingActions.clear();
             if (state == null) {
                 changelistCacheStore.setState(null);
             } else {
-                for (ServerQueryCacheStore.State serverState : state.serverState) {
-                    ServerQueryCacheStore store = new ServerQueryCacheStore(serverState);
-                    serverQueryCache.put(store.getServerName(), store);
-                }
-                for (ClientQueryCacheStore.State clientState : state.clientState) {
-                    ClientQueryCacheStore store = new ClientQueryCacheStore(clientState);
-                    clientQueryCache.put(store.getClientServerRef(), store);
-                }
-                for (ActionStore.State actionState : state.pendingActions) {
-                    // There was a weird bug where action state values were null.  Doesn't seem to be happening
-                    // any more, but keep the protections in place.
-                    if (actionState.clientActionCmd != null || actionState.serverActionCmd != null) {
-                        ActionStore.PendingAction action;
-                        try {
-                            action = ActionStore.read(actionState);
-                            pendingActions.add(action);
-                        } catch (PrimitiveMap.UnmarshalException e) {
-                            LOG.warn("Problem reading state for " +
-                                    (actionState.clientActionCmd == null
-                                            ? actionState.serverActionCmd : actionState.clientActionCmd), e);
-                        }
-                    } else {
-                        LOG.warn("Invalid action state " + actionState.actionId + ": " + actionState.data);
-                    }
-                }
+                applyState(state);
                 changelistCacheStore.setState(state.changelistState);
             }
         });
     }
 
+    /**
+     * Set the state, but only load the servers, clients, and pending actions when they're first used.
+     * The IDE changelist mappings are handed out directly by {@link #getChangelistCacheStore()}, so
+     * they are set right away.
+     *
+     * @param changelistState IDE changelist mappings
+     * @param loader supplies the rest of the state; its changelist state is ignored.
+     * @throws InterruptedException thrown if the lock is not acquired in time.
+     */
+    public void setLazyState(@Nullable IdeChangelistCacheStore.State changelistState, @NotNull Supplier<State> loader)
+            throws InterruptedException {
+        lockTimeout.withWriteLock(lock, () -> {
+            version.incrementAndGet();
+            serverQueryCache.clear();
+            clientQueryCache.clear();
+            pendingActions.clear();
+            changelistCacheStore.setState(changelistState);
+            lazyState = loader;
+        });
+    }
+
+    /**
+     * @return true if the state set by {@link #setLazyState(IdeChangelistCacheStore.State, Supplier)}
+     *      hasn't been loaded yet.  Nothing besides the changelist mappings can have changed since then.
+     */
+    public boolean hasLazyState() {
+        return lazyState != null;
+    }
+
     public IdeChangelistCacheStore getChangelistCacheStore() {
         return changelistCacheStore;
     }
 
+    /**
+     * @return just the IDE changelist mappings part of the state.  Unlike {@link #getState()}, this
+     *      does not load a lazily set state.
+     * @throws InterruptedException thrown if the lock is not acquired in time.
+     */
+    @NotNull
+    public IdeChangelistCacheStore.State getChangelistState()
+            throws InterruptedException {
+        return changelistCacheStore.getState();
+    }
+
     public void cleanClientCache(Collection<ClientConfig> validConfigs) throws InterruptedException {
         final Set<P4ServerName> validServers = new HashSet<>();
         final Set<ClientServerRef> validClients = new HashSet<>();
@@ -168,7 +199,9 @@ public class ProjectCacheStore {
             LOG.debug("Cleaning all configurations except " + validSourceIds);
         }
 
+        loadLazyState();
         lockTimeout.withWriteLock(lock, () -> {
+            version.incrementAndGet();
             // Copy the key sets so we don't get weird states during removal.
             new HashSet<>(clientQueryCache.keySet()).forEach((clientServerRef) -> {
                 if (! validClients.contains(clientServerRef)) {
@@ -228,6 +261,7 @@ public class ProjectCacheStore {
     @Nullable
     public <T> T read(P4ServerName config, T defaultValue, Function<ServerQueryCacheStore, T> fun)
             throws InterruptedException {
+        loadLazyState();
         return lockTimeout.withReadLock(lock, () -> {
             ServerQueryCacheStore store = serverQueryCache.get(config);
             if (store != null) {
@@ -241,6 +275,7 @@ public class ProjectCacheStore {
     @Nullable
     public <T> T read(ClientConfig config, T defaultValue, Function<ClientQueryCacheStore, T> fun)
             throws InterruptedException {
+        loadLazyState();
         return lockTimeout.withReadLock(lock, () -> {
             ClientQueryCacheStore store = clientQueryCache.get(config.getClientServerRef());
             if (store != null) {
@@ -253,6 +288,7 @@ public class ProjectCacheStore {
 
     public void read(ClientConfig config, Consumer<ClientQueryCacheStore> fun)
             throws InterruptedException {
+        loadLazyState();
         lockTimeout.withReadLock(lock, () -> {
             ClientQueryCacheStore store = clientQueryCache.get(config.getClientServerRef());
             if (store != null) {
@@ -263,7 +299,9 @@ public class ProjectCacheStore {
 
     public void write(ClientConfig config, Consumer<ClientQueryCacheStore> fun)
             throws InterruptedException {
+        loadLazyState();
         lockTimeout.withWriteLock(lock, () -> {
+            version.incrementAndGet();
             ClientQueryCacheStore store = clientQueryCache.get(config.getClientServerRef());
             if (store == null) {
                 store = new ClientQueryCacheStore(config.getClientServerRef());
@@ -275,7 +313,9 @@ public class ProjectCacheStore {
 
     public void write(P4ServerName config, Consumer<ServerQueryCacheStore> fun)
             throws InterruptedException {
+        loadLazyState();
         lockTimeout.withWriteLock(lock, () -> {
+            version.incrementAndGet();
             ServerQueryCacheStore store = serverQueryCache.get(config);
             if (store == null) {
                 store = new ServerQueryCacheStore(config);
@@ -288,12 +328,90 @@ public class ProjectCacheStore {
     @NotNull
     public List<ActionStore.PendingAction> copyActions()
             throws InterruptedException {
+        loadLazyState();
         return lockTimeout.withReadLock(lock, () -> new ArrayList<>(pendingActions));
     }
 
     public void writeActions(Consumer<List<ActionStore.PendingAction>> fun)
             throws InterruptedException {
-        lockTimeout.withWriteLock(lock, () -> fun.accept(pendingActions));
+        loadLazyState();
+        lockTimeout.withWriteLock(lock, () -> {
+            version.incrementAndGet();
+            fun.accept(pendingActions);
+        });
+    }
+
+    /**
+     * The version changes whenever a write is made to the cache, so callers that keep
+     * information derived from the cache can cheaply tell if it needs to be recomputed.
+     * Callers should read the version before reading the cache contents.
+     *
+     * @return the current cache version.
+     */
+    public long getVersion() {
+        // Both counters only increase, so the sum changes whenever either one does.
+        return version.get() + changelistCacheStore.getVersion();
+    }
+
+    /**
+     * The pending action version changes whenever a pending action is added, removed, or
+     * replaced.  As with {@link #getVersion()}, read it before reading the pending actions.
+     *
+     * @return the current pending action version.
+     */
+    public long getPendingActionVersion() {
+        return pendingActions.getVersion();
+    }
+
+    // Must be called before taking the read lock, because the read lock can't be upgraded.
+    private void loadLazyState()
+            throws InterruptedException {
+        if (lazyState == null) {
+            return;
+        }
+        lockTimeout.withWriteLock(lock, () -> {
+            Supplier<State> loader = lazyState;
+            if (loader != null) {
+                lazyState = null;
+                version.incrementAndGet();
+                applyState(loader.get());
+            }
+        });
+    }
+
+    // Called with the write lock held.  Does not touch the changelist state.
+    private void applyState(@NotNull State state) {
+        if (state.serverState != null) {
+            for (ServerQueryCacheStore.State serverState : state.serverState) {
+                ServerQueryCacheStore store = new ServerQueryCacheStore(serverState);
+                serverQueryCache.put(store.getServerName(), store);
+            }
+        }
+        if (state.clientState != null) {
+            for (ClientQueryCacheStore.State clientState : state.clientState) {
+                ClientQueryCacheStore store = new ClientQueryCacheStore(clientState);
+                clientQueryCache.put(store.getClientServerRef(), store);
+            }
+        }
+        if (state.pendingActions != null) {
+            for (ActionStore.State actionState : state.pendingActions) {
+                // There was a weird bug where action state values were null.  Doesn't seem to be happening
+                // any more, but keep the protections in place.
+                if (actionState.clientActionCmd != null || actionState.serverActionCmd != null) {
+                    ActionStore.PendingAction action;
+                    try {
+                        action = ActionStore.read(actionState);
+                        pendingActions.add(action);
+                    } catch (PrimitiveMap.UnmarshalException e) {
+                        LOG.warn("Problem reading state for " +
+                                (actionState.clientActionCmd == null
+                                        ? actionState.serverActionCmd : actionState.clientActionCmd), e);
+                    }
+                } else {
+                    LOG.warn("Invalid action state " + actionState.actionId + ": " + actionState.data);
+                }
+            }
+        }
     }
 
     // See #193
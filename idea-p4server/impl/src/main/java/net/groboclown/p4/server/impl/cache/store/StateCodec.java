@@ -0,0 +1,403 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.groboclown.p4.server.impl.cache.store;
+
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compact binary encoding for the store State classes.
+ * <p>
+ * Like the XML serializer, this works with the public fields of the State classes,
+ * so they need no extra code.  Every value is tagged with its type, and objects
+ * record their field names, so a State class can gain or lose fields without making
+ * older data unreadable; unknown fields are skipped.  Strings, which includes the
+ * field names, are only written out the first time they're used; after that, they're
+ * written as a reference to the first use.  Numbers are written as variable length
+ * integers.
+ */
+final class StateCodec {
+    private static final Logger LOG = Logger.getInstance(StateCodec.class);
+
+    private static final int TAG_NULL = 0;
+    private static final int TAG_FALSE = 1;
+    private static final int TAG_TRUE = 2;
+    private static final int TAG_INT = 3;
+    private static final int TAG_LONG = 4;
+    private static final int TAG_DOUBLE = 5;
+    private static final int TAG_STRING = 6;
+    private static final int TAG_STRING_REF = 7;
+    private static final int TAG_DATE = 8;
+    private static final int TAG_LIST = 9;
+    private static final int TAG_MAP = 10;
+    private static final int TAG_OBJECT = 11;
+
+    private static final Map<Class<?>, List<Field>> FIELDS = new ConcurrentHashMap<>();
+
+    private StateCodec() {
+        // utility class
+    }
+
+
+    @NotNull
+    static byte[] encode(@Nullable Object value) {
+        Writer writer = new Writer();
+        writer.writeValue(value);
+        return writer.out.toByteArray();
+    }
+
+
+    @Nullable
+    static <T> T decode(@NotNull byte[] data, @NotNull Class<T> type)
+            throws IOException {
+        Object ret = new Reader(data).readValue(type);
+        if (ret != null && !type.isInstance(ret)) {
+            throw new IOException("Expected " + type.getName() + ", found " + ret.getClass().getName());
+        }
+        return type.cast(ret);
+    }
+
+
+    private static class Writer {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private final Map<String, Integer> strings = new HashMap<>();
+
+        private void writeValue(@Nullable Object value) {
+            if (value == null) {
+                out.write(TAG_NULL);
+            } else if (value instanceof Boolean) {
+                out.write((Boolean) value ? TAG_TRUE : TAG_FALSE);
+            } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                out.write(TAG_INT);
+                writeVarLong(zigZag(((Number) value).longValue()));
+            } else if (value instanceof Long) {
+                out.write(TAG_LONG);
+                writeVarLong(zigZag((Long) value));
+            } else if (value instanceof Double || value instanceof Float) {
+                out.write(TAG_DOUBLE);
+                writeVarLong(Double.doubleToLongBits(((Number) value).doubleValue()));
+            } else if (value instanceof String) {
+                writeString((String) value);
+            } else if (value instanceof Enum) {
+                writeString(((Enum<?>) value).name());
+            } else if (value instanceof Date) {
+                out.write(TAG_DATE);
+                writeVarLong(zigZag(((Date) value).getTime()));
+            } else if (value instanceof Collection) {
+                Collection<?> values = (Collection<?>) value;
+                out.write(TAG_LIST);
+                writeVarLong(values.size());
+                for (Object v : values) {
+                    writeValue(v);
+                }
+            } else if (value instanceof Map) {
+                Map<?, ?> values = (Map<?, ?>) value;
+                out.write(TAG_MAP);
+                writeVarLong(values.size());
+                for (Map.Entry<?, ?> entry : values.entrySet()) {
+                    writeValue(entry.getKey());
+                    writeValue(entry.getValue());
+                }
+            } else {
+                writeObject(value);
+            }
+        }
+
+        private void writeObject(@NotNull Object value) {
+            // Null fields are left out; they're the default when read.
+            List<Field> fields = getFields(value.getClass());
+            Object[] values = new Object[fields.size()];
+            int count = 0;
+            for (int i = 0; i < values.length; i++) {
+                try {
+                    values[i] = fields.get(i).get(value);
+                } catch (IllegalAccessException e) {
+                    throw new IllegalStateException(e);
+                }
+                if (values[i] != null) {
+                    count++;
+                }
+            }
+            out.write(TAG_OBJECT);
+            writeVarLong(count);
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] != null) {
+                    writeString(fields.get(i).getName());
+                    writeValue(values[i]);
+                }
+            }
+        }
+
+        private void writeString(@NotNull String value) {
+            Integer ref = strings.get(value);
+            if (ref != null) {
+                out.write(TAG_STRING_REF);
+                writeVarLong(ref);
+            } else {
+                strings.put(value, strings.size());
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                out.write(TAG_STRING);
+                writeVarLong(bytes.length);
+                out.write(bytes, 0, bytes.length);
+            }
+        }
+
+        private void writeVarLong(long value) {
+            while ((value & ~0x7fL) != 0) {
+                out.write((int) ((value & 0x7f) | 0x80));
+                value >>>= 7;
+            }
+            out.write((int) value);
+        }
+    }
+
+
+    private static class Reader {
+        private final byte[] data;
+        private final List<String> strings = new ArrayList<>();
+        private int pos;
+
+        private Reader(@NotNull byte[] data) {
+            this.data = data;
+        }
+
+        // The type is the expected type of the value; values that don't match it are
+        // returned as they were read, and the caller decides whether it can use them.
+        @Nullable
+        private Object readValue(@NotNull Type type)
+                throws IOException {
+            Class<?> raw = getRawType(type);
+            int tag = readByte();
+            switch (tag) {
+                case TAG_NULL:
+                    return null;
+                case TAG_FALSE:
+                    return Boolean.FALSE;
+                case TAG_TRUE:
+                    return Boolean.TRUE;
+                case TAG_INT:
+                case TAG_LONG: {
+                    long value = unZigZag(readVarLong());
+                    if (raw == int.class || raw == Integer.class) {
+                        return (int) value;
+                    }
+                    if (raw == long.class || raw == Long.class) {
+                        return value;
+                    }
+                    return tag == TAG_INT ? (Object) (int) value : (Object) value;
+                }
+                case TAG_DOUBLE:
+                    return Double.longBitsToDouble(readVarLong());
+                case TAG_STRING:
+                case TAG_STRING_REF: {
+                    String value = readString(tag);
+                    if (raw.isEnum()) {
+                        return toEnum(raw, value);
+                    }
+                    return value;
+                }
+                case TAG_DATE:
+                    return new Date(unZigZag(readVarLong()));
+                case TAG_LIST: {
+                    Type elementType = getTypeArgument(type, 0);
+                    int size = readSize();
+                    List<Object> ret = new ArrayList<>(size);
+                    for (int i = 0; i < size; i++) {
+                        ret.add(readValue(elementType));
+                    }
+                    return ret;
+                }
+                case TAG_MAP: {
+                    Type keyType = getTypeArgument(type, 0);
+                    Type valueType = getTypeArgument(type, 1);
+                    int size = readSize();
+                    Map<Object, Object> ret = new HashMap<>();
+                    for (int i = 0; i < size; i++) {
+                        Object key = readValue(keyType);
+                        ret.put(key, readValue(valueType));
+                    }
+                    return ret;
+                }
+                case TAG_OBJECT:
+                    return readObject(raw);
+                default:
+                    throw new IOException("Unknown value tag " + tag + " at " + (pos - 1));
+            }
+        }
+
+        @Nullable
+        private Object readObject(@NotNull Class<?> type)
+                throws IOException {
+            Object ret = null;
+            Map<String, Field> fields = null;
+            if (type != Object.class && !type.isInterface() && !Modifier.isAbstract(type.getModifiers())) {
+                try {
+                    ret = type.getConstructor().newInstance();
+                    fields = new HashMap<>();
+                    for (Field field : getFields(type)) {
+                        fields.put(field.getName(), field);
+                    }
+                } catch (ReflectiveOperationException e) {
+                    LOG.warn("Cannot create " + type.getName(), e);
+                }
+            }
+            int count = readSize();
+            for (int i = 0; i < count; i++) {
+                String name = readString(readByte());
+                Field field = fields == null ? null : fields.get(name);
+                Object value = readValue(field == null ? Object.class : field.getGenericType());
+                if (field != null && value != null) {
+                    try {
+                        field.set(ret, value);
+                    } catch (IllegalAccessException | IllegalArgumentException e) {
+                        // The field type changed since the value was written.
+                        LOG.info("Ignoring stored value for " + type.getName() + "." + name, e);
+                    }
+                }
+            }
+            return ret;
+        }
+
+        @NotNull
+        private String readString(int tag)
+                throws IOException {
+            if (tag == TAG_STRING_REF) {
+                int ref = readSize();
+                if (ref >= strings.size()) {
+                    throw new IOException("Invalid string reference " + ref);
+                }
+                return strings.get(ref);
+            }
+            if (tag != TAG_STRING) {
+                throw new IOException("Expected a string, found tag " + tag);
+            }
+            int length = readSize();
+            if (length > data.length - pos) {
+                throw new EOFException();
+            }
+            String ret = new String(data, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            strings.add(ret);
+            return ret;
+        }
+
+        private int readSize()
+                throws IOException {
+            long ret = readVarLong();
+            if (ret < 0 || ret > Integer.MAX_VALUE) {
+                throw new IOException("Invalid size " + ret);
+            }
+            return (int) ret;
+        }
+
+        private long readVarLong()
+                throws IOException {
+            long ret = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                ret |= (long) (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return ret;
+                }
+            }
+            throw new IOException("Invalid variable length number");
+        }
+
+        private int readByte()
+                throws IOException {
+            if (pos >= data.length) {
+                throw new EOFException();
+            }
+            return data[pos++] & 0xff;
+        }
+    }
+
+
+    @NotNull
+    private static List<Field> getFields(@NotNull Class<?> type) {
+        return FIELDS.computeIfAbsent(type, (t) -> {
+            List<Field> ret = new ArrayList<>();
+            for (Field field : t.getFields()) {
+                int mod = field.getModifiers();
+                if (!Modifier.isStatic(mod) && !Modifier.isFinal(mod) && !Modifier.isTransient(mod)) {
+                    ret.add(field);
+                }
+            }
+            // Keep the output stable.
+            ret.sort(Comparator.comparing(Field::getName));
+            return Collections.unmodifiableList(ret);
+        });
+    }
+
+    @NotNull
+    private static Class<?> getRawType(@NotNull Type type) {
+        if (type instanceof Class) {
+            return (Class<?>) type;
+        }
+        if (type instanceof ParameterizedType) {
+            return getRawType(((ParameterizedType) type).getRawType());
+        }
+        return Object.class;
+    }
+
+    @NotNull
+    private static Type getTypeArgument(@NotNull Type type, int index) {
+        if (type instanceof ParameterizedType) {
+            Type[] args = ((ParameterizedType) type).getActualTypeArguments();
+            if (index < args.length) {
+                return args[index];
+            }
+        }
+        return Object.class;
+    }
+
+    @Nullable
+    private static Object toEnum(@NotNull Class<?> type, @NotNull String name) {
+        for (Object value : type.getEnumConstants()) {
+            if (((Enum<?>) value).name().equals(name)) {
+                return value;
+            }
+        }
+        LOG.info("Ignoring unknown " + type.getName() + " value " + name);
+        return null;
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
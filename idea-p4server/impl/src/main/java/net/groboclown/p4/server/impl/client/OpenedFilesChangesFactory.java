@@ -52,6 +52,15 @@ public class OpenedFilesChangesFactory {
 
     }
 
+    public static ListOpenedFilesChangesResult createListOpenedFilesResult(
+            @NotNull ClientConfig config,
+            @NotNull List<IExtendedFileSpec> openedFiles,
+            @NotNull List<FilePath> queriedFiles) {
+        return new ListOpenedFilesChangesResult(config,
+                createOpenedFiles(config.getClientServerRef(), openedFiles, Collections.emptyList()),
+                Collections.emptyList(), queriedFiles);
+    }
+
     private static Collection<P4LocalFile> createOpenedFiles(
             @NotNull ClientServerRef ref,
             @NotNull List<IExtendedFileSpec> pendingChangelistFiles,
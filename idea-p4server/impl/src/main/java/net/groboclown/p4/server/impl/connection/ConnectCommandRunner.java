@@ -31,6 +31,7 @@ import com.perforce.p4java.core.ILabelSummary;
 import com.perforce.p4java.core.IUserSummary;
 import com.perforce.p4java.core.file.FileAction;
 import com.perforce.p4java.core.file.FileSpecBuilder;
+import com.perforce.p4java.core.file.FileSpecOpStatus;
 import com.perforce.p4java.core.file.IExtendedFileSpec;
 import com.perforce.p4java.core.file.IFileAnnotation;
 import com.perforce.p4java.core.file.IFileRevisionData;
@@ -113,14 +114,18 @@ import net.groboclown.p4.server.api.values.P4LocalFile;
 import net.groboclown.p4.server.api.values.P4RemoteFile;
 import net.groboclown.p4.server.api.values.P4WorkspaceSummary;
 import net.groboclown.p4.server.impl.AbstractServerCommandRunner;
+import net.groboclown.p4.server.impl.cache.RevisionContentCache;
 import net.groboclown.p4.server.impl.client.OpenedFilesChangesFactory;
 import net.groboclown.p4.server.impl.commands.ActionAnswerImpl;
 import net.groboclown.p4.server.impl.commands.AnswerUtil;
+import net.groboclown.p4.server.impl.commands.DoneQueryAnswer;
 import net.groboclown.p4.server.impl.commands.QueryAnswerImpl;
+import net.groboclown.p4.server.impl.connection.impl.AnnotationCache;
 import net.groboclown.p4.server.impl.connection.impl.FileAnnotationParser;
 import net.groboclown.p4.server.impl.connection.impl.MessageStatusUtil;
 import net.groboclown.p4.server.impl.connection.impl.OpenFileStatus;
 import net.groboclown.p4.server.impl.connection.impl.P4CommandUtil;
+import net.groboclown.p4.server.impl.connection.impl.SpillingContentBuffer;
 import net.groboclown.p4.server.impl.connection.operations.MoveFile;
 import net.groboclown.p4.server.impl.connection.operations.SubmitChangelist;
 import net.groboclown.p4.server.impl.repository.AddedExtendedFileSpec;
@@ -144,11 +149,13 @@ import net.groboclown.p4.simpleswarm.SwarmConfig;
 import net.groboclown.p4.simpleswarm.exceptions.InvalidSwarmServerException;
 import net.groboclown.p4.simpleswarm.exceptions.UnauthorizedAccessException;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import javax.annotation.Nonnull;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -174,6 +181,9 @@ public class ConnectCommandRunner
     private final ConnectionManager connectionManager;
     private final P4CommandUtil cmd = new P4CommandUtil();
     private final MoveFile moveFile;
+    @Nullable
+    private final RevisionContentCache contentCache;
+    private final AnnotationCache annotationCache = new AnnotationCache();
 
     // "project" is only used for sending messages to the client.  If that's removed, then this
     // dependency can be removed.
@@ -183,7 +193,20 @@ public class ConnectCommandRunner
     public ConnectCommandRunner(
             @NotNull Project project,
             @NotNull ConnectionManager connectionManager) {
+        this(project, connectionManager, null);
+    }
+
+
+    /**
+     * @param contentCache stores the downloaded contents of fixed depot revisions; if null, the
+     *      contents are always loaded from the server.
+     */
+    public ConnectCommandRunner(
+            @NotNull Project project,
+            @NotNull ConnectionManager connectionManager,
+            @Nullable RevisionContentCache contentCache) {
         this.connectionManager = connectionManager;
+        this.contentCache = contentCache;
         this.project = project;
         this.moveFile = new MoveFile(project, cmd);
         SubmitChangelist.INSTANCE.withCmd(cmd);
@@ -260,6 +283,18 @@ public class ConnectCommandRunner
                 new ActionAnswerImpl<>(connectionManager.withConnection(config,
                     SubmitChangelist.INSTANCE.getExecDir(action),
                     (client) -> SubmitChangelist.INSTANCE.submitChangelist(client, config, action))));
+
+        registerGroup(P4CommandRunner.ClientActionCmd.ADD_EDIT_FILE,
+            (ClientActionGroupRunner<AddEditResult>) (config, actions) ->
+                new ActionAnswerImpl<>(connectionManager.withConnection(config,
+                    ((AddEditAction) actions.get(0)).getFile().getIOFile().getParentFile(),
+                    (client) -> addEditFiles(client, config, actions))));
+
+        registerGroup(P4CommandRunner.ClientActionCmd.REVERT_FILE,
+            (ClientActionGroupRunner<RevertFileResult>) (config, actions) ->
+                new ActionAnswerImpl<>(connectionManager.withConnection(config,
+                    ((RevertFileAction) actions.get(0)).getFile().getIOFile().getParentFile(),
+                    (client) -> revertFiles(client, config, actions))));
     }
 
     @Override
@@ -286,21 +321,42 @@ public class ConnectCommandRunner
             ClientServerRef ref = config.getClientServerRef();
             IExtendedFileSpec headSpec = cmd.getFileDetails(client, specs);
             P4FileRevision headRevision = P4FileRevisionImpl.getHead(ref, headSpec);
-            String content = loadContentAsString(config, client, headSpec);
-            List<IFileAnnotation> annotations = cmd.getAnnotations(client, specs);
-            List<IFileSpec> requiredHistory = FileAnnotationParser.getRequiredHistorySpecs(annotations);
-            List<Pair<IFileSpec, IFileRevisionData>> history = cmd.getExactHistory((IOptionsServer) client.getServer(), requiredHistory);
+
+            // The contents and annotations of a depot revision never change, so a file that was
+            // annotated before at the same revision only needs the file details from the server.
+            final String serverPort = getServerPort(config);
+            final String depotPath = headSpec.getDepotPathString();
+            AnnotationCache.AnnotatedRevision annotated = depotPath == null
+                    ? null
+                    : annotationCache.getAnnotated(serverPort, depotPath, headSpec.getHeadRev());
+            if (annotated == null) {
+                String content = loadContentAsString(config, client, headSpec);
+                List<IFileAnnotation> annotations = cmd.getAnnotations(client, specs);
+                annotated = annotationCache.putAnnotated(serverPort, depotPath, headSpec.getHeadRev(),
+                        content, annotations);
+            }
+
+            // Only load the history for the revisions that haven't been seen before.
+            List<String> missing = new ArrayList<>();
+            List<Pair<IFileSpec, IFileRevisionData>> history = annotationCache.getHistory(serverPort,
+                    FileAnnotationParser.getRequiredHistoryRevisions(annotated.getAnnotations()), missing);
+            if (!missing.isEmpty()) {
+                List<Pair<IFileSpec, IFileRevisionData>> loaded = cmd.getExactHistory(
+                        (IOptionsServer) client.getServer(), FileSpecBuilder.makeFileSpecList(missing));
+                annotationCache.putHistory(serverPort, loaded);
+                history.addAll(loaded);
+            }
             return new AnnotateFileResult(config,
                     FileAnnotationParser.getFileAnnotation(
-                            ref, client.getServer().getUserName(), headSpec, query.getLocalFile(), annotations, history),
-                    headRevision, content);
+                            ref, client.getServer().getUserName(), headSpec, query.getLocalFile(),
+                            annotated.getAnnotations(), history),
+                    headRevision, annotated.getContent());
         }));
     }
 
     @Nonnull
     private String loadContentAsString(@Nonnull ClientConfig config, IClient client, IExtendedFileSpec headSpec)
             throws P4JavaException, IOException {
-        final byte[] contents = cmd.loadContents(client, headSpec);
         String requestedCharset = headSpec.getHeadCharset() == null
                 ? (config.getDefaultCharSet() == null
                 ? Charset.defaultCharset().name()
@@ -319,8 +375,14 @@ public class ConnectCommandRunner
                 LOG.warn("Using default charset " + charset + " instead.");
             }
         }
-        // Could raise an UnsupportedEncodingException.
-        return new String(contents, charset);
+        // The contents are decoded straight from the buffer, which keeps large files on disk
+        // rather than holding the raw bytes and the text in memory at the same time.
+        try (SpillingContentBuffer contents = cmd.loadContentsBuffer(client, headSpec)) {
+            if (contents == null) {
+                throw new IOException("No contents returned for " + headSpec);
+            }
+            return contents.toString(Charset.forName(charset));
+        }
     }
 
     @NotNull
@@ -361,8 +423,10 @@ public class ConnectCommandRunner
             @NotNull ListOpenedFilesChangesQuery query) {
         return new QueryAnswerImpl<>(connectionManager.withConnection(config,
                 query.getRoot(),
-                (client) -> listOpenedFilesChanges(client, config,
-                        query.getMaxChangelistResults(), query.getMaxFileResults())
+                (client) -> query.getFiles() == null
+                        ? listOpenedFilesChanges(client, config,
+                                query.getMaxChangelistResults(), query.getMaxFileResults())
+                        : listOpenedFiles(client, config, query.getFiles(), query.getMaxFileResults())
         ));
     }
 
@@ -422,6 +486,15 @@ public class ConnectCommandRunner
     public P4CommandRunner.QueryAnswer<GetFileContentsResult> getFileContents(
             @NotNull ClientConfig config,
             @NotNull final GetFileContentsQuery query) {
+        // A fixed depot revision never changes, so if it's been loaded before, it doesn't
+        // need a server connection.
+        GetFileContentsResult cached = getCachedFileContents(config, query);
+        if (cached != null) {
+            return new DoneQueryAnswer<>(cached);
+        }
+        final String serverPort = getServerPort(config);
+        final Map.Entry<String, Integer> fixedDepotRev = getFixedDepotRevision(config, query);
+
         return new QueryAnswerImpl<>(connectionManager.withConnection(config, (client) -> {
             final byte[] contents = query.when(
                     config,
@@ -430,7 +503,11 @@ public class ConnectCommandRunner
                         if (LOG.isDebugEnabled()) {
                             LOG.debug("get file contents for " + depot + ": " + specs);
                         }
-                        return cmd.loadContents(client, specs.get(0));
+                        byte[] ret = cmd.loadContents(client, specs.get(0));
+                        if (contentCache != null && fixedDepotRev != null) {
+                            contentCache.put(serverPort, fixedDepotRev.getKey(), fixedDepotRev.getValue(), ret);
+                        }
+                        return ret;
                     },
                     (clientname, localFile, rev) -> {
                         if (rev <= 0 && localFile.getIOFile().exists()) {
@@ -439,18 +516,21 @@ public class ConnectCommandRunner
                             // Note: filter out the specs that don't map to anything in the client.
                             List<IFileSpec> locations = CollectionUtil.filterNulls(cmd.getSpecLocations(client,
                                     FileSpecBuildUtil.escapedForFilePathRev(localFile, -1)));
+                            // The cache is keyed by the depot path, which the rebuilt spec no longer has.
+                            String depotPath = null;
                             if (locations.isEmpty()) {
                                 locations = FileSpecBuildUtil.escapedForFilePathRev(localFile, rev);
                             } else {
                                 // #213 - replaceDepotRevisions can discover a null if the depot path is null.
                                 // This ends up to be because there's a request for a file for the wrong client.
                                 MessageStatusUtil.throwIfError(locations);
+                                depotPath = locations.get(0).getDepotPathString();
                                 locations = FileSpecBuildUtil.replaceBestPathRevisions(locations, "#" + rev);
                             }
                             if (LOG.isDebugEnabled()) {
                                 LOG.debug("get file contents for " + locations + " (only care about the first one)");
                             }
-                            return cmd.loadContents(client, locations.get(0));
+                            return loadCachedContents(client, serverPort, depotPath, rev, locations.get(0));
                         }
                     }
             );
@@ -467,11 +547,19 @@ public class ConnectCommandRunner
     public P4CommandRunner.QueryAnswer<ListFileHistoryResult> listFilesHistory(
             @NotNull ClientConfig config,
             @NotNull final ListFileHistoryQuery query) {
-        final List<IFileSpec> fileSpec = FileSpecBuildUtil.escapedForFilePaths(query.getFile());
+        final List<IFileSpec> fileSpec;
+        if (query.hasRevisionRange()) {
+            // Only fetch the requested window of revisions, rather than the whole history.
+            fileSpec = FileSpecBuildUtil.escapedForFilePathsAnnotated(Collections.singletonList(query.getFile()),
+                    "#" + Math.max(1, query.getMinRevision()) + ",#"
+                            + (query.getMaxRevision() > 0 ? Integer.toString(query.getMaxRevision()) : "head"),
+                    false);
+        } else {
+            fileSpec = FileSpecBuildUtil.escapedForFilePaths(query.getFile());
+        }
         return new QueryAnswerImpl<>(connectionManager.withConnection(config, (client) ->
-                new ListFileHistoryResult(config, createFileHistoryList(
-                    config, query.getFile(),
-                    cmd.getHistory(client, fileSpec, query.getMaxResults())))));
+                createFileHistoryResult(config, query.getFile(),
+                    cmd.getHistory(client, fileSpec, query.getMaxResults()))));
     }
 
     @NotNull
@@ -596,6 +684,81 @@ public class ConnectCommandRunner
         );
     }
 
+    @Nullable
+    @Override
+    public GetFileContentsResult getCachedFileContents(
+            @NotNull ClientConfig config,
+            @NotNull GetFileContentsQuery query) {
+        Map.Entry<String, Integer> fixedDepotRev = getFixedDepotRevision(config, query);
+        if (contentCache == null || fixedDepotRev == null) {
+            return null;
+        }
+        byte[] cached = contentCache.get(getServerPort(config), fixedDepotRev.getKey(), fixedDepotRev.getValue());
+        if (cached == null) {
+            return null;
+        }
+        return new GetFileContentsResult(config, fixedDepotRev.getKey() + '#' + fixedDepotRev.getValue(),
+                cached, config.getDefaultCharSet());
+    }
+
+    @NotNull
+    private static String getServerPort(@NotNull ClientConfig config) {
+        return config.getServerConfig().getServerName().getFullPort();
+    }
+
+    @Nullable
+    private static Map.Entry<String, Integer> getFixedDepotRevision(
+            @NotNull ClientConfig config, @NotNull GetFileContentsQuery query) {
+        try {
+            return query.when(config, RevisionContentCache::parseFixedRevision, (c, l, r) -> null);
+        } catch (P4JavaException | IOException e) {
+            // Not thrown by these functions.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Nullable
+    private byte[] loadCachedContents(@NotNull IClient client, @NotNull String serverPort,
+            @Nullable String depotPath, int rev, @NotNull IFileSpec spec)
+            throws P4JavaException, IOException {
+        Map.Entry<String, Integer> depotRev = contentCache == null || depotPath == null
+                ? null
+                : RevisionContentCache.parseFixedRevision(depotPath + '#' + rev);
+        if (depotRev == null) {
+            return cmd.loadContents(client, spec);
+        }
+        byte[] ret = contentCache.get(serverPort, depotRev.getKey(), depotRev.getValue());
+        if (ret == null) {
+            ret = cmd.loadContents(client, spec);
+            contentCache.put(serverPort, depotRev.getKey(), depotRev.getValue(), ret);
+        }
+        return ret;
+    }
+
+    @NotNull
+    private ListFileHistoryResult createFileHistoryResult(
+            @NotNull final ClientConfig config,
+            @NotNull final FilePath file,
+            @NotNull final List<IFileRevisionData> history) {
+        // The requested file's own revisions come first; everything after them was inherited
+        // through a branch or rename.  The inherited history can include older revisions of the
+        // requested file's depot path, so only the leading revisions set the page boundary.
+        int count = 0;
+        int oldest = 0;
+        String depotPath = history.isEmpty() ? null : history.get(0).getDepotFileName();
+        while (count < history.size() && depotPath != null
+                && depotPath.equals(history.get(count).getDepotFileName())) {
+            int rev = history.get(count).getRevision();
+            if (oldest <= 0 || rev < oldest) {
+                oldest = rev;
+            }
+            count++;
+        }
+        boolean inherited = count < history.size();
+        return new ListFileHistoryResult(config, createFileHistoryList(config, file, history),
+                count, oldest, inherited);
+    }
+
     @NotNull
     private ListFileHistoryResult.VcsFileRevisionFactory createFileHistoryList(
             @NotNull final ClientConfig config,
@@ -698,10 +861,15 @@ public class ConnectCommandRunner
 
         MessageStatusUtil.throwIfMessageOrEmpty(addFile ? "add" : "edit", ret);
 
+        return createAddEditResult(config, action, addFile, ret.get(0));
+    }
+
+    private static AddEditResult createAddEditResult(ClientConfig config, AddEditAction action, boolean addFile,
+            IFileSpec opened) {
         P4ChangelistId retChange;
-        if (action.getChangelistId() == null || ret.isEmpty() ||
-                action.getChangelistId().getChangelistId() != ret.get(0).getChangelistId()) {
-            int retChangeId = ret.get(0).getChangelistId();
+        if (action.getChangelistId() == null ||
+                action.getChangelistId().getChangelistId() != opened.getChangelistId()) {
+            int retChangeId = opened.getChangelistId();
             if (retChangeId == IChangelist.UNKNOWN) {
                 // Use the default changelist.
                 retChangeId = IChangelist.DEFAULT;
@@ -710,8 +878,8 @@ public class ConnectCommandRunner
         } else {
             retChange = action.getChangelistId();
         }
-        return new AddEditResult(config, action.getFile(), addFile, P4FileType.convert(ret.get(0).getFileType()),
-                retChange, new P4RemoteFileImpl(ret.get(0)));
+        return new AddEditResult(config, action.getFile(), addFile, P4FileType.convert(opened.getFileType()),
+                retChange, new P4RemoteFileImpl(opened));
     }
 
     private CreateChangelistResult createChangelist(IClient client, ClientConfig config, CreateChangelistAction action)
@@ -913,6 +1081,156 @@ public class ConnectCommandRunner
         return new FetchFilesResult(config, resFiles, info.toString());
     }
 
+    private List<AddEditResult> addEditFiles(IClient client, ClientConfig config,
+            List<P4CommandRunner.ClientAction<AddEditResult>> actions)
+            throws P4JavaException {
+        // The group shares a changelist and charset, so after one fstat over all the files, the new
+        // files are opened with a single add and the rest with a single edit.  Each file still makes
+        // its own add-or-edit choice, the same as addEditFile.
+        List<AddEditAction> addEdits = new ArrayList<>(actions.size());
+        List<FilePath> files = new ArrayList<>(actions.size());
+        for (P4CommandRunner.ClientAction<AddEditResult> action : actions) {
+            AddEditAction addEdit = (AddEditAction) action;
+            addEdits.add(addEdit);
+            files.add(addEdit.getFile());
+        }
+        if (addEdits.size() == 1) {
+            return Collections.singletonList(addEditFile(client, config, addEdits.get(0)));
+        }
+
+        List<IExtendedFileSpec> details = cmd.getFileDetailsForOpenedSpecs(client.getServer(),
+                FileSpecBuildUtil.escapedForFilePaths(files), 1000);
+        if (details.size() != addEdits.size()) {
+            // fstat reports one record or message per file, in the requested order; without that,
+            // the results can't be matched to the files.
+            LOG.info("fstat returned " + details.size() + " results for " + addEdits.size() +
+                    " files; opening each file on its own");
+            List<AddEditResult> ret = new ArrayList<>(addEdits.size());
+            for (AddEditAction action : addEdits) {
+                ret.add(addEditFile(client, config, action));
+            }
+            return ret;
+        }
+
+        AddEditResult[] ret = new AddEditResult[addEdits.size()];
+        List<Integer> addIndexes = new ArrayList<>();
+        List<Integer> editIndexes = new ArrayList<>();
+        List<IFileSpec> deleted = new ArrayList<>();
+        for (int i = 0; i < addEdits.size(); i++) {
+            AddEditAction action = addEdits.get(i);
+            OpenFileStatus status = new OpenFileStatus(Collections.singletonList(details.get(i)));
+            status.throwIfError();
+            if (status.hasAddEdit()) {
+                LOG.info("Already opened for add/edit: " + action.getFile());
+                ret[i] = new AddEditResult(config, action.getFile(), false, action.getFileType(),
+                        action.getChangelistId() == null
+                                ? P4ChangelistIdImpl.createDefaultChangelistId(config.getClientServerRef())
+                                : action.getChangelistId(),
+                        new P4RemoteFileImpl(status.getOpen().get(0)));
+            } else if (status.isNotOnServer()) {
+                addIndexes.add(i);
+            } else if (status.hasDelete()) {
+                deleted.addAll(status.getDelete());
+                addIndexes.add(i);
+            } else {
+                editIndexes.add(i);
+            }
+        }
+
+        if (!deleted.isEmpty()) {
+            // See addEditFile; the delete is reverted, but the file contents on disk are kept.  See #181
+            SpecialFileEventMessage.send(project).fileReverted(new SpecialFileEventMessage.SpecialFileEvent(
+                    deleted.stream().map(IFileSpec::toString).collect(Collectors.toList()),
+                    "File marked for delete in changelist, so request to add the file reverted delete, but not the "
+                            + "file contents on disk."));
+            List<IFileSpec> reverted = cmd.revertFileChangesPreserveFiles(client, deleted);
+            LOG.info("Files added, but server says they're deleted.  Reverted " + deleted + ": " +
+                    MessageStatusUtil.getMessages(reverted, "\n"));
+            MessageStatusUtil.throwIfError(reverted);
+        }
+
+        AddEditAction first = addEdits.get(0);
+        if (!addIndexes.isEmpty()) {
+            // Adding files uses the non-escaped form, because of the 'use wildcards' flag.  See #179
+            List<IFileSpec> opened = cmd.addFiles(client, FileSpecBuildUtil.forFilePaths(selectFiles(files, addIndexes)),
+                    null, first.getChangelistId(), first.getCharset());
+            setAddEditResults(config, addEdits, addIndexes, true, opened, ret);
+        }
+        if (!editIndexes.isEmpty()) {
+            // Keep the file type as Perforce knows it.  See #179
+            List<IFileSpec> opened = cmd.editFiles(client,
+                    FileSpecBuildUtil.escapedForFilePaths(selectFiles(files, editIndexes)),
+                    null, first.getChangelistId(), first.getCharset());
+            setAddEditResults(config, addEdits, editIndexes, false, opened, ret);
+        }
+        return Arrays.asList(ret);
+    }
+
+    private static List<FilePath> selectFiles(List<FilePath> files, List<Integer> indexes) {
+        List<FilePath> ret = new ArrayList<>(indexes.size());
+        for (Integer index : indexes) {
+            ret.add(files.get(index));
+        }
+        return ret;
+    }
+
+    // The server reports one opened file per requested file, in the requested order.  Other
+    // messages, such as a file also being opened by another client, are mixed in between.
+    private static void setAddEditResults(ClientConfig config, List<AddEditAction> actions, List<Integer> indexes,
+            boolean addFile, List<IFileSpec> results, AddEditResult[] ret)
+            throws P4JavaException {
+        String operation = addFile ? "add" : "edit";
+        MessageStatusUtil.throwIfMessageOrEmpty(operation, results);
+        List<IFileSpec> opened = MessageStatusUtil.filterOutMessages(results);
+        if (opened.size() != indexes.size()) {
+            for (IFileSpec spec : results) {
+                IServerMessage msg = spec.getStatusMessage();
+                if (msg != null && !msg.isInfo()) {
+                    throw new RequestException(msg);
+                }
+            }
+            throw new P4JavaException("Unexpected error when performing " + operation + " on files: expected " +
+                    indexes.size() + " results from server, but found " + opened.size());
+        }
+        for (int i = 0; i < indexes.size(); i++) {
+            int index = indexes.get(i);
+            ret[index] = createAddEditResult(config, actions.get(index), addFile, opened.get(i));
+        }
+    }
+
+    private List<RevertFileResult> revertFiles(IClient client, ClientConfig config,
+            List<P4CommandRunner.ClientAction<RevertFileResult>> actions)
+            throws P4JavaException {
+        // All the files are reverted with a single command, so they must share the revert options.
+        boolean onlyUnchanged = ((RevertFileAction) actions.get(0)).isRevertOnlyIfUnchanged();
+        List<FilePath> files = new ArrayList<>(actions.size());
+        for (P4CommandRunner.ClientAction<RevertFileResult> action : actions) {
+            RevertFileAction revert = (RevertFileAction) action;
+            if (revert.isRevertOnlyIfUnchanged() != onlyUnchanged) {
+                throw new IllegalArgumentException("Cannot revert with different options together: " + actions);
+            }
+            files.add(revert.getFile());
+        }
+
+        List<IFileSpec> srcFiles = FileSpecBuildUtil.escapedForFilePaths(files);
+        SpecialFileEventMessage.send(project).fileReverted(new SpecialFileEventMessage.SpecialFileEvent(
+                srcFiles.stream().map(IFileSpec::toString).collect(Collectors.toList()),
+                onlyUnchanged ?
+                        "User request to revert unchanged files; on-disk contents should not change." :
+                        "User request to revert files; on-disk contents changed."
+        ));
+        List<IFileSpec> reverted = cmd.revertFiles(client, srcFiles, onlyUnchanged);
+        LOG.info("Explicit revert " + files + ": " + MessageStatusUtil.getMessages(reverted, "\n"));
+        MessageStatusUtil.throwIfError(reverted);
+
+        // The server results cover the whole group.
+        List<RevertFileResult> ret = new ArrayList<>(files.size());
+        for (FilePath file : files) {
+            ret.add(new RevertFileResult(config, file, reverted));
+        }
+        return ret;
+    }
+
     private RevertFileResult revertFile(IClient client, ClientConfig config, RevertFileAction action)
             throws P4JavaException {
         // Explicit request to revert the file.  So the file contents will be changed in the operation.
@@ -944,15 +1262,18 @@ public class ConnectCommandRunner
             List<IChangelistSummary> summaries = new ArrayList<>(cmd.getPendingChangelists(client,
                     maxChangelistResults));
 
-            // Then get details about the changelists.
-            List<IChangelist> changes = new ArrayList<>(summaries.size());
+            // Then get details about the changelists.  These are batched together into a few describe
+            // calls, rather than fetching each changelist's description and files one at a time.
+            List<Integer> changelistIds = new ArrayList<>(summaries.size());
+            for (IChangelistSummary summary : summaries) {
+                changelistIds.add(summary.getId());
+            }
+            List<IChangelist> changes = new ArrayList<>(cmd.getChangelistDetails(
+                    (IOptionsServer) client.getServer(), changelistIds));
             List<IFileSpec> pendingChangelistFileSummaries = new ArrayList<>();
             List<IExtendedFileSpec> pendingAddedFiles = new ArrayList<>();
-            Map<Integer, List<IFileSpec>> shelvedFiles = new HashMap<>();
-            // Calling
-            for (IChangelistSummary summary : summaries) {
-                IChangelist cl = cmd.getChangelistDetails(client.getServer(), summary.getId());
-                changes.add(cl);
+            List<Integer> shelvedChangelistIds = new ArrayList<>();
+            for (IChangelist cl : changes) {
                 List<IFileSpec> clFiles = new ArrayList<>(cl.getFiles(false));
                 if (LOG.isDebugEnabled()) {
                     LOG.debug("listOpenedFilesChanges: Fetched @" + cl.getId() + " files " + clFiles);
@@ -960,13 +1281,16 @@ public class ConnectCommandRunner
                 pendingAddedFiles.addAll(splitAddedFilesFromChangelistFileList(clFiles));
                 pendingChangelistFileSummaries.addAll(clFiles);
 
-                // Get the list of shelved files, if any
                 if (cl.isShelved()) {
-                    shelvedFiles.put(summary.getId(), cmd.getShelvedFiles(
-                            client.getServer(), summary.getId(), maxFileResults));
+                    shelvedChangelistIds.add(cl.getId());
                 }
             }
 
+            // Get the list of shelved files, if any
+            Map<Integer, List<IFileSpec>> shelvedFiles = shelvedChangelistIds.isEmpty()
+                    ? new HashMap<>()
+                    : cmd.getShelvedFiles((IOptionsServer) client.getServer(), shelvedChangelistIds, maxFileResults);
+
             // Then find details on all the opened files
             if (LOG.isDebugEnabled()) {
                 LOG.debug("listOpenedFilesChanges@" + startDate + ": getting file details (requesting " +
@@ -1094,6 +1418,55 @@ public class ConnectCommandRunner
         }
     }
 
+    // The opened state of just the requested files.  Unlike the full listing, this doesn't
+    // look at the pending changelists, and it doesn't send out the client open cache event,
+    // because its result doesn't replace the cached opened files.
+    private ListOpenedFilesChangesResult listOpenedFiles(IClient client, ClientConfig config,
+            List<FilePath> files, int maxFileResults)
+            throws P4JavaException {
+        final Date startDate = new Date();
+        LOG.info("Starting listOpenedFiles for " + files.size() + " files at " + startDate);
+        try {
+            List<IFileSpec> opened = new ArrayList<>(cmd.getOpenedFiles(client,
+                    FileSpecBuildUtil.escapedForFilePaths(files), maxFileResults));
+            // Files that aren't opened are reported as messages.
+            opened.removeIf((spec) -> spec.getOpStatus() != FileSpecOpStatus.VALID || spec.getAction() == null);
+
+            // The opened list knows the changelist for each file, which fstat doesn't report the same way
+            // for default and numbered changelists.
+            Map<String, Integer> changelistIds = new HashMap<>();
+            for (IFileSpec spec : opened) {
+                changelistIds.put(spec.getDepotPathString(), spec.getChangelistId());
+            }
+
+            List<IExtendedFileSpec> addedFiles = splitAddedFilesFromChangelistFileList(opened);
+            List<IExtendedFileSpec> openedFiles = new ArrayList<>(
+                    cmd.getFileDetailsForOpenedSpecs(client.getServer(), opened, maxFileResults));
+            openedFiles.removeIf((spec) -> {
+                if (spec.getStatusMessage() != null || spec.getAction() == null) {
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("Opened File Spec " + spec + "; message: " + spec.getStatusMessage());
+                    }
+                    return true;
+                }
+                return false;
+            });
+            addLocalPathsFromDepotPaths(client, addedFiles, Collections.emptyList());
+            openedFiles.addAll(addedFiles);
+            for (IExtendedFileSpec spec : openedFiles) {
+                Integer changelistId = changelistIds.get(spec.getDepotPathString());
+                if (changelistId != null) {
+                    spec.setChangelistId(changelistId);
+                    spec.setOpenChangelistId(changelistId);
+                }
+            }
+
+            return OpenedFilesChangesFactory.createListOpenedFilesResult(config, openedFiles, files);
+        } finally {
+            LOG.info("Finished listOpenedFiles; started at " + startDate + ", ended at " + (new Date()));
+        }
+    }
+
     private ListClientsForUserResult listClientsForUser(IOptionsServer server, OptionalClientServerConfig config,
             String username, int maxClients)
             throws P4JavaException {
@@ -0,0 +1,183 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.groboclown.p4.server.impl.connection.impl;
+
+import com.intellij.openapi.util.Pair;
+import com.perforce.p4java.core.file.IFileAnnotation;
+import com.perforce.p4java.core.file.IFileRevisionData;
+import com.perforce.p4java.core.file.IFileSpec;
+import net.groboclown.p4.server.impl.util.HandleFileSpecUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers the server data behind recent file annotations, so that annotating
+ * the same file again doesn't need to go back to the server for it.
+ * <p>
+ * A depot file at a given revision always has the same contents and annotations,
+ * and a revision's history record doesn't change either, so nothing here needs
+ * to be refreshed; entries are just dropped when they haven't been used for a
+ * while.  When a file gets a new revision, only the history for the revisions
+ * that haven't been seen before needs to be loaded.
+ * <p>
+ * Each annotated revision keeps the whole file text, plus each annotated line, so
+ * those are limited by their total size rather than by the number of files.
+ */
+public class AnnotationCache {
+    // In characters; about 16 MB of strings.
+    private static final long DEFAULT_MAX_ANNOTATED_SIZE = 8L * 1024 * 1024;
+    // Rough per-line cost of an annotation object, beyond its text.
+    private static final int ANNOTATION_OVERHEAD = 64;
+    private static final int MAX_HISTORY_REVISIONS = 10_000;
+
+    /**
+     * The server data for one annotated depot revision.
+     */
+    public static class AnnotatedRevision {
+        private final String content;
+        private final List<IFileAnnotation> annotations;
+        private final long size;
+
+        AnnotatedRevision(@NotNull String content, @NotNull List<IFileAnnotation> annotations) {
+            this.content = content;
+            this.annotations = annotations;
+            long annotationSize = 0;
+            for (IFileAnnotation annotation : annotations) {
+                String line = annotation.getLine();
+                String depotPath = annotation.getDepotPath();
+                annotationSize += ANNOTATION_OVERHEAD
+                        + (line == null ? 0 : line.length())
+                        + (depotPath == null ? 0 : depotPath.length());
+            }
+            this.size = content.length() + annotationSize;
+        }
+
+        @NotNull
+        public String getContent() {
+            return content;
+        }
+
+        @NotNull
+        public List<IFileAnnotation> getAnnotations() {
+            return annotations;
+        }
+    }
+
+    private final long maxAnnotatedSize;
+    private final Map<String, AnnotatedRevision> annotated = new LinkedHashMap<>(16, 0.75f, true);
+    private long annotatedSize = 0;
+
+    private final Map<String, Pair<IFileSpec, IFileRevisionData>> history =
+            new LinkedHashMap<String, Pair<IFileSpec, IFileRevisionData>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Pair<IFileSpec, IFileRevisionData>> eldest) {
+                    return size() > MAX_HISTORY_REVISIONS;
+                }
+            };
+
+
+    public AnnotationCache() {
+        this(DEFAULT_MAX_ANNOTATED_SIZE);
+    }
+
+
+    AnnotationCache(long maxAnnotatedSize) {
+        this.maxAnnotatedSize = maxAnnotatedSize;
+    }
+
+
+    @Nullable
+    public synchronized AnnotatedRevision getAnnotated(@NotNull String serverPort, @NotNull String depotPath,
+            int rev) {
+        return rev > 0 ? annotated.get(getKey(serverPort, depotPath, rev)) : null;
+    }
+
+
+    /**
+     * Remember the annotated revision.  It's only kept if the depot path and revision are known,
+     * and it isn't bigger than the whole cache.
+     */
+    @NotNull
+    public synchronized AnnotatedRevision putAnnotated(@NotNull String serverPort, @Nullable String depotPath, int rev,
+            @NotNull String content, @NotNull List<IFileAnnotation> annotations) {
+        AnnotatedRevision ret = new AnnotatedRevision(content, new ArrayList<>(annotations));
+        if (depotPath != null && rev > 0 && ret.size <= maxAnnotatedSize) {
+            AnnotatedRevision replaced = annotated.put(getKey(serverPort, depotPath, rev), ret);
+            if (replaced != null) {
+                annotatedSize -= replaced.size;
+            }
+            annotatedSize += ret.size;
+            // Drop the least recently used revisions until the cache fits.
+            Iterator<AnnotatedRevision> iter = annotated.values().iterator();
+            while (annotatedSize > maxAnnotatedSize && iter.hasNext()) {
+                AnnotatedRevision eldest = iter.next();
+                if (eldest != ret) {
+                    annotatedSize -= eldest.size;
+                    iter.remove();
+                }
+            }
+        }
+        return ret;
+    }
+
+
+    /**
+     * Find the cached history for the revisions.
+     *
+     * @param revisions revisions, as depot path '#' revision number.
+     * @param missing the revisions that aren't cached are added here.
+     * @return the cached history.
+     */
+    @NotNull
+    public synchronized List<Pair<IFileSpec, IFileRevisionData>> getHistory(@NotNull String serverPort,
+            @NotNull Collection<String> revisions, @NotNull Collection<String> missing) {
+        List<Pair<IFileSpec, IFileRevisionData>> ret = new ArrayList<>(revisions.size());
+        for (String revision : revisions) {
+            Pair<IFileSpec, IFileRevisionData> found = history.get(serverPort + '\n' + revision);
+            if (found == null) {
+                missing.add(revision);
+            } else {
+                ret.add(found);
+            }
+        }
+        return ret;
+    }
+
+
+    public synchronized void putHistory(@NotNull String serverPort,
+            @NotNull Collection<Pair<IFileSpec, IFileRevisionData>> revisions) {
+        for (Pair<IFileSpec, IFileRevisionData> revision : revisions) {
+            if (revision.first == null || revision.first.getDepotPath() == null || revision.second == null) {
+                continue;
+            }
+            // Same key as the annotation lookup in FileAnnotationParser.
+            String depot = HandleFileSpecUtil.getRawDepot(revision.first, true);
+            history.put(getKey(serverPort, depot, revision.second.getRevision()), revision);
+        }
+    }
+
+
+    @NotNull
+    private static String getKey(@NotNull String serverPort, @NotNull String depotPath, int rev) {
+        return serverPort + '\n' + depotPath + '#' + rev;
+    }
+}
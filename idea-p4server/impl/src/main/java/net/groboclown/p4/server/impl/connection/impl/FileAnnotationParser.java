@@ -52,6 +52,14 @@ public class FileAnnotationParser {
 
 
     public static List<IFileSpec> getRequiredHistorySpecs(@NotNull List<IFileAnnotation> annotations) {
+        return FileSpecBuilder.makeFileSpecList(new ArrayList<>(getRequiredHistoryRevisions(annotations)));
+    }
+
+
+    /**
+     * @return the revisions the annotations refer to, as depot path '#' revision.
+     */
+    public static Set<String> getRequiredHistoryRevisions(@NotNull List<IFileAnnotation> annotations) {
         Set<String> revs = new HashSet<>();
         for (IFileAnnotation ann: annotations) {
             if (ann != null && ann.getDepotPath() != null) {
@@ -61,7 +69,7 @@ public class FileAnnotationParser {
                 }
             }
         }
-        return FileSpecBuilder.makeFileSpecList(new ArrayList<>(revs));
+        return revs;
     }
 
 
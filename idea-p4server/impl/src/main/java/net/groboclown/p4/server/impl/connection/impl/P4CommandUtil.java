@@ -18,6 +18,7 @@ import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.Pair;
 import com.intellij.openapi.vcs.FilePath;
 import com.intellij.vcsUtil.VcsUtil;
+import com.perforce.p4java.PropertyDefs;
 import com.perforce.p4java.client.IClient;
 import com.perforce.p4java.core.CoreFactory;
 import com.perforce.p4java.core.IChangelist;
@@ -39,6 +40,11 @@ import com.perforce.p4java.exception.ConnectionException;
 import com.perforce.p4java.exception.MessageGenericCode;
 import com.perforce.p4java.exception.P4JavaException;
 import com.perforce.p4java.exception.RequestException;
+import com.perforce.p4java.impl.generic.core.Changelist;
+import com.perforce.p4java.impl.generic.core.ChangelistSummary;
+import com.perforce.p4java.impl.mapbased.rpc.RpcBatchCommand;
+import com.perforce.p4java.impl.mapbased.rpc.RpcServer;
+import com.perforce.p4java.impl.mapbased.server.cmd.ResultMapParser;
 import com.perforce.p4java.option.changelist.SubmitOptions;
 import com.perforce.p4java.option.client.AddFilesOptions;
 import com.perforce.p4java.option.client.DeleteFilesOptions;
@@ -57,21 +63,26 @@ import com.perforce.p4java.option.server.GetLabelsOptions;
 import com.perforce.p4java.option.server.GetRevisionHistoryOptions;
 import com.perforce.p4java.option.server.GetUsersOptions;
 import com.perforce.p4java.option.server.MoveFileOptions;
+import com.perforce.p4java.option.server.OpenedFilesOptions;
+import com.perforce.p4java.server.CmdSpec;
 import com.perforce.p4java.server.IOptionsServer;
 import com.perforce.p4java.server.IServer;
+import com.perforce.p4java.server.IServerMessage;
 import net.groboclown.p4.server.api.values.JobStatus;
 import net.groboclown.p4.server.api.values.P4ChangelistId;
 import net.groboclown.p4.server.api.values.P4FileType;
 import net.groboclown.p4.server.api.values.P4Job;
 import net.groboclown.p4.server.impl.util.FileSpecBuildUtil;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -88,7 +99,8 @@ import java.util.Map;
 public class P4CommandUtil {
     private static final Logger LOG = Logger.getInstance(P4CommandUtil.class);
 
-    private static final int BUFFER_SIZE = 4096;
+    // Maximum number of changelists described by a single "describe" call, to keep the command line short.
+    private static final int DESCRIBE_BATCH_SIZE = 50;
 
 
     public List<IExtendedFileSpec> getFilesOpenInDefaultChangelist(IServer server,
@@ -139,6 +151,126 @@ public class P4CommandUtil {
         return server.getShelvedFiles(changelistId, maxFileResults);
     }
 
+    /**
+     * Describe many pending changelists with as few server calls as possible.  The returned
+     * changelists have their file lists already loaded, and are marked as shelved if they have
+     * any shelved files.
+     *
+     * @param server server
+     * @param changelistIds changelists to describe
+     * @return the changelist details, in the same order as the requested IDs.  Changelists that
+     *      the server did not describe are not included.
+     */
+    @NotNull
+    public List<IChangelist> getChangelistDetails(IOptionsServer server, Collection<Integer> changelistIds)
+            throws P4JavaException {
+        Map<Integer, IChangelist> found = new HashMap<>();
+        // Note: keep the "-s" as the first argument; it controls the use of tagged output.
+        for (Map<String, Object> map : describeBatches(server, new String[] { "-s" }, changelistIds)) {
+            ChangelistSummary summary = new ChangelistSummary(map, true, server);
+            Changelist cl = new Changelist(summary, server, false);
+            cl.setFileSpecs(ResultMapParser.parseCommandResultMapAsFileSpecs(
+                    summary.getId(), server, Collections.singletonList(map)));
+            found.put(summary.getId(), cl);
+        }
+        List<IChangelist> ret = new ArrayList<>(found.size());
+        for (Integer id : changelistIds) {
+            IChangelist cl = found.get(id);
+            if (cl != null) {
+                ret.add(cl);
+            } else {
+                LOG.warn("Server did not describe changelist " + id);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Get the shelved files for many changelists with as few server calls as possible.
+     *
+     * @param server server
+     * @param changelistIds changelists to inspect
+     * @param maxFileResults maximum number of files returned per changelist
+     * @return changelist ID to shelved files for that changelist.
+     */
+    @NotNull
+    public Map<Integer, List<IFileSpec>> getShelvedFiles(IOptionsServer server, Collection<Integer> changelistIds,
+            int maxFileResults)
+            throws P4JavaException {
+        Map<Integer, List<IFileSpec>> ret = new HashMap<>();
+        for (Map<String, Object> map : describeBatches(server,
+                new String[] { "-s", "-m" + maxFileResults, "-S" }, changelistIds)) {
+            int id = new ChangelistSummary(map, true, server).getId();
+            ret.put(id, ResultMapParser.parseCommandResultMapAsFileSpecs(
+                    id, server, Collections.singletonList(map)));
+        }
+        return ret;
+    }
+
+    // Runs "describe" on the changelists, DESCRIBE_BATCH_SIZE changelists at a time, and
+    // returns one result map per described changelist.  Changelists the server reports an
+    // error for are logged and left out.  When there is more than one
+    // describe call, they are sent together as one command batch.
+    @NotNull
+    private List<Map<String, Object>> describeBatches(IOptionsServer server, String[] options,
+            Collection<Integer> changelistIds)
+            throws P4JavaException {
+        List<Map<String, Object>> ret = new ArrayList<>(changelistIds.size());
+        List<Integer> ids = new ArrayList<>(changelistIds);
+        List<String[]> batchArgs = new ArrayList<>();
+        for (int start = 0; start < ids.size(); start += DESCRIBE_BATCH_SIZE) {
+            List<Integer> batch = ids.subList(start, Math.min(ids.size(), start + DESCRIBE_BATCH_SIZE));
+            String[] args = new String[options.length + batch.size()];
+            System.arraycopy(options, 0, args, 0, options.length);
+            for (int i = 0; i < batch.size(); i++) {
+                args[options.length + i] = String.valueOf(batch.get(i));
+            }
+            batchArgs.add(args);
+        }
+        for (List<Map<String, Object>> results : execDescribes(server, batchArgs)) {
+            if (results == null) {
+                continue;
+            }
+            for (Map<String, Object> map : results) {
+                if (map == null) {
+                    continue;
+                }
+                IServerMessage message = ResultMapParser.toServerMessage(map);
+                if (message != null && message.isError()
+                        && ResultMapParser.getAuthFailType(message) == null) {
+                    // An error about one changelist (say, it was deleted since the changelists were
+                    // listed) leaves that changelist out, rather than losing the whole batch.
+                    LOG.warn("describe failed for a changelist: " + message);
+                    continue;
+                }
+                ResultMapParser.handleErrors(message);
+                if (message == null || !message.isInfoOrError()) {
+                    ret.add(map);
+                }
+            }
+        }
+        return ret;
+    }
+
+    @NotNull
+    private List<List<Map<String, Object>>> execDescribes(IOptionsServer server, List<String[]> batchArgs)
+            throws P4JavaException {
+        if (batchArgs.size() > 1 && server instanceof RpcServer) {
+            // The describe calls don't depend on each other, so the server can be sent all of them
+            // without waiting on the results of each one.
+            List<RpcBatchCommand> commands = new ArrayList<>(batchArgs.size());
+            for (String[] args : batchArgs) {
+                commands.add(new RpcBatchCommand(CmdSpec.DESCRIBE.toString(), args));
+            }
+            return ((RpcServer) server).execMapCmdBatch(commands);
+        }
+        List<List<Map<String, Object>>> ret = new ArrayList<>(batchArgs.size());
+        for (String[] args : batchArgs) {
+            ret.add(server.execMapCmdList(CmdSpec.DESCRIBE.toString(), args, null));
+        }
+        return ret;
+    }
+
     public List<IChangelistSummary> getPendingChangelists(IClient client, int maxChangelistResults)
             throws P4JavaException {
         GetChangelistsOptions clOptions = new GetChangelistsOptions(
@@ -148,6 +280,25 @@ public class P4CommandUtil {
         return client.getServer().getChangelists(null, clOptions);
     }
 
+    /**
+     * Finds which of the files are opened by the client.
+     *
+     * @param client client
+     * @param files escaped file specs
+     * @param maxFileResults maximum number of opened files to return
+     * @return one spec for each opened file; files that are not opened are returned as status messages.
+     * @throws P4JavaException underlying error
+     */
+    public List<IFileSpec> getOpenedFiles(IClient client, List<IFileSpec> files, int maxFileResults)
+            throws P4JavaException {
+        if (files.isEmpty()) {
+            return Collections.emptyList();
+        }
+        OpenedFilesOptions options = new OpenedFilesOptions();
+        options.setMaxFiles(maxFileResults);
+        return client.openedFiles(files, options);
+    }
+
     public IJob createJob(IOptionsServer server, Map<String, Object> fields)
             throws ConnectionException, AccessException, RequestException {
         return server.createJob(fields);
@@ -448,11 +599,24 @@ public class P4CommandUtil {
 
     public byte[] loadContents(IClient client, IFileSpec spec)
             throws P4JavaException, IOException {
+        try (SpillingContentBuffer buffer = loadContentsBuffer(client, spec)) {
+            return buffer == null ? null : buffer.toByteArray();
+        }
+    }
+
+    /**
+     * Stream the file contents into a buffer, which spills over into a temporary file
+     * for large files.  The caller must close the returned buffer.
+     *
+     * @return the contents, or null if the server returned nothing.
+     */
+    @Nullable
+    public SpillingContentBuffer loadContentsBuffer(IClient client, IFileSpec spec)
+            throws P4JavaException, IOException {
         // For fetching the local File information, we need a client to perform the mapping.
         IServer server = client.getServer();
         server.setCurrentClient(client);
         int maxFileSize = VcsUtil.getMaxVcsLoadedFileSize();
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
         GetFileContentsOptions fileContentsOptions = new GetFileContentsOptions(false, true);
         // setting "don't annotate files" to true means we ignore the revision
         fileContentsOptions.setDontAnnotateFiles(false);
@@ -462,17 +626,21 @@ public class P4CommandUtil {
             return null;
         }
 
+        // Spill over into the same temporary directory that the connection uses.
+        String tempDir = server.getProperties() == null
+                ? null
+                : server.getProperties().getProperty(PropertyDefs.P4JAVA_TMP_DIR_KEY);
+        SpillingContentBuffer ret = new SpillingContentBuffer(tempDir == null ? null : new File(tempDir));
         try {
-            byte[] buff = new byte[BUFFER_SIZE];
-            int len;
-            while ((len = inp.read(buff, 0, BUFFER_SIZE)) > 0 && baos.size() < maxFileSize) {
-                baos.write(buff, 0, len);
-            }
+            ret.copyFrom(inp, maxFileSize);
+        } catch (IOException | RuntimeException e) {
+            ret.close();
+            throw e;
         } finally {
             // Note: be absolutely sure to close the InputStream that is returned.
             inp.close();
         }
-        return baos.toByteArray();
+        return ret;
     }
 
     public List<Pair<IFileSpec, IFileRevisionData>> getExactHistory(IOptionsServer server, List<IFileSpec> specs)
@@ -522,6 +690,7 @@ public class P4CommandUtil {
                 .setLongOutput(true)
                 .setTruncatedLongOutput(false);
         Map<IFileSpec, List<IFileRevisionData>> res = server.getRevisionHistory(singleSpec, opts);
+        // The map keeps the server's order, so the requested file's revisions come first.
         List<IFileRevisionData> ret = new ArrayList<>();
         for (Map.Entry<IFileSpec, List<IFileRevisionData>> entry: res.entrySet()) {
             // it can return empty values for a server message
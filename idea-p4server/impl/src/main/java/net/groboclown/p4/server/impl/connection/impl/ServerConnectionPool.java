@@ -0,0 +1,297 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.groboclown.p4.server.impl.connection.impl;
+
+import com.intellij.openapi.diagnostic.Logger;
+import net.groboclown.p4.server.api.P4ServerName;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps idle, already authenticated connections around so that they can be
+ * reused by later requests for the same connection setup.
+ * <p>
+ * Connections are only handed out to one caller at a time; a borrowed
+ * connection is not tracked by the pool until it is released back.  Idle
+ * connections are evicted lazily, whenever the pool is accessed, once they
+ * have been unused for longer than the idle timeout.
+ *
+ * @param <T> connection type
+ */
+public class ServerConnectionPool<T> {
+    private static final Logger LOG = Logger.getInstance(ServerConnectionPool.class);
+
+    public interface ConnectionHandler<T> {
+        /**
+         * @param connection pooled connection
+         * @return true if the connection can still be used to talk to the server.
+         */
+        boolean isUsable(@NotNull T connection);
+
+        void close(@NotNull T connection);
+    }
+
+
+    /**
+     * Identifies connections that are interchangeable with each other.
+     */
+    public static final class Key {
+        private final P4ServerName serverName;
+        private final String id;
+
+        public Key(@NotNull P4ServerName serverName, @NotNull String id) {
+            this.serverName = serverName;
+            this.id = id;
+        }
+
+        @NotNull
+        public P4ServerName getServerName() {
+            return serverName;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key that = (Key) o;
+            return serverName.equals(that.serverName) && id.equals(that.id);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(serverName, id);
+        }
+
+        @Override
+        public String toString() {
+            return serverName.getDisplayName() + "::" + id;
+        }
+    }
+
+
+    private static class Idle<T> {
+        final T connection;
+        final long releasedAt;
+
+        private Idle(T connection, long releasedAt) {
+            this.connection = connection;
+            this.releasedAt = releasedAt;
+        }
+    }
+
+
+    private final ConnectionHandler<T> handler;
+    private final LongSupplier clock;
+    private final Object sync = new Object();
+    private final Map<Key, Deque<Idle<T>>> idle = new HashMap<>();
+    private int maxIdlePerKey;
+    private long idleTimeoutMillis;
+
+
+    public ServerConnectionPool(@NotNull ConnectionHandler<T> handler, int maxIdlePerKey, long idleTimeoutMillis) {
+        this(handler, maxIdlePerKey, idleTimeoutMillis, System::currentTimeMillis);
+    }
+
+
+    ServerConnectionPool(@NotNull ConnectionHandler<T> handler, int maxIdlePerKey, long idleTimeoutMillis,
+            @NotNull LongSupplier clock) {
+        this.handler = handler;
+        this.maxIdlePerKey = Math.max(0, maxIdlePerKey);
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.clock = clock;
+    }
+
+
+    public boolean isEnabled() {
+        return maxIdlePerKey > 0;
+    }
+
+
+    /**
+     * Change the pool limits.  Idle connections that fall outside the new limits are closed.
+     *
+     * @param maxIdlePerKey maximum number of idle connections kept for a single key; 0 disables pooling.
+     * @param idleTimeoutMillis time an idle connection may stay in the pool before it is closed.
+     */
+    public void setLimits(int maxIdlePerKey, long idleTimeoutMillis) {
+        final List<T> closing = new ArrayList<>();
+        synchronized (sync) {
+            this.maxIdlePerKey = Math.max(0, maxIdlePerKey);
+            this.idleTimeoutMillis = idleTimeoutMillis;
+            for (Deque<Idle<T>> queue : idle.values()) {
+                while (queue.size() > this.maxIdlePerKey) {
+                    closing.add(queue.removeLast().connection);
+                }
+            }
+            evictExpired(closing);
+        }
+        closeAll(closing);
+    }
+
+
+    /**
+     * Remove a usable idle connection from the pool.
+     *
+     * @param key connection setup to match.
+     * @return the most recently released usable connection for the key, or null if none is available.
+     */
+    @Nullable
+    public T borrow(@NotNull Key key) {
+        final List<T> closing = new ArrayList<>();
+        T ret = null;
+        synchronized (sync) {
+            evictExpired(closing);
+            Deque<Idle<T>> queue = idle.get(key);
+            while (ret == null && queue != null && !queue.isEmpty()) {
+                T candidate = queue.removeFirst().connection;
+                if (handler.isUsable(candidate)) {
+                    ret = candidate;
+                } else {
+                    closing.add(candidate);
+                }
+            }
+            if (queue != null && queue.isEmpty()) {
+                idle.remove(key);
+            }
+        }
+        closeAll(closing);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug((ret == null ? "No pooled connection for " : "Reusing pooled connection for ") + key);
+        }
+        return ret;
+    }
+
+
+    /**
+     * Return a connection to the pool.  If the pool is full for the key, or the connection
+     * is no longer usable, then it is closed instead.
+     *
+     * @param key connection setup used to create the connection.
+     * @param connection connection previously created or borrowed for the key.
+     */
+    public void release(@NotNull Key key, @NotNull T connection) {
+        final List<T> closing = new ArrayList<>();
+        synchronized (sync) {
+            evictExpired(closing);
+            if (maxIdlePerKey > 0 && handler.isUsable(connection)) {
+                Deque<Idle<T>> queue = idle.computeIfAbsent(key, k -> new ArrayDeque<>());
+                queue.addFirst(new Idle<>(connection, clock.getAsLong()));
+                while (queue.size() > maxIdlePerKey) {
+                    closing.add(queue.removeLast().connection);
+                }
+            } else {
+                closing.add(connection);
+            }
+        }
+        closeAll(closing);
+    }
+
+
+    /**
+     * Close all the idle connections to the server.
+     *
+     * @param serverName server whose connections should no longer be reused.
+     */
+    public void invalidate(@NotNull P4ServerName serverName) {
+        final List<T> closing = new ArrayList<>();
+        synchronized (sync) {
+            Iterator<Map.Entry<Key, Deque<Idle<T>>>> iter = idle.entrySet().iterator();
+            while (iter.hasNext()) {
+                Map.Entry<Key, Deque<Idle<T>>> entry = iter.next();
+                if (entry.getKey().getServerName().equals(serverName)) {
+                    for (Idle<T> i : entry.getValue()) {
+                        closing.add(i.connection);
+                    }
+                    iter.remove();
+                }
+            }
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Closing " + closing.size() + " pooled connections to " + serverName);
+        }
+        closeAll(closing);
+    }
+
+
+    /**
+     * Close every idle connection.
+     */
+    public void invalidateAll() {
+        final List<T> closing = new ArrayList<>();
+        synchronized (sync) {
+            for (Deque<Idle<T>> queue : idle.values()) {
+                for (Idle<T> i : queue) {
+                    closing.add(i.connection);
+                }
+            }
+            idle.clear();
+        }
+        closeAll(closing);
+    }
+
+
+    public int getIdleCount() {
+        synchronized (sync) {
+            int count = 0;
+            for (Deque<Idle<T>> queue : idle.values()) {
+                count += queue.size();
+            }
+            return count;
+        }
+    }
+
+
+    // must be called while holding the sync lock.
+    private void evictExpired(@NotNull List<T> closing) {
+        final long expiredBefore = clock.getAsLong() - idleTimeoutMillis;
+        Iterator<Deque<Idle<T>>> iter = idle.values().iterator();
+        while (iter.hasNext()) {
+            Deque<Idle<T>> queue = iter.next();
+            // Most recently released connections are at the head, so expired ones collect at the tail.
+            while (!queue.isEmpty() && queue.getLast().releasedAt < expiredBefore) {
+                closing.add(queue.removeLast().connection);
+            }
+            if (queue.isEmpty()) {
+                iter.remove();
+            }
+        }
+    }
+
+
+    // must be called without holding the sync lock, as closing can block on the network.
+    private void closeAll(@NotNull List<T> closing) {
+        for (T connection : closing) {
+            try {
+                handler.close(connection);
+            } catch (RuntimeException e) {
+                LOG.info("Problem closing pooled connection", e);
+            }
+        }
+    }
+}
@@ -58,6 +58,7 @@ import java.net.InetAddress;
 import java.net.URISyntaxException;
 import java.util.Properties;
 import java.util.concurrent.Callable;
+import java.util.function.LongSupplier;
 
 public class SimpleConnectionManager implements ConnectionManager {
     private static final Logger LOG = Logger.getInstance(SimpleConnectionManager.class);
@@ -70,23 +71,72 @@ public class SimpleConnectionManager implements ConnectionManager {
 
     private static final char[] EMPTY_PASSWORD = new char[0];
 
+    // The client spec can be changed outside of a pooled connection, so the client fetched
+    // by the connection is only reused for this long before it's fetched again.
+    static final long CLIENT_SPEC_MAX_AGE_MILLIS = 60_000;
+
     private final File tmpDir;
     private int socketSoTimeoutMillis;
     private final String pluginVersion;
     private final P4RequestErrorHandler errorHandler;
+    private final ServerConnectionPool<PooledServer> pool;
 
+    /**
+     * Creates a connection manager that opens a new connection for every request, and
+     * closes it when the request completes.
+     */
     public SimpleConnectionManager(File tmpDir, int socketSoTimeoutMillis, String pluginVersion,
             P4RequestErrorHandler errorHandler) {
+        this(tmpDir, socketSoTimeoutMillis, pluginVersion, errorHandler, 0, 0);
+    }
+
+    /**
+     * Creates a connection manager that keeps authenticated connections open after a request
+     * completes, so that later requests with the same server, user, and client can reuse them.
+     *
+     * @param maxIdleConnections maximum number of idle connections kept for each
+     *      server / user / client combination; 0 turns off pooling.
+     * @param idleTimeoutMillis how long an idle connection is kept before it is closed.
+     */
+    public SimpleConnectionManager(File tmpDir, int socketSoTimeoutMillis, String pluginVersion,
+            P4RequestErrorHandler errorHandler, int maxIdleConnections, long idleTimeoutMillis) {
         this.tmpDir = tmpDir;
         this.socketSoTimeoutMillis = socketSoTimeoutMillis;
         this.pluginVersion = pluginVersion;
         this.errorHandler = errorHandler;
+        this.pool = new ServerConnectionPool<>(new ServerConnectionPool.ConnectionHandler<>() {
+            @Override
+            public boolean isUsable(@NotNull PooledServer connection) {
+                return connection.server.isConnected();
+            }
+
+            @Override
+            public void close(@NotNull PooledServer connection) {
+                SimpleConnectionManager.this.close(connection.server);
+            }
+        }, maxIdleConnections, idleTimeoutMillis);
     }
 
 
     public void setSocketSoTimeoutMillis(int socketSoTimeoutMillis) {
         this.socketSoTimeoutMillis = socketSoTimeoutMillis;
-        // If this ever caches the connection, then the connection should be closed here.
+        // The timeout is set when the connection is created, so the existing connections
+        // must be closed for the new value to take effect.
+        pool.invalidateAll();
+    }
+
+
+    public void setPoolLimits(int maxIdleConnections, long idleTimeoutMillis) {
+        pool.setLimits(maxIdleConnections, idleTimeoutMillis);
+    }
+
+
+    /**
+     * Close all the pooled connections, so that later requests must connect and
+     * authenticate again.
+     */
+    public void disconnectAll() {
+        pool.invalidateAll();
     }
 
 
@@ -109,23 +159,21 @@ public class SimpleConnectionManager implements ConnectionManager {
                     if (passwdStr == null || passwdStr.isEmpty()) {
                         passwdStr = null;
                     }
-                    final IOptionsServer server = connect(
-                            new OptionalClientServerConfig(config),
-                            passwdStr,
-                            createProperties(config, cwd));
-                    try {
-                        IClient client = server.getClient(config.getClientname());
-                        if (client == null) {
-                            throw new NotOnServerException("client", config.getClientname());
-                        }
-                        if (LOG.isDebugEnabled()) {
-                            LOG.debug("Connected to client " + client.getName());
-                        }
-                        server.setCurrentClient(client);
-                        return fun.func(client);
-                    } finally {
-                        close(server);
-                    }
+                    final ServerConnectionPool.Key key = new ServerConnectionPool.Key(
+                            config.getServerConfig().getServerName(), "client:" + config.getClientServerUniqueId());
+                    final String loginPassword = passwdStr;
+                    return withPooled(key,
+                            () -> new PooledServer(connect(
+                                    new OptionalClientServerConfig(config),
+                                    loginPassword,
+                                    createProperties(config, cwd))),
+                            (pooled, reused) -> {
+                                if (reused) {
+                                    // The working directory is the only per-request connection property.
+                                    pooled.server.setWorkingDirectory(cwd == null ? null : cwd.getAbsolutePath());
+                                }
+                                return fun.func(pooled.getClient(config.getClientname()));
+                            });
                 }));
     }
 
@@ -149,18 +197,19 @@ public class SimpleConnectionManager implements ConnectionManager {
                     } else {
                         props = createProperties(config.getServerConfig());
                     }
-                    final IOptionsServer server = connect(config, passwdStr, props);
-                    try {
-                        if (LOG.isDebugEnabled()) {
-                            LOG.debug("Running invocation for " + fun);
-                        }
-                        return fun.func(server);
-                    } finally {
-                        if (LOG.isDebugEnabled()) {
-                            LOG.debug("Closing connection to server " + config.getServerName());
-                        }
-                        close(server);
-                    }
+                    final ServerConnectionPool.Key key = new ServerConnectionPool.Key(config.getServerName(),
+                            config.getClientConfig() != null
+                                    ? "server-client:" + config.getClientConfig().getClientServerUniqueId()
+                                    : "server:" + config.getServerConfig().getServerId());
+                    final String loginPassword = passwdStr;
+                    return withPooled(key,
+                            () -> new PooledServer(connect(config, loginPassword, props)),
+                            (pooled, reused) -> {
+                                if (LOG.isDebugEnabled()) {
+                                    LOG.debug("Running invocation for " + fun);
+                                }
+                                return fun.func(pooled.server);
+                            });
                 }));
     }
 
@@ -183,8 +232,7 @@ public class SimpleConnectionManager implements ConnectionManager {
 
     @Override
     public void disconnect(@NotNull P4ServerName config) {
-        // Does nothing, because the underlying implementation does
-        // not keep a pool of connections.
+        pool.invalidate(config);
     }
 
     private IOptionsServer connect(OptionalClientServerConfig config, String password, Properties props)
@@ -635,6 +683,102 @@ public class SimpleConnectionManager implements ConnectionManager {
     }
 
 
+    interface PooledFunc<R> {
+        R func(@NotNull PooledServer pooled, boolean reused)
+                throws Exception;
+    }
+
+
+    /**
+     * Run the function with a pooled connection if there is one, otherwise with a new connection.
+     * The pool only checks that an idle connection's socket is still open, so the server may
+     * have dropped the connection or expired its login in the meantime.  Those failures happen
+     * before the server runs the command, so the function is run once more with a new connection.
+     */
+    <R> R withPooled(@NotNull ServerConnectionPool.Key key, @NotNull Callable<PooledServer> connector,
+            @NotNull PooledFunc<R> fun)
+            throws Exception {
+        PooledServer pooled = pool.borrow(key);
+        if (pooled != null) {
+            try {
+                return runPooled(key, pooled, true, fun);
+            } catch (ConnectionException | AccessException e) {
+                LOG.info("Pooled connection for " + key + " failed; retrying with a new connection", e);
+            }
+        }
+        return runPooled(key, connector.call(), false, fun);
+    }
+
+
+    private <R> R runPooled(@NotNull ServerConnectionPool.Key key, @NotNull PooledServer pooled, boolean reused,
+            @NotNull PooledFunc<R> fun)
+            throws Exception {
+        boolean reusable = false;
+        try {
+            R ret = fun.func(pooled, reused);
+            reusable = true;
+            return ret;
+        } finally {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Finished with connection " + key);
+            }
+            closeOrRelease(key, pooled, reusable);
+        }
+    }
+
+
+    private void closeOrRelease(@NotNull ServerConnectionPool.Key key, @NotNull PooledServer pooled,
+            boolean reusable) {
+        // A request that failed may have left the connection in an unknown state
+        // (half-read results, expired login), so only successful connections are reused.
+        if (reusable && pool.isEnabled()) {
+            pool.release(key, pooled);
+        } else {
+            close(pooled.server);
+        }
+    }
+
+
+    static class PooledServer {
+        final IOptionsServer server;
+        private final LongSupplier clock;
+        private IClient client;
+        private long clientFetchedAt;
+
+        PooledServer(@NotNull IOptionsServer server) {
+            this(server, System::currentTimeMillis);
+        }
+
+        PooledServer(@NotNull IOptionsServer server, @NotNull LongSupplier clock) {
+            this.server = server;
+            this.clock = clock;
+        }
+
+        /**
+         * Get the connection's current client, fetching it from the server the first time,
+         * and again once the fetched client is older than {@link #CLIENT_SPEC_MAX_AGE_MILLIS}.
+         */
+        @NotNull
+        IClient getClient(@NotNull String clientname)
+                throws P4JavaException {
+            final long now = clock.getAsLong();
+            if (client == null || now - clientFetchedAt >= CLIENT_SPEC_MAX_AGE_MILLIS) {
+                IClient fetched = server.getClient(clientname);
+                if (fetched == null) {
+                    throw new NotOnServerException("client", clientname);
+                }
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Connected to client " + fetched.getName());
+                }
+                server.setCurrentClient(fetched);
+                client = fetched;
+                clientFetchedAt = now;
+            }
+            return client;
+        }
+    }
+
+
     private void close(@NotNull final IServer server) {
         try {
             server.disconnect();
@@ -0,0 +1,227 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.groboclown.p4.server.impl.connection.impl;
+
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * Holds file contents streamed from the server.  Small contents stay in memory;
+ * once the contents grow past the threshold, they're moved into a temporary
+ * file, so a large file never needs a growing in-memory buffer plus a copy of
+ * it at the same time.
+ * <p>
+ * Write all the contents first, then read them as many times as needed.  Closing
+ * the buffer removes the temporary file.  The temporary file goes into the connection's
+ * temporary directory, if one is given.
+ */
+public class SpillingContentBuffer
+        extends OutputStream {
+    private static final Logger LOG = Logger.getInstance(SpillingContentBuffer.class);
+
+    public static final int DEFAULT_MEMORY_THRESHOLD = 1024 * 1024;
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    private final int memoryThreshold;
+    private final File tempDir;
+    private byte[] memory = new byte[256];
+    private int memorySize;
+    private File spillFile;
+    private OutputStream spillOut;
+    private long size;
+
+
+    /**
+     * @param tempDir directory for the temporary file, or null to use the system default.
+     */
+    public SpillingContentBuffer(@Nullable File tempDir) {
+        this(DEFAULT_MEMORY_THRESHOLD, tempDir);
+    }
+
+    public SpillingContentBuffer(int memoryThreshold, @Nullable File tempDir) {
+        this.memoryThreshold = memoryThreshold;
+        this.tempDir = tempDir;
+    }
+
+
+    /**
+     * Copy the stream into the buffer, stopping once the limit is passed.  The stream
+     * is not closed.
+     *
+     * @return the number of bytes copied.
+     */
+    public long copyFrom(@NotNull InputStream inp, long limit)
+            throws IOException {
+        byte[] buff = new byte[READ_BUFFER_SIZE];
+        long start = size;
+        int len;
+        while (size - start < limit && (len = inp.read(buff, 0, buff.length)) > 0) {
+            write(buff, 0, len);
+        }
+        return size - start;
+    }
+
+
+    @Override
+    public void write(int b)
+            throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+
+    @Override
+    public void write(@NotNull byte[] b, int off, int len)
+            throws IOException {
+        if (spillOut == null && memorySize + (long) len > memoryThreshold) {
+            spill();
+        }
+        if (spillOut != null) {
+            spillOut.write(b, off, len);
+        } else {
+            if (memorySize + len > memory.length) {
+                memory = Arrays.copyOf(memory,
+                        (int) Math.min(memoryThreshold, Math.max(memory.length * 2L, memorySize + (long) len)));
+            }
+            System.arraycopy(b, off, memory, memorySize, len);
+            memorySize += len;
+        }
+        size += len;
+    }
+
+
+    @Override
+    public void flush()
+            throws IOException {
+        if (spillOut != null) {
+            spillOut.flush();
+        }
+    }
+
+
+    public long size() {
+        return size;
+    }
+
+
+    public boolean isSpilled() {
+        return spillFile != null;
+    }
+
+
+    @NotNull
+    public InputStream openStream()
+            throws IOException {
+        if (spillFile == null) {
+            return new ByteArrayInputStream(memory, 0, memorySize);
+        }
+        spillOut.flush();
+        return Files.newInputStream(spillFile.toPath());
+    }
+
+
+    @NotNull
+    public Reader openReader(@NotNull Charset charset)
+            throws IOException {
+        return new InputStreamReader(openStream(), charset);
+    }
+
+
+    @NotNull
+    public byte[] toByteArray()
+            throws IOException {
+        if (spillFile == null) {
+            return memorySize == memory.length ? memory.clone() : Arrays.copyOf(memory, memorySize);
+        }
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IOException("Contents too large: " + size);
+        }
+        spillOut.flush();
+        // Reads straight into an array of the exact size.
+        return Files.readAllBytes(spillFile.toPath());
+    }
+
+
+    /**
+     * Decode the contents into a string.  Spilled contents are decoded from the file,
+     * so the raw bytes are never all in memory along with the text.
+     */
+    @NotNull
+    public String toString(@NotNull Charset charset)
+            throws IOException {
+        if (spillFile == null) {
+            return new String(memory, 0, memorySize, charset);
+        }
+        // Every supported charset uses at least one byte per character, so the size
+        // is enough to hold the whole text without growing.
+        StringBuilder sb = new StringBuilder((int) Math.min(size, Integer.MAX_VALUE - 8));
+        try (Reader reader = openReader(charset)) {
+            char[] buff = new char[READ_BUFFER_SIZE];
+            int len;
+            while ((len = reader.read(buff, 0, buff.length)) > 0) {
+                sb.append(buff, 0, len);
+            }
+        }
+        return sb.toString();
+    }
+
+
+    @Override
+    public void close() {
+        if (spillOut != null) {
+            try {
+                spillOut.close();
+            } catch (IOException e) {
+                LOG.debug("Problem closing " + spillFile, e);
+            }
+            spillOut = null;
+        }
+        if (spillFile != null) {
+            if (!spillFile.delete() && spillFile.exists()) {
+                LOG.warn("Could not remove temporary file " + spillFile);
+            }
+            spillFile = null;
+        }
+        memory = new byte[0];
+        memorySize = 0;
+        size = 0;
+    }
+
+
+    private void spill()
+            throws IOException {
+        if (tempDir != null && !tempDir.isDirectory() && !tempDir.mkdirs()) {
+            // Let the temp file creation report the problem.
+            LOG.warn("Could not create temporary directory " + tempDir);
+        }
+        spillFile = File.createTempFile("p4content", ".tmp", tempDir);
+        spillOut = new BufferedOutputStream(Files.newOutputStream(spillFile.toPath()), READ_BUFFER_SIZE);
+        spillOut.write(memory, 0, memorySize);
+        memory = new byte[0];
+        memorySize = 0;
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.groboclown.p4.server.impl.ignore;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.newvfs.events.VFileContentChangeEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileCopyEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileCreateEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileDeleteEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileMoveEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFilePropertyChangeEvent;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared cache of the parsed ignore files, and of the ignore file that applies to each
+ * directory.  The parsed files are checked against the ignore file's modification stamp
+ * on every lookup, while the directory lookups must be invalidated through
+ * {@link #fileSystemChanged(List)} when files are created, removed, or renamed.
+ * <p>
+ * A lookup can race with an invalidation, so every invalidation bumps a generation counter,
+ * and a lookup that sees the counter change drops what it just stored.
+ */
+public class IgnoreFileCache {
+    private static final Logger LOG = Logger.getInstance(IgnoreFileCache.class);
+
+    // Placeholder for "this directory, and all its parents, have no ignore file".
+    private static final Nearest NO_IGNORE_FILE = new Nearest(null);
+
+    private final Map<VirtualFile, Parsed> parsed = new ConcurrentHashMap<>();
+
+    // ignore file name -> directory -> nearest ignore file
+    private final Map<String, Map<VirtualFile, Nearest>> nearest = new ConcurrentHashMap<>();
+
+    private final AtomicInteger generation = new AtomicInteger();
+
+
+    private static class Parsed {
+        final long modificationStamp;
+        final IgnoreFileSet fileSet;
+
+        private Parsed(long modificationStamp, @NotNull IgnoreFileSet fileSet) {
+            this.modificationStamp = modificationStamp;
+            this.fileSet = fileSet;
+        }
+    }
+
+
+    private static class Nearest {
+        final VirtualFile ignoreFile;
+
+        private Nearest(@Nullable VirtualFile ignoreFile) {
+            this.ignoreFile = ignoreFile;
+        }
+    }
+
+
+    /**
+     * Find the closest ignore file in the parent directories of the path.
+     *
+     * @param path file or directory to check.
+     * @param ignoreFileName name of the ignore files.
+     * @return the ignore file, or null if none of the parent directories contains one.
+     */
+    @Nullable
+    public VirtualFile getIgnoreFileForPath(@NotNull VirtualFile path, @NotNull String ignoreFileName) {
+        final int startGeneration = generation.get();
+        final Map<VirtualFile, Nearest> dirs = nearest.computeIfAbsent(ignoreFileName,
+                k -> new ConcurrentHashMap<>());
+
+        // Walk up the tree until a cached directory is found, then record the answer for
+        // every directory passed along the way.
+        final List<VirtualFile> visited = new ArrayList<>();
+        Nearest found = null;
+        VirtualFile prevDir = path;
+        VirtualFile f = prevDir.getParent();
+        while (f != null && f.isDirectory() && !f.equals(prevDir)) {
+            found = dirs.get(f);
+            if (found != null) {
+                break;
+            }
+            visited.add(f);
+            VirtualFile ignoreFile = f.findChild(ignoreFileName);
+            if (ignoreFile != null && ignoreFile.exists() && !ignoreFile.isDirectory()) {
+                found = new Nearest(ignoreFile);
+                break;
+            }
+            prevDir = f;
+            f = f.getParent();
+        }
+        if (found == null) {
+            found = NO_IGNORE_FILE;
+        }
+        for (VirtualFile dir : visited) {
+            dirs.put(dir, found);
+        }
+        if (generation.get() != startGeneration) {
+            // The file system changed during the walk, so the answer may be stale; it's still
+            // returned, but not kept.
+            for (VirtualFile dir : visited) {
+                dirs.remove(dir, found);
+            }
+        }
+        return found.ignoreFile;
+    }
+
+
+    /**
+     * Get the parsed ignore file, re-reading it if it changed since it was last loaded.
+     *
+     * @param ignoreFile ignore file to parse
+     * @return the parsed ignore file contents.
+     * @throws IOException if the file could not be read.
+     */
+    @NotNull
+    public IgnoreFileSet getIgnoreFileSet(@NotNull VirtualFile ignoreFile)
+            throws IOException {
+        final int startGeneration = generation.get();
+        final long stamp = ignoreFile.getModificationStamp();
+        Parsed ret = parsed.get(ignoreFile);
+        if (ret == null || ret.modificationStamp != stamp) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Loading ignore file " + ignoreFile + " (stamp " + stamp + ")");
+            }
+            ret = new Parsed(stamp, IgnoreFileSet.create(ignoreFile));
+            parsed.put(ignoreFile, ret);
+            if (generation.get() != startGeneration) {
+                parsed.remove(ignoreFile, ret);
+            }
+        }
+        return ret.fileSet;
+    }
+
+
+    /**
+     * Drop the cached entries affected by the file system changes.
+     *
+     * @param events file system events, as reported after the changes happened.
+     */
+    public void fileSystemChanged(@NotNull List<? extends VFileEvent> events) {
+        for (VFileEvent event : events) {
+            if (event instanceof VFileContentChangeEvent) {
+                // The modification stamp check would catch this, but there's no reason to
+                // keep the old contents around.
+                generation.incrementAndGet();
+                parsed.remove(((VFileContentChangeEvent) event).getFile());
+            } else if (event instanceof VFileCreateEvent) {
+                nameChanged(((VFileCreateEvent) event).getChildName());
+            } else if (event instanceof VFileCopyEvent) {
+                nameChanged(((VFileCopyEvent) event).getNewChildName());
+            } else if (event instanceof VFilePropertyChangeEvent) {
+                VFilePropertyChangeEvent propEvent = (VFilePropertyChangeEvent) event;
+                if (propEvent.isRename()) {
+                    if (propEvent.getFile().isDirectory()) {
+                        clear();
+                    } else {
+                        nameChanged(String.valueOf(propEvent.getOldValue()));
+                        nameChanged(String.valueOf(propEvent.getNewValue()));
+                    }
+                }
+            } else if (event instanceof VFileDeleteEvent || event instanceof VFileMoveEvent) {
+                VirtualFile file = event.getFile();
+                if (file == null || file.isDirectory()) {
+                    // A whole tree changed; any of the directories in it may be cached.
+                    clear();
+                } else {
+                    nameChanged(file.getName());
+                }
+            }
+        }
+    }
+
+
+    public void clear() {
+        generation.incrementAndGet();
+        parsed.clear();
+        nearest.clear();
+    }
+
+
+    private void nameChanged(@NotNull String name) {
+        generation.incrementAndGet();
+        Map<VirtualFile, Nearest> dirs = nearest.get(name);
+        if (dirs != null) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Ignore file " + name + " added or removed; clearing the directory cache");
+            }
+            dirs.clear();
+            parsed.keySet().removeIf((f) -> name.equals(f.getName()));
+        }
+    }
+}
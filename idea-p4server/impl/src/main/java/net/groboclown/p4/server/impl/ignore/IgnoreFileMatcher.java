@@ -0,0 +1,403 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.groboclown.p4.server.impl.ignore;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Runs all the patterns from an ignore file at the same time, one path element at a time.
+ * <p>
+ * Each {@link IgnoreFilePattern} is a deterministic chain of {@link IgnoreFilePattern.PathPart}
+ * objects, so the combined position of every pattern (along with the first pattern that
+ * already matched) forms a single state.  States are built lazily and shared, and the
+ * transitions out of a state are remembered per path element name, so the directory
+ * elements common to many paths are only evaluated once.  Within a state, the exact name
+ * and "*.ext" matches are looked up by name rather than checked one at a time, and the
+ * last path element only looks for the first complete match.
+ * <p>
+ * The result is the same as checking each pattern in order and using the first one that
+ * matches.
+ */
+class IgnoreFileMatcher {
+    // Stop remembering transitions out of a single state after this many distinct names,
+    // so that scanning a huge tree doesn't keep every file name around.
+    private static final int MAX_TRANSITIONS_PER_STATE = 4096;
+    // Stop sharing new states after this many.  Past the limit, states are still built as
+    // needed, but they are thrown away after use, so that a pathological ignore file can't
+    // make the matcher grow without bound.
+    private static final int DEFAULT_MAX_STATES = 16384;
+    private static final int NO_MATCH = Integer.MAX_VALUE;
+
+    private final List<IgnoreFilePattern> patterns;
+    private final Map<StateKey, State> states = new ConcurrentHashMap<>();
+    private final int maxStates;
+    private final State start;
+
+
+    IgnoreFileMatcher(@NotNull List<IgnoreFilePattern> patterns) {
+        this(patterns, DEFAULT_MAX_STATES);
+    }
+
+
+    // Visible for testing
+    IgnoreFileMatcher(@NotNull List<IgnoreFilePattern> patterns, int maxStates) {
+        this.maxStates = Math.max(1, maxStates);
+        this.patterns = Collections.unmodifiableList(new ArrayList<>(patterns));
+        int[] indicies = new int[patterns.size()];
+        IgnoreFilePattern.PathPart[] parts = new IgnoreFilePattern.PathPart[patterns.size()];
+        for (int i = 0; i < indicies.length; i++) {
+            indicies[i] = i;
+            parts[i] = patterns.get(i).getRootPart();
+        }
+        this.start = intern(new StateKey(indicies, parts, NO_MATCH));
+    }
+
+
+    /**
+     * @param pathParts the path of the file to check, relative to the source ignore file.
+     * @return true if the first pattern that matches the path is an ignore pattern.
+     */
+    boolean isIgnored(@NotNull List<String> pathParts) {
+        final int size = pathParts.size();
+        State state = start;
+        for (int i = 0; i < size - 1 && !state.isDecided(); i++) {
+            state = state.next(pathParts.get(i));
+        }
+        int firstMatch = state.key.firstMatch;
+        if (size > 0 && !state.isDecided()) {
+            firstMatch = state.lastElementMatch(pathParts.get(size - 1));
+        }
+        return firstMatch != NO_MATCH && patterns.get(firstMatch).isIgnoreMatchType();
+    }
+
+
+    // Visible for testing
+    int getStateCount() {
+        return states.size();
+    }
+
+
+    @NotNull
+    private State intern(@NotNull StateKey key) {
+        State ret = states.get(key);
+        if (ret == null) {
+            if (states.size() >= maxStates) {
+                return new State(key, false);
+            }
+            ret = states.computeIfAbsent(key, (k) -> new State(k, true));
+        }
+        return ret;
+    }
+
+
+    @NotNull
+    private static String foldCase(@NotNull String name) {
+        // Same equivalence as String.equalsIgnoreCase
+        char[] chars = name.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+        }
+        return new String(chars);
+    }
+
+
+    /**
+     * The patterns still being matched, sorted by pattern index, plus the first pattern that
+     * completely matched.  Patterns after the first match can never change the result, so
+     * they are not included.
+     */
+    private static final class StateKey {
+        final int[] indicies;
+        final IgnoreFilePattern.PathPart[] parts;
+        final int firstMatch;
+        final int hash;
+
+        private StateKey(@NotNull int[] indicies, @NotNull IgnoreFilePattern.PathPart[] parts, int firstMatch) {
+            this.indicies = indicies;
+            this.parts = parts;
+            this.firstMatch = firstMatch;
+            int h = firstMatch;
+            for (int i = 0; i < indicies.length; i++) {
+                h = 31 * h + indicies[i];
+                h = 31 * h + System.identityHashCode(parts[i]);
+            }
+            this.hash = h;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            StateKey that = (StateKey) o;
+            if (hash != that.hash || firstMatch != that.firstMatch || !Arrays.equals(indicies, that.indicies)) {
+                return false;
+            }
+            for (int i = 0; i < parts.length; i++) {
+                // Parts are compared by identity; they are shared between states.
+                if (parts[i] != that.parts[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+
+    private final class State {
+        final StateKey key;
+
+        // False if this state is not kept in the shared states, so nothing should keep a
+        // reference to it.
+        final boolean shared;
+
+        // The live parts, split up into exact name matches, "*.ext" matches, and everything
+        // else, so that a name only needs to be checked against the parts that could match it.
+        // A "**" part in front of an exact or extension match is filed under the part after it;
+        // when that doesn't match, the "**" part just stays where it is.
+        // The int arrays are sorted positions within the key arrays.
+        final Map<String, int[]> exactMatches;
+        final Map<String, int[]> exactMatchesIgnoreCase;
+        final Map<String, int[]> extensionMatches;
+        final Map<String, int[]> extensionMatchesIgnoreCase;
+        final int[] otherMatches;
+        final boolean[] sticky;
+
+        final Map<String, State> transitions = new ConcurrentHashMap<>();
+
+        State(@NotNull StateKey key, boolean shared) {
+            this.key = key;
+            this.shared = shared;
+            this.sticky = new boolean[key.parts.length];
+            Map<String, List<Integer>> exact = new HashMap<>();
+            Map<String, List<Integer>> exactIgnoreCase = new HashMap<>();
+            Map<String, List<Integer>> extension = new HashMap<>();
+            Map<String, List<Integer>> extensionIgnoreCase = new HashMap<>();
+            List<Integer> others = new ArrayList<>();
+            for (int i = 0; i < key.parts.length; i++) {
+                IgnoreFilePattern.PathPart part = key.parts[i];
+                if (part instanceof IgnoreFilePattern.StrictStarStarPart && part.next != null) {
+                    sticky[i] = true;
+                    part = part.next;
+                }
+                String ext;
+                if (part instanceof IgnoreFilePattern.ExactMatchPart) {
+                    IgnoreFilePattern.ExactMatchPart exactPart = (IgnoreFilePattern.ExactMatchPart) part;
+                    if (exactPart.isCaseInsensitive()) {
+                        exactIgnoreCase.computeIfAbsent(foldCase(exactPart.getMatch()), k -> new ArrayList<>()).add(i);
+                    } else {
+                        exact.computeIfAbsent(exactPart.getMatch(), k -> new ArrayList<>()).add(i);
+                    }
+                } else if (part instanceof IgnoreFilePattern.StarMatchPart
+                        && (ext = getExtension((IgnoreFilePattern.StarMatchPart) part)) != null) {
+                    (((IgnoreFilePattern.StarMatchPart) part).isCaseInsensitive() ? extensionIgnoreCase : extension)
+                            .computeIfAbsent(ext, k -> new ArrayList<>()).add(i);
+                } else {
+                    sticky[i] = false;
+                    others.add(i);
+                }
+            }
+            exactMatches = toArrayMap(exact);
+            exactMatchesIgnoreCase = toArrayMap(exactIgnoreCase);
+            extensionMatches = toArrayMap(extension);
+            extensionMatchesIgnoreCase = toArrayMap(extensionIgnoreCase);
+            otherMatches = toArray(others);
+        }
+
+        boolean isDecided() {
+            return key.indicies.length <= 0;
+        }
+
+        @NotNull
+        State next(@NotNull String name) {
+            State ret = transitions.get(name);
+            if (ret == null) {
+                ret = intern(computeNext(name));
+                if (ret.shared && transitions.size() < MAX_TRANSITIONS_PER_STATE) {
+                    transitions.put(name, ret);
+                }
+            }
+            return ret;
+        }
+
+        /**
+         * Find the first pattern that matches when the name is the last element of the path.
+         * This is used instead of {@link #next(String)} for the last element, because file names
+         * are rarely shared, and there's no need to build the state after it.
+         *
+         * @param name last path element
+         * @return the pattern index of the first match, or {@link #NO_MATCH}.
+         */
+        int lastElementMatch(@NotNull String name) {
+            for (int pos : getCandidates(name)) {
+                int index = key.indicies[pos];
+                if (index > key.firstMatch) {
+                    break;
+                }
+                if (key.parts[pos].match(name).isLastElementMatch) {
+                    return index;
+                }
+            }
+            return key.firstMatch;
+        }
+
+        @NotNull
+        private int[] getCandidates(@NotNull String name) {
+            // Positions (within this state's key) that can possibly match the name.
+            int[] candidates = otherMatches;
+            if (!exactMatches.isEmpty()) {
+                candidates = merge(candidates, exactMatches.get(name));
+            }
+            if (!exactMatchesIgnoreCase.isEmpty()) {
+                candidates = merge(candidates, exactMatchesIgnoreCase.get(foldCase(name)));
+            }
+            if (!extensionMatches.isEmpty()) {
+                candidates = merge(candidates, extensionMatches.get(getExtension(name)));
+            }
+            if (!extensionMatchesIgnoreCase.isEmpty()) {
+                // Same conversion as the StarMatchPart.
+                candidates = merge(candidates, extensionMatchesIgnoreCase.get(getExtension(name.toLowerCase())));
+            }
+            return candidates;
+        }
+
+        @NotNull
+        private StateKey computeNext(@NotNull String name) {
+            final int[] candidates = getCandidates(name);
+            final int size = key.parts.length;
+            int firstMatch = key.firstMatch;
+            int[] nextIndicies = new int[size];
+            IgnoreFilePattern.PathPart[] nextParts = new IgnoreFilePattern.PathPart[size];
+            int count = 0;
+            int ci = 0;
+            for (int pos = 0; pos < size; pos++) {
+                int index = key.indicies[pos];
+                if (index > firstMatch) {
+                    // Positions are in pattern order, so nothing after this can matter.
+                    break;
+                }
+                if (ci < candidates.length && candidates[ci] == pos) {
+                    ci++;
+                    IgnoreFilePattern.PathNameMatchResult result = key.parts[pos].match(name);
+                    if (result.isLastElementMatch) {
+                        firstMatch = index;
+                    } else if (result.isMatch && result.next != null) {
+                        nextIndicies[count] = index;
+                        nextParts[count] = result.next;
+                        count++;
+                    }
+                } else if (sticky[pos]) {
+                    // "**" followed by a part that can't match this name.
+                    nextIndicies[count] = index;
+                    nextParts[count] = key.parts[pos];
+                    count++;
+                }
+            }
+            // Remove the patterns that come after the new first match.
+            while (count > 0 && nextIndicies[count - 1] > firstMatch) {
+                count--;
+            }
+            return new StateKey(Arrays.copyOf(nextIndicies, count), Arrays.copyOf(nextParts, count), firstMatch);
+        }
+    }
+
+
+    /**
+     * @return the ".ext" that a "*.ext" pattern part requires the name to end with, or null if the
+     *      part is some other kind of star match.
+     */
+    @Nullable
+    private static String getExtension(@NotNull IgnoreFilePattern.StarMatchPart part) {
+        if (part.matches.length != 2 || !"*".equals(part.matches[0])) {
+            return null;
+        }
+        String ext = part.matches[1];
+        if (ext.length() < 2 || ext.charAt(0) != '.' || ext.indexOf('.', 1) >= 0) {
+            return null;
+        }
+        return ext;
+    }
+
+
+    @Nullable
+    private static String getExtension(@NotNull String name) {
+        int pos = name.lastIndexOf('.');
+        return pos < 0 ? null : name.substring(pos);
+    }
+
+
+    @NotNull
+    private static Map<String, int[]> toArrayMap(@NotNull Map<String, List<Integer>> values) {
+        if (values.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, int[]> ret = new HashMap<>();
+        values.forEach((k, v) -> ret.put(k, toArray(v)));
+        return ret;
+    }
+
+
+    @NotNull
+    private static int[] toArray(@NotNull List<Integer> values) {
+        int[] ret = new int[values.size()];
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = values.get(i);
+        }
+        return ret;
+    }
+
+
+    // Merge two sorted position lists.
+    @NotNull
+    private static int[] merge(@NotNull int[] a, @Nullable int[] b) {
+        if (b == null || b.length <= 0) {
+            return a;
+        }
+        if (a.length <= 0) {
+            return b;
+        }
+        int[] ret = new int[a.length + b.length];
+        int ai = 0;
+        int bi = 0;
+        int ri = 0;
+        while (ai < a.length && bi < b.length) {
+            ret[ri++] = a[ai] <= b[bi] ? a[ai++] : b[bi++];
+        }
+        while (ai < a.length) {
+            ret[ri++] = a[ai++];
+        }
+        while (bi < b.length) {
+            ret[ri++] = b[bi++];
+        }
+        return ret;
+    }
+}
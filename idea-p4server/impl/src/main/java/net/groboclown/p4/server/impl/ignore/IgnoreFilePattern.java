@@ -161,6 +161,12 @@ public class IgnoreFilePattern {
     }
 
 
+    @NotNull
+    PathPart getRootPart() {
+        return rootPart;
+    }
+
+
     /**
      *
      * @param pathParts the path of the file to check, relative to the source ignore file.  Each
@@ -445,6 +451,15 @@ public class IgnoreFilePattern {
             this.caseInsensitive = caseInsensitive;
         }
 
+        @NotNull
+        String getMatch() {
+            return match;
+        }
+
+        boolean isCaseInsensitive() {
+            return caseInsensitive;
+        }
+
         @NotNull
         @Override
         PathNameMatchResult match(@NotNull String name) {
@@ -474,6 +489,10 @@ public class IgnoreFilePattern {
             }
         }
 
+        boolean isCaseInsensitive() {
+            return caseInsensitive;
+        }
+
         @NotNull
         @Override
         PathNameMatchResult match(@NotNull String name) {
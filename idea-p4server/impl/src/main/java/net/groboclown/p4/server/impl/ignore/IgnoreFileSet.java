@@ -25,12 +25,13 @@ import java.util.Collections;
 import java.util.List;
 
 /**
- * Checks if a file is ignored by scanning the {@link IgnoreFilePattern} list for each
- * line from an ignore file.
+ * Checks if a file is ignored by the {@link IgnoreFilePattern} list for each
+ * line from an ignore file.  The patterns are compiled into a single
+ * {@link IgnoreFileMatcher}.
  */
 public class IgnoreFileSet {
     private final VirtualFile ignoreDir;
-    private final List<IgnoreFilePattern> ignorePatterns;
+    private final IgnoreFileMatcher matcher;
 
     static IgnoreFileSet create(@NotNull VirtualFile ignoreFile)
             throws IOException {
@@ -44,7 +45,7 @@ public class IgnoreFileSet {
         if (ignoreDir == null || ! ignoreDir.isDirectory()) {
             throw new IllegalArgumentException("ignore file has no parent (" + ignoreFile + ")");
         }
-        this.ignorePatterns = Collections.unmodifiableList(new ArrayList<>(ignorePatterns));
+        this.matcher = new IgnoreFileMatcher(ignorePatterns);
     }
 
     /**
@@ -69,12 +70,7 @@ public class IgnoreFileSet {
         // If the file matches a not-ignored pattern, then immediately return false.
         // If the file matches a is-ignored pattern, then immediately return true.
         // If the file does not match any pattern, then return false.
-        for (IgnoreFilePattern pattern : ignorePatterns) {
-            if (pattern.matches(paths)) {
-                return pattern.isIgnoreMatchType();
-            }
-        }
-        return false;
+        return matcher.isIgnored(paths);
     }
 
     @NotNull
@@ -17,11 +17,13 @@ package net.groboclown.p4.server.impl.ignore;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.vcs.FilePath;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
 import net.groboclown.p4.server.api.config.ClientConfig;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
+import java.util.List;
 
 /**
  * A hybrid local cached file.  The ignore file is stored entirely on the client (it can be in Perforce,
@@ -29,8 +31,10 @@ import java.io.IOException;
  */
 public class IgnoreFiles {
     private static final Logger LOG = Logger.getInstance(IgnoreFiles.class);
+    private static final IgnoreFileCache SHARED_CACHE = new IgnoreFileCache();
 
     private final String ignoreFileName;
+    private final IgnoreFileCache cache;
 
     @NotNull
     public static IgnoreFiles forClient(@NotNull final ClientConfig config) {
@@ -41,8 +45,23 @@ public class IgnoreFiles {
         return new IgnoreFiles(ignoreFileName);
     }
 
+    /**
+     * Must be called when the file system changes, so that the cached ignore file
+     * locations and contents stay accurate.
+     *
+     * @param events file system events, reported after the changes happened.
+     */
+    public static void fileSystemChanged(@NotNull List<? extends VFileEvent> events) {
+        SHARED_CACHE.fileSystemChanged(events);
+    }
+
     public IgnoreFiles(@Nullable final String ignoreFileName) {
+        this(ignoreFileName, SHARED_CACHE);
+    }
+
+    IgnoreFiles(@Nullable final String ignoreFileName, @NotNull final IgnoreFileCache cache) {
         this.ignoreFileName = ignoreFileName;
+        this.cache = cache;
     }
 
     @Nullable
@@ -57,16 +76,7 @@ public class IgnoreFiles {
         }
         String ignoreFileName = getIgnoreFileName();
         if (ignoreFileName != null) {
-            VirtualFile prevDir = path;
-            VirtualFile f = prevDir.getParent();
-            while (f != null && f.isDirectory() && !f.equals(prevDir)) {
-                VirtualFile ignoreFile = f.findChild(ignoreFileName);
-                if (ignoreFile != null && ignoreFile.exists() && !ignoreFile.isDirectory()) {
-                    return ignoreFile;
-                }
-                prevDir = f;
-                f = f.getParent();
-            }
+            return cache.getIgnoreFileForPath(path, ignoreFileName);
         }
         return null;
     }
@@ -83,7 +93,9 @@ public class IgnoreFiles {
     }
 
     private boolean isMatch(@NotNull final FilePath file, @Nullable final VirtualFile ignoreFile) {
-        LOG.debug("Checking ignore status on " + file + " against ignore file " + ignoreFile);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Checking ignore status on " + file + " against ignore file " + ignoreFile);
+        }
         if (ignoreFile == null || ignoreFile.isDirectory()) {
             return false;
         }
@@ -92,11 +104,8 @@ public class IgnoreFiles {
             return false;
         }
 
-        // TODO look at caching these ignore file results.
-        // It would mean needing to be aware of file reload events, though.
-
         try {
-            final IgnoreFileSet patterns = IgnoreFileSet.create(ignoreFile);
+            final IgnoreFileSet patterns = cache.getIgnoreFileSet(ignoreFile);
             return patterns.isCoveredByIgnoreFile(vf) && patterns.isIgnored(vf);
         } catch (IOException e) {
             // problem reading; assume it's not ignored
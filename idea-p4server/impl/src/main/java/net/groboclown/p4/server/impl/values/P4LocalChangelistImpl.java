@@ -61,8 +61,9 @@ public class P4LocalChangelistImpl implements P4LocalChangelist {
             this.changelistId = cl.getChangelistId();
             this.comment = cl.getComment();
             this.deleted = cl.isDeleted();
-            this.containedFiles = cl.getFiles();
-            this.shelvedFiles = cl.getShelvedFiles();
+            // Copy the lists, so that changes to this builder don't alter the source.
+            this.containedFiles = new ArrayList<>(cl.getFiles());
+            this.shelvedFiles = new ArrayList<>(cl.getShelvedFiles());
             this.type = cl.getChangelistType();
             this.clientname = cl.getClientname();
             this.username = cl.getUsername();
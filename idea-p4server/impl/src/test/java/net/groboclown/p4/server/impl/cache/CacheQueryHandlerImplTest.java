@@ -13,13 +13,22 @@
  */
 package net.groboclown.p4.server.impl.cache;
 
+import net.groboclown.idea.altmock.MockFilePath;
 import net.groboclown.idea.extensions.IdeaLightweightExtension;
+import net.groboclown.idea.extensions.TemporaryFolder;
+import net.groboclown.idea.extensions.TemporaryFolderExtension;
 import net.groboclown.idea.mock.MockLocalChangeList;
 import net.groboclown.p4.server.api.cache.IdeChangelistMap;
 import net.groboclown.p4.server.api.commands.changelist.CreateChangelistAction;
 import net.groboclown.p4.server.api.commands.changelist.DeleteChangelistAction;
 import net.groboclown.p4.server.api.config.ClientConfig;
 import net.groboclown.p4.server.api.config.ServerConfig;
+import net.groboclown.p4.server.api.commands.file.AddEditAction;
+import net.groboclown.p4.server.api.commands.file.DeleteFileAction;
+import net.groboclown.p4.server.api.commands.file.RevertFileAction;
+import net.groboclown.p4.server.api.values.P4ChangelistId;
+import net.groboclown.p4.server.api.values.P4FileAction;
+import net.groboclown.p4.server.api.values.P4LocalFile;
 import net.groboclown.p4.server.api.config.part.MockConfigPart;
 import net.groboclown.p4.server.api.values.P4LocalChangelist;
 import net.groboclown.p4.server.impl.cache.store.ActionStore;
@@ -28,6 +37,7 @@ import net.groboclown.p4.server.impl.cache.store.ProjectCacheStore;
 import net.groboclown.p4.server.impl.values.P4ChangelistIdImpl;
 import net.groboclown.p4.server.impl.values.P4LocalChangelistImpl;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.api.extension.RegisterExtension;
 
 import java.util.ArrayList;
@@ -39,6 +49,7 @@ import static net.groboclown.idea.ExtAsserts.assertEmpty;
 import static net.groboclown.idea.ExtAsserts.assertSize;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 class CacheQueryHandlerImplTest {
     @RegisterExtension
@@ -162,6 +173,34 @@ class CacheQueryHandlerImplTest {
         assertEmpty(res2.getFiles());
     }
 
+    @Test
+    void getCachedOpenedChangelists_noCacheForClientPendingChangelistAdded()
+            throws InterruptedException {
+        MockConfigPart configPart = createConfigPart();
+        ServerConfig serverConfig = ServerConfig.createFrom(configPart);
+        ClientConfig clientConfig = ClientConfig.createFrom(serverConfig, configPart);
+        ProjectCacheStore projectStore = new ProjectCacheStore();
+        CacheQueryHandlerImpl query = new CacheQueryHandlerImpl(idea.getMockProject(), projectStore);
+
+        assertEmpty(query.getCachedOpenedChangelists(clientConfig));
+
+        // The client was never refreshed from the server, but a changelist is created while offline.
+        CreateChangelistAction addChangelistAction = new CreateChangelistAction(
+                clientConfig.getClientServerRef(), "my comment", "local-id");
+        MockLocalChangeList ideChangeList = new MockLocalChangeList();
+        ideChangeList.setName("id:123");
+        IdeChangelistMap ideChangelistMap = new IdeChangelistMapImpl(idea.getMockProject(),
+                projectStore.getChangelistCacheStore());
+        ideChangelistMap.setMapping(addChangelistAction, ideChangeList);
+        projectStore.addPendingAction(ActionStore.createPendingAction(
+                clientConfig.getClientServerRef(), addChangelistAction));
+
+        Collection<P4LocalChangelist> changes = query.getCachedOpenedChangelists(clientConfig);
+
+        assertSize(1, changes);
+        assertEquals("my comment", changes.iterator().next().getComment());
+    }
+
     @Test
     void getCachedOpenedChangelists_filesMovedAction() {
         // FIXME test
@@ -177,9 +216,54 @@ class CacheQueryHandlerImplTest {
         // FIXME test
     }
 
+    @ExtendWith(TemporaryFolderExtension.class)
     @Test
-    void getCachedOpenedFiles() {
-        // FIXME test
+    void getCachedOpenedFiles(TemporaryFolder tmpDir)
+            throws InterruptedException {
+        MockConfigPart configPart = createConfigPart();
+        ServerConfig serverConfig = ServerConfig.createFrom(configPart);
+        ClientConfig clientConfig = ClientConfig.createFrom(serverConfig, configPart);
+        ProjectCacheStore projectStore = new ProjectCacheStore();
+        CacheQueryHandlerImpl query = new CacheQueryHandlerImpl(idea.getMockProject(), projectStore);
+        MockFilePath f1 = new MockFilePath(tmpDir.newFile("f1.txt"));
+        MockFilePath f2 = new MockFilePath(tmpDir.newFile("f2.txt"));
+        P4ChangelistId defaultCl = new P4ChangelistIdImpl(0, clientConfig.getClientServerRef());
+
+        projectStore.writeActions((actions) -> actions.add(ActionStore.createPendingAction(
+                clientConfig.getClientServerRef(), new AddEditAction(f1, null, defaultCl, (String) null))));
+        Collection<P4LocalFile> files1 = query.getCachedOpenedFiles(clientConfig);
+        assertSize(1, files1);
+        assertEquals(f1, files1.iterator().next().getFilePath());
+        assertEquals(P4FileAction.ADD_EDIT, files1.iterator().next().getFileAction());
+
+        // Nothing changed, so the same view is returned.
+        assertSame(files1, query.getCachedOpenedFiles(clientConfig));
+
+        // Appended actions are applied to the existing view.
+        projectStore.writeActions((actions) -> actions.add(ActionStore.createPendingAction(
+                clientConfig.getClientServerRef(), new DeleteFileAction(f2, defaultCl))));
+        Collection<P4LocalFile> files2 = query.getCachedOpenedFiles(clientConfig);
+        assertSize(2, files2);
+
+        // Removed actions cause the view to be rebuilt.
+        projectStore.writeActions((actions) -> actions.remove(0));
+        Collection<P4LocalFile> files3 = query.getCachedOpenedFiles(clientConfig);
+        assertSize(1, files3);
+        assertEquals(f2, files3.iterator().next().getFilePath());
+        assertEquals(P4FileAction.DELETE, files3.iterator().next().getFileAction());
+
+        // A replaced action is a change to the pending actions, even though the list size is the same.
+        projectStore.writeActions((actions) -> actions.set(0, ActionStore.createPendingAction(
+                clientConfig.getClientServerRef(), new AddEditAction(f2, null, defaultCl, (String) null))));
+        Collection<P4LocalFile> files4 = query.getCachedOpenedFiles(clientConfig);
+        assertSize(1, files4);
+        assertEquals(P4FileAction.ADD_EDIT, files4.iterator().next().getFileAction());
+        assertSame(files4, query.getCachedOpenedFiles(clientConfig));
+
+        // A reverted file is removed from the view.
+        projectStore.writeActions((actions) -> actions.add(ActionStore.createPendingAction(
+                clientConfig.getClientServerRef(), new RevertFileAction(f2, false))));
+        assertEmpty(query.getCachedOpenedFiles(clientConfig));
     }
 
 
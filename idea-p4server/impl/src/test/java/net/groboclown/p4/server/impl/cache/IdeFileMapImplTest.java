@@ -0,0 +1,179 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.groboclown.p4.server.impl.cache;
+
+import com.intellij.openapi.vcs.FilePath;
+import net.groboclown.idea.altmock.MockFilePath;
+import net.groboclown.idea.extensions.IdeaLightweightExtension;
+import net.groboclown.idea.extensions.TemporaryFolder;
+import net.groboclown.idea.extensions.TemporaryFolderExtension;
+import net.groboclown.p4.server.api.ProjectConfigRegistry;
+import net.groboclown.p4.server.api.RootedClientConfig;
+import net.groboclown.p4.server.api.commands.file.AddEditAction;
+import net.groboclown.p4.server.api.commands.file.RevertFileAction;
+import net.groboclown.p4.server.api.config.ClientConfig;
+import net.groboclown.p4.server.api.config.ServerConfig;
+import net.groboclown.p4.server.api.config.part.MockConfigPart;
+import net.groboclown.p4.server.api.values.P4ChangelistId;
+import net.groboclown.p4.server.api.values.P4FileAction;
+import net.groboclown.p4.server.api.values.P4LocalFile;
+import net.groboclown.p4.server.impl.cache.store.ActionStore;
+import net.groboclown.p4.server.impl.cache.store.ClientQueryCacheStore;
+import net.groboclown.p4.server.impl.cache.store.ProjectCacheStore;
+import net.groboclown.p4.server.impl.values.P4ChangelistIdImpl;
+import net.groboclown.p4.server.impl.values.P4LocalFileImpl;
+import net.groboclown.p4.server.impl.values.P4RemoteFileImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static net.groboclown.idea.ExtAsserts.assertEmpty;
+import static net.groboclown.idea.ExtAsserts.assertSize;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(TemporaryFolderExtension.class)
+class IdeFileMapImplTest {
+    @RegisterExtension
+    IdeaLightweightExtension idea = new IdeaLightweightExtension();
+
+    private final List<RootedClientConfig> roots = new ArrayList<>();
+    private ProjectConfigRegistry registry;
+
+    @BeforeEach
+    void beforeEach() {
+        registry = mock(ProjectConfigRegistry.class);
+        when(registry.getRootedClientConfigs()).thenReturn(roots);
+        idea.registerProjectService(ProjectConfigRegistry.class, registry);
+    }
+
+
+    @Test
+    void lookupsFollowPendingActions(TemporaryFolder tmpDir)
+            throws InterruptedException {
+        ClientConfig clientConfig = addClient("client1");
+        ProjectCacheStore projectStore = new ProjectCacheStore();
+        CacheQueryHandlerImpl query = spy(new CacheQueryHandlerImpl(idea.getMockProject(), projectStore));
+        IdeFileMapImpl fileMap = new IdeFileMapImpl(idea.getMockProject(), query);
+        MockFilePath f1 = new MockFilePath(tmpDir.newFile("f1.txt"));
+        MockFilePath f2 = new MockFilePath(tmpDir.newFile("f2.txt"));
+        P4ChangelistId defaultCl = new P4ChangelistIdImpl(0, clientConfig.getClientServerRef());
+
+        projectStore.writeActions((actions) -> actions.add(ActionStore.createPendingAction(
+                clientConfig.getClientServerRef(), new AddEditAction(f1, null, defaultCl, (String) null))));
+        P4LocalFile opened1 = fileMap.forIdeFile(f1);
+        assertNotNull(opened1);
+        assertEquals(P4FileAction.ADD_EDIT, opened1.getFileAction());
+        assertNull(fileMap.forIdeFile(f2));
+
+        // Appended actions only update the files they change.
+        projectStore.writeActions((actions) -> actions.add(ActionStore.createPendingAction(
+                clientConfig.getClientServerRef(), new AddEditAction(f2, null, defaultCl, (String) null))));
+        assertNotNull(fileMap.forIdeFile(f2));
+        assertEquals(opened1, fileMap.forIdeFile(f1));
+        assertSize(2, fileMap.getLinkedFiles(clientConfig).collect(Collectors.toList()));
+
+        projectStore.writeActions((actions) -> actions.add(ActionStore.createPendingAction(
+                clientConfig.getClientServerRef(), new RevertFileAction(f1, false))));
+        assertNull(fileMap.forIdeFile(f1));
+        assertNotNull(fileMap.forIdeFile(f2));
+        assertSize(1, fileMap.getLinkedFiles().collect(Collectors.toList()));
+
+        // The full opened file list was only read when the index was first built; once by
+        // the index, and once to bring the cached view up to date.
+        verify(query, times(4)).getCachedOpenedFiles(clientConfig);
+    }
+
+    @Test
+    void queryCacheReplaced(TemporaryFolder tmpDir) {
+        ClientConfig clientConfig = addClient("client1");
+        ProjectCacheStore projectStore = new ProjectCacheStore();
+        CacheQueryHandlerImpl query = new CacheQueryHandlerImpl(idea.getMockProject(), projectStore);
+        IdeFileMapImpl fileMap = new IdeFileMapImpl(idea.getMockProject(), query);
+        MockFilePath f1 = new MockFilePath(tmpDir.newFile("f1.txt"));
+        P4LocalFile opened = new P4LocalFileImpl.Builder()
+                .withLocal(f1)
+                .withDepot(new P4RemoteFileImpl("//depot/f1.txt", "//depot/f1.txt", null))
+                .withAction(P4FileAction.EDIT)
+                .withChangelist(new P4ChangelistIdImpl(0, clientConfig.getClientServerRef()))
+                .build();
+        ClientQueryCacheStore clientStore = new ClientQueryCacheStore(clientConfig.getClientServerRef());
+        clientStore.setFiles(Collections.singletonList(opened));
+        projectStore.addCache(clientStore);
+
+        assertNotNull(fileMap.forIdeFile(f1));
+        assertNotNull(fileMap.forDepotPath(opened.getDepotPath()));
+
+        // The server refresh found no opened files.
+        projectStore.addCache(new ClientQueryCacheStore(clientConfig.getClientServerRef()));
+
+        assertNull(fileMap.forIdeFile(f1));
+        assertNull(fileMap.forDepotPath(opened.getDepotPath()));
+        assertEmpty(fileMap.getLinkedFiles().collect(Collectors.toList()));
+    }
+
+    @Test
+    void removedClientDropped(TemporaryFolder tmpDir)
+            throws InterruptedException {
+        ClientConfig client1 = addClient("client1");
+        ClientConfig client2 = addClient("client2");
+        ProjectCacheStore projectStore = new ProjectCacheStore();
+        CacheQueryHandlerImpl query = new CacheQueryHandlerImpl(idea.getMockProject(), projectStore);
+        IdeFileMapImpl fileMap = new IdeFileMapImpl(idea.getMockProject(), query);
+
+        assertEmpty(fileMap.getLinkedFiles().collect(Collectors.toList()));
+        assertEquals(2, fileMap.getIndexCount());
+
+        roots.remove(1);
+        MockFilePath f1 = new MockFilePath(tmpDir.newFile("f1.txt"));
+        projectStore.writeActions((actions) -> actions.add(ActionStore.createPendingAction(
+                client2.getClientServerRef(), new AddEditAction(f1, null,
+                        new P4ChangelistIdImpl(0, client2.getClientServerRef()), (String) null))));
+
+        assertEmpty(fileMap.getLinkedFiles().collect(Collectors.toList()));
+        assertEquals(1, fileMap.getIndexCount());
+        assertEmpty(fileMap.getLinkedFiles(client1).collect(Collectors.toList()));
+    }
+
+
+    private ClientConfig addClient(String clientname) {
+        MockConfigPart configPart = new MockConfigPart()
+                .withServerName("1234")
+                .withUsername("u")
+                .withNoPassword()
+                .withClientname(clientname);
+        ClientConfig clientConfig = ClientConfig.createFrom(ServerConfig.createFrom(configPart), configPart);
+        RootedClientConfig root = mock(RootedClientConfig.class);
+        when(root.getClientConfig()).thenReturn(clientConfig);
+        roots.add(root);
+        // All the test files are under the first client.
+        if (roots.size() == 1) {
+            when(registry.getClientConfigFor(any(FilePath.class))).thenReturn(root);
+        }
+        return clientConfig;
+    }
+}
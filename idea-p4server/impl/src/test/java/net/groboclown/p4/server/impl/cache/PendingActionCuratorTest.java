@@ -13,13 +13,20 @@
  */
 package net.groboclown.p4.server.impl.cache;
 
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.vcs.FilePath;
 import net.groboclown.idea.mock.MockVirtualFile;
 import net.groboclown.idea.mock.MockVirtualFileSystem;
 import net.groboclown.p4.server.api.ClientServerRef;
 import net.groboclown.p4.server.api.P4CommandRunner;
 import net.groboclown.p4.server.api.P4ServerName;
+import net.groboclown.p4.server.api.commands.changelist.AddJobToChangelistAction;
 import net.groboclown.p4.server.api.commands.changelist.CreateChangelistAction;
 import net.groboclown.p4.server.api.commands.changelist.CreateJobAction;
+import net.groboclown.p4.server.api.commands.changelist.DeleteChangelistAction;
+import net.groboclown.p4.server.api.commands.changelist.EditChangelistAction;
+import net.groboclown.p4.server.api.commands.changelist.MoveFilesToChangelistAction;
+import net.groboclown.p4.server.api.commands.changelist.RemoveJobFromChangelistAction;
 import net.groboclown.p4.server.api.commands.changelist.SubmitChangelistAction;
 import net.groboclown.p4.server.api.commands.file.AddEditAction;
 import net.groboclown.p4.server.api.commands.file.DeleteFileAction;
@@ -28,15 +35,19 @@ import net.groboclown.p4.server.api.commands.file.MoveFileAction;
 import net.groboclown.p4.server.api.commands.file.RevertFileAction;
 import net.groboclown.p4.server.api.commands.server.LoginAction;
 import net.groboclown.p4.server.impl.cache.store.ActionStore;
+import net.groboclown.p4.server.impl.cache.store.PendingActionList;
 import net.groboclown.p4.server.impl.values.P4ChangelistIdImpl;
 import net.groboclown.p4.server.impl.values.P4JobImpl;
 import org.jetbrains.annotations.NotNull;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
 import static net.groboclown.idea.ExtAsserts.assertContainsExactly;
 import static net.groboclown.idea.ExtAsserts.assertSize;
@@ -46,6 +57,8 @@ import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.mockito.Mockito.mock;
 
 class PendingActionCuratorTest {
+    private static final Logger LOG = Logger.getInstance(PendingActionCuratorTest.class);
+
     private static final P4ServerName REF_A = P4ServerName.forPortNotNull("not-a-server-a:1666");
     private static final P4ServerName REF_B = P4ServerName.forPortNotNull("not-a-server-b:1666");
     private static final ClientServerRef REF_A1 = new ClientServerRef(REF_A, "c1");
@@ -417,6 +430,138 @@ class PendingActionCuratorTest {
     }
 
 
+    @Test
+    void indexedList_sameAsListWalk() {
+        Random random = new Random(1234);
+        List<FilePath> files = createFiles(12);
+        List<ActionStore.PendingAction> walked = new ArrayList<>();
+        List<ActionStore.PendingAction> indexed = new PendingActionList();
+        PendingActionCurator curator = new PendingActionCurator(new SimplePendingActionFactory(REF_A1));
+        for (int i = 0; i < 2000; i++) {
+            ActionStore.PendingAction added = randomAction(random, files);
+            curator.curateActionList(added, walked);
+            curator.curateActionList(added, indexed);
+            assertEquals(describe(walked), describe(indexed), "after adding " + added);
+        }
+    }
+
+
+    /**
+     * Curates 10,000 actions on 2,000 files, with the list walk and with the indexed list.  Run with
+     * {@code -Dp4ic.benchmark=true}.
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "p4ic.benchmark", matches = "true")
+    void benchmark() {
+        List<FilePath> files = createFiles(2000);
+        for (int round = 0; round < 3; round++) {
+            Random random = new Random(5678);
+            List<ActionStore.PendingAction> added = new ArrayList<>();
+            for (int i = 0; i < 10_000; i++) {
+                added.add(randomAction(random, files));
+            }
+            PendingActionCurator curator = new PendingActionCurator(new SimplePendingActionFactory(REF_A1));
+
+            long start = System.nanoTime();
+            List<ActionStore.PendingAction> walked = new ArrayList<>();
+            for (ActionStore.PendingAction action : added) {
+                curator.curateActionList(action, walked);
+            }
+            long walkTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            List<ActionStore.PendingAction> indexed = new PendingActionList();
+            for (ActionStore.PendingAction action : added) {
+                curator.curateActionList(action, indexed);
+            }
+            long indexTime = System.nanoTime() - start;
+
+            assertEquals(describe(walked), describe(indexed));
+            LOG.info("Round " + round + ": " + added.size() + " actions on " + files.size()
+                    + " files, " + walked.size() + " pending; list walk " + (walkTime / 1_000_000)
+                    + " ms, indexed " + (indexTime / 1_000_000) + " ms");
+        }
+    }
+
+
+    private static List<FilePath> createFiles(int count) {
+        String[] tree = new String[count * 2];
+        for (int i = 0; i < count; i++) {
+            tree[i * 2] = "d" + (i % 20) + "/f" + i + ".txt";
+            tree[i * 2 + 1] = "x";
+        }
+        Map<String, MockVirtualFile> fs = MockVirtualFileSystem.createTree(tree);
+        List<FilePath> ret = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ret.add(fs.get("d" + (i % 20) + "/f" + i + ".txt").asFilePath());
+        }
+        return ret;
+    }
+
+
+    private static final P4JobImpl[] JOBS = {
+            new P4JobImpl("j1", "j1", null), new P4JobImpl("j2", "j2", null)
+    };
+
+    private static ActionStore.PendingAction randomAction(Random random, List<FilePath> files) {
+        FilePath file = files.get(random.nextInt(files.size()));
+        FilePath other = files.get(random.nextInt(files.size()));
+        P4ChangelistIdImpl cl = new P4ChangelistIdImpl(100 + random.nextInt(4), REF_A1);
+        switch (random.nextInt(16)) {
+            case 0:
+            case 1:
+            case 2:
+            case 3:
+                return ActionStore.createPendingAction(REF_A1, new AddEditAction(file, null, cl, "UTF-8"));
+            case 4:
+            case 5:
+                return ActionStore.createPendingAction(REF_A1, new DeleteFileAction(file, cl));
+            case 6:
+            case 7:
+                return ActionStore.createPendingAction(REF_A1, new MoveFileAction(file, other, cl));
+            case 8:
+                return ActionStore.createPendingAction(REF_A1, new RevertFileAction(file, false));
+            case 9:
+                return ActionStore.createPendingAction(REF_A1,
+                        new MoveFilesToChangelistAction(cl, Arrays.asList(file, other)));
+            case 10:
+                return ActionStore.createPendingAction(REF_A1, new EditChangelistAction(cl, "desc"));
+            case 11:
+                return ActionStore.createPendingAction(REF_A1,
+                        new AddJobToChangelistAction(cl, JOBS[random.nextInt(JOBS.length)]));
+            case 12:
+                return ActionStore.createPendingAction(REF_A1,
+                        new RemoveJobFromChangelistAction(cl, JOBS[random.nextInt(JOBS.length)]));
+            case 13:
+                // Changing a deleted changelist is reported as an error, so these are kept apart from the
+                // other changelist actions.
+                return ActionStore.createPendingAction(REF_A1,
+                        new DeleteChangelistAction(new P4ChangelistIdImpl(200 + random.nextInt(2), REF_A1)));
+            case 14:
+                return ActionStore.createPendingAction(REF_A1,
+                        new CreateChangelistAction(REF_A1, "comment", "local-" + random.nextInt(4)));
+            default:
+                return ActionStore.createPendingAction(REF_A,
+                        new CreateJobAction(JOBS[random.nextInt(JOBS.length)]));
+        }
+    }
+
+    // Replacement actions are created separately for each list, so compare what the actions do.
+    private static List<String> describe(List<ActionStore.PendingAction> actions) {
+        List<String> ret = new ArrayList<>(actions.size());
+        for (ActionStore.PendingAction action : actions) {
+            if (action.clientAction != null) {
+                ret.add(action.clientAction.getCmd() + " " + action.clientAction.getAffectedFiles() + " "
+                        + ActionStore.getAssociatedChangelistId(action.clientAction) + " "
+                        + Arrays.toString(action.clientAction.getDisplayParameters()));
+            } else if (action.serverAction != null) {
+                ret.add(action.serverAction.getCmd() + " " + action.serverAction.getActionId());
+            }
+        }
+        return ret;
+    }
+
+
     static class SimplePendingActionFactory implements PendingActionCurator.PendingActionFactory {
         final ClientServerRef ref;
         List<ActionStore.PendingAction> created = new ArrayList<>();
@@ -0,0 +1,147 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.groboclown.p4.server.impl.cache;
+
+import net.groboclown.idea.mock.MockVirtualFile;
+import net.groboclown.idea.mock.MockVirtualFileSystem;
+import net.groboclown.p4.server.api.ClientServerRef;
+import net.groboclown.p4.server.api.P4CommandRunner;
+import net.groboclown.p4.server.api.P4ServerName;
+import net.groboclown.p4.server.api.cache.ActionChoice;
+import net.groboclown.p4.server.api.commands.changelist.CreateChangelistAction;
+import net.groboclown.p4.server.api.commands.changelist.CreateJobAction;
+import net.groboclown.p4.server.api.commands.file.AddEditAction;
+import net.groboclown.p4.server.api.commands.file.DeleteFileAction;
+import net.groboclown.p4.server.api.commands.file.RevertFileAction;
+import net.groboclown.p4.server.impl.values.P4ChangelistIdImpl;
+import net.groboclown.p4.server.impl.values.P4JobImpl;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+
+class PendingActionReplayPlannerTest {
+    private static final P4ServerName REF_A = P4ServerName.forPortNotNull("not-a-server-a:1666");
+    private static final ClientServerRef REF_A1 = new ClientServerRef(REF_A, "c1");
+
+    @Test
+    void groupsNeighboringFileActions() {
+        Map<String, MockVirtualFile> fs = MockVirtualFileSystem.createTree(
+                "a.txt", "a", "b.txt", "b", "c.txt", "c", "d.txt", "d"
+        );
+        P4ChangelistIdImpl cl = new P4ChangelistIdImpl(100, REF_A1);
+        ActionChoice addA = client(new AddEditAction(fs.get("a.txt").asFilePath(), null, cl, "UTF-8"));
+        ActionChoice addB = client(new AddEditAction(fs.get("b.txt").asFilePath(), null, cl, "UTF-8"));
+        ActionChoice revertC = client(new RevertFileAction(fs.get("c.txt").asFilePath(), false));
+        ActionChoice revertD = client(new RevertFileAction(fs.get("d.txt").asFilePath(), false));
+
+        List<List<ActionChoice>> plan = PendingActionReplayPlanner.plan(Arrays.asList(addA, addB, revertC, revertD));
+        assertEquals(Arrays.asList(Arrays.asList(addA, addB), Arrays.asList(revertC, revertD)), plan);
+        assertNotNull(PendingActionReplayPlanner.getGroupedClientActions(plan.get(0)));
+    }
+
+    @Test
+    void keepsOrderAcrossOtherActions() {
+        Map<String, MockVirtualFile> fs = MockVirtualFileSystem.createTree(
+                "a.txt", "a", "b.txt", "b", "c.txt", "c"
+        );
+        P4ChangelistIdImpl cl = new P4ChangelistIdImpl(100, REF_A1);
+        ActionChoice addA = client(new AddEditAction(fs.get("a.txt").asFilePath(), null, cl, "UTF-8"));
+        ActionChoice deleteB = client(new DeleteFileAction(fs.get("b.txt").asFilePath(), cl));
+        ActionChoice job = new ActionChoice(new CreateJobAction(mock(P4JobImpl.class)));
+        ActionChoice addC = client(new AddEditAction(fs.get("c.txt").asFilePath(), null, cl, "UTF-8"));
+
+        List<List<ActionChoice>> plan = PendingActionReplayPlanner.plan(Arrays.asList(addA, deleteB, job, addC));
+        assertEquals(Arrays.asList(Arrays.asList(addA), Arrays.asList(deleteB), Arrays.asList(job),
+                Arrays.asList(addC)), plan);
+        for (List<ActionChoice> group : plan) {
+            assertNull(PendingActionReplayPlanner.getGroupedClientActions(group));
+        }
+    }
+
+    @Test
+    void differentSettingsNotGrouped() {
+        Map<String, MockVirtualFile> fs = MockVirtualFileSystem.createTree(
+                "a.txt", "a", "b.txt", "b", "c.txt", "c", "d.txt", "d", "e.txt", "e"
+        );
+        ActionChoice addA = client(new AddEditAction(fs.get("a.txt").asFilePath(), null,
+                new P4ChangelistIdImpl(100, REF_A1), "UTF-8"));
+        ActionChoice addB = client(new AddEditAction(fs.get("b.txt").asFilePath(), null,
+                new P4ChangelistIdImpl(101, REF_A1), "UTF-8"));
+        ActionChoice addC = client(new AddEditAction(fs.get("c.txt").asFilePath(), null,
+                new P4ChangelistIdImpl(101, REF_A1), "UTF-16"));
+        ActionChoice revertD = client(new RevertFileAction(fs.get("d.txt").asFilePath(), true));
+        ActionChoice revertE = client(new RevertFileAction(fs.get("e.txt").asFilePath(), false));
+
+        List<List<ActionChoice>> plan = PendingActionReplayPlanner.plan(
+                Arrays.asList(addA, addB, addC, revertD, revertE));
+        assertEquals(5, plan.size());
+    }
+
+    @Test
+    void sameFileNotGrouped() {
+        Map<String, MockVirtualFile> fs = MockVirtualFileSystem.createTree(
+                "a.txt", "a", "b.txt", "b"
+        );
+        ActionChoice revertA = client(new RevertFileAction(fs.get("a.txt").asFilePath(), false));
+        ActionChoice revertB = client(new RevertFileAction(fs.get("b.txt").asFilePath(), false));
+        ActionChoice revertA2 = client(new RevertFileAction(fs.get("a.txt").asFilePath(), false));
+
+        List<List<ActionChoice>> plan = PendingActionReplayPlanner.plan(Arrays.asList(revertA, revertB, revertA2));
+        assertEquals(Arrays.asList(Arrays.asList(revertA, revertB), Arrays.asList(revertA2)), plan);
+    }
+
+    @Test
+    void groupSizeLimit() {
+        String[] tree = new String[(PendingActionReplayPlanner.MAX_GROUP_SIZE + 1) * 2];
+        for (int i = 0; i <= PendingActionReplayPlanner.MAX_GROUP_SIZE; i++) {
+            tree[i * 2] = "f" + i + ".txt";
+            tree[i * 2 + 1] = "x";
+        }
+        Map<String, MockVirtualFile> fs = MockVirtualFileSystem.createTree(tree);
+        List<ActionChoice> actions = new ArrayList<>();
+        for (int i = 0; i <= PendingActionReplayPlanner.MAX_GROUP_SIZE; i++) {
+            actions.add(client(new RevertFileAction(fs.get("f" + i + ".txt").asFilePath(), false)));
+        }
+
+        List<List<ActionChoice>> plan = PendingActionReplayPlanner.plan(actions);
+        assertEquals(2, plan.size());
+        assertEquals(PendingActionReplayPlanner.MAX_GROUP_SIZE, plan.get(0).size());
+        assertEquals(1, plan.get(1).size());
+    }
+
+    @Test
+    void changelistCreationSplitsGroup() {
+        Map<String, MockVirtualFile> fs = MockVirtualFileSystem.createTree(
+                "a.txt", "a", "b.txt", "b"
+        );
+        P4ChangelistIdImpl cl = new P4ChangelistIdImpl(-2, REF_A1);
+        ActionChoice addA = client(new AddEditAction(fs.get("a.txt").asFilePath(), null, cl, "UTF-8"));
+        ActionChoice create = client(new CreateChangelistAction(REF_A1, "comment", "local-id"));
+        ActionChoice addB = client(new AddEditAction(fs.get("b.txt").asFilePath(), null, cl, "UTF-8"));
+
+        assertEquals(3, PendingActionReplayPlanner.plan(Arrays.asList(addA, create, addB)).size());
+    }
+
+    private static ActionChoice client(P4CommandRunner.ClientAction<?> action) {
+        return new ActionChoice(action);
+    }
+}
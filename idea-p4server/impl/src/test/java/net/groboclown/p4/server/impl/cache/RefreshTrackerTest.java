@@ -0,0 +1,138 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.groboclown.p4.server.impl.cache;
+
+import net.groboclown.p4.server.api.ClientServerRef;
+import net.groboclown.p4.server.api.P4ServerName;
+import net.groboclown.p4.server.api.async.Answer;
+import org.jetbrains.concurrency.AsyncPromise;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RefreshTrackerTest {
+    private static final P4ServerName SERVER = P4ServerName.forPortNotNull("not-a-server:1666");
+    private static final ClientServerRef REF_1 = new ClientServerRef(SERVER, "c1");
+    private static final ClientServerRef REF_2 = new ClientServerRef(SERVER, "c2");
+
+    @Test
+    void requestWhileRunningQueuesOneMoreRefresh() {
+        RefreshTracker<ClientServerRef> tracker = new RefreshTracker<>();
+        List<AsyncPromise<Object>> started = new ArrayList<>();
+
+        Answer<?> first = tracker.refresh(REF_1, () -> start(started));
+        Answer<?> second = tracker.refresh(REF_1, () -> start(started));
+        Answer<?> third = tracker.refresh(REF_1, () -> start(started));
+        assertNotSame(first, second);
+        // Requests made while the follow-up is queued share it.
+        assertSame(second, third);
+        assertEquals(1, started.size());
+
+        // Another client gets its own refresh.
+        Answer<?> other = tracker.refresh(REF_2, () -> start(started));
+        assertNotSame(first, other);
+        assertEquals(2, started.size());
+        assertEquals(2, tracker.getActiveCount());
+
+        // Once the refresh completes, the follow-up starts.
+        AtomicBoolean secondDone = new AtomicBoolean();
+        second.whenCompleted((x) -> secondDone.set(true));
+        started.get(0).setResult(null);
+        assertEquals(3, started.size());
+        assertEquals(2, tracker.getActiveCount());
+        assertFalse(secondDone.get());
+
+        started.get(2).setResult(null);
+        assertTrue(secondDone.get());
+        assertEquals(1, tracker.getActiveCount());
+
+        // With nothing running, the next request starts a new refresh.
+        Answer<?> fourth = tracker.refresh(REF_1, () -> start(started));
+        assertNotSame(second, fourth);
+        assertEquals(4, started.size());
+    }
+
+    @Test
+    void failedRefreshStartsQueuedRefresh() {
+        RefreshTracker<ClientServerRef> tracker = new RefreshTracker<>();
+        List<AsyncPromise<Object>> started = new ArrayList<>();
+
+        Answer<?> first = tracker.refresh(REF_1, () -> start(started));
+        Answer<?> second = tracker.refresh(REF_1, () -> start(started));
+        started.get(0).setError("refresh failed");
+        assertEquals(2, started.size());
+        assertEquals(1, tracker.getActiveCount());
+
+        AtomicBoolean secondFailed = new AtomicBoolean();
+        second.whenFailed((e) -> secondFailed.set(true));
+        started.get(1).setError("refresh failed again");
+        assertTrue(secondFailed.get());
+        assertEquals(0, tracker.getActiveCount());
+
+        Answer<?> third = tracker.refresh(REF_1, () -> start(started));
+        assertNotSame(first, third);
+        assertEquals(3, started.size());
+    }
+
+    @Test
+    void completedRefreshIsNotKept() {
+        RefreshTracker<ClientServerRef> tracker = new RefreshTracker<>();
+
+        tracker.refresh(REF_1, () -> Answer.resolve(null));
+        assertEquals(0, tracker.getActiveCount());
+    }
+
+    @Test
+    void partialRefreshOnlyWhenIdle() {
+        RefreshTracker<ClientServerRef> tracker = new RefreshTracker<>();
+        List<AsyncPromise<Object>> started = new ArrayList<>();
+
+        Answer<?> partial = tracker.refreshIfIdle(REF_1, () -> start(started));
+        assertNotNull(partial);
+        assertEquals(1, started.size());
+
+        // A full refresh waits for the partial one.
+        Answer<?> full = tracker.refresh(REF_1, () -> start(started));
+        assertNotSame(partial, full);
+        assertEquals(1, started.size());
+
+        assertNull(tracker.refreshIfIdle(REF_1, () -> start(started)));
+        assertEquals(1, started.size());
+
+        started.get(0).setResult(null);
+        assertEquals(2, started.size());
+        assertNull(tracker.refreshIfIdle(REF_1, () -> start(started)));
+
+        started.get(1).setResult(null);
+        assertNotNull(tracker.refreshIfIdle(REF_1, () -> start(started)));
+        assertEquals(3, started.size());
+    }
+
+
+    private static Answer<?> start(List<AsyncPromise<Object>> started) {
+        AsyncPromise<Object> promise = new AsyncPromise<>();
+        started.add(promise);
+        return Answer.forPromise(promise);
+    }
+}
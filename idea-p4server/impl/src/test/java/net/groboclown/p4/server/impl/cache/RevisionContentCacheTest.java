@@ -0,0 +1,111 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.groboclown.p4.server.impl.cache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RevisionContentCacheTest {
+    @TempDir
+    File dir;
+
+
+    @Test
+    void parseFixedRevision() {
+        Map.Entry<String, Integer> rev = RevisionContentCache.parseFixedRevision("//depot/a b.txt#12");
+        assertNotNull(rev);
+        assertEquals("//depot/a b.txt", rev.getKey());
+        assertEquals(12, rev.getValue());
+
+        assertNull(RevisionContentCache.parseFixedRevision(null));
+        assertNull(RevisionContentCache.parseFixedRevision("//depot/a.txt"));
+        assertNull(RevisionContentCache.parseFixedRevision("//depot/a.txt#head"));
+        assertNull(RevisionContentCache.parseFixedRevision("//depot/a.txt@123"));
+        assertNull(RevisionContentCache.parseFixedRevision("//depot/a.txt#0"));
+        assertNull(RevisionContentCache.parseFixedRevision("/local/a.txt#3"));
+    }
+
+
+    @Test
+    void storedOnDisk() {
+        RevisionContentCache cache = new RevisionContentCache(dir, 1024, 1024);
+        assertNull(cache.get("p4:1666", "//depot/a.txt", 1));
+        cache.put("p4:1666", "//depot/a.txt", 1, bytes("one"));
+        cache.put("p4:1666", "//depot/a.txt", 2, bytes("two"));
+        cache.put("other:1666", "//depot/a.txt", 1, bytes("other"));
+
+        assertArrayEquals(bytes("one"), cache.get("p4:1666", "//depot/a.txt", 1));
+
+        // A new instance, as after a restart, reads them from the disk.
+        cache = new RevisionContentCache(dir, 1024, 1024);
+        assertArrayEquals(bytes("one"), cache.get("p4:1666", "//depot/a.txt", 1));
+        assertArrayEquals(bytes("two"), cache.get("p4:1666", "//depot/a.txt", 2));
+        assertArrayEquals(bytes("other"), cache.get("other:1666", "//depot/a.txt", 1));
+        assertNull(cache.get("p4:1666", "//depot/a.txt", 3));
+        assertNull(cache.get("p4:1666", "//depot/b.txt", 1));
+    }
+
+
+    @Test
+    void leastRecentlyUsedEvicted() {
+        // Room for about three entries on disk, and nothing in memory.
+        RevisionContentCache cache = new RevisionContentCache(dir, 3 * 140, 0);
+        byte[] data = new byte[100];
+        cache.put("p4:1666", "//depot/a.txt", 1, data);
+        cache.put("p4:1666", "//depot/a.txt", 2, data);
+        cache.put("p4:1666", "//depot/a.txt", 3, data);
+        assertNotNull(cache.get("p4:1666", "//depot/a.txt", 1));
+
+        cache.put("p4:1666", "//depot/a.txt", 4, data);
+        assertNotNull(cache.get("p4:1666", "//depot/a.txt", 1));
+        assertNull(cache.get("p4:1666", "//depot/a.txt", 2));
+        assertNotNull(cache.get("p4:1666", "//depot/a.txt", 3));
+        assertNotNull(cache.get("p4:1666", "//depot/a.txt", 4));
+
+        File[] files = dir.listFiles();
+        assertNotNull(files);
+        assertEquals(3, files.length);
+    }
+
+
+    @Test
+    void memoryTierWithoutDisk() {
+        RevisionContentCache cache = new RevisionContentCache(dir, 1024, 1024);
+        cache.put("p4:1666", "//depot/a.txt", 1, bytes("one"));
+        File[] files = dir.listFiles();
+        assertNotNull(files);
+        for (File file : files) {
+            assertTrue(file.delete());
+        }
+
+        // Still served from memory.
+        assertArrayEquals(bytes("one"), cache.get("p4:1666", "//depot/a.txt", 1));
+    }
+
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.groboclown.p4.server.impl.cache.store;
+
+import com.intellij.openapi.vcs.FilePath;
+import net.groboclown.idea.mock.MockVirtualFile;
+import net.groboclown.idea.mock.MockVirtualFileSystem;
+import net.groboclown.p4.server.api.ClientServerRef;
+import net.groboclown.p4.server.api.P4ServerName;
+import net.groboclown.p4.server.api.values.P4ChangelistId;
+import net.groboclown.p4.server.api.values.P4FileAction;
+import net.groboclown.p4.server.api.values.P4LocalChangelist;
+import net.groboclown.p4.server.api.values.P4LocalFile;
+import net.groboclown.p4.server.impl.values.P4ChangelistIdImpl;
+import net.groboclown.p4.server.impl.values.P4LocalChangelistImpl;
+import net.groboclown.p4.server.impl.values.P4LocalFileImpl;
+import net.groboclown.p4.server.impl.values.P4RemoteFileImpl;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClientQueryCacheStoreTest {
+    private static final ClientServerRef REF = new ClientServerRef(
+            P4ServerName.forPortNotNull("not-a-server:1666"), "c1");
+
+    @Test
+    void updateFiles() {
+        Map<String, MockVirtualFile> fs = MockVirtualFileSystem.createTree(
+                "a.txt", "a", "b.txt", "b", "c.txt", "c"
+        );
+        FilePath a = fs.get("a.txt").asFilePath();
+        FilePath b = fs.get("b.txt").asFilePath();
+        FilePath c = fs.get("c.txt").asFilePath();
+        P4ChangelistId cl1 = new P4ChangelistIdImpl(1, REF);
+        P4ChangelistId cl2 = new P4ChangelistIdImpl(2, REF);
+        ClientQueryCacheStore store = new ClientQueryCacheStore(REF);
+        store.setChangelists(changelist(cl1, a, b), changelist(cl2));
+        store.setFiles(Arrays.asList(file(a, cl1), file(b, cl1)));
+        long version = store.getVersion();
+
+        // a moved to changelist 2, b reverted, c opened in changelist 1.
+        assertTrue(store.updateFiles(Arrays.asList(a, b, c), Arrays.asList(file(a, cl2), file(c, cl1))));
+
+        assertTrue(store.getVersion() > version);
+        assertEquals(2, store.getFiles().size());
+        for (P4LocalFile file : store.getFiles()) {
+            assertEquals(a.equals(file.getFilePath()) ? cl2 : cl1, file.getChangelistId());
+        }
+        assertEquals(Collections.singletonList(c), getChangelist(store, cl1).getFiles());
+        assertEquals(Collections.singletonList(a), getChangelist(store, cl2).getFiles());
+    }
+
+    @Test
+    void updateFiles_unknownChangelist() {
+        Map<String, MockVirtualFile> fs = MockVirtualFileSystem.createTree(
+                "a.txt", "a"
+        );
+        FilePath a = fs.get("a.txt").asFilePath();
+        P4ChangelistId cl1 = new P4ChangelistIdImpl(1, REF);
+        ClientQueryCacheStore store = new ClientQueryCacheStore(REF);
+        store.setChangelists(changelist(cl1));
+        long version = store.getVersion();
+
+        assertFalse(store.updateFiles(Collections.singletonList(a),
+                Collections.singletonList(file(a, new P4ChangelistIdImpl(3, REF)))));
+
+        assertEquals(version, store.getVersion());
+        assertTrue(store.getFiles().isEmpty());
+        assertTrue(getChangelist(store, cl1).getFiles().isEmpty());
+    }
+
+    private static P4LocalChangelist changelist(P4ChangelistId id, FilePath... files) {
+        return new P4LocalChangelistImpl.Builder()
+                .withChangelistId(id)
+                .withComment("comment " + id.getChangelistId())
+                .withContainedFiles(Arrays.asList(files))
+                .build();
+    }
+
+    private static P4LocalFile file(FilePath path, P4ChangelistId id) {
+        return new P4LocalFileImpl.Builder()
+                .withDepot(new P4RemoteFileImpl("//depot/" + path.getName(), "//depot/" + path.getName(), null))
+                .withLocal(path)
+                .withChangelist(id)
+                .withAction(P4FileAction.EDIT)
+                .build();
+    }
+
+    private static P4LocalChangelist getChangelist(ClientQueryCacheStore store, P4ChangelistId id) {
+        List<P4LocalChangelist> changelists = store.getChangelists();
+        for (P4LocalChangelist changelist : changelists) {
+            if (changelist.getChangelistId().equals(id)) {
+                return changelist;
+            }
+        }
+        throw new AssertionError("no changelist " + id);
+    }
+}
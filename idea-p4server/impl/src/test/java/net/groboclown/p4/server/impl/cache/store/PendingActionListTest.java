@@ -0,0 +1,103 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.groboclown.p4.server.impl.cache.store;
+
+import net.groboclown.idea.mock.MockVirtualFile;
+import net.groboclown.idea.mock.MockVirtualFileSystem;
+import net.groboclown.p4.server.api.ClientServerRef;
+import net.groboclown.p4.server.api.P4CommandRunner;
+import net.groboclown.p4.server.api.P4ServerName;
+import net.groboclown.p4.server.api.commands.file.AddEditAction;
+import net.groboclown.p4.server.api.commands.file.DeleteFileAction;
+import net.groboclown.p4.server.impl.values.P4ChangelistIdImpl;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PendingActionListTest {
+    private static final ClientServerRef REF = new ClientServerRef(
+            P4ServerName.forPortNotNull("not-a-server:1666"), "c1");
+
+    @Test
+    void indexFollowsChanges() {
+        Map<String, MockVirtualFile> fs = MockVirtualFileSystem.createTree(
+                "a.txt", "a", "b.txt", "b"
+        );
+        P4ChangelistIdImpl cl = new P4ChangelistIdImpl(100, REF);
+        ActionStore.PendingAction addA = ActionStore.createPendingAction(REF,
+                new AddEditAction(fs.get("a.txt").asFilePath(), null, cl, "UTF-8"));
+        ActionStore.PendingAction addB = ActionStore.createPendingAction(REF,
+                new AddEditAction(fs.get("b.txt").asFilePath(), null, cl, "UTF-8"));
+        ActionStore.PendingAction deleteA = ActionStore.createPendingAction(REF,
+                new DeleteFileAction(fs.get("a.txt").asFilePath(), cl));
+
+        PendingActionList list = new PendingActionList();
+        list.addAll(Arrays.asList(addA, addB, deleteA));
+        Object fileA = PendingActionList.fileKey(fs.get("a.txt").asFilePath());
+        assertEquals(Arrays.asList(2L, 0L), new ArrayList<>(list.getSequences(fileA, list.getEndSequence())));
+        assertEquals(Arrays.asList(0L), new ArrayList<>(list.getSequences(fileA, 2)));
+        assertEquals(3, list.getSequences(PendingActionList.changelistKey(cl), list.getEndSequence()).size());
+
+        // Positions move as earlier actions are removed; sequence numbers don't.
+        list.remove(0);
+        assertEquals(Arrays.asList(2L), new ArrayList<>(list.getSequences(fileA, list.getEndSequence())));
+        assertEquals(-1, list.getPosition(0));
+        assertEquals(1, list.getPosition(2));
+
+        list.set(1, addA);
+        assertEquals(Arrays.asList(2L), new ArrayList<>(list.getSequences(fileA, list.getEndSequence())));
+        assertTrue(list.getSequences(PendingActionList.commandKey(P4CommandRunner.ClientActionCmd.DELETE_FILE),
+                list.getEndSequence()).isEmpty());
+
+        list.clear();
+        assertTrue(list.getSequences(fileA, list.getEndSequence()).isEmpty());
+    }
+
+
+    @Test
+    void versionFollowsChanges() {
+        Map<String, MockVirtualFile> fs = MockVirtualFileSystem.createTree("a.txt", "a");
+        P4ChangelistIdImpl cl = new P4ChangelistIdImpl(100, REF);
+        ActionStore.PendingAction addA = ActionStore.createPendingAction(REF,
+                new AddEditAction(fs.get("a.txt").asFilePath(), null, cl, "UTF-8"));
+        ActionStore.PendingAction deleteA = ActionStore.createPendingAction(REF,
+                new DeleteFileAction(fs.get("a.txt").asFilePath(), cl));
+
+        PendingActionList list = new PendingActionList();
+        long v0 = list.getVersion();
+        list.add(addA);
+        long v1 = list.getVersion();
+        assertNotEquals(v0, v1);
+
+        // Setting the same action isn't a change.
+        list.set(0, addA);
+        assertEquals(v1, list.getVersion());
+        list.set(0, deleteA);
+        long v2 = list.getVersion();
+        assertNotEquals(v1, v2);
+
+        list.remove(0);
+        long v3 = list.getVersion();
+        assertNotEquals(v2, v3);
+        list.clear();
+        assertNotEquals(v3, list.getVersion());
+    }
+}
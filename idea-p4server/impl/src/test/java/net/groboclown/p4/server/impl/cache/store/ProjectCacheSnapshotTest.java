@@ -0,0 +1,143 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.groboclown.p4.server.impl.cache.store;
+
+import net.groboclown.p4.server.api.ClientServerRef;
+import net.groboclown.p4.server.api.P4ServerName;
+import net.groboclown.p4.server.api.commands.changelist.CreateChangelistAction;
+import net.groboclown.p4.server.impl.values.P4ChangelistIdImpl;
+import net.groboclown.p4.server.impl.values.P4LocalChangelistImpl;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProjectCacheSnapshotTest {
+    private static final ClientServerRef REF = new ClientServerRef(
+            P4ServerName.forPortNotNull("not-a-server:1666"), "c1");
+
+    @TempDir
+    File dir;
+
+
+    @Test
+    void roundTrip()
+            throws IOException, InterruptedException {
+        ProjectCacheStore store = createStore(2);
+        File file = new File(dir, "p4.cache");
+        new ProjectCacheSnapshot(file, true).write(store.getState());
+
+        ProjectCacheSnapshot.Contents contents = new ProjectCacheSnapshot(file, true).read();
+        assertFalse(contents.isEmpty());
+        ProjectCacheStore loaded = new ProjectCacheStore();
+        loaded.setLazyState(contents.getChangelistState(), contents::getState);
+        assertTrue(loaded.hasLazyState());
+
+        List<ActionStore.PendingAction> actions = loaded.copyActions();
+        assertFalse(loaded.hasLazyState());
+        assertEquals(2, actions.size());
+        assertEquals(store.copyActions().get(1).getActionId(), actions.get(1).getActionId());
+        ProjectCacheStore.State state = loaded.getState();
+        assertNotNull(state);
+        assertEquals(1, state.clientState.size());
+        assertEquals("c1", state.clientState.get(0).source.clientName);
+        assertEquals(1, state.clientState.get(0).changelists.size());
+        assertEquals("comment", state.clientState.get(0).changelists.get(0).comment);
+    }
+
+    @Test
+    void appendsChangedSections()
+            throws IOException, InterruptedException {
+        File file = new File(dir, "p4.cache");
+        ProjectCacheSnapshot snapshot = new ProjectCacheSnapshot(file, false);
+        ProjectCacheStore.State state = createStore(1).getState();
+        assertNotNull(state);
+        snapshot.write(state);
+        long length = file.length();
+
+        // Nothing changed, so nothing is written.
+        snapshot.write(state);
+        assertEquals(length, file.length());
+
+        // Just the actions are appended.
+        state.pendingActions.add(createAction("second").getState());
+        snapshot.write(state);
+        long appendedLength = file.length();
+        assertTrue(appendedLength > length);
+        assertTrue(appendedLength - length < length);
+        assertEquals(2, new ProjectCacheSnapshot(file, false).read().getState().pendingActions.size());
+
+        // A write that didn't finish leaves the earlier records readable, and the next write replaces it.
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(appendedLength - 3);
+        }
+        ProjectCacheSnapshot reopened = new ProjectCacheSnapshot(file, false);
+        assertEquals(1, reopened.read().getState().pendingActions.size());
+        reopened.write(state);
+        assertEquals(appendedLength, file.length());
+        ProjectCacheSnapshot.Contents contents = new ProjectCacheSnapshot(file, false).read();
+        assertEquals(2, contents.getState().pendingActions.size());
+        assertEquals(1, contents.getState().clientState.size());
+    }
+
+    @Test
+    void ignoresOtherFiles()
+            throws IOException, InterruptedException {
+        File file = new File(dir, "p4.cache");
+        Files.write(file.toPath(), "<component name=\"p4-ProjectCache\"/>".getBytes(StandardCharsets.UTF_8));
+        ProjectCacheSnapshot snapshot = new ProjectCacheSnapshot(file, true);
+        assertTrue(snapshot.read().isEmpty());
+
+        snapshot.write(createStore(1).getState());
+        ProjectCacheSnapshot.Contents contents = new ProjectCacheSnapshot(file, true).read();
+        assertEquals(1, contents.getState().pendingActions.size());
+        assertNotNull(contents.getChangelistState());
+        assertEquals(1, contents.getChangelistState().pendingChangelistMap.size());
+    }
+
+
+    private static ProjectCacheStore createStore(int actionCount)
+            throws InterruptedException {
+        ProjectCacheStore store = new ProjectCacheStore();
+        ClientQueryCacheStore client = new ClientQueryCacheStore(REF);
+        client.setChangelists(new P4LocalChangelistImpl.Builder()
+                .withChangelistId(new P4ChangelistIdImpl(1, REF))
+                .withComment("comment")
+                .withContainedFiles(Collections.emptyList())
+                .build());
+        store.addCache(client);
+        for (int i = 0; i < actionCount; i++) {
+            CreateChangelistAction action = new CreateChangelistAction(REF, "action " + i, "local-" + i);
+            store.addPendingAction(ActionStore.createPendingAction(REF, action));
+            store.getChangelistCacheStore().getPendingChangelist(action, true);
+        }
+        return store;
+    }
+
+    private static ActionStore.PendingAction createAction(String comment) {
+        return ActionStore.createPendingAction(REF, new CreateChangelistAction(REF, comment, "local-" + comment));
+    }
+}
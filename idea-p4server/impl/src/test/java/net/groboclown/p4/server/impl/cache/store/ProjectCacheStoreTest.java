@@ -32,6 +32,8 @@ import java.util.Collections;
 import static net.groboclown.idea.ExtAsserts.assertSize;
 import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 
 class ProjectCacheStoreTest {
@@ -69,4 +71,32 @@ class ProjectCacheStoreTest {
         ActionStore.PendingAction moveAction = ActionStore.read(unmarshalled.pendingActions.get(0));
         assertThat(moveAction.clientAction, instanceOf(MoveFilesToChangelistAction.class));
     }
-}
\ No newline at end of file
+
+    @ExtendWith(TemporaryFolderExtension.class)
+    @Test
+    void version_changesOnWrite(TemporaryFolder tmpDir)
+            throws InterruptedException {
+        ProjectCacheStore store = new ProjectCacheStore();
+        ClientServerRef ref = new ClientServerRef(
+                P4ServerName.forPortNotNull("test:1234"),
+                "client1"
+        );
+        long v0 = store.getVersion();
+        store.copyActions();
+        store.read(ref.getServerName(), null, (s) -> null);
+        assertEquals(v0, store.getVersion());
+
+        store.write(ref.getServerName(), (s) -> {});
+        long v1 = store.getVersion();
+        assertNotEquals(v0, v1);
+
+        store.writeActions((actions) -> actions.add(ActionStore.createPendingAction(ref,
+                new MoveFilesToChangelistAction(new P4ChangelistIdImpl(1, ref),
+                        Collections.singletonList(new MockFilePath(tmpDir.newFile("test-file.txt")))))));
+        long v2 = store.getVersion();
+        assertNotEquals(v1, v2);
+
+        store.setState(null);
+        assertNotEquals(v2, store.getVersion());
+    }
+}
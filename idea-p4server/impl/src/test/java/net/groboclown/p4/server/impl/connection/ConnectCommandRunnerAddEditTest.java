@@ -0,0 +1,165 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.groboclown.p4.server.impl.connection;
+
+import com.intellij.openapi.vcs.FilePath;
+import com.perforce.p4java.client.IClient;
+import com.perforce.p4java.core.file.FileAction;
+import com.perforce.p4java.core.file.IExtendedFileSpec;
+import com.perforce.p4java.core.file.IFileSpec;
+import com.perforce.p4java.impl.generic.core.file.ExtendedFileSpec;
+import com.perforce.p4java.impl.generic.core.file.FileSpec;
+import com.perforce.p4java.option.client.AddFilesOptions;
+import com.perforce.p4java.option.client.EditFilesOptions;
+import com.perforce.p4java.option.server.GetExtendedFilesOptions;
+import com.perforce.p4java.server.IOptionsServer;
+import com.perforce.p4java.server.IServerMessage;
+import net.groboclown.idea.extensions.IdeaLightweightExtension;
+import net.groboclown.idea.mock.MockVirtualFile;
+import net.groboclown.idea.mock.MockVirtualFileSystem;
+import net.groboclown.p4.server.api.P4CommandRunner;
+import net.groboclown.p4.server.api.commands.file.AddEditAction;
+import net.groboclown.p4.server.api.commands.file.AddEditResult;
+import net.groboclown.p4.server.api.config.ClientConfig;
+import net.groboclown.p4.server.api.config.ServerConfig;
+import net.groboclown.p4.server.api.config.part.MockConfigPart;
+import net.groboclown.p4.server.api.values.P4ChangelistId;
+import net.groboclown.p4.server.impl.cache.RevisionContentCache;
+import net.groboclown.p4.server.impl.values.P4ChangelistIdImpl;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ConnectCommandRunnerAddEditTest {
+    @RegisterExtension
+    IdeaLightweightExtension idea = new IdeaLightweightExtension();
+
+    @TempDir
+    File dir;
+
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void addEditGroup_oneCommandEach()
+            throws Exception {
+        Map<String, MockVirtualFile> tree = MockVirtualFileSystem.createTree(
+                "new.txt", "a", "old1.txt", "b", "open.txt", "c", "old2.txt", "d");
+        ClientConfig config = createClientConfig();
+        P4ChangelistId changelist = new P4ChangelistIdImpl(12, config.getClientServerRef());
+        List<P4CommandRunner.ClientAction<AddEditResult>> actions = new ArrayList<>();
+        for (String name : new String[] { "new.txt", "old1.txt", "open.txt", "old2.txt" }) {
+            actions.add(new AddEditAction(tree.get(name).asFilePath(), null, changelist, "utf8"));
+        }
+
+        // One fstat result per file, in the requested order.
+        List<IExtendedFileSpec> fstat = Arrays.asList(
+                messageSpec(),
+                fstatSpec("//depot/old1.txt", null),
+                fstatSpec("//depot/open.txt", FileAction.EDIT),
+                fstatSpec("//depot/old2.txt", null));
+        List<IFileSpec> addResults = Arrays.asList(openedSpec("//depot/new.txt"));
+        List<IFileSpec> editResults = Arrays.asList(
+                openedSpec("//depot/old1.txt"),
+                // "also opened by" style messages don't belong to a file of their own.
+                messageSpec(),
+                openedSpec("//depot/old2.txt"));
+        IOptionsServer server = mock(IOptionsServer.class);
+        when(server.getExtendedFiles(anyList(), any(GetExtendedFilesOptions.class))).thenReturn(fstat);
+        IClient client = mock(IClient.class);
+        when(client.getServer()).thenReturn(server);
+        when(client.addFiles(anyList(), any(AddFilesOptions.class))).thenReturn(addResults);
+        when(client.editFiles(anyList(), any(EditFilesOptions.class))).thenReturn(editResults);
+
+        ConnectCommandRunner runner = new ConnectCommandRunner(idea.getMockProject(),
+                new MockClientConnectionManager(client), new RevisionContentCache(dir, 1024, 1024));
+        final List<AddEditResult> results = new ArrayList<>();
+        runner.performAll(config, actions)
+                .whenCompleted(results::addAll)
+                .whenServerError(Assertions::fail);
+
+        verify(server, times(1)).getExtendedFiles(anyList(), any(GetExtendedFilesOptions.class));
+        ArgumentCaptor<List<IFileSpec>> added = ArgumentCaptor.forClass(List.class);
+        verify(client, times(1)).addFiles(added.capture(), any(AddFilesOptions.class));
+        assertEquals(1, added.getValue().size());
+        ArgumentCaptor<List<IFileSpec>> edited = ArgumentCaptor.forClass(List.class);
+        verify(client, times(1)).editFiles(edited.capture(), any(EditFilesOptions.class));
+        assertEquals(2, edited.getValue().size());
+
+        assertEquals(4, results.size());
+        assertResult(results.get(0), actions.get(0), true, "//depot/new.txt");
+        assertResult(results.get(1), actions.get(1), false, "//depot/old1.txt");
+        assertResult(results.get(2), actions.get(2), false, "//depot/open.txt");
+        assertResult(results.get(3), actions.get(3), false, "//depot/old2.txt");
+        assertEquals(changelist, results.get(1).getChangelistId());
+    }
+
+
+    private static void assertResult(AddEditResult result, P4CommandRunner.ClientAction<AddEditResult> action,
+            boolean add, String depotPath) {
+        FilePath file = ((AddEditAction) action).getFile();
+        assertEquals(file, result.getFile());
+        assertEquals(add, result.isAdd());
+        assertNotNull(result.getDepotPath());
+        assertEquals(depotPath, result.getDepotPath().getDepotPath());
+    }
+
+    private static IExtendedFileSpec messageSpec() {
+        IServerMessage message = mock(IServerMessage.class);
+        when(message.isInfo()).thenReturn(true);
+        IExtendedFileSpec ret = mock(IExtendedFileSpec.class);
+        when(ret.getStatusMessage()).thenReturn(message);
+        return ret;
+    }
+
+    private static IExtendedFileSpec fstatSpec(String depotPath, FileAction action) {
+        ExtendedFileSpec ret = new ExtendedFileSpec();
+        ret.setDepotPath(depotPath);
+        ret.setAction(action);
+        return ret;
+    }
+
+    private static IFileSpec openedSpec(String depotPath) {
+        FileSpec ret = new FileSpec();
+        ret.setDepotPath(depotPath);
+        ret.setChangelistId(12);
+        ret.setFileType("text");
+        return ret;
+    }
+
+    private static ClientConfig createClientConfig() {
+        MockConfigPart configPart = new MockConfigPart()
+                .withServerName("1234")
+                .withUsername("u")
+                .withNoPassword()
+                .withClientname("client1");
+        return ClientConfig.createFrom(ServerConfig.createFrom(configPart), configPart);
+    }
+}
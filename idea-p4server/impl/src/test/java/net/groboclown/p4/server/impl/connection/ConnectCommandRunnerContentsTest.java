@@ -0,0 +1,113 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.groboclown.p4.server.impl.connection;
+
+import com.intellij.openapi.vcs.FilePath;
+import com.perforce.p4java.client.IClient;
+import com.perforce.p4java.core.file.IFileSpec;
+import com.perforce.p4java.impl.generic.core.file.FileSpec;
+import com.perforce.p4java.option.server.GetFileContentsOptions;
+import com.perforce.p4java.server.IOptionsServer;
+import net.groboclown.idea.extensions.IdeaLightweightExtension;
+import net.groboclown.idea.mock.MockVirtualFileSystem;
+import net.groboclown.p4.server.api.commands.file.GetFileContentsQuery;
+import net.groboclown.p4.server.api.commands.file.GetFileContentsResult;
+import net.groboclown.p4.server.api.config.ClientConfig;
+import net.groboclown.p4.server.api.config.ServerConfig;
+import net.groboclown.p4.server.api.config.part.MockConfigPart;
+import net.groboclown.p4.server.impl.cache.RevisionContentCache;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ConnectCommandRunnerContentsTest {
+    @RegisterExtension
+    IdeaLightweightExtension idea = new IdeaLightweightExtension();
+
+    @TempDir
+    File dir;
+
+
+    @Test
+    void getFileContents_localFileUsesCache()
+            throws Exception {
+        byte[] contents = "revision 3".getBytes(StandardCharsets.UTF_8);
+        IOptionsServer server = mock(IOptionsServer.class);
+        when(server.getFileContents(anyList(), any(GetFileContentsOptions.class)))
+                .thenAnswer((i) -> new ByteArrayInputStream(contents));
+        IClient client = mock(IClient.class);
+        when(client.getServer()).thenReturn(server);
+        FileSpec where = new FileSpec();
+        where.setDepotPath("//depot/a.txt");
+        when(client.where(anyList())).thenReturn(Collections.<IFileSpec>singletonList(where));
+
+        ClientConfig config = createClientConfig();
+        FilePath localFile = MockVirtualFileSystem.createTree("a.txt", "local").get("a.txt").asFilePath();
+        ConnectCommandRunner runner = new ConnectCommandRunner(idea.getMockProject(),
+                new MockClientConnectionManager(client), new RevisionContentCache(dir, 1024, 1024));
+
+        GetFileContentsResult first = getFileContents(runner, config, new GetFileContentsQuery(localFile, 3));
+        GetFileContentsResult second = getFileContents(runner, config, new GetFileContentsQuery(localFile, 3));
+
+        assertArrayEquals(contents, first.getData());
+        assertArrayEquals(contents, second.getData());
+        // The second request still maps the file through the client, but doesn't download it.
+        verify(server, times(1)).getFileContents(anyList(), any(GetFileContentsOptions.class));
+        verify(client, times(2)).where(anyList());
+
+        // The same revision requested by depot path doesn't need the server at all.
+        GetFileContentsResult byDepot = getFileContents(runner, config, new GetFileContentsQuery("//depot/a.txt#3"));
+        assertArrayEquals(contents, byDepot.getData());
+        verify(client, times(2)).where(anyList());
+
+        // Another revision is not in the cache.
+        getFileContents(runner, config, new GetFileContentsQuery(localFile, 2));
+        verify(server, times(2)).getFileContents(anyList(), any(GetFileContentsOptions.class));
+    }
+
+    private static GetFileContentsResult getFileContents(ConnectCommandRunner runner, ClientConfig config,
+            GetFileContentsQuery query) {
+        // The connection manager runs everything in the calling thread, so the answer is already complete.
+        final GetFileContentsResult[] ret = new GetFileContentsResult[1];
+        runner.getFileContents(config, query)
+                .whenCompleted((r) -> ret[0] = r)
+                .whenServerError(Assertions::fail);
+        assertNotNull(ret[0]);
+        return ret[0];
+    }
+
+    private static ClientConfig createClientConfig() {
+        MockConfigPart configPart = new MockConfigPart()
+                .withServerName("1234")
+                .withUsername("u")
+                .withNoPassword()
+                .withClientname("client1");
+        return ClientConfig.createFrom(ServerConfig.createFrom(configPart), configPart);
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.groboclown.p4.server.impl.connection;
+
+import com.intellij.openapi.vcs.FilePath;
+import com.perforce.p4java.client.IClient;
+import com.perforce.p4java.core.file.IFileRevisionData;
+import com.perforce.p4java.core.file.IFileSpec;
+import com.perforce.p4java.impl.generic.core.file.FileSpec;
+import com.perforce.p4java.option.server.GetRevisionHistoryOptions;
+import com.perforce.p4java.server.IOptionsServer;
+import net.groboclown.idea.extensions.IdeaLightweightExtension;
+import net.groboclown.idea.mock.MockVirtualFileSystem;
+import net.groboclown.p4.server.api.commands.file.ListFileHistoryQuery;
+import net.groboclown.p4.server.api.commands.file.ListFileHistoryResult;
+import net.groboclown.p4.server.api.config.ClientConfig;
+import net.groboclown.p4.server.api.config.ServerConfig;
+import net.groboclown.p4.server.api.config.part.MockConfigPart;
+import net.groboclown.p4.server.impl.cache.RevisionContentCache;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ConnectCommandRunnerHistoryTest {
+    @RegisterExtension
+    IdeaLightweightExtension idea = new IdeaLightweightExtension();
+
+    @TempDir
+    File dir;
+
+
+    @Test
+    void listFilesHistory_noInherited()
+            throws Exception {
+        Map<IFileSpec, List<IFileRevisionData>> history = new LinkedHashMap<>();
+        addHistory(history, "//depot/b.txt", 5, 1);
+
+        ListFileHistoryResult result = listFilesHistory(history, new ListFileHistoryQuery(file(), 100));
+
+        assertEquals(5, result.getResultCount());
+        assertEquals(1, result.getOldestRevision());
+        assertFalse(result.hasInheritedRevisions());
+        assertEquals(5, result.getRevisions(null, null).size());
+    }
+
+    @Test
+    void listFilesHistory_inheritedRevisionsDontMoveBoundary()
+            throws Exception {
+        // b.txt was branched from a.txt, which has higher revision numbers than b.txt's page.
+        Map<IFileSpec, List<IFileRevisionData>> history = new LinkedHashMap<>();
+        addHistory(history, "//depot/b.txt", 30, 21);
+        addHistory(history, "//depot/a.txt", 60, 41);
+
+        ListFileHistoryResult result = listFilesHistory(history, new ListFileHistoryQuery(file(), 10));
+
+        assertEquals(10, result.getResultCount());
+        assertEquals(21, result.getOldestRevision());
+        assertTrue(result.hasInheritedRevisions());
+        // The inherited revisions are still reported with the page.
+        assertEquals(30, result.getRevisions(null, null).size());
+    }
+
+    @Test
+    void listFilesHistory_inheritedOlderRevisionsOfSamePath()
+            throws Exception {
+        // b.txt was deleted, then branched again from a.txt, which itself was branched from
+        // the old b.txt.  The old b.txt revisions are inherited, and must not be taken as the
+        // page's oldest revision, or the revisions between them would be skipped.
+        Map<IFileSpec, List<IFileRevisionData>> history = new LinkedHashMap<>();
+        addHistory(history, "//depot/b.txt", 40, 31);
+        addHistory(history, "//depot/a.txt", 4, 1);
+        addHistory(history, "//depot/b.txt", 3, 1);
+
+        ListFileHistoryResult result = listFilesHistory(history, new ListFileHistoryQuery(file(), 10));
+
+        assertEquals(10, result.getResultCount());
+        assertEquals(31, result.getOldestRevision());
+        assertTrue(result.hasInheritedRevisions());
+        assertEquals(17, result.getRevisions(null, null).size());
+    }
+
+    @Test
+    void listFilesHistory_windowWithInherited()
+            throws Exception {
+        // The page with the first revision brings in the renamed file's history.
+        Map<IFileSpec, List<IFileRevisionData>> history = new LinkedHashMap<>();
+        addHistory(history, "//depot/b.txt", 10, 1);
+        addHistory(history, "//depot/a.txt", 25, 1);
+
+        ListFileHistoryQuery query = new ListFileHistoryQuery(file(), -1, 1, 10);
+        IOptionsServer server = mock(IOptionsServer.class);
+        ListFileHistoryResult result = listFilesHistory(server, history, query);
+
+        assertEquals(10, result.getResultCount());
+        assertEquals(1, result.getOldestRevision());
+        assertTrue(result.hasInheritedRevisions());
+        assertEquals(35, result.getRevisions(null, null).size());
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<IFileSpec>> specs = ArgumentCaptor.forClass(List.class);
+        verify(server).getRevisionHistory(specs.capture(), any(GetRevisionHistoryOptions.class));
+        assertEquals(1, specs.getValue().size());
+        assertTrue(specs.getValue().get(0).getAnnotatedPreferredPathString().endsWith("#1,#10"),
+                specs.getValue().get(0).getAnnotatedPreferredPathString());
+    }
+
+
+    private ListFileHistoryResult listFilesHistory(Map<IFileSpec, List<IFileRevisionData>> history,
+            ListFileHistoryQuery query)
+            throws Exception {
+        return listFilesHistory(mock(IOptionsServer.class), history, query);
+    }
+
+    private ListFileHistoryResult listFilesHistory(IOptionsServer server,
+            Map<IFileSpec, List<IFileRevisionData>> history, ListFileHistoryQuery query)
+            throws Exception {
+        when(server.getRevisionHistory(anyList(), any(GetRevisionHistoryOptions.class))).thenReturn(history);
+        IClient client = mock(IClient.class);
+        when(client.getServer()).thenReturn(server);
+        ConnectCommandRunner runner = new ConnectCommandRunner(idea.getMockProject(),
+                new MockClientConnectionManager(client), new RevisionContentCache(dir, 1024, 1024));
+
+        // The connection manager runs everything in the calling thread, so the answer is already complete.
+        final ListFileHistoryResult[] ret = new ListFileHistoryResult[1];
+        runner.listFilesHistory(createClientConfig(), query)
+                .whenCompleted((r) -> ret[0] = r)
+                .whenServerError(Assertions::fail);
+        assertNotNull(ret[0]);
+        return ret[0];
+    }
+
+    private FilePath file() {
+        return MockVirtualFileSystem.createTree("b.txt", "b").get("b.txt").asFilePath();
+    }
+
+    // Adds the revisions from newest to oldest, as the server reports them.
+    private static void addHistory(Map<IFileSpec, List<IFileRevisionData>> history, String depotPath,
+            int newest, int oldest) {
+        // File specs are compared by identity, so inherited history can repeat a depot path.
+        FileSpec spec = new FileSpec();
+        spec.setDepotPath(depotPath);
+        List<IFileRevisionData> revisions = new ArrayList<>();
+        for (int rev = newest; rev >= oldest; rev--) {
+            IFileRevisionData data = mock(IFileRevisionData.class);
+            when(data.getDepotFileName()).thenReturn(depotPath);
+            when(data.getRevision()).thenReturn(rev);
+            revisions.add(data);
+        }
+        history.put(spec, revisions);
+    }
+
+    private static ClientConfig createClientConfig() {
+        MockConfigPart configPart = new MockConfigPart()
+                .withServerName("1234")
+                .withUsername("u")
+                .withNoPassword()
+                .withClientname("client1");
+        return ClientConfig.createFrom(ServerConfig.createFrom(configPart), configPart);
+    }
+}
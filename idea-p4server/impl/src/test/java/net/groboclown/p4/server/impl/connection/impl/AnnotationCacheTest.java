@@ -0,0 +1,115 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.groboclown.p4.server.impl.connection.impl;
+
+import com.intellij.openapi.util.Pair;
+import com.perforce.p4java.core.file.FileAction;
+import com.perforce.p4java.core.file.IFileRevisionData;
+import com.perforce.p4java.core.file.IFileSpec;
+import com.perforce.p4java.impl.generic.core.file.FileRevisionData;
+import com.perforce.p4java.impl.generic.core.file.FileSpec;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class AnnotationCacheTest {
+    @Test
+    void annotatedByRevision() {
+        AnnotationCache cache = new AnnotationCache();
+        assertNull(cache.getAnnotated("p4:1666", "//depot/a.txt", 3));
+
+        AnnotationCache.AnnotatedRevision rev = cache.putAnnotated("p4:1666", "//depot/a.txt", 3,
+                "text", Collections.emptyList());
+        assertSame(rev, cache.getAnnotated("p4:1666", "//depot/a.txt", 3));
+        assertNull(cache.getAnnotated("p4:1666", "//depot/a.txt", 4));
+        assertNull(cache.getAnnotated("other:1666", "//depot/a.txt", 3));
+
+        // Unknown paths and revisions aren't kept.
+        assertNotNull(cache.putAnnotated("p4:1666", null, 3, "text", Collections.emptyList()));
+        cache.putAnnotated("p4:1666", "//depot/b.txt", 0, "text", Collections.emptyList());
+        assertNull(cache.getAnnotated("p4:1666", "//depot/b.txt", 0));
+    }
+
+
+    @Test
+    void annotatedLimitedBySize() {
+        AnnotationCache cache = new AnnotationCache(100);
+        cache.putAnnotated("p4:1666", "//depot/a.txt", 1, text(40), Collections.emptyList());
+        cache.putAnnotated("p4:1666", "//depot/b.txt", 1, text(40), Collections.emptyList());
+        // Using a.txt makes b.txt the least recently used.
+        assertNotNull(cache.getAnnotated("p4:1666", "//depot/a.txt", 1));
+
+        cache.putAnnotated("p4:1666", "//depot/c.txt", 1, text(40), Collections.emptyList());
+        assertNotNull(cache.getAnnotated("p4:1666", "//depot/a.txt", 1));
+        assertNull(cache.getAnnotated("p4:1666", "//depot/b.txt", 1));
+        assertNotNull(cache.getAnnotated("p4:1666", "//depot/c.txt", 1));
+
+        // A revision bigger than the whole cache isn't kept, and doesn't push out the others.
+        assertNotNull(cache.putAnnotated("p4:1666", "//depot/d.txt", 1, text(101), Collections.emptyList()));
+        assertNull(cache.getAnnotated("p4:1666", "//depot/d.txt", 1));
+        assertNotNull(cache.getAnnotated("p4:1666", "//depot/a.txt", 1));
+        assertNotNull(cache.getAnnotated("p4:1666", "//depot/c.txt", 1));
+
+        // Many small files fit.
+        cache = new AnnotationCache(100);
+        for (int i = 0; i < 20; i++) {
+            cache.putAnnotated("p4:1666", "//depot/" + i + ".txt", 1, text(5), Collections.emptyList());
+        }
+        assertNotNull(cache.getAnnotated("p4:1666", "//depot/0.txt", 1));
+    }
+
+
+    @Test
+    void onlyMissingHistory() {
+        AnnotationCache cache = new AnnotationCache();
+        cache.putHistory("p4:1666", Arrays.asList(history("//depot/a.txt", 1), history("//depot/a.txt", 2)));
+
+        List<String> missing = new ArrayList<>();
+        List<Pair<IFileSpec, IFileRevisionData>> found = cache.getHistory("p4:1666",
+                Arrays.asList("//depot/a.txt#1", "//depot/a.txt#2", "//depot/a.txt#3"), missing);
+        assertEquals(2, found.size());
+        assertEquals(Collections.singletonList("//depot/a.txt#3"), missing);
+
+        missing.clear();
+        assertEquals(0, cache.getHistory("other:1666",
+                Collections.singletonList("//depot/a.txt#1"), missing).size());
+        assertEquals(1, missing.size());
+    }
+
+
+    private static String text(int length) {
+        char[] ret = new char[length];
+        Arrays.fill(ret, 'x');
+        return new String(ret);
+    }
+
+    private static Pair<IFileSpec, IFileRevisionData> history(String depotPath, int rev) {
+        // The history query results have the depot path set, rather than the original path.
+        FileSpec spec = new FileSpec();
+        spec.setDepotPath(depotPath);
+        return Pair.create(spec,
+                new FileRevisionData(rev, rev, FileAction.EDIT, new Date(), "user", null, "desc",
+                        depotPath, "client"));
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.groboclown.p4.server.impl.connection.impl;
+
+import com.perforce.p4java.core.IChangelist;
+import com.perforce.p4java.core.file.IFileSpec;
+import com.perforce.p4java.exception.P4JavaException;
+import com.perforce.p4java.impl.mapbased.rpc.RpcBatchCommand;
+import com.perforce.p4java.impl.mapbased.rpc.RpcServer;
+import com.perforce.p4java.server.IOptionsServer;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class P4CommandUtilTest {
+    @Test
+    void getChangelistDetails_batched()
+            throws P4JavaException {
+        IOptionsServer server = mock(IOptionsServer.class);
+        List<Map<String, Object>> results = new ArrayList<>();
+        // Results are deliberately in a different order than requested.
+        results.add(describeMap(3, "third", false, "//depot/c.txt"));
+        results.add(describeMap(1, "first", true, "//depot/a.txt", "//depot/b.txt"));
+        when(server.execMapCmdList(eq("describe"), any(), any())).thenReturn(results);
+
+        List<IChangelist> changes = new P4CommandUtil().getChangelistDetails(server, Arrays.asList(1, 2, 3));
+
+        verify(server, times(1)).execMapCmdList(eq("describe"), any(), any());
+        verify(server).execMapCmdList("describe", new String[] { "-s", "1", "2", "3" }, null);
+        assertEquals(2, changes.size());
+        assertEquals(1, changes.get(0).getId());
+        assertEquals("first", changes.get(0).getDescription());
+        assertTrue(changes.get(0).isShelved());
+        assertEquals(2, changes.get(0).getFiles(false).size());
+        assertEquals("//depot/a.txt", changes.get(0).getFiles(false).get(0).getDepotPathString());
+        assertEquals(3, changes.get(1).getId());
+        assertFalse(changes.get(1).isShelved());
+        assertEquals(1, changes.get(1).getFiles(false).size());
+    }
+
+    @Test
+    void getShelvedFiles_batched()
+            throws P4JavaException {
+        IOptionsServer server = mock(IOptionsServer.class);
+        List<Map<String, Object>> results = new ArrayList<>();
+        results.add(describeMap(1, "first", true, "//depot/a.txt"));
+        results.add(describeMap(3, "third", true, "//depot/c.txt", "//depot/d.txt"));
+        when(server.execMapCmdList(eq("describe"), any(), any())).thenReturn(results);
+
+        Map<Integer, List<IFileSpec>> shelved = new P4CommandUtil().getShelvedFiles(server, Arrays.asList(1, 3), 20);
+
+        verify(server).execMapCmdList("describe", new String[] { "-s", "-m20", "-S", "1", "3" }, null);
+        assertEquals(2, shelved.size());
+        assertEquals(1, shelved.get(1).size());
+        assertEquals(2, shelved.get(3).size());
+        assertEquals(3, shelved.get(3).get(1).getChangelistId());
+    }
+
+    @Test
+    void getChangelistDetails_errorSkipsOnlyThatChangelist()
+            throws P4JavaException {
+        IOptionsServer server = mock(IOptionsServer.class);
+        List<Map<String, Object>> results = new ArrayList<>();
+        results.add(describeMap(1, "first", false, "//depot/a.txt"));
+        Map<String, Object> error = new HashMap<>();
+        error.put("fmt0", "Change %change% unknown.");
+        error.put("code0", "838998116");
+        error.put("change", "2");
+        results.add(error);
+        results.add(describeMap(3, "third", false, "//depot/c.txt"));
+        when(server.execMapCmdList(eq("describe"), any(), any())).thenReturn(results);
+
+        List<IChangelist> changes = new P4CommandUtil().getChangelistDetails(server, Arrays.asList(1, 2, 3));
+
+        assertEquals(2, changes.size());
+        assertEquals(1, changes.get(0).getId());
+        assertEquals(3, changes.get(1).getId());
+    }
+
+    @Test
+    void getChangelistDetails_manyChangelists()
+            throws P4JavaException {
+        IOptionsServer server = mock(IOptionsServer.class);
+        when(server.execMapCmdList(eq("describe"), any(), any())).thenReturn(new ArrayList<>());
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 1; i <= 120; i++) {
+            ids.add(i);
+        }
+
+        new P4CommandUtil().getChangelistDetails(server, ids);
+
+        // A constant number of calls, rather than one per changelist.
+        verify(server, times(3)).execMapCmdList(eq("describe"), any(), any());
+    }
+
+    @Test
+    void getChangelistDetails_manyChangelistsSentAsBatch()
+            throws P4JavaException {
+        RpcServer server = mock(RpcServer.class);
+        List<List<Map<String, Object>>> results = new ArrayList<>();
+        results.add(Collections.singletonList(describeMap(1, "first", false, "//depot/a.txt")));
+        results.add(Collections.singletonList(describeMap(51, "second", false, "//depot/b.txt")));
+        results.add(new ArrayList<>());
+        when(server.execMapCmdBatch(any())).thenReturn(results);
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 1; i <= 120; i++) {
+            ids.add(i);
+        }
+
+        List<IChangelist> changes = new P4CommandUtil().getChangelistDetails(server, ids);
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<RpcBatchCommand>> commands = ArgumentCaptor.forClass(List.class);
+        verify(server, times(1)).execMapCmdBatch(commands.capture());
+        verify(server, never()).execMapCmdList(eq("describe"), any(String[].class), any(Map.class));
+        assertEquals(3, commands.getValue().size());
+        assertEquals("describe", commands.getValue().get(1).getCmdName());
+        assertEquals("51", commands.getValue().get(1).getCmdArgs()[1]);
+        assertEquals(2, changes.size());
+        assertEquals(1, changes.get(0).getId());
+        assertEquals(51, changes.get(1).getId());
+    }
+
+
+    private static Map<String, Object> describeMap(int id, String desc, boolean shelved, String... files) {
+        Map<String, Object> ret = new HashMap<>();
+        ret.put("change", Integer.toString(id));
+        ret.put("desc", desc);
+        ret.put("user", "user");
+        ret.put("client", "client");
+        ret.put("status", "pending");
+        ret.put("time", "1500000000");
+        if (shelved) {
+            ret.put("shelved", "");
+        }
+        for (int i = 0; i < files.length; i++) {
+            ret.put("depotFile" + i, files[i]);
+            ret.put("action" + i, "edit");
+            ret.put("type" + i, "text");
+            ret.put("rev" + i, "1");
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.groboclown.p4.server.impl.connection.impl;
+
+import net.groboclown.p4.server.api.P4ServerName;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ServerConnectionPoolTest {
+    private static final P4ServerName SERVER_1 = P4ServerName.forPortNotNull("server1:1666");
+    private static final P4ServerName SERVER_2 = P4ServerName.forPortNotNull("server2:1666");
+
+    @Test
+    void borrow_empty() {
+        Handler handler = new Handler();
+        ServerConnectionPool<Conn> pool = new ServerConnectionPool<>(handler, 2, 1000, () -> 0);
+
+        assertNull(pool.borrow(new ServerConnectionPool.Key(SERVER_1, "a")));
+    }
+
+    @Test
+    void releaseThenBorrow() {
+        Handler handler = new Handler();
+        ServerConnectionPool<Conn> pool = new ServerConnectionPool<>(handler, 2, 1000, () -> 0);
+        ServerConnectionPool.Key key = new ServerConnectionPool.Key(SERVER_1, "a");
+        Conn conn = new Conn();
+
+        pool.release(key, conn);
+        assertEquals(1, pool.getIdleCount());
+        assertNull(pool.borrow(new ServerConnectionPool.Key(SERVER_1, "b")));
+        assertSame(conn, pool.borrow(new ServerConnectionPool.Key(SERVER_1, "a")));
+        assertEquals(0, pool.getIdleCount());
+        assertTrue(handler.closed.isEmpty());
+    }
+
+    @Test
+    void release_overMax() {
+        Handler handler = new Handler();
+        ServerConnectionPool<Conn> pool = new ServerConnectionPool<>(handler, 1, 1000, () -> 0);
+        ServerConnectionPool.Key key = new ServerConnectionPool.Key(SERVER_1, "a");
+        Conn conn1 = new Conn();
+        Conn conn2 = new Conn();
+
+        pool.release(key, conn1);
+        pool.release(key, conn2);
+        assertEquals(1, pool.getIdleCount());
+        assertEquals(List.of(conn1), handler.closed);
+        assertSame(conn2, pool.borrow(key));
+    }
+
+    @Test
+    void release_disabled() {
+        Handler handler = new Handler();
+        ServerConnectionPool<Conn> pool = new ServerConnectionPool<>(handler, 0, 1000, () -> 0);
+        Conn conn = new Conn();
+
+        assertFalse(pool.isEnabled());
+        pool.release(new ServerConnectionPool.Key(SERVER_1, "a"), conn);
+        assertEquals(0, pool.getIdleCount());
+        assertEquals(List.of(conn), handler.closed);
+    }
+
+    @Test
+    void borrow_notUsable() {
+        Handler handler = new Handler();
+        ServerConnectionPool<Conn> pool = new ServerConnectionPool<>(handler, 2, 1000, () -> 0);
+        ServerConnectionPool.Key key = new ServerConnectionPool.Key(SERVER_1, "a");
+        Conn conn = new Conn();
+
+        pool.release(key, conn);
+        conn.usable = false;
+        assertNull(pool.borrow(key));
+        assertEquals(List.of(conn), handler.closed);
+    }
+
+    @Test
+    void borrow_idleTimeout() {
+        Handler handler = new Handler();
+        long[] now = { 0 };
+        ServerConnectionPool<Conn> pool = new ServerConnectionPool<>(handler, 2, 1000, () -> now[0]);
+        ServerConnectionPool.Key key = new ServerConnectionPool.Key(SERVER_1, "a");
+        Conn conn1 = new Conn();
+        Conn conn2 = new Conn();
+
+        pool.release(key, conn1);
+        now[0] = 900;
+        pool.release(key, conn2);
+        now[0] = 1500;
+        assertSame(conn2, pool.borrow(key));
+        assertEquals(List.of(conn1), handler.closed);
+        assertEquals(0, pool.getIdleCount());
+    }
+
+    @Test
+    void invalidate() {
+        Handler handler = new Handler();
+        ServerConnectionPool<Conn> pool = new ServerConnectionPool<>(handler, 2, 1000, () -> 0);
+        Conn conn1 = new Conn();
+        Conn conn2 = new Conn();
+        Conn conn3 = new Conn();
+
+        pool.release(new ServerConnectionPool.Key(SERVER_1, "a"), conn1);
+        pool.release(new ServerConnectionPool.Key(SERVER_1, "b"), conn2);
+        pool.release(new ServerConnectionPool.Key(SERVER_2, "a"), conn3);
+        pool.invalidate(SERVER_1);
+        assertEquals(1, pool.getIdleCount());
+        assertEquals(2, handler.closed.size());
+        assertTrue(handler.closed.contains(conn1));
+        assertTrue(handler.closed.contains(conn2));
+
+        pool.invalidateAll();
+        assertEquals(0, pool.getIdleCount());
+        assertEquals(3, handler.closed.size());
+    }
+
+
+    private static class Conn {
+        boolean usable = true;
+    }
+
+
+    private static class Handler implements ServerConnectionPool.ConnectionHandler<Conn> {
+        final List<Conn> closed = new ArrayList<>();
+
+        @Override
+        public boolean isUsable(@NotNull Conn connection) {
+            return connection.usable;
+        }
+
+        @Override
+        public void close(@NotNull Conn connection) {
+            closed.add(connection);
+        }
+    }
+}
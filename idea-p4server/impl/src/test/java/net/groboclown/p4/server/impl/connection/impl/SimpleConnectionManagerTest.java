@@ -0,0 +1,135 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.groboclown.p4.server.impl.connection.impl;
+
+import com.perforce.p4java.client.IClient;
+import com.perforce.p4java.exception.AccessException;
+import com.perforce.p4java.exception.ConnectionException;
+import com.perforce.p4java.exception.P4JavaException;
+import com.perforce.p4java.server.IOptionsServer;
+import net.groboclown.p4.server.api.P4ServerName;
+import net.groboclown.p4.server.api.exceptions.NotOnServerException;
+import net.groboclown.p4.server.impl.connection.P4RequestErrorHandler;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SimpleConnectionManagerTest {
+    private static final ServerConnectionPool.Key KEY = new ServerConnectionPool.Key(
+            P4ServerName.forPortNotNull("not-a-server:1666"), "client:c1");
+
+    @Test
+    void pooledClient_fetchedAgainAfterMaxAge()
+            throws P4JavaException {
+        IClient first = mock(IClient.class);
+        IClient second = mock(IClient.class);
+        IOptionsServer server = mock(IOptionsServer.class);
+        when(server.getClient("client1")).thenReturn(first, second);
+        AtomicLong now = new AtomicLong(1000);
+        SimpleConnectionManager.PooledServer pooled = new SimpleConnectionManager.PooledServer(server, now::get);
+
+        assertSame(first, pooled.getClient("client1"));
+        now.addAndGet(SimpleConnectionManager.CLIENT_SPEC_MAX_AGE_MILLIS - 1);
+        assertSame(first, pooled.getClient("client1"));
+        verify(server, times(1)).getClient("client1");
+
+        // The spec may have been changed by someone else by now, so it's fetched again.
+        now.incrementAndGet();
+        assertSame(second, pooled.getClient("client1"));
+        verify(server, times(2)).getClient("client1");
+        verify(server).setCurrentClient(second);
+        assertSame(second, pooled.getClient("client1"));
+    }
+
+    @Test
+    void pooledClient_notOnServer()
+            throws P4JavaException {
+        IOptionsServer server = mock(IOptionsServer.class);
+        SimpleConnectionManager.PooledServer pooled = new SimpleConnectionManager.PooledServer(server, () -> 0);
+
+        assertThrows(NotOnServerException.class, () -> pooled.getClient("client1"));
+    }
+
+    @Test
+    void withPooled_droppedConnectionRetried()
+            throws Exception {
+        SimpleConnectionManager mgr = createPoolingManager();
+        List<IOptionsServer> connected = new ArrayList<>();
+        Callable<SimpleConnectionManager.PooledServer> connector = () -> {
+            IOptionsServer server = mock(IOptionsServer.class);
+            when(server.isConnected()).thenReturn(true);
+            connected.add(server);
+            return new SimpleConnectionManager.PooledServer(server);
+        };
+
+        assertEquals("first", mgr.withPooled(KEY, connector, (pooled, reused) -> {
+            assertFalse(reused);
+            return "first";
+        }));
+        assertEquals(1, connected.size());
+
+        // The server dropped the idle connection, which is only found out when it's used.
+        List<Boolean> attempts = new ArrayList<>();
+        assertEquals("second", mgr.withPooled(KEY, connector, (pooled, reused) -> {
+            attempts.add(reused);
+            if (reused) {
+                throw new ConnectionException("connection reset");
+            }
+            return "second";
+        }));
+        assertEquals(Arrays.asList(true, false), attempts);
+        assertEquals(2, connected.size());
+        verify(connected.get(0)).disconnect();
+        verify(connected.get(1), never()).disconnect();
+    }
+
+    @Test
+    void withPooled_newConnectionNotRetried()
+            throws Exception {
+        SimpleConnectionManager mgr = createPoolingManager();
+        AtomicInteger connects = new AtomicInteger();
+        Callable<SimpleConnectionManager.PooledServer> connector = () -> {
+            connects.incrementAndGet();
+            return new SimpleConnectionManager.PooledServer(mock(IOptionsServer.class));
+        };
+
+        assertThrows(AccessException.class, () -> mgr.withPooled(KEY, connector, (pooled, reused) -> {
+            // Such as an expired login.
+            throw mock(AccessException.class);
+        }));
+        assertEquals(1, connects.get());
+    }
+
+
+    private static SimpleConnectionManager createPoolingManager() {
+        return new SimpleConnectionManager(new File("."), 1000, "1",
+                mock(P4RequestErrorHandler.class), 2, 60_000);
+    }
+}
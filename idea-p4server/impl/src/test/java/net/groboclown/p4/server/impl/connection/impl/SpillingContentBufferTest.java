@@ -0,0 +1,119 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.groboclown.p4.server.impl.connection.impl;
+
+import net.groboclown.idea.extensions.TemporaryFolder;
+import net.groboclown.idea.extensions.TemporaryFolderExtension;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SpillingContentBufferTest {
+    private static final String TEXT;
+    static {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            sb.append("line ").append(i).append(": café 日本\n");
+        }
+        TEXT = sb.toString();
+    }
+
+
+    @Test
+    void inMemory()
+            throws IOException {
+        byte[] data = TEXT.getBytes(StandardCharsets.UTF_8);
+        try (SpillingContentBuffer buffer = new SpillingContentBuffer(data.length + 1, null)) {
+            assertEquals(data.length, buffer.copyFrom(new ByteArrayInputStream(data), Long.MAX_VALUE));
+            assertFalse(buffer.isSpilled());
+            assertEquals(data.length, buffer.size());
+            assertArrayEquals(data, buffer.toByteArray());
+            assertEquals(TEXT, buffer.toString(StandardCharsets.UTF_8));
+            assertArrayEquals(data, readAll(buffer.openStream()));
+        }
+    }
+
+
+    @Test
+    void spilled()
+            throws IOException {
+        for (Charset charset : new Charset[] { StandardCharsets.UTF_8, StandardCharsets.UTF_16LE,
+                Charset.forName("Shift_JIS") }) {
+            byte[] data = TEXT.getBytes(charset);
+            try (SpillingContentBuffer buffer = new SpillingContentBuffer(100, null)) {
+                buffer.copyFrom(new ByteArrayInputStream(data), Long.MAX_VALUE);
+                assertTrue(buffer.isSpilled());
+                assertEquals(data.length, buffer.size());
+                assertArrayEquals(data, buffer.toByteArray());
+                assertEquals(new String(data, charset), buffer.toString(charset), charset.name());
+                assertArrayEquals(data, readAll(buffer.openStream()));
+            }
+        }
+    }
+
+
+    @Test
+    void limit()
+            throws IOException {
+        byte[] data = new byte[100_000];
+        try (SpillingContentBuffer buffer = new SpillingContentBuffer(1000, null)) {
+            long read = buffer.copyFrom(new ByteArrayInputStream(data), 20_000);
+            // Stops at the first read past the limit.
+            assertTrue(read >= 20_000 && read < 20_000 + 8192, "read " + read);
+            assertEquals(read, buffer.size());
+        }
+    }
+
+
+    @ExtendWith(TemporaryFolderExtension.class)
+    @Test
+    void spilledIntoTempDir(TemporaryFolder tmpDir)
+            throws IOException {
+        // The directory doesn't exist yet.
+        File dir = tmpDir.newFile("p4tmp");
+        byte[] data = TEXT.getBytes(StandardCharsets.UTF_8);
+        try (SpillingContentBuffer buffer = new SpillingContentBuffer(100, dir)) {
+            buffer.copyFrom(new ByteArrayInputStream(data), Long.MAX_VALUE);
+            assertTrue(buffer.isSpilled());
+            File[] files = dir.listFiles();
+            assertNotNull(files);
+            assertEquals(1, files.length);
+            assertArrayEquals(data, buffer.toByteArray());
+        }
+        File[] files = dir.listFiles();
+        assertNotNull(files);
+        assertEquals(0, files.length);
+    }
+
+
+    private static byte[] readAll(InputStream inp)
+            throws IOException {
+        try (InputStream in = inp) {
+            return in.readAllBytes();
+        }
+    }
+}
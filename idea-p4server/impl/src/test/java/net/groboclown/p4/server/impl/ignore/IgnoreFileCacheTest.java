@@ -0,0 +1,191 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.groboclown.p4.server.impl.ignore;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.newvfs.events.VFileCreateEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileDeleteEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFilePropertyChangeEvent;
+import net.groboclown.idea.extensions.IdeaLightweightExtension;
+import net.groboclown.idea.mock.MockVirtualFile;
+import net.groboclown.idea.mock.MockVirtualFileSystem;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class IgnoreFileCacheTest {
+    @RegisterExtension
+    IdeaLightweightExtension idea = new IdeaLightweightExtension();
+
+    @Test
+    void getIgnoreFileForPath() {
+        Map<String, MockVirtualFile> tree = MockVirtualFileSystem.createTree(
+                "/a/.ignore", "*.txt\n",
+                "/a/b/c/d.txt", "d",
+                "/a/b/e.txt", "e",
+                "/x/y.txt", "y");
+        IgnoreFileCache cache = new IgnoreFileCache();
+
+        assertSame(tree.get("/a/.ignore"), cache.getIgnoreFileForPath(tree.get("/a/b/c/d.txt"), ".ignore"));
+        // Parent directory answer was cached by the first lookup.
+        assertSame(tree.get("/a/.ignore"), cache.getIgnoreFileForPath(tree.get("/a/b/e.txt"), ".ignore"));
+        assertNull(cache.getIgnoreFileForPath(tree.get("/x/y.txt"), ".ignore"));
+        assertNull(cache.getIgnoreFileForPath(tree.get("/a/b/e.txt"), ".other"));
+    }
+
+    @Test
+    void getIgnoreFileForPath_afterClear() {
+        Map<String, MockVirtualFile> tree = MockVirtualFileSystem.createTree(
+                "/a/.ignore", "*.txt\n",
+                "/a/b/e.txt", "e");
+        IgnoreFileCache cache = new IgnoreFileCache();
+        MockVirtualFile b = tree.get("/a/b");
+
+        assertSame(tree.get("/a/.ignore"), cache.getIgnoreFileForPath(tree.get("/a/b/e.txt"), ".ignore"));
+        MockVirtualFile bIgnore = b.addChildFile(this, ".ignore", "*.java\n", null);
+        assertSame(tree.get("/a/.ignore"), cache.getIgnoreFileForPath(tree.get("/a/b/e.txt"), ".ignore"));
+
+        cache.clear();
+        assertSame(bIgnore, cache.getIgnoreFileForPath(tree.get("/a/b/e.txt"), ".ignore"));
+    }
+
+    @Test
+    void getIgnoreFileForPath_clearedDuringLookup() {
+        IgnoreFileCache cache = new IgnoreFileCache();
+        VirtualFile dir = mock(VirtualFile.class);
+        VirtualFile file = mock(VirtualFile.class);
+        when(file.getParent()).thenReturn(dir);
+        when(dir.isDirectory()).thenReturn(true);
+        when(dir.findChild(".ignore")).then((inv) -> {
+            // The file system changes while the directory is being checked.
+            cache.clear();
+            return null;
+        });
+
+        assertNull(cache.getIgnoreFileForPath(file, ".ignore"));
+        assertNull(cache.getIgnoreFileForPath(file, ".ignore"));
+        // The first answer was not kept, so the directory was checked again.
+        verify(dir, times(2)).findChild(".ignore");
+    }
+
+    @Test
+    void fileSystemChanged_ignoreFileCreated() {
+        Map<String, MockVirtualFile> tree = MockVirtualFileSystem.createTree(
+                "/a/.ignore", "*.txt\n",
+                "/a/b/e.txt", "e");
+        IgnoreFileCache cache = new IgnoreFileCache();
+        MockVirtualFile b = tree.get("/a/b");
+        registerFileNames();
+
+        assertSame(tree.get("/a/.ignore"), cache.getIgnoreFileForPath(tree.get("/a/b/e.txt"), ".ignore"));
+        MockVirtualFile bIgnore = b.addChildFile(this, ".ignore", "*.java\n", null);
+        cache.fileSystemChanged(Collections.singletonList(
+                new VFileCreateEvent(this, b, ".ignore", false, null, null, false, null)));
+        assertSame(bIgnore, cache.getIgnoreFileForPath(tree.get("/a/b/e.txt"), ".ignore"));
+    }
+
+    @Test
+    void fileSystemChanged_ignoreFileDeleted()
+            throws IOException {
+        Map<String, MockVirtualFile> tree = MockVirtualFileSystem.createTree(
+                "/a/.ignore", "*.txt\n",
+                "/a/b/.ignore", "*.java\n",
+                "/a/b/e.txt", "e");
+        IgnoreFileCache cache = new IgnoreFileCache();
+        MockVirtualFile bIgnore = tree.get("/a/b/.ignore");
+
+        assertSame(bIgnore, cache.getIgnoreFileForPath(tree.get("/a/b/e.txt"), ".ignore"));
+        bIgnore.delete(this);
+        cache.fileSystemChanged(Collections.singletonList(new VFileDeleteEvent(this, bIgnore, false)));
+        assertSame(tree.get("/a/.ignore"), cache.getIgnoreFileForPath(tree.get("/a/b/e.txt"), ".ignore"));
+    }
+
+    @Test
+    void fileSystemChanged_ignoreFileRenamed()
+            throws IOException {
+        Map<String, MockVirtualFile> tree = MockVirtualFileSystem.createTree(
+                "/a/.ignore", "*.txt\n",
+                "/a/b/.ignore", "*.java\n",
+                "/a/b/e.txt", "e");
+        IgnoreFileCache cache = new IgnoreFileCache();
+        MockVirtualFile b = tree.get("/a/b");
+        MockVirtualFile bIgnore = tree.get("/a/b/.ignore");
+
+        assertSame(bIgnore, cache.getIgnoreFileForPath(tree.get("/a/b/e.txt"), ".ignore"));
+
+        // The mock file system can't rename, so replace the file with one under the new name.
+        bIgnore.delete(this);
+        MockVirtualFile renamed = b.addChildFile(this, "ignore.bak", "*.java\n", null);
+        cache.fileSystemChanged(Collections.singletonList(new VFilePropertyChangeEvent(
+                this, renamed, VirtualFile.PROP_NAME, ".ignore", "ignore.bak", false)));
+        assertSame(tree.get("/a/.ignore"), cache.getIgnoreFileForPath(tree.get("/a/b/e.txt"), ".ignore"));
+
+        renamed.delete(this);
+        MockVirtualFile restored = b.addChildFile(this, ".ignore", "*.java\n", null);
+        cache.fileSystemChanged(Collections.singletonList(new VFilePropertyChangeEvent(
+                this, restored, VirtualFile.PROP_NAME, "ignore.bak", ".ignore", false)));
+        assertSame(restored, cache.getIgnoreFileForPath(tree.get("/a/b/e.txt"), ".ignore"));
+    }
+
+    @Test
+    void getIgnoreFileSet_reloadOnChange()
+            throws IOException {
+        Map<String, MockVirtualFile> tree = MockVirtualFileSystem.createTree(
+                "/a/.ignore", "*.txt\n",
+                "/a/b.txt", "b");
+        IgnoreFileCache cache = new IgnoreFileCache();
+        MockVirtualFile ignoreFile = tree.get("/a/.ignore");
+
+        IgnoreFileSet first = cache.getIgnoreFileSet(ignoreFile);
+        assertSame(first, cache.getIgnoreFileSet(ignoreFile));
+        assertTrue(first.isIgnored(tree.get("/a/b.txt")));
+
+        ignoreFile.setContents("*.java\n", null);
+        IgnoreFileSet second = cache.getIgnoreFileSet(ignoreFile);
+        assertNotSame(first, second);
+        assertFalse(second.isIgnored(tree.get("/a/b.txt")));
+    }
+
+
+    // The create event stores the new file's name through the VirtualFileManager, which is a
+    // mock here.  The manager instance is kept statically, so stub the one actually in use.
+    private void registerFileNames() {
+        List<String> names = new ArrayList<>();
+        VirtualFileManager vfm = VirtualFileManager.getInstance();
+        when(vfm.storeName(anyString())).then((inv) -> {
+            names.add(inv.getArgument(0));
+            return names.size() - 1;
+        });
+        when(vfm.getVFileName(anyInt())).then((inv) -> names.get(inv.getArgument(0)));
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.groboclown.p4.server.impl.ignore;
+
+import com.intellij.openapi.diagnostic.Logger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IgnoreFileMatcherTest {
+    private static final Logger LOG = Logger.getInstance(IgnoreFileMatcherTest.class);
+
+    private static final String[] NAMES = {
+            "a", "b", "src", "main", "bin", "build", "test", "readme.html", "index.html", "x.dll", "lib.so",
+            "tool.exe", "a.o", "build.properties", "def.jpeg", "bdef.jpeg", "notes.txt", "Makefile", "Bin"
+    };
+    private static final String[] RULE_PARTS = {
+            "a", "b", "src", "bin", "*", "**", "*.html", "readme.html", "*.dll", "b**def.jp*g", "*.txt",
+            "build.properties", "te*t", "*a*", "Bin"
+    };
+
+
+    @Test
+    void firstMatchWins() {
+        IgnoreFileMatcher matcher = matcher(
+                "!readme.*",
+                "*.html",
+                "/a/bin/");
+
+        assertFalse(matcher.isIgnored(path("a", "readme.html")));
+        assertTrue(matcher.isIgnored(path("a", "index.html")));
+        assertTrue(matcher.isIgnored(path("a", "bin", "x.dll")));
+        assertFalse(matcher.isIgnored(path("a", "b", "x.dll")));
+    }
+
+
+    @Test
+    void sharedStates() {
+        IgnoreFileMatcher matcher = matcher("*.dll", "/build/", "src/**/*.txt");
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(matcher.isIgnored(path("src", "main", "f" + i + ".txt")));
+            assertFalse(matcher.isIgnored(path("src", "main", "f" + i + ".java")));
+        }
+        // The number of distinct states depends on the patterns, not on the number of files.
+        assertTrue(matcher.getStateCount() < 20, "state count " + matcher.getStateCount());
+    }
+
+
+    @Test
+    void stateCountLimited()
+            throws IOException {
+        Random random = new Random(1234);
+        for (int fileCount = 0; fileCount < 20; fileCount++) {
+            List<IgnoreFilePattern> patterns = IgnoreFilePattern.parseFile(new StringReader(
+                    randomIgnoreFile(random, 1 + random.nextInt(30))));
+            IgnoreFileMatcher matcher = new IgnoreFileMatcher(patterns, 3);
+            for (int i = 0; i < 500; i++) {
+                List<String> path = randomPath(random);
+                // Past the limit, the answers are still the same.
+                assertEquals(loopIsIgnored(patterns, path), matcher.isIgnored(path),
+                        () -> "Mismatch for " + path + " against " + patterns);
+            }
+            assertTrue(matcher.getStateCount() <= 3, "state count " + matcher.getStateCount());
+        }
+    }
+
+
+    @Test
+    void sameAsPatternLoop()
+            throws IOException {
+        Random random = new Random(1234);
+        for (int fileCount = 0; fileCount < 50; fileCount++) {
+            List<IgnoreFilePattern> patterns = IgnoreFilePattern.parseFile(new StringReader(
+                    randomIgnoreFile(random, 1 + random.nextInt(30))));
+            IgnoreFileMatcher matcher = new IgnoreFileMatcher(patterns);
+            for (int i = 0; i < 500; i++) {
+                List<String> path = randomPath(random);
+                assertEquals(loopIsIgnored(patterns, path), matcher.isIgnored(path),
+                        () -> "Mismatch for " + path + " against " + patterns);
+            }
+        }
+    }
+
+
+    /**
+     * Compares the compiled matcher against the per-pattern loop.  Run with
+     * {@code -Dp4ic.benchmark=true}.
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "p4ic.benchmark", matches = "true")
+    void benchmark()
+            throws IOException {
+        Random random = new Random(5678);
+        List<IgnoreFilePattern> patterns = IgnoreFilePattern.parseFile(new StringReader(
+                monorepoIgnoreFile(random, 500)));
+        List<List<String>> paths = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            paths.add(monorepoPath(random, i));
+        }
+
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            int loopCount = 0;
+            for (List<String> path : paths) {
+                if (loopIsIgnored(patterns, path)) {
+                    loopCount++;
+                }
+            }
+            long loopTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            IgnoreFileMatcher matcher = new IgnoreFileMatcher(patterns);
+            int matcherCount = 0;
+            for (List<String> path : paths) {
+                if (matcher.isIgnored(path)) {
+                    matcherCount++;
+                }
+            }
+            long matcherTime = System.nanoTime() - start;
+
+            assertEquals(loopCount, matcherCount);
+            LOG.info("Round " + round + ": " + patterns.size() + " patterns, " + paths.size()
+                    + " paths; pattern loop " + (loopTime / 1_000_000) + " ms, compiled matcher "
+                    + (matcherTime / 1_000_000) + " ms (" + matcher.getStateCount() + " states)");
+        }
+    }
+
+
+    private static IgnoreFileMatcher matcher(String... lines) {
+        List<IgnoreFilePattern> patterns = new ArrayList<>();
+        for (String line : lines) {
+            patterns.add(IgnoreFilePattern.parseLinePattern(line));
+        }
+        return new IgnoreFileMatcher(patterns);
+    }
+
+
+    private static List<String> path(String... parts) {
+        return Arrays.asList(parts);
+    }
+
+
+    private static boolean loopIsIgnored(List<IgnoreFilePattern> patterns, List<String> path) {
+        for (IgnoreFilePattern pattern : patterns) {
+            if (pattern.matches(path)) {
+                return pattern.isIgnoreMatchType();
+            }
+        }
+        return false;
+    }
+
+
+    private static String randomIgnoreFile(Random random, int ruleCount) {
+        StringBuilder sb = new StringBuilder("# generated\n");
+        for (int i = 0; i < ruleCount; i++) {
+            if (random.nextInt(5) == 0) {
+                sb.append('!');
+            }
+            if (random.nextInt(4) == 0) {
+                sb.append('/');
+            }
+            int parts = 1 + random.nextInt(3);
+            for (int p = 0; p < parts; p++) {
+                if (p > 0) {
+                    sb.append('/');
+                }
+                String part = RULE_PARTS[random.nextInt(RULE_PARTS.length)];
+                if (random.nextInt(3) == 0) {
+                    // Make the large files have many distinct rules.
+                    part = part.replace("a", "a" + random.nextInt(20));
+                }
+                sb.append(part);
+            }
+            if (random.nextInt(5) == 0) {
+                sb.append('/');
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+
+    // Rules in the style of a large project's ignore file; mostly extension and directory rules.
+    private static String monorepoIgnoreFile(Random random, int ruleCount) {
+        StringBuilder sb = new StringBuilder("# generated\n");
+        for (int i = 0; i < ruleCount; i++) {
+            switch (random.nextInt(10)) {
+                case 0:
+                case 1:
+                case 2:
+                case 3:
+                    sb.append("*.ext").append(random.nextInt(400));
+                    break;
+                case 4:
+                case 5:
+                    sb.append("dir").append(random.nextInt(200)).append('/');
+                    break;
+                case 6:
+                    sb.append("/top").append(random.nextInt(20)).append("/dir").append(random.nextInt(200)).append('/');
+                    break;
+                case 7:
+                    sb.append("dir").append(random.nextInt(200)).append("/**/*.ext").append(random.nextInt(400));
+                    break;
+                case 8:
+                    sb.append("!keep").append(random.nextInt(100)).append(".ext").append(random.nextInt(400));
+                    break;
+                default:
+                    sb.append("generated-").append(random.nextInt(100)).append("*.ext").append(random.nextInt(400));
+                    break;
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+
+    private static List<String> monorepoPath(Random random, int fileId) {
+        int depth = 1 + random.nextInt(6);
+        List<String> ret = new ArrayList<>(depth + 1);
+        ret.add("top" + random.nextInt(20));
+        for (int i = 1; i < depth; i++) {
+            ret.add("dir" + random.nextInt(300));
+        }
+        // File names are almost all unique, like a real tree.
+        ret.add((random.nextInt(10) == 0 ? "keep" : "file") + fileId + ".ext" + random.nextInt(1000));
+        return ret;
+    }
+
+
+    private static List<String> randomPath(Random random) {
+        int depth = 1 + random.nextInt(6);
+        List<String> ret = new ArrayList<>(depth);
+        for (int i = 0; i < depth; i++) {
+            ret.add(NAMES[random.nextInt(NAMES.length)]);
+        }
+        return ret;
+    }
+}
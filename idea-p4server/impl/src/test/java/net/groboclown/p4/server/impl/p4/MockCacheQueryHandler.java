@@ -37,6 +37,7 @@ import java.util.Map;
 public class MockCacheQueryHandler implements CacheQueryHandler {
     private Map<ClientServerRef, List<P4LocalFile>> openFiles = new HashMap<>();
     private Map<ClientServerRef, List<P4LocalChangelist>> openChangelists = new HashMap<>();
+    private long version = 0;
 
     @NotNull
     @Override
@@ -68,7 +69,13 @@ public class MockCacheQueryHandler implements CacheQueryHandler {
         return openChangelists.size() + openChangelists.size();
     }
 
+    @Override
+    public long getCacheVersion() {
+        return version;
+    }
+
     public MockCacheQueryHandler withCachedOpenFile(ClientServerRef ref, P4LocalFile... files) {
+        version++;
         openFiles.put(ref, Arrays.asList(files));
         return this;
     }
@@ -83,6 +90,7 @@ public class MockCacheQueryHandler implements CacheQueryHandler {
     }
 
     public MockCacheQueryHandler withCachedChangelistsForClient(ClientServerRef ref, P4LocalChangelist... summaries) {
+        version++;
         openChangelists.put(ref, Arrays.asList(summaries));
         return this;
     }
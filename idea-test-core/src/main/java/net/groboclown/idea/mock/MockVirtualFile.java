@@ -39,6 +39,7 @@ public class MockVirtualFile extends VirtualFile {
     private ByteArrayOutputStream contents;
     private boolean writable = true;
     private Charset charset = Charset.defaultCharset();
+    private long modificationStamp = 0;
 
     // Creation of virtual files should only be called by the MockVirtualFileSystem.
     // It will perform all the right calls.
@@ -65,6 +66,11 @@ public class MockVirtualFile extends VirtualFile {
         this.children.add(mvf);
     }
 
+    // called by the MockVirtualFileSystem to remove a deleted child.
+    void unmarkChild(@NotNull MockVirtualFile mvf) {
+        this.children.remove(mvf);
+    }
+
     // Convenience function.  Calls into the MVFS to actually create the instance.
     @NotNull
     public MockVirtualFile addChildFile(Object requestor, @NotNull String name, @NotNull String contents,
@@ -88,6 +94,13 @@ public class MockVirtualFile extends VirtualFile {
         }
     }
 
+    // The default implementation requires write access from the application.
+    @Override
+    public void delete(Object requestor)
+            throws IOException {
+        fileSystem.deleteFile(requestor, this);
+    }
+
     @NotNull
     public VFFilePath asFilePath() {
         return new VFFilePath(this);
@@ -179,6 +192,11 @@ public class MockVirtualFile extends VirtualFile {
         return contents.toByteArray();
     }
 
+    @Override
+    public long getModificationStamp() {
+        return modificationStamp;
+    }
+
     @Override
     public long getTimeStamp() {
         return 0;
@@ -216,6 +234,7 @@ public class MockVirtualFile extends VirtualFile {
             this.charset = charset;
         }
         contents = new ByteArrayOutputStream();
+        modificationStamp++;
         try {
             contents.write(newContents.getBytes(this.charset));
         } catch (IOException e) {
@@ -138,12 +138,18 @@ public class MockVirtualFileSystem
             throws IOException {
         if (vFile instanceof MockVirtualFile) {
             MockVirtualFile mvf = (MockVirtualFile) vFile;
-            if (registeredFiles.containsKey(mvf.getPath())) {
+            MockVirtualFile parent = (MockVirtualFile) mvf.getParent();
+            // Only directories are registered, so files are found through their parent.
+            if (registeredFiles.containsKey(mvf.getPath())
+                    || (parent != null && parent.getChild(mvf.getName()) == mvf)) {
                 VirtualFileEvent event = new VirtualFileEvent(requestor, vFile, mvf.getParent(), 0, 1);
                 for (VirtualFileListener listener : listeners) {
                     listener.beforeFileDeletion(event);
                 }
                 registeredFiles.remove(mvf.getPath());
+                if (parent != null) {
+                    parent.unmarkChild(mvf);
+                }
                 for (VirtualFileListener listener : listeners) {
                     listener.fileDeleted(event);
                 }
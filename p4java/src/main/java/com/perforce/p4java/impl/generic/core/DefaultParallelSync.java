@@ -1,22 +1,61 @@
 package com.perforce.p4java.impl.generic.core;
 
+import com.perforce.p4java.Log;
 import com.perforce.p4java.exception.P4JavaException;
 import com.perforce.p4java.impl.mapbased.rpc.CommandEnv;
+import com.perforce.p4java.impl.mapbased.rpc.RpcServer;
 import com.perforce.p4java.server.IOptionsServer;
 import com.perforce.p4java.server.ServerFactory;
 import com.perforce.p4java.server.callback.IParallelCallback;
+import com.perforce.p4java.server.callback.IStreamingCallback;
 
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Provides capability to perform sync in parallel.
  * The actual functionality is implemented as a server callback.
+ * <p>
+ * p4ic4idea: the transmit connections and threads are kept for reuse by later
+ * parallel syncs, rather than connecting again for every transmit thread, and
+ * the results are passed back to the command as they arrive.
  */
 public class DefaultParallelSync implements IParallelCallback {
+	// p4ic4idea: connection and thread reuse.
+	// Connections that haven't been used for this long may have been dropped by the
+	// server, so they aren't reused.
+	private static final long CONNECTION_IDLE_MILLIS = TimeUnit.SECONDS.toMillis(30);
+	private static final int MAX_IDLE_CONNECTIONS_PER_USER = 8;
+	// Results waiting for the command thread; the transmit threads wait when it falls behind.
+	private static final int RESULT_QUEUE_SIZE = 1024;
+	private static final long RESULT_OFFER_MILLIS = 100;
+
+	private static final ConcurrentHashMap<String, Deque<PooledServer>> IDLE_CONNECTIONS = new ConcurrentHashMap<>();
+	private static final ExecutorService TRANSMIT_THREADS = new ThreadPoolExecutor(
+			0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+			new DaemonThreadFactory("p4java parallel transmit "));
+	// Closes the idle connections once they expire, so they aren't held open until the next sync.
+	private static final ScheduledThreadPoolExecutor IDLE_SWEEPER = createSweeper();
+	private static final AtomicBoolean SWEEP_SCHEDULED = new AtomicBoolean(false);
+
+	// Marks the end of one transmit thread's results.
+	private static final Object THREAD_DONE = new Object();
 
 	/**
 	 * Default constructor
@@ -38,19 +77,44 @@ public class DefaultParallelSync implements IParallelCallback {
 	 */
 	@Override
 	public boolean transmit(CommandEnv cmdEnv, int threads, HashMap<String, String> flags, ArrayList<String> args) {
-		Thread[] parallelSyncThreads = new Thread[threads];
+		// p4ic4idea: the transmit threads hand their results over through a queue, and
+		// this thread passes them on to the command environment, which isn't thread safe,
+		// as they arrive.
+		final BlockingQueue<Object> results = new LinkedBlockingQueue<>(RESULT_QUEUE_SIZE);
+		final AtomicBoolean abandoned = new AtomicBoolean(false);
+		int running = 0;
 		try {
 			for (int x = 0; x < threads; x++) {
-				parallelSyncThreads[x] = new Thread(createRunnable(cmdEnv, x, flags, args));
-				parallelSyncThreads[x].start();
+				TRANSMIT_THREADS.execute(createRunnable(cmdEnv, x, flags, args, results, abandoned));
+				running++;
 			}
-			for (int x = 0; x < threads; x++) {
-				parallelSyncThreads[x].join();
+		} catch (RuntimeException ex) {
+			Log.error("Could not start the parallel transmit threads: " + ex.getMessage());
+			Log.exception(ex);
+			// The started threads still need to be waited on.
+		}
+
+		// A failed thread doesn't stop the others; the files they transmitted still
+		// belong in the command results.  As in the original implementation, a failed
+		// thread is only logged, and the transmit only fails if the threads couldn't start.
+		final boolean startedAll = running == threads;
+		try {
+			while (running > 0) {
+				Object item = results.take();
+				if (item == THREAD_DONE || item instanceof Throwable) {
+					running--;
+				} else {
+					handleResult(item, cmdEnv);
+				}
 			}
-		} catch (Exception ex) {
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
 			return false;
+		} finally {
+			// However this thread stops reading, the transmit threads mustn't wait on a full queue.
+			abandoned.set(true);
 		}
-		return true;
+		return startedAll;
 	}
 
 	/**
@@ -62,56 +126,231 @@ public class DefaultParallelSync implements IParallelCallback {
 	 * @param args
 	 * @return
 	 */
-	private Runnable createRunnable(final CommandEnv cmdEnv, int thread,
-	                                HashMap<String, String> flags, final List<String> args) {
+	private Runnable createRunnable(final CommandEnv cmdEnv, final int thread,
+	                                HashMap<String, String> flags, final List<String> args,
+	                                final BlockingQueue<Object> results, final AtomicBoolean abandoned) {
 
 		class RunnableSync implements Runnable {
 			@Override
 			public void run() {
-				IOptionsServer server = null;
+				Object done = THREAD_DONE;
 				try {
-					Properties props = new Properties(cmdEnv.getServer().getProperties());
-					server = ServerFactory.getOptionsServer(cmdEnv.getServer().getServerAddressDetails().getUri(), props);
-
-					server.setCurrentServerInfo(cmdEnv.getServer().getCurrentServerInfo());
-					server.setUserName(cmdEnv.getServer().getUserName());
-					server.setAuthTicket(cmdEnv.getServer().getAuthTicket());
-					server.setCurrentClient(cmdEnv.getServer().getCurrentClient());
-					server.setWorkingDirectory(cmdEnv.getServer().getWorkingDirectory());
-					server.setTrustFilePath(cmdEnv.getServer().getTrustFilePath());
-					server.setTicketsFilePath(cmdEnv.getServer().getTicketsFilePath());
-					server.connect();
-
-					//pass the result to the handle result
-					Map<String, Object>[] results = server.execMapCmd("transmit", args.toArray(new String[]{}), null);
-					handleResults(results, cmdEnv);
+					// p4ic4idea: pass each result on as it arrives, rather than after the
+					// whole transmit finished.
+					transmitThread(cmdEnv, thread, args, new IStreamingCallback() {
+						@Override
+						public boolean startResults(int key) {
+							return true;
+						}
+
+						@Override
+						public boolean endResults(int key) {
+							return true;
+						}
+
+						@Override
+						public boolean handleResult(Map<String, Object> resultMap, int key) {
+							return offer(resultMap, results, abandoned);
+						}
+					});
 				} catch (Throwable e) {
-					throw new RuntimeException(e);
+					Log.error("Parallel transmit thread " + thread + " failed: " + e.getMessage());
+					Log.exception(e);
+					done = e;
 				} finally {
-					if (server != null && server.isConnected()) {
-						try {
-							server.disconnect();
-						} catch (P4JavaException ex) {
-							throw new RuntimeException(ex);
-						}
-					}
+					offer(done, results, abandoned);
 				}
 			}
 		}
 		return new RunnableSync();
 	}
 
+	/**
+	 * p4ic4idea: runs one thread's share of the transmit on its own connection, passing
+	 * each result to the callback.  Called from the transmit threads.
+	 *
+	 * @param cmdEnv
+	 * @param thread
+	 * @param args
+	 * @param callback
+	 * @throws Exception
+	 */
+	protected void transmitThread(CommandEnv cmdEnv, int thread, List<String> args, IStreamingCallback callback)
+			throws Exception {
+		RpcServer parent = cmdEnv.getServer();
+		String poolKey = getPoolKey(parent);
+		IOptionsServer server = borrowServer(poolKey, parent);
+		boolean reusable = false;
+		try {
+			server.execStreamingMapCommand("transmit", args.toArray(new String[]{}), null, callback, thread);
+			reusable = true;
+		} finally {
+			releaseServer(poolKey, server, reusable);
+		}
+	}
+
 	/**
 	 * Handles results on a per thread basis
 	 *
-	 * @param results
+	 * @param result
 	 * @param cmdEnv
 	 */
-	private synchronized void handleResults(Map<String, Object>[] results, CommandEnv cmdEnv) {
-		if (results != null) {
-			for (Map<String, Object> item : results) {
-				cmdEnv.handleResult(item);
+	@SuppressWarnings("unchecked")
+	private void handleResult(Object result, CommandEnv cmdEnv) {
+		// p4ic4idea: only called from the command thread, so no lock is needed.
+		cmdEnv.handleResult((Map<String, Object>) result);
+	}
+
+	// p4ic4idea: returns false if the command thread stopped waiting for the results.
+	private static boolean offer(Object item, BlockingQueue<Object> results, AtomicBoolean abandoned) {
+		try {
+			while (!results.offer(item, RESULT_OFFER_MILLIS, TimeUnit.MILLISECONDS)) {
+				if (abandoned.get()) {
+					return false;
+				}
 			}
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * p4ic4idea: close the connections kept for later parallel syncs.
+	 */
+	public static void closeIdleConnections() {
+		for (Deque<PooledServer> idle : IDLE_CONNECTIONS.values()) {
+			PooledServer pooled;
+			while ((pooled = idle.pollFirst()) != null) {
+				disconnectQuietly(pooled.server);
+			}
+		}
+	}
+
+	// p4ic4idea: connections are only shared between syncs for the same server and login.
+	private static String getPoolKey(RpcServer parent) {
+		return parent.getServerAddressDetails().getUri() + '\n' + parent.getUserName()
+				+ '\n' + parent.getAuthTicket();
+	}
+
+	private static IOptionsServer borrowServer(String poolKey, RpcServer parent) throws Exception {
+		Deque<PooledServer> idle = IDLE_CONNECTIONS.get(poolKey);
+		if (idle != null) {
+			long now = System.currentTimeMillis();
+			PooledServer pooled;
+			while ((pooled = idle.pollFirst()) != null) {
+				if (now - pooled.idleSince < CONNECTION_IDLE_MILLIS && pooled.server.isConnected()) {
+					setUp(pooled.server, parent);
+					return pooled.server;
+				}
+				disconnectQuietly(pooled.server);
+			}
+		}
+
+		Properties props = new Properties(parent.getProperties());
+		IOptionsServer server = ServerFactory.getOptionsServer(parent.getServerAddressDetails().getUri(), props);
+		setUp(server, parent);
+		server.setUserName(parent.getUserName());
+		server.setAuthTicket(parent.getAuthTicket());
+		server.setTrustFilePath(parent.getTrustFilePath());
+		server.setTicketsFilePath(parent.getTicketsFilePath());
+		server.connect();
+		return server;
+	}
+
+	// The parts of the server state that can change between syncs.
+	private static void setUp(IOptionsServer server, IOptionsServer parent) throws P4JavaException {
+		server.setCurrentServerInfo(parent.getCurrentServerInfo());
+		server.setCurrentClient(parent.getCurrentClient());
+		server.setWorkingDirectory(parent.getWorkingDirectory());
+	}
+
+	private static void releaseServer(String poolKey, IOptionsServer server, boolean reusable) {
+		if (reusable && poolKey != null && server.isConnected()) {
+			Deque<PooledServer> idle = IDLE_CONNECTIONS.computeIfAbsent(poolKey,
+					k -> new ConcurrentLinkedDeque<PooledServer>());
+			if (idle.size() < MAX_IDLE_CONNECTIONS_PER_USER) {
+				idle.addFirst(new PooledServer(server));
+				scheduleSweep();
+				return;
+			}
+		}
+		disconnectQuietly(server);
+	}
+
+	private static void scheduleSweep() {
+		if (SWEEP_SCHEDULED.compareAndSet(false, true)) {
+			IDLE_SWEEPER.schedule(new Runnable() {
+				@Override
+				public void run() {
+					SWEEP_SCHEDULED.set(false);
+					if (closeExpiredConnections()) {
+						scheduleSweep();
+					}
+				}
+			}, CONNECTION_IDLE_MILLIS, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	// Returns true if any idle connections are left.
+	private static boolean closeExpiredConnections() {
+		long now = System.currentTimeMillis();
+		boolean remaining = false;
+		for (Deque<PooledServer> idle : IDLE_CONNECTIONS.values()) {
+			for (PooledServer pooled : idle) {
+				if (now - pooled.idleSince < CONNECTION_IDLE_MILLIS) {
+					remaining = true;
+				} else if (idle.remove(pooled)) {
+					// Only disconnect it if a transmit thread didn't take it first.
+					disconnectQuietly(pooled.server);
+				}
+			}
+		}
+		return remaining;
+	}
+
+	private static ScheduledThreadPoolExecutor createSweeper() {
+		ScheduledThreadPoolExecutor ret = new ScheduledThreadPoolExecutor(1,
+				new DaemonThreadFactory("p4java parallel connection sweeper "));
+		// Don't keep a thread around when there's nothing to close.
+		ret.setKeepAliveTime(CONNECTION_IDLE_MILLIS, TimeUnit.MILLISECONDS);
+		ret.allowCoreThreadTimeOut(true);
+		return ret;
+	}
+
+	private static void disconnectQuietly(IOptionsServer server) {
+		if (server.isConnected()) {
+			try {
+				server.disconnect();
+			} catch (P4JavaException ex) {
+				Log.warn("Problem disconnecting parallel transmit connection: " + ex.getMessage());
+			}
+		}
+	}
+
+	private static class DaemonThreadFactory implements ThreadFactory {
+		private final String prefix;
+		private final AtomicInteger count = new AtomicInteger();
+
+		private DaemonThreadFactory(String prefix) {
+			this.prefix = prefix;
+		}
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread ret = new Thread(r, prefix + count.incrementAndGet());
+			ret.setDaemon(true);
+			return ret;
+		}
+	}
+
+	private static class PooledServer {
+		private final IOptionsServer server;
+		private final long idleSince = System.currentTimeMillis();
+
+		private PooledServer(IOptionsServer server) {
+			this.server = server;
 		}
 	}
 }
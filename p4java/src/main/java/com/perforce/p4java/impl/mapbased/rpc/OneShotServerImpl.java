@@ -18,6 +18,7 @@ import com.perforce.p4java.impl.mapbased.rpc.connection.RpcConnection;
 import com.perforce.p4java.impl.mapbased.rpc.func.RpcFunctionMapKey;
 import com.perforce.p4java.impl.mapbased.rpc.func.RpcFunctionSpec;
 import com.perforce.p4java.impl.mapbased.rpc.func.proto.ProtocolCommand;
+import com.perforce.p4java.impl.mapbased.rpc.metrics.RpcConnectionTraffic;
 import com.perforce.p4java.impl.mapbased.rpc.packet.RpcPacket;
 import com.perforce.p4java.impl.mapbased.rpc.packet.RpcPacketDispatcher;
 import com.perforce.p4java.impl.mapbased.rpc.stream.RpcSocketPool;
@@ -39,7 +40,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.Socket;
 import java.nio.BufferOverflowException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -418,6 +421,178 @@ public class OneShotServerImpl extends RpcServer {
 		}
 	}
 	
+	/**
+	 * Run the batch over a single connection, rather than a connection per
+	 * command.  Read-only commands (see {@link RpcBatchCommand#canPipeline()})
+	 * are written to the connection without waiting for the results of the
+	 * earlier commands, so a batch of small commands costs about one round
+	 * trip rather than one per command.  The server still runs the commands
+	 * one at a time, in order, so the results are read back in order.<p>
+	 *
+	 * The requests written ahead are kept within the flow control high water
+	 * mark, the most the server is expected to have outstanding from the
+	 * client.  The first command always runs alone, as the server sets up
+	 * connection compression during it, and any other command waits for the
+	 * commands ahead of it.
+	 *
+	 * @see com.perforce.p4java.impl.mapbased.rpc.RpcServer#execMapCmdBatch(java.util.List)
+	 */
+	// p4ic4idea: added
+	@Override
+	public List<List<Map<String, Object>>> execMapCmdBatch(List<RpcBatchCommand> commands)
+			throws ConnectionException, AccessException, RequestException {
+		if (commands == null) {
+			throw new NullPointerError("Null command list passed to execMapCmdBatch");
+		}
+		if (!this.connected) {
+			throw new ConnectionNotConnectedException(
+					"Not currently connected to a Perforce server");
+		}
+		List<List<Map<String, Object>>> ret = new ArrayList<List<Map<String, Object>>>(commands.size());
+		if (commands.isEmpty()) {
+			return ret;
+		}
+		boolean pipeline = RpcPropertyDefs.getPropertyAsBoolean(this.props,
+				RpcPropertyDefs.RPC_BATCH_PIPELINE_NICK, RpcPropertyDefs.RPC_DEFAULT_BATCH_PIPELINE);
+
+		RpcPacketDispatcher dispatcher = null;
+		RpcConnection rpcConnection = null;
+		try {
+			dispatcher = new RpcPacketDispatcher(props, this);
+			rpcConnection = createBatchConnection();
+			long hiMark = dispatcher.getFlowController().getHiMark();
+
+			LinkedList<BatchEntry> inFlight = new LinkedList<BatchEntry>();
+			long outstanding = 0;
+			long lastSize = 0;
+			for (int i = 0; i < commands.size(); i++) {
+				RpcBatchCommand command = commands.get(i);
+				boolean ahead = pipeline && i > 0 && command.canPipeline();
+				// Wait for enough of the earlier commands to keep the requests
+				// written ahead within the high water mark.
+				while (!inFlight.isEmpty() && (!ahead || outstanding + lastSize > hiMark)) {
+					BatchEntry done = inFlight.removeFirst();
+					outstanding -= done.requestSize;
+					ret.add(completeBatchCmd(dispatcher, done));
+				}
+
+				RpcConnectionTraffic sentBefore = rpcConnection.getTraffic().copy();
+				BatchEntry entry = startBatchCmd(dispatcher, rpcConnection, command);
+				entry.requestSize = Math.max(0, rpcConnection.getTraffic().getBytesSent() - sentBefore.getBytesSent());
+				lastSize = entry.requestSize;
+				if (ahead) {
+					// The traffic counters belong to the command whose results are read next,
+					// so the request is held back until this command's own results are read.
+					entry.requestTraffic = rpcConnection.getTraffic().takeSentSince(sentBefore);
+					outstanding += entry.requestSize;
+					inFlight.addLast(entry);
+				} else {
+					ret.add(completeBatchCmd(dispatcher, entry));
+				}
+			}
+			while (!inFlight.isEmpty()) {
+				ret.add(completeBatchCmd(dispatcher, inFlight.removeFirst()));
+			}
+			return ret;
+		} catch (BufferOverflowException exc) {
+			Log.error("RPC Buffer overflow: " + exc.getLocalizedMessage());
+			Log.exception(exc);
+			throw new P4JavaError("RPC Buffer overflow: " + exc.getLocalizedMessage());
+		} catch (ConnectionNotConnectedException cnce) {
+			this.connected = false;
+			this.status = ServerStatus.ERROR;
+			throw cnce;
+		} catch (IOException ioexc) {
+			Log.error("RPC I/O error: " + ioexc.getLocalizedMessage());
+			Log.exception(ioexc);
+			throw new ConnectionException(
+					"I/O error encountered in batch command: "
+					+ ioexc.getLocalizedMessage(), ioexc);
+		} finally {
+			if (rpcConnection != null) {
+				rpcConnection.disconnect(dispatcher);
+			}
+		}
+	}
+
+	// p4ic4idea: the connection used by a batch; split out so tests can supply their own.
+	protected RpcConnection createBatchConnection() throws ConnectionException {
+		return new RpcStreamConnection(serverHost, serverPort,
+				props, this.serverStats, this.p4Charset, null, this.socketPool,
+				this.secure, this.rsh);
+	}
+
+	// p4ic4idea: a batch command that was sent, but whose results were not read yet.
+	private static class BatchEntry {
+		final CommandEnv cmdEnv;
+		final int cmdCallBackKey;
+		final long startTime;
+		long requestSize;
+		// Only set for commands written ahead of the previous command's results.
+		RpcConnectionTraffic requestTraffic;
+
+		BatchEntry(CommandEnv cmdEnv, int cmdCallBackKey, long startTime) {
+			this.cmdEnv = cmdEnv;
+			this.cmdCallBackKey = cmdCallBackKey;
+			this.startTime = startTime;
+		}
+	}
+
+	// p4ic4idea: send a batch command; the same set up as execMapCmdList.
+	private BatchEntry startBatchCmd(RpcPacketDispatcher dispatcher, RpcConnection rpcConnection,
+			RpcBatchCommand command) throws ConnectionException, AccessException, RequestException {
+		String cmdName = command.getCmdName().toLowerCase(Locale.ENGLISH);
+		String[] cmdArgs = command.getCmdArgs();
+		int cmdCallBackKey = this.nextCmdCallBackKey.incrementAndGet();
+		long startTime = System.currentTimeMillis();
+		ProtocolCommand protocolSpecs = new ProtocolCommand();
+		ExternalEnv env = setupCmd(dispatcher, rpcConnection, protocolSpecs,
+				cmdName, cmdArgs, null, false, cmdCallBackKey, false);
+		CommandEnv cmdEnv = new CommandEnv(
+				this,
+				new RpcCmdSpec(
+						cmdName,
+						cmdArgs,
+						getAuthTicket(),
+						null,
+						null,
+						env),
+				rpcConnection,
+				protocolSpecs,
+				this.serverProtocolMap,
+				this.progressCallback,
+				cmdCallBackKey,
+				writeInPlace(cmdName),
+				this.isNonCheckedSyncs());
+		cmdEnv.setDontWriteTicket(isDontWriteTicket(cmdName, cmdArgs));
+		cmdEnv.setFieldRule(getRpcPacketFieldRule(null, CmdSpec.getValidP4JCmdSpec(cmdName)));
+		return new BatchEntry(cmdEnv, cmdCallBackKey, startTime);
+	}
+
+	// p4ic4idea: read a batch command's results; the same handling as execMapCmdList.
+	private List<Map<String, Object>> completeBatchCmd(RpcPacketDispatcher dispatcher, BatchEntry entry)
+			throws ConnectionException, AccessException, IOException {
+		if (entry.requestTraffic != null) {
+			entry.cmdEnv.getRpcConnection().getTraffic().add(entry.requestTraffic);
+		}
+		List<Map<String, Object>> retMapList = dispatcher.dispatch(entry.cmdEnv);
+		long endTime = System.currentTimeMillis();
+		if (this.caseSensitive
+				&& entry.cmdEnv.getServerProtocolSpecsMap().containsKey(
+						RpcFunctionMapKey.NOCASE)) {
+			this.caseSensitive = false;
+		}
+		if (this.commandCallback != null) {
+			this.processCmdCallbacks(entry.cmdCallBackKey, endTime - entry.startTime, retMapList);
+		}
+		RpcOutputStream outStream = (RpcOutputStream) entry.cmdEnv.getStateMap().get(
+				RpcServer.RPC_TMP_OUTFILE_STREAM_KEY);
+		if (outStream != null) {
+			outStream.close();
+		}
+		return retMapList;
+	}
+
 	/**
 	 * @see com.perforce.p4java.impl.mapbased.server.Server#execStreamingMapCommand(java.lang.String, java.lang.String[], java.util.Map, com.perforce.p4java.server.callback.IStreamingCallback, int)
 	 */
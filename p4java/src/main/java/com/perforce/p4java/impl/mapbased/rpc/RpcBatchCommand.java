@@ -0,0 +1,70 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.perforce.p4java.impl.mapbased.rpc;
+
+import com.perforce.p4java.exception.NullPointerError;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * One command in a {@link RpcServer#execMapCmdBatch(java.util.List)} batch.
+ */
+// p4ic4idea: added
+public final class RpcBatchCommand {
+    /**
+     * Commands that only read from the server, without asking the client for
+     * anything back, so they can be sent ahead of the previous command's results.
+     */
+    private static final Set<String> PIPELINE_COMMANDS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "changes", "clients", "counter", "counters", "depots", "describe", "dirs", "filelog", "files",
+            "fixes", "fstat", "have", "info", "jobs", "labels", "opened", "streams", "users", "where"
+    )));
+
+    private final String cmdName;
+    private final String[] cmdArgs;
+
+    public RpcBatchCommand(String cmdName, String... cmdArgs) {
+        if (cmdName == null) {
+            throw new NullPointerError("Null command name passed to RpcBatchCommand");
+        }
+        this.cmdName = cmdName;
+        this.cmdArgs = cmdArgs == null ? new String[0] : cmdArgs.clone();
+    }
+
+    public String getCmdName() {
+        return cmdName;
+    }
+
+    public String[] getCmdArgs() {
+        return cmdArgs.clone();
+    }
+
+    /**
+     * @return true if the command can be sent before the previous command's results
+     *      were read.
+     */
+    public boolean canPipeline() {
+        return PIPELINE_COMMANDS.contains(cmdName.toLowerCase(Locale.ENGLISH));
+    }
+
+    @Override
+    public String toString() {
+        return cmdName + ' ' + String.join(" ", cmdArgs);
+    }
+}
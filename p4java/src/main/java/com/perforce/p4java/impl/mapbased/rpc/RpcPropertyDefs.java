@@ -175,6 +175,27 @@ public class RpcPropertyDefs {
 	 */
 	public static final int RPC_SOCKET_POOL_DEFAULT_SIZE = 0;
 	
+	/**
+	 * Number of threads used to walk the workspace for the files to add when
+	 * reconciling; defaults to the number of available processors.
+	 */
+	// p4ic4idea: added
+	public static final String RPC_RECONCILE_THREADS_NICK = "reconcileThreads";
+
+	/**
+	 * If this property is set and equals "false", the commands in a batch are
+	 * still run over a single connection, but each one is only sent once the
+	 * previous one completed, rather than ahead of it.
+	 */
+	// p4ic4idea: added
+	public static final String RPC_BATCH_PIPELINE_NICK = "batchPipeline";
+
+	/**
+	 * Default batch pipelining.
+	 */
+	// p4ic4idea: added
+	public static final boolean RPC_DEFAULT_BATCH_PIPELINE = true;
+
 	/**
 	 * If this property is set and equals "false", do not trust all certificates.
 	 */
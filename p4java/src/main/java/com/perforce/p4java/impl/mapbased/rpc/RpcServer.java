@@ -264,6 +264,8 @@ public abstract class RpcServer extends Server {
 	 */
 	protected boolean relaxCmdNameValidationChecks = false;
 
+	// p4ic4idea: PerformanceMonitor is deprecated along with its accessors.
+	@Deprecated
 	private PerformanceMonitor perfMonitor = new PerformanceMonitor();
 
 	public String getApplicationName() {
@@ -291,14 +293,46 @@ public abstract class RpcServer extends Server {
 		this.clientApiLevel = clientApiLevel;
 	}
 
+	/**
+	 * @deprecated p4ic4idea: the monitor is never updated; use
+	 * 		{@link com.perforce.p4java.impl.mapbased.rpc.metrics.RpcMetrics}.
+	 */
+	@Deprecated
 	public PerformanceMonitor getPerfMonitor() {
 		return perfMonitor;
 	}
 
+	/**
+	 * @deprecated p4ic4idea: the monitor is never updated; use
+	 * 		{@link com.perforce.p4java.impl.mapbased.rpc.metrics.RpcMetrics}.
+	 */
+	@Deprecated
 	public void setPerfMonitor(PerformanceMonitor perfMonitor) {
 		this.perfMonitor = perfMonitor;
 	}
 
+	/**
+	 * Run several map commands, returning each command's results in the
+	 * same order as the commands.  A server error in one command's results
+	 * doesn't stop the remaining commands; a connection or access problem
+	 * stops the whole batch.<p>
+	 *
+	 * This implementation runs the commands one at a time; implementations
+	 * with a connection per command run the whole batch over one connection.
+	 *
+	 * @param commands non-null list of commands to run.
+	 * @return the results of each command, in order.
+	 */
+	// p4ic4idea: added
+	public List<List<Map<String, Object>>> execMapCmdBatch(List<RpcBatchCommand> commands)
+			throws ConnectionException, AccessException, RequestException {
+		List<List<Map<String, Object>>> ret = new ArrayList<List<Map<String, Object>>>(commands.size());
+		for (RpcBatchCommand command : commands) {
+			ret.add(execMapCmdList(command.getCmdName(), command.getCmdArgs(), null));
+		}
+		return ret;
+	}
+
 	/**
 	 * Get the server's address for the RPC connection.
 	 *
@@ -6,6 +6,7 @@ package com.perforce.p4java.impl.mapbased.rpc;
 import java.util.concurrent.atomic.AtomicLong;
 
 import com.perforce.p4java.Log;
+import com.perforce.p4java.impl.mapbased.rpc.metrics.RpcMetrics;
 
 /**
  * Simple class to centralize statistics gathering and reporting for
@@ -13,6 +14,9 @@ import com.perforce.p4java.Log;
  * thread-safe because we're using the Atomic series of classes,
  * but in any case the stats gathered here aren't intended to be
  * exact or precise....
+ * <p>
+ * p4ic4idea: these are totals for a server object; see
+ * {@link RpcMetrics} for a per-command breakdown.
  */
 
 public class ServerStats {
@@ -72,5 +76,9 @@ public class ServerStats {
 				+ "; largest socket recv (bytes): " + this.largestRecv);
 		Log.stats("RPC put buffer resizes: " + this.bufferCompacts);
 		Log.stats("RPC read buffer incomplete reads: " + this.incompleteReads);
+		// p4ic4idea: per-command breakdown, when collected.
+		if (RpcMetrics.isEnabled()) {
+			RpcMetrics.logStats();
+		}
 	}
 }
@@ -10,10 +10,12 @@ import com.perforce.p4java.exception.ConnectionException;
 import com.perforce.p4java.exception.NullPointerError;
 import com.perforce.p4java.exception.P4JavaError;
 import com.perforce.p4java.impl.mapbased.rpc.ServerStats;
+import com.perforce.p4java.impl.mapbased.rpc.metrics.RpcConnectionTraffic;
 import com.perforce.p4java.impl.mapbased.rpc.func.RpcFunctionMapKey;
 import com.perforce.p4java.impl.mapbased.rpc.func.helper.MD5Digester;
 import com.perforce.p4java.impl.mapbased.rpc.packet.RpcPacket;
 import com.perforce.p4java.impl.mapbased.rpc.packet.RpcPacketDispatcher;
+import com.perforce.p4java.impl.mapbased.rpc.packet.RpcPacketFieldCodec;
 import com.perforce.p4java.impl.mapbased.rpc.packet.helper.RpcPacketFieldRule;
 import com.perforce.p4java.impl.mapbased.rpc.sys.RpcPerforceDigestType;
 import com.perforce.p4java.impl.mapbased.rpc.sys.RpcPerforceFileType;
@@ -29,7 +31,6 @@ import org.apache.commons.lang3.Validate;
 
 import javax.annotation.Nonnull;
 import java.io.File;
-import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.HashMap;
@@ -109,6 +110,9 @@ public abstract class RpcConnection {
 
     protected ServerStats stats = null;
 
+    // p4ic4idea: traffic of the current command, for the per-command metrics.
+    protected final RpcConnectionTraffic traffic = new RpcConnectionTraffic();
+
     protected P4Charset p4Charset = null;
 
     protected String hostIp = UNKNOWN_SERVER_HOST;
@@ -120,6 +124,9 @@ public abstract class RpcConnection {
 
     protected boolean unicodeServer = false;
 
+    // p4ic4idea: reused for every field while the charset settings stay the same.
+    private RpcPacketFieldCodec fieldCodec = null;
+
     protected boolean secure = false;
     protected String fingerprint = null;
     protected boolean trusted = false;
@@ -401,18 +408,8 @@ public abstract class RpcConnection {
         if (str == null) {
             throw new NullPointerError("null string passed to RpcConnection.getNormalizedBytes");
         }
-        try {
-            if (this.unicodeServer) {
-                return str.getBytes(UNICODE_SERVER_CHARSET_NAME);
-            } else {
-                return str.getBytes(this.p4Charset.getCharset().name());
-            }
-        } catch (UnsupportedEncodingException e) {
-            // This should never be reached since we already have the Charset
-            // object needed.
-            Log.exception(e);
-        }
-        return null;
+        // p4ic4idea: use the cached codec rather than looking up the charset by name.
+        return getFieldCodec().encode(str);
     }
 
     /**
@@ -429,18 +426,26 @@ public abstract class RpcConnection {
         if (bytes == null) {
             throw new NullPointerError("null bytes passed to RpcConnection.getNormalizedString");
         }
-        try {
-            if (this.unicodeServer) {
-                return new String(bytes, UNICODE_SERVER_CHARSET_NAME);
-            } else {
-                return new String(bytes, this.p4Charset.getCharset().name());
-            }
-        } catch (UnsupportedEncodingException e) {
-            // This should never be reached since we already have the Charset
-            // object needed.
-            Log.exception(e);
+        // p4ic4idea: use the cached codec rather than looking up the charset by name.
+        return getFieldCodec().decode(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Get the codec for converting packet field text with the current charset
+     * settings.  The same codec is returned until the charset or Unicode setting
+     * changes.
+     */
+    // p4ic4idea: added
+    public RpcPacketFieldCodec getFieldCodec() {
+        Charset charset = this.p4Charset == null ? null : this.p4Charset.getCharset();
+        Charset textCharset = charset == null ? NON_UNICODE_SERVER_CHARSET :
+                (this.unicodeServer ? UNICODE_SERVER_CHARSET : charset);
+        RpcPacketFieldCodec codec = this.fieldCodec;
+        if (codec == null || !codec.getCharset().equals(textCharset)) {
+            codec = new RpcPacketFieldCodec(textCharset);
+            this.fieldCodec = codec;
         }
-        return null;
+        return codec;
     }
 
     public boolean isUsingCompression() {
@@ -476,6 +481,11 @@ public abstract class RpcConnection {
         this.unicodeServer = P4Charset.isUnicodeServer(p4Charset);
     }
 
+    // p4ic4idea: per-command metrics
+    public RpcConnectionTraffic getTraffic() {
+        return traffic;
+    }
+
     public ServerStats getStats() {
         return this.stats;
     }
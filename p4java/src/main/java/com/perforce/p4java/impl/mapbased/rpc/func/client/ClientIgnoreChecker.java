@@ -10,11 +10,24 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 /**
- * Handle the checking of patterns in ignore files.
+ * Handle the checking of patterns in ignore files.<p>
+ * 
+ * The ignore files are parsed once and cached by directory, along with the
+ * directories that don't have one. Within a command the cache is used as is;
+ * call {@link #startCommand()} at the start of each command so that the
+ * cached files are checked against their modification time and size before
+ * they're used again. The checker may be used by several threads at once.
  */
 public class ClientIgnoreChecker {
 
@@ -26,6 +39,12 @@ public class ClientIgnoreChecker {
 
 	/** The charset. */
 	private Charset charset = null;
+
+	// p4ic4idea: parsed ignore files, keyed by the directory that would contain them.
+	private final ConcurrentHashMap<String, IgnoreFile> ignoreFiles = new ConcurrentHashMap<String, IgnoreFile>();
+
+	// p4ic4idea: cache entries from an earlier generation must be checked against the file.
+	private volatile int generation = 0;
 	
 	/**
 	 * Instantiates a new ignore file checker.
@@ -75,6 +94,25 @@ public class ClientIgnoreChecker {
 		return false;
 	}
 
+	/**
+	 * Start checking files for a new command. Ignore files cached by earlier
+	 * commands are checked for changes before they're used again.
+	 */
+	// p4ic4idea: added
+	public void startCommand() {
+		generation++;
+	}
+
+	/**
+	 * Check if this checker was created with the passed-in settings.
+	 */
+	// p4ic4idea: added
+	boolean isFor(String clientRoot, String ignoreFileName, Charset charset) {
+		return this.clientRoot.equals(clientRoot)
+				&& this.ignoreFileName.equals(ignoreFileName)
+				&& this.charset.equals(charset);
+	}
+
 	/**
 	 * Check all ignore files up to the client root directory.
 	 * 
@@ -86,22 +124,19 @@ public class ClientIgnoreChecker {
 	 */
 	private boolean checkIgnoreFiles(File file) throws IOException {
 		if (file != null) {
-			// Signal for inverse match
-			Negate negate = this.new Negate();
-	
 			File clientRootDir = new File(clientRoot);
 			File fileDir = file;
 			do {
 				fileDir = fileDir.getParentFile();
 				if (fileDir != null) {
-					File ignoreFile = new File(fileDir, ignoreFileName);
-					if (ignoreFile.exists()) {
-						if (checkIgnoreFile(ignoreFile, fileDir, file, negate)) {
-							// Inverse match
-							if (negate.isMatch()) {
-								return false;
+					IgnoreFile ignoreFile = getIgnoreFile(fileDir);
+					if (ignoreFile.rules != null) {
+						// The last matching line wins.
+						for (IgnoreRule rule : ignoreFile.rules) {
+							if (rule.matches(file)) {
+								// Inverse match
+								return !rule.negation;
 							}
-							return true;
 						}
 					}
 				}
@@ -112,39 +147,65 @@ public class ClientIgnoreChecker {
 	}
 
 	/**
-	 * Inversely loop through patterns in an ignore file and check for a match.
+	 * Get the parsed ignore file for the directory, reading it if it's not
+	 * cached or has changed since an earlier command.
+	 */
+	private IgnoreFile getIgnoreFile(File dir) throws IOException {
+		String key = dir.getAbsolutePath();
+		int currentGeneration = this.generation;
+		IgnoreFile cached = ignoreFiles.get(key);
+		if (cached != null && cached.generation == currentGeneration) {
+			return cached;
+		}
+
+		File file = new File(dir, ignoreFileName);
+		BasicFileAttributes attrs = null;
+		try {
+			attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+		} catch (NoSuchFileException e) {
+			// No ignore file here.
+		}
+
+		IgnoreFile ret;
+		if (attrs == null || !attrs.isRegularFile()) {
+			ret = new IgnoreFile(null, -1, -1, currentGeneration);
+		} else if (cached != null && cached.rules != null
+				&& cached.lastModified == attrs.lastModifiedTime().toMillis()
+				&& cached.length == attrs.size()) {
+			ret = new IgnoreFile(cached.rules, cached.lastModified, cached.length, currentGeneration);
+		} else {
+			ret = new IgnoreFile(parseIgnoreFile(file, dir), attrs.lastModifiedTime().toMillis(),
+					attrs.size(), currentGeneration);
+		}
+		ignoreFiles.put(key, ret);
+		return ret;
+	}
+
+	/**
+	 * Read the patterns in an ignore file, in the order they should be
+	 * checked (last line first).
 	 * 
 	 * @param ignoreFile
 	 *            the ignore file
 	 * @param currentDir
-	 *            the current directory
-	 * @param file
-	 *            the file
-	 * @param negate
-	 *            the negate
-	 * @return true, if successful
+	 *            the directory containing the ignore file
+	 * @return the patterns
 	 * @throws IOException
 	 *             Signals that an I/O exception has occurred.
 	 */
-	private boolean checkIgnoreFile(File ignoreFile, File currentDir, File file, Negate negate)
+	private List<IgnoreRule> parseIgnoreFile(File ignoreFile, File currentDir)
 			throws IOException {
 
+		ArrayList<IgnoreRule> rules = new ArrayList<IgnoreRule>();
 		BufferedReader br = null;
 		try {
 			br = new BufferedReader(new InputStreamReader(new FileInputStream(
 					ignoreFile), this.charset));
-			ArrayList<String> list = new ArrayList<String>();
 			String line;
 			while ((line = br.readLine()) != null) {
-				list.add(line);
-			}
-
-			// Reverse the lines
-			Collections.reverse(list);
-
-			for (String entry : list) {
-				if (checkIgnorePattern(entry, currentDir, file, negate)) {
-					return true;
+				IgnoreRule rule = parseIgnorePattern(line, currentDir);
+				if (rule != null) {
+					rules.add(rule);
 				}
 			}
 		} finally {
@@ -153,39 +214,34 @@ public class ClientIgnoreChecker {
 			}
 		}
 
-		return false;
+		// Reverse the lines
+		Collections.reverse(rules);
+		rules.trimToSize();
+		return rules;
 	}
 
 	/**
-	 * Check for a pattern match.
+	 * Parse one line of an ignore file.
 	 * 
 	 * @param pattern
 	 *            the pattern
 	 * @param currentDir
 	 *            the current directory
-	 * @param file
-	 *            the file
-	 * @param negate
-	 *            the negate
-	 * @return true, if successful
+	 * @return the rule, or null if the line has no pattern
 	 */
-	private boolean checkIgnorePattern(String pattern, File currentDir, File file, Negate negate) {
+	private IgnoreRule parseIgnorePattern(String pattern, File currentDir) {
 
 		boolean wildcard = false;
 		boolean negation = false;
 
-		if (file == null) {
-			return false;
-		}
-
 		if (pattern == null) {
-			return false;
+			return null;
 		}
 
 		pattern = pattern.trim();
 
 		if (pattern.startsWith("#")) {
-			return false;
+			return null;
 		}
 
 		// Check for negation
@@ -195,7 +251,7 @@ public class ClientIgnoreChecker {
 		}
 
 		if (pattern.length() == 0) {
-			return false;
+			return null;
 		}
 
 		// Check for wildcard
@@ -203,13 +259,8 @@ public class ClientIgnoreChecker {
 			wildcard = true;
 		}
 		
-		// Match file name only
-		String path = file.getName();
-		
 		// Match file name or path
 		if (!wildcard) {
-			path = file.getAbsolutePath().substring(currentDir.getAbsolutePath().length());
-			path += File.separator;
 			pattern = "*" + File.separator + pattern;
 			pattern += File.separator + "*";
 		}
@@ -217,43 +268,63 @@ public class ClientIgnoreChecker {
 		// Escape '\', '.' and '*'
 		pattern = pattern.replace("\\", "\\\\").replace(".", "\\.").replace("*", ".*");
 
-		// Match pattern
-		if (path.matches(pattern)) {
-			if (negation) {
-				negate.setMatch(true);
-			}
+		return new IgnoreRule(pattern, negation, wildcard,
+				wildcard ? 0 : currentDir.getAbsolutePath().length());
+	}
 
-			return true;
-		}
+	/**
+	 * A parsed ignore file, or the lack of one.
+	 */
+	private static class IgnoreFile {
+		/** The patterns, last line first; null if there is no ignore file. */
+		private final List<IgnoreRule> rules;
+		private final long lastModified;
+		private final long length;
+		private final int generation;
 
-		return false;
+		IgnoreFile(List<IgnoreRule> rules, long lastModified, long length, int generation) {
+			this.rules = rules;
+			this.lastModified = lastModified;
+			this.length = length;
+			this.generation = generation;
+		}
 	}
 
 	/**
-	 * Signal for negate pattern.
+	 * A single pattern from an ignore file.
 	 */
-	private class Negate {
-		
-		/** The match. */
-		private boolean match = false;
+	private static class IgnoreRule {
+		private final Pattern pattern;
+		private final PatternSyntaxException error;
+		private final boolean negation;
+		private final boolean wildcard;
+		private final int dirPathLength;
 
-		/**
-		 * Checks if is match.
-		 * 
-		 * @return true, if is match
-		 */
-		public boolean isMatch() {
-			return match;
+		IgnoreRule(String regex, boolean negation, boolean wildcard, int dirPathLength) {
+			Pattern compiled = null;
+			PatternSyntaxException err = null;
+			try {
+				compiled = Pattern.compile(regex);
+			} catch (PatternSyntaxException e) {
+				// Reported when the pattern is used, as before it was cached.
+				err = e;
+			}
+			this.pattern = compiled;
+			this.error = err;
+			this.negation = negation;
+			this.wildcard = wildcard;
+			this.dirPathLength = dirPathLength;
 		}
 
-		/**
-		 * Sets the match.
-		 * 
-		 * @param match
-		 *            the new match
-		 */
-		public void setMatch(boolean match) {
-			this.match = match;
+		boolean matches(File file) {
+			if (error != null) {
+				throw error;
+			}
+			// Match file name only, or the path below the ignore file's directory.
+			String path = wildcard
+					? file.getName()
+					: file.getAbsolutePath().substring(dirPathLength) + File.separator;
+			return pattern.matcher(path).matches();
 		}
 	}
-}
\ No newline at end of file
+}
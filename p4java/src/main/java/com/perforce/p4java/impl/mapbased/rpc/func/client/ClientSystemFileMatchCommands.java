@@ -7,7 +7,11 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.lang.ref.WeakReference;
 import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -68,6 +72,8 @@ public class ClientSystemFileMatchCommands {
 	private Properties props = null;
 	private RpcServer server = null;
 	private ClientIgnoreChecker checker = null;
+	// p4ic4idea: the command that last started ignore checks; weak, so the command's results aren't kept.
+	private WeakReference<CommandEnv> ignoreCheckCmdEnv = null;
 	
 	private String tmpDirName = null;
 	
@@ -572,10 +578,11 @@ public class ClientSystemFileMatchCommands {
         // rather than all of the files individually. Compare against depot
         // files early so we can abort traversal early if we can.
 
-        int hasIndex = 0;
         //TODO: still to translate
         //const char *config = client->GetEnviro()->Get( "P4CONFIG" );
         
+        startIgnoreChecks(cmdEnv, rpcConnection.getClientCharset());
+
         if( isSummary ) {
             AtomicInteger idx = new AtomicInteger(0);
 			AtomicInteger ddx = new AtomicInteger(0);
@@ -585,9 +592,9 @@ public class ClientSystemFileMatchCommands {
                            rpcConnection.isUnicodeServer(),
                            rpcConnection.getClientCharset(), cmdEnv);
         } else {
+    		// p4ic4idea: walk the directories in parallel; see ReconcileAddWalker.
     		traverseDirs( new File(dir), isTraverse, isSkipIgnore, isSendDigest, map, files,
-        				  sizes, digests, hasIndex, recHandle != null ? recHandle.getSkipFiles() : null,
-        				  rpcConnection.isUnicodeServer(),
+        				  sizes, digests, recHandle != null ? recHandle.getSkipFiles() : null,
         				  rpcConnection.getClientCharset(), cmdEnv);
         }
 
@@ -663,170 +670,44 @@ public class ClientSystemFileMatchCommands {
 	 */
 	private void traverseDirs(File file, boolean traverse, boolean skipIgnore, boolean sendDigest,
 			MapTable map, List<String> addFilesMap, Map<String, Long> sizes, Map<String, String> digests,
-			int hasIndex, List<String> skipFiles, boolean unicode, Charset charset, CommandEnv cmdEnv) {
+			List<String> skipFiles, final Charset charset, CommandEnv cmdEnv) {
     	
 	    if (addFilesMap == null) {
     		throw new IllegalArgumentException("Must pass in a non-null 'files' list as a parameter.");
     	}
 
-		// Return all files in dir, and optionally traverse dirs in dir,
-		// while checking each file against map before returning it
-
-		// Scan the directory.
-
-		if (file == null || !file.exists()) {
-			return;
-		}
-
-		// If this is a file, not a directory, and not to be ignored,
-		// save the filename and return.
-
-		if (file.isFile()) {
-			if (skipIgnore || !isIgnore(file, charset, cmdEnv)) {
-                addFilesMap.add(file.getAbsolutePath());
-                sizes.put(file.getAbsolutePath(), file.length());
-                if(sendDigest) {
-                    String digestStr = digestFile(file, RpcPerforceFileType.FST_BINARY, charset);
-                    if(digestStr != null) {
-                        digests.put(file.getAbsolutePath(), digestStr);
-                    }
-                }
-			}
-			return;
-		}
-
-		// If this is a symlink to a directory, and not to be ignored,
-		// save the filename and return.
-
-		if (file.isDirectory() && RpcPerforceFileType.isProbablySymLink(file)) {
-			if (skipIgnore || !isIgnore(file, charset, cmdEnv)) {
-				addFilesMap.add(file.getAbsolutePath());
-				sizes.put(file.getAbsolutePath(), file.length());
-                if(sendDigest) {
-                    String digestStr = digestFile(file, RpcPerforceFileType.FST_BINARY, charset);
-                    if(digestStr != null) {
-                        digests.put(file.getAbsolutePath(), digestStr);
-                    }
-                }
-			}
-			return;
-		}
-
-		if (!file.isDirectory()) {
-	    	//XXX: not sure if a Java file can be neither a file or directory
-	    	return;
-		}
-		    
-		// Directory might be ignored,  bail
-		if( !skipIgnore && isIgnoreDir(file, charset, cmdEnv) ) {
-			return;
-		}
-
-		// This is a directory to be scanned.
-		File[] files = file.listFiles();
-		if (files == null) {
-			return;
-		}
-
-		for (File f : files) {
-			// Check mapping, ignore files before sending file or symlink back
-			// Java paths are unicode: no translation needed
-
-			String fileName = f.getAbsolutePath();
-
-			// Do compare with array list (skip files if possible)
-			int cmp = -1;
-
-			while( skipFiles != null && hasIndex < skipFiles.size() )
-			{
-				//XXX: uncertain that the correct portion of the file is being compared
-				cmp = fileName.compareTo(skipFiles.get( hasIndex ) );
-
-				if( cmp < 0 )
-					break;
-
-				hasIndex++;
-
-				if( cmp == 0 )
-					break;
-			}
-
-			// Don't stat if we matched a file from the edit list
-
-			if( cmp == 0 )
-				continue;
-
-			if (f.isDirectory()) { // Directory
-				if (RpcPerforceFileType.isProbablySymLink(f)) {
-					String from = fileName + "/";
-					String matched = null;
-
-					// TODO: protocol case mode
-					//if( client->protocolNocase != StrBuf::CaseUsage() ) {
-					//    from.SetCaseFolding( client->protocolNocase );
-					//    matched = map->Translate( from, to, MapLeftRight );
-					//    from.SetCaseFolding( !client->protocolNocase );
-					//} else {
-					MapWrap mw = map.translate( MapTableT.LHS, from );
-					matched = mw == null ? null : mw.getTo();
-					//}
-
-					if( matched == null ) {
-						continue;
+		// p4ic4idea: the walk itself runs on other threads, so it only checks the
+		// ignore rules; the ignore messages are sent from here, in walk order.
+		// The checker was set up by startIgnoreChecks.
+		int threads = RpcPropertyDefs.getPropertyAsInt(this.props,
+				RpcPropertyDefs.RPC_RECONCILE_THREADS_NICK,
+				Runtime.getRuntime().availableProcessors());
+		ReconcileAddWalker walker = new ReconcileAddWalker(map, traverse, skipIgnore, sendDigest,
+				skipFiles, charset, new ReconcileAddWalker.IgnoreCheck() {
+					@Override
+					public boolean isIgnored(File f) {
+						return matchesIgnore(f, charset);
 					}
+				}, threads);
 
-					if (skipIgnore || !isIgnore(f, charset, cmdEnv)) {
-						addFilesMap.add(fileName);
-						sizes.put(fileName, file.length());
-						if(sendDigest) {
-							String digestStr = digestFile(f, RpcPerforceFileType.FST_BINARY, charset);
-							if(digestStr != null) {
-								digests.put(fileName, digestStr);
-							}
-						}
-					}
-				} else if (traverse) {
-					// Recursive call
-					traverseDirs(f, traverse, skipIgnore, sendDigest, map, addFilesMap,
-							sizes, digests, hasIndex, skipFiles,
-							unicode, charset, cmdEnv);
-				}
-			} else { // File
-				String from = fileName;
-				String matched = null;
-
-				// TODO: protocol case mode
-				//if( client->protocolNocase != StrBuf::CaseUsage() ) {
-				//    from.SetCaseFolding( client->protocolNocase );
-				//    matched = map->Translate( from, to, MapLeftRight );
-				//    from.SetCaseFolding( !client->protocolNocase );
-				//} else {
-				MapWrap mw = map.translate( MapTableT.LHS, from );
-				matched = mw == null ? null : mw.getTo();
-				//}
-
-				if( matched == null ) {
-					continue;
-				}
-
-				if (skipIgnore || !isIgnore(f, charset, cmdEnv)) {
-					addFilesMap.add(fileName);
-					sizes.put(fileName, file.length());
-					if(sendDigest) {
-						String digestStr = digestFile(f, RpcPerforceFileType.FST_BINARY, charset);
-						if(digestStr != null) {
-							digests.put(fileName, digestStr);
-						}
-					}
-				}
+		for (ReconcileAddWalker.Entry entry : walker.walk(file)) {
+			if (entry.isIgnored()) {
+				sendIgnored(new File(entry.getPath()), cmdEnv);
+				continue;
+			}
+			addFilesMap.add(entry.getPath());
+			sizes.put(entry.getPath(), entry.getSize());
+			if (entry.getDigest() != null) {
+				digests.put(entry.getPath(), entry.getDigest());
 			}
 		}
-	}       
+	}
 
 	private String digestFile(File file, RpcPerforceFileType fileType, Charset charset) {
 	    
 	    MD5Digester digester = new MD5Digester();
-        RpcPerforceFile pFile = new RpcPerforceFile(file.getName(), fileType);
+        // p4ic4idea: use the whole path; the name alone is relative to the working directory.
+        RpcPerforceFile pFile = new RpcPerforceFile(file.getPath(), fileType);
         
         // Digest the file using the configured local file content
         // charset. A null digestCharset specified will cause the
@@ -935,13 +816,19 @@ public class ClientSystemFileMatchCommands {
             // Attach path delimiter to dirs so Sort() works correctly, and also to
             // save relevant Stat() information.
 	        
-            if( f.isDirectory() && !RpcPerforceFileType.isProbablySymLink(f) ) {
+            // p4ic4idea: stat each entry once, without following links, rather than
+            // once for each check; only symlinks need to be followed.
+            BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes(f.toPath(), BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            } catch (IOException e) {
+                continue;
+            }
+            if( attrs.isDirectory() ) {
                 isDir = true;
-            } else if( f.isDirectory() && RpcPerforceFileType.isProbablySymLink(f) ) {
+            } else if( attrs.isSymbolicLink() && Files.isDirectory(f.toPath()) ) {
                 isDir = true;
                 isSymDir = true;
-            } else if( !f.exists() && !RpcPerforceFileType.isProbablySymLink(f) ) {
-                continue;
             }
 
         
@@ -1140,17 +1027,34 @@ public class ClientSystemFileMatchCommands {
 	 * Check if the file should be ignored.
 	 */
 	boolean isIgnore(File file, Charset charset, CommandEnv cmdEnv) {
+		// p4ic4idea: 'p4 add' asks about one file at a time, so the first ask of each
+		// command is where the cached ignore files get checked for changes.
+		startIgnoreChecks(cmdEnv, charset);
+		if (matchesIgnore(file, charset)) {
+			sendIgnored(file, cmdEnv);
+			return true;
+		}
+		return false;
+	}
+
+    /**
+     * Check if the file should be ignored.
+     */
+    boolean isIgnoreDir(File file, Charset charset, CommandEnv cmdEnv) {
+        return isIgnore(file, charset, cmdEnv);
+    }
+
+	/**
+	 * Check the file against the ignore patterns, without reporting it.  Safe to
+	 * call from other threads once the checker has been created.
+	 */
+	// p4ic4idea: split out of isIgnore so the reconcile walker can run it in parallel.
+	boolean matchesIgnore(File file, Charset charset) {
 		// Do ignore checking, reject file matching ignore patterns
-		if (getChecker(charset) != null) {
+		ClientIgnoreChecker ignoreChecker = getChecker(charset);
+		if (ignoreChecker != null) {
 			try {
-				if (checker.match(file)) {
-					cmdEnv.handleResult(new RpcMessage(
-							ClientMessageId.CANT_ADD_FILE_TYPE,
-							MessageSeverityCode.E_INFO,
-							MessageGenericCode.EV_CLIENT, new String[] {
-									file.getAbsolutePath(), "ignored" }).toMap());
-					return true;
-				}
+				return ignoreChecker.match(file);
 			} catch (FileNotFoundException e) {
 				Log.error("Exception occurred during ignore files checking: "
 						+ e);
@@ -1159,36 +1063,19 @@ public class ClientSystemFileMatchCommands {
 						+ e);
 			}
 		}
-		
 		return false;
 	}
 
-    /**
-     * Check if the file should be ignored.
-     */
-    boolean isIgnoreDir(File file, Charset charset, CommandEnv cmdEnv) {
-        // Do ignore checking, reject file matching ignore patterns
-        if (getChecker(charset) != null) {
-            try {
-                if (checker.match(file)) {
-                    cmdEnv.handleResult(new RpcMessage(
-                            ClientMessageId.CANT_ADD_FILE_TYPE,
-                            MessageSeverityCode.E_INFO,
-                            MessageGenericCode.EV_CLIENT, new String[] {
-                                    file.getAbsolutePath(), "ignored" }).toMap());
-                    return true;
-                }
-            } catch (FileNotFoundException e) {
-                Log.error("Exception occurred during ignore files checking: "
-                        + e);
-            } catch (IOException e) {
-                Log.error("Exception occurred during ignore files checking: "
-                        + e);
-            }
-        }
-        
-        return false;
-    }
+	/**
+	 * Report that the file was ignored.
+	 */
+	private void sendIgnored(File file, CommandEnv cmdEnv) {
+		cmdEnv.handleResult(new RpcMessage(
+				ClientMessageId.CANT_ADD_FILE_TYPE,
+				MessageSeverityCode.E_INFO,
+				MessageGenericCode.EV_CLIENT, new String[] {
+						file.getAbsolutePath(), "ignored" }).toMap());
+	}
     
     int sysCompare(String a, String b){
         String os = System.getProperty("os.name").toLowerCase();
@@ -1237,5 +1124,31 @@ public class ClientSystemFileMatchCommands {
 		}
 		return this.checker;
 	}
+
+	/**
+	 * Get the ignore checker ready for a new command: replace it if the client
+	 * or ignore settings have changed, and otherwise have it check its cached
+	 * ignore files for changes.  Only done once for each command.
+	 */
+	// p4ic4idea: added so the parsed ignore files can be kept between commands.
+	private void startIgnoreChecks(CommandEnv cmdEnv, Charset charset) {
+		if (cmdEnv != null && this.ignoreCheckCmdEnv != null && this.ignoreCheckCmdEnv.get() == cmdEnv) {
+			// Already started for this command.
+			return;
+		}
+		this.ignoreCheckCmdEnv = new WeakReference<CommandEnv>(cmdEnv);
+
+		if (this.checker != null) {
+			if (this.server == null || this.server.getCurrentClient() == null
+					|| this.server.getIgnoreFileName() == null
+					|| !this.checker.isFor(this.server.getCurrentClient().getRoot(),
+							this.server.getIgnoreFileName(), charset)) {
+				this.checker = null;
+			} else {
+				this.checker.startCommand();
+			}
+		}
+		getChecker(charset);
+	}
 	
 }
@@ -0,0 +1,315 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.perforce.p4java.impl.mapbased.rpc.func.client;
+
+import com.perforce.p4java.Log;
+import com.perforce.p4java.impl.mapbased.rpc.func.helper.MD5Digester;
+import com.perforce.p4java.impl.mapbased.rpc.sys.RpcPerforceFile;
+import com.perforce.p4java.impl.mapbased.rpc.sys.RpcPerforceFileType;
+import com.perforce.p4java.mapapi.MapTable;
+import com.perforce.p4java.mapapi.MapTableT;
+import com.perforce.p4java.mapapi.MapWrap;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Finds the candidate files for the reconcile add check ('p4 reconcile' and
+ * 'p4 status'), walking the workspace directories in parallel.
+ * <p>
+ * Each directory is listed by its own fork-join task, and each entry is
+ * stat'ed once, without following links; only symbolic links need a second
+ * look, to tell if they point to a directory.  When digests are requested,
+ * the files are digested in parallel once the walk finishes.
+ * <p>
+ * The results come back in the same order as a depth first, single threaded
+ * walk in directory listing order, with the ignored files and directories
+ * in the places where they were found, so the caller can report them in the
+ * same order as before.  Nothing here talks to the server; the ignore
+ * messages are left for the caller to send from the command thread.
+ */
+// p4ic4idea: added
+class ReconcileAddWalker {
+    private static final int DIGEST_BATCH_SIZE = 16;
+
+    /**
+     * Checks files and directories against the client ignore rules.  Called from
+     * the walker threads.
+     */
+    interface IgnoreCheck {
+        boolean isIgnored(File file);
+    }
+
+
+    /**
+     * A file found by the walk, or a file or directory that was ignored.
+     */
+    static final class Entry {
+        private final String path;
+        private final long size;
+        private final boolean ignored;
+        private String digest;
+
+        private Entry(String path, long size, boolean ignored) {
+            this.path = path;
+            this.size = size;
+            this.ignored = ignored;
+        }
+
+        String getPath() {
+            return path;
+        }
+
+        long getSize() {
+            return size;
+        }
+
+        boolean isIgnored() {
+            return ignored;
+        }
+
+        /**
+         * @return the file digest, or null if digests weren't requested or the
+         *      file couldn't be read.
+         */
+        String getDigest() {
+            return digest;
+        }
+    }
+
+
+    private final MapTable map;
+    private final boolean traverse;
+    private final boolean skipIgnore;
+    private final boolean sendDigest;
+    private final List<String> skipFiles;
+    private final Charset charset;
+    private final IgnoreCheck ignoreCheck;
+    private final int threads;
+
+
+    /**
+     * @param map client mapping; files that don't map are skipped.
+     * @param traverse true to descend into sub-directories.
+     * @param skipIgnore true to not check the ignore rules.
+     * @param sendDigest true to compute the digest of each file.
+     * @param skipFiles sorted paths already known to the server, which don't need to be
+     *      looked at; may be null.
+     * @param charset charset for the file digests.
+     * @param ignoreCheck ignore rules.
+     * @param threads number of threads to walk the directories with.
+     */
+    ReconcileAddWalker(MapTable map, boolean traverse, boolean skipIgnore, boolean sendDigest,
+            List<String> skipFiles, Charset charset, IgnoreCheck ignoreCheck, int threads) {
+        this.map = map;
+        this.traverse = traverse;
+        this.skipIgnore = skipIgnore;
+        this.sendDigest = sendDigest;
+        this.skipFiles = skipFiles;
+        this.charset = charset;
+        this.ignoreCheck = ignoreCheck;
+        this.threads = Math.max(1, threads);
+    }
+
+
+    List<Entry> walk(File root) {
+        if (root == null || !root.exists()) {
+            return Collections.emptyList();
+        }
+        root = root.getAbsoluteFile();
+
+        // A file, or a symlink to a directory, is reported as it is.
+        if (root.isFile() || (root.isDirectory() && RpcPerforceFileType.isProbablySymLink(root))) {
+            List<Entry> ret = new ArrayList<>(1);
+            if (skipIgnore || !ignoreCheck.isIgnored(root)) {
+                ret.add(new Entry(root.getAbsolutePath(), root.length(), false));
+                if (sendDigest) {
+                    ret.get(0).digest = digestFile(root);
+                }
+            }
+            return ret;
+        }
+        if (!root.isDirectory()) {
+            return Collections.emptyList();
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<Entry> ret = pool.invoke(new DirTask(root.toPath(), 0));
+            if (sendDigest) {
+                List<Entry> files = new ArrayList<>(ret.size());
+                for (Entry entry : ret) {
+                    if (!entry.ignored) {
+                        files.add(entry);
+                    }
+                }
+                pool.invoke(new DigestTask(files, 0, files.size()));
+            }
+            return ret;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+
+    private String translate(String from) {
+        // The map builds its search tree on first use, so it can't be shared
+        // between threads without a lock.
+        synchronized (map) {
+            MapWrap mw = map.translate(MapTableT.LHS, from);
+            return mw == null ? null : mw.getTo();
+        }
+    }
+
+
+    private String digestFile(File file) {
+        MD5Digester digester = new MD5Digester();
+        RpcPerforceFile pFile = new RpcPerforceFile(file.getPath(), RpcPerforceFileType.FST_BINARY);
+        return digester.digestFileAs32ByteHex(pFile, charset);
+    }
+
+
+    /**
+     * Lists one directory, forking a new task for each sub-directory.
+     */
+    private class DirTask extends RecursiveTask<List<Entry>> {
+        private final Path dir;
+        private int hasIndex;
+
+        DirTask(Path dir, int hasIndex) {
+            this.dir = dir;
+            this.hasIndex = hasIndex;
+        }
+
+        @Override
+        protected List<Entry> compute() {
+            if (!skipIgnore && ignoreCheck.isIgnored(dir.toFile())) {
+                return Collections.singletonList(new Entry(dir.toString(), 0, true));
+            }
+
+            // Entries and sub-directory tasks, in listing order.
+            List<Object> parts = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                for (Path path : entries) {
+                    Object part = visit(path);
+                    if (part != null) {
+                        parts.add(part);
+                    }
+                }
+            } catch (IOException | DirectoryIteratorException e) {
+                Log.warn("Unable to list directory " + dir + ": " + e);
+            }
+
+            List<Entry> ret = new ArrayList<>(parts.size());
+            for (Object part : parts) {
+                if (part instanceof DirTask) {
+                    ret.addAll(((DirTask) part).join());
+                } else {
+                    ret.add((Entry) part);
+                }
+            }
+            return ret;
+        }
+
+        private Object visit(Path path) {
+            String fileName = path.toString();
+
+            // Skip the files the server already knows about without looking at them.
+            int cmp = -1;
+            while (skipFiles != null && hasIndex < skipFiles.size()) {
+                cmp = fileName.compareTo(skipFiles.get(hasIndex));
+                if (cmp < 0) {
+                    break;
+                }
+                hasIndex++;
+                if (cmp == 0) {
+                    break;
+                }
+            }
+            if (cmp == 0) {
+                return null;
+            }
+
+            BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            } catch (IOException e) {
+                // Removed since the directory was listed.
+                return null;
+            }
+
+            String from;
+            if (attrs.isDirectory()) {
+                if (!traverse) {
+                    return null;
+                }
+                DirTask task = new DirTask(path, hasIndex);
+                task.fork();
+                return task;
+            } else if (attrs.isSymbolicLink() && Files.isDirectory(path)) {
+                from = fileName + "/";
+            } else {
+                from = fileName;
+            }
+
+            if (translate(from) == null) {
+                return null;
+            }
+            if (!skipIgnore && ignoreCheck.isIgnored(path.toFile())) {
+                return new Entry(fileName, 0, true);
+            }
+            return new Entry(fileName, attrs.size(), false);
+        }
+    }
+
+
+    private class DigestTask extends RecursiveAction {
+        private final List<Entry> files;
+        private final int start;
+        private final int end;
+
+        DigestTask(List<Entry> files, int start, int end) {
+            this.files = files;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= DIGEST_BATCH_SIZE) {
+                for (int i = start; i < end; i++) {
+                    Entry entry = files.get(i);
+                    entry.digest = digestFile(new File(entry.path));
+                }
+            } else {
+                int mid = (start + end) >>> 1;
+                invokeAll(new DigestTask(files, start, mid), new DigestTask(files, mid, end));
+            }
+        }
+    }
+}
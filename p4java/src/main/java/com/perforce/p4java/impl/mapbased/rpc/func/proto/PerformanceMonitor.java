@@ -9,8 +9,10 @@ package com.perforce.p4java.impl.mapbased.rpc.func.proto;
  * to be precise or exact.
  * 
  *
+ * @deprecated p4ic4idea: never updated; use
+ * 		{@link com.perforce.p4java.impl.mapbased.rpc.metrics.RpcMetrics}.
  */
-
+@Deprecated
 public class PerformanceMonitor {
 
 	/**
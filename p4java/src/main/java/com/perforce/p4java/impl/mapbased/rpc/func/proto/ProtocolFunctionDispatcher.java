@@ -84,6 +84,10 @@ public class ProtocolFunctionDispatcher {
 				
 				RpcPacket flush2Packet = rpcConnection.getFlowController().respondToFlush1(resultsMap);
 				rpcConnection.putRpcPacket(flush2Packet);
+				// p4ic4idea: per-command metrics
+				if (rpcConnection.getTraffic() != null) {
+					rpcConnection.getTraffic().flowControlFlush();
+				}
 				result = RpcPacketDispatcherResult.CONTINUE;
 				
 				break;
@@ -0,0 +1,27 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.perforce.p4java.impl.mapbased.rpc.metrics;
+
+/**
+ * Receives the metrics for each completed server command.  Register with
+ * {@link RpcMetrics#addListener(IRpcMetricsListener)}.
+ * <p>
+ * The listener is called on the thread that ran the command, right after the
+ * command's results were read, so it must return quickly.
+ */
+// p4ic4idea: added
+public interface IRpcMetricsListener {
+    void commandCompleted(RpcCommandMetrics metrics);
+}
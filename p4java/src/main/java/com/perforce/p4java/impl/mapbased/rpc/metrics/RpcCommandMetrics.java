@@ -0,0 +1,127 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.perforce.p4java.impl.mapbased.rpc.metrics;
+
+/**
+ * The metrics for one server command, from sending the command until its
+ * results were read.
+ */
+// p4ic4idea: added
+public class RpcCommandMetrics {
+    private final String commandName;
+    private final String serverAddress;
+    private final long startTimeMillis;
+    private final long durationNanos;
+    private final boolean failed;
+    private final long bytesSent;
+    private final long bytesReceived;
+    private final long wireBytesSent;
+    private final long wireBytesReceived;
+    private final long packetsSent;
+    private final long packetsReceived;
+    private final long flowControlFlushes;
+
+    public RpcCommandMetrics(String commandName, String serverAddress, long startTimeMillis,
+            long durationNanos, boolean failed, RpcConnectionTraffic traffic) {
+        this.commandName = commandName;
+        this.serverAddress = serverAddress;
+        this.startTimeMillis = startTimeMillis;
+        this.durationNanos = durationNanos;
+        this.failed = failed;
+        this.bytesSent = traffic.getBytesSent();
+        this.bytesReceived = traffic.getBytesReceived();
+        this.wireBytesSent = traffic.getWireBytesSent();
+        this.wireBytesReceived = traffic.getWireBytesReceived();
+        this.packetsSent = traffic.getPacketsSent();
+        this.packetsReceived = traffic.getPacketsReceived();
+        this.flowControlFlushes = traffic.getFlowControlFlushes();
+    }
+
+    public String getCommandName() {
+        return commandName;
+    }
+
+    /**
+     * @return host:port of the server, or null if not known.
+     */
+    public String getServerAddress() {
+        return serverAddress;
+    }
+
+    public long getStartTimeMillis() {
+        return startTimeMillis;
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    public long getDurationMillis() {
+        return durationNanos / 1_000_000L;
+    }
+
+    /**
+     * @return true if the command ended with an exception rather than the
+     *      server's release.  Server error messages don't count as failures.
+     */
+    public boolean isFailed() {
+        return failed;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    public long getWireBytesSent() {
+        return wireBytesSent;
+    }
+
+    public long getWireBytesReceived() {
+        return wireBytesReceived;
+    }
+
+    public long getPacketsSent() {
+        return packetsSent;
+    }
+
+    public long getPacketsReceived() {
+        return packetsReceived;
+    }
+
+    public long getFlowControlFlushes() {
+        return flowControlFlushes;
+    }
+
+    /**
+     * @return wire bytes divided by packet bytes; 1.0 for an uncompressed command.
+     */
+    public double getCompressionRatio() {
+        return RpcCommandStatistics.ratio(wireBytesSent + wireBytesReceived, bytesSent + bytesReceived);
+    }
+
+    @Override
+    public String toString() {
+        return commandName + ": " + getDurationMillis() + " ms"
+                + (failed ? " (failed)" : "")
+                + "; sent " + bytesSent + " bytes in " + packetsSent + " packets"
+                + "; received " + bytesReceived + " bytes in " + packetsReceived + " packets"
+                + "; flushes " + flowControlFlushes
+                + "; compression " + getCompressionRatio();
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.perforce.p4java.impl.mapbased.rpc.metrics;
+
+/**
+ * Aggregated metrics for all the runs of one command name, as collected by
+ * {@link RpcMetrics}.  The latency percentiles are estimated from a
+ * histogram, so they are the upper bound of the bucket the percentile
+ * falls in.
+ */
+// p4ic4idea: added
+public class RpcCommandStatistics {
+    private final String commandName;
+    private final long count;
+    private final long failures;
+    private final long totalMillis;
+    private final long maxMillis;
+    private final long[] latencyBucketLimitsMillis;
+    private final long[] latencyBucketCounts;
+    private final long bytesSent;
+    private final long bytesReceived;
+    private final long wireBytesSent;
+    private final long wireBytesReceived;
+    private final long packetsSent;
+    private final long packetsReceived;
+    private final long flowControlFlushes;
+
+    RpcCommandStatistics(String commandName, long count, long failures, long totalMillis, long maxMillis,
+            long[] latencyBucketLimitsMillis, long[] latencyBucketCounts,
+            long bytesSent, long bytesReceived, long wireBytesSent, long wireBytesReceived,
+            long packetsSent, long packetsReceived, long flowControlFlushes) {
+        this.commandName = commandName;
+        this.count = count;
+        this.failures = failures;
+        this.totalMillis = totalMillis;
+        this.maxMillis = maxMillis;
+        this.latencyBucketLimitsMillis = latencyBucketLimitsMillis;
+        this.latencyBucketCounts = latencyBucketCounts;
+        this.bytesSent = bytesSent;
+        this.bytesReceived = bytesReceived;
+        this.wireBytesSent = wireBytesSent;
+        this.wireBytesReceived = wireBytesReceived;
+        this.packetsSent = packetsSent;
+        this.packetsReceived = packetsReceived;
+        this.flowControlFlushes = flowControlFlushes;
+    }
+
+    public String getCommandName() {
+        return commandName;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getFailures() {
+        return failures;
+    }
+
+    public long getTotalMillis() {
+        return totalMillis;
+    }
+
+    public long getMeanMillis() {
+        return count == 0 ? 0 : totalMillis / count;
+    }
+
+    public long getMaxMillis() {
+        return maxMillis;
+    }
+
+    public long getMedianMillis() {
+        return getPercentileMillis(50);
+    }
+
+    public long getP90Millis() {
+        return getPercentileMillis(90);
+    }
+
+    public long getP99Millis() {
+        return getPercentileMillis(99);
+    }
+
+    /**
+     * @return the upper limit of each latency histogram bucket; a run falls in the
+     *      first bucket whose limit is at or above its duration.  The last bucket has no limit.
+     */
+    public long[] getLatencyBucketLimitsMillis() {
+        return latencyBucketLimitsMillis.clone();
+    }
+
+    public long[] getLatencyBucketCounts() {
+        return latencyBucketCounts.clone();
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    public long getWireBytesSent() {
+        return wireBytesSent;
+    }
+
+    public long getWireBytesReceived() {
+        return wireBytesReceived;
+    }
+
+    public long getPacketsSent() {
+        return packetsSent;
+    }
+
+    public long getPacketsReceived() {
+        return packetsReceived;
+    }
+
+    public long getFlowControlFlushes() {
+        return flowControlFlushes;
+    }
+
+    public double getCompressionRatio() {
+        return ratio(wireBytesSent + wireBytesReceived, bytesSent + bytesReceived);
+    }
+
+    private long getPercentileMillis(int percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long target = (count * percentile + 99) / 100;
+        long seen = 0;
+        for (int i = 0; i < latencyBucketCounts.length; i++) {
+            seen += latencyBucketCounts[i];
+            if (seen >= target) {
+                return i < latencyBucketLimitsMillis.length
+                        ? Math.min(latencyBucketLimitsMillis[i], maxMillis)
+                        : maxMillis;
+            }
+        }
+        return maxMillis;
+    }
+
+    static double ratio(long part, long whole) {
+        return whole <= 0 ? 1.0 : (double) part / whole;
+    }
+
+    @Override
+    public String toString() {
+        return commandName + ": " + count + " runs (" + failures + " failed); mean " + getMeanMillis()
+                + " ms; p50 " + getMedianMillis() + " ms; p90 " + getP90Millis() + " ms; p99 " + getP99Millis()
+                + " ms; max " + maxMillis + " ms; sent " + bytesSent + " bytes; received " + bytesReceived
+                + " bytes; packets " + packetsSent + "/" + packetsReceived + "; flushes " + flowControlFlushes
+                + "; compression " + getCompressionRatio();
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.perforce.p4java.impl.mapbased.rpc.metrics;
+
+/**
+ * Traffic counters for a single RPC connection, used for the per-command
+ * metrics.  A connection is only used by one thread at a time, so these are
+ * plain fields rather than atomics; the counting itself always happens, as
+ * it's cheaper than checking whether metrics are enabled.
+ * <p>
+ * The byte counts are the RPC packet bytes.  When the connection is using
+ * compression, the wire byte counts are the compressed bytes written to and
+ * read from the socket; otherwise they're the same as the packet bytes.
+ */
+// p4ic4idea: added
+public class RpcConnectionTraffic {
+    private long bytesSent;
+    private long bytesReceived;
+    private long wireBytesSent;
+    private long wireBytesReceived;
+    private long packetsSent;
+    private long packetsReceived;
+    private long flowControlFlushes;
+
+    /**
+     * Record a packet sent to the server.
+     *
+     * @param bytes packet length
+     * @param compressed true if the connection is compressing, in which case the
+     *      wire bytes are counted separately.
+     */
+    public void packetSent(int bytes, boolean compressed) {
+        packetsSent++;
+        bytesSent += bytes;
+        if (!compressed) {
+            wireBytesSent += bytes;
+        }
+    }
+
+    public void packetReceived() {
+        packetsReceived++;
+    }
+
+    /**
+     * Record packet bytes read from the server, possibly only part of a packet.
+     */
+    public void bytesReceived(int bytes, boolean compressed) {
+        bytesReceived += bytes;
+        if (!compressed) {
+            wireBytesReceived += bytes;
+        }
+    }
+
+    public void compressedBytesSent(int bytes) {
+        wireBytesSent += bytes;
+    }
+
+    public void compressedBytesReceived(int bytes) {
+        wireBytesReceived += bytes;
+    }
+
+    /**
+     * Record a flush1 / flush2 flow control exchange; the server stops sending
+     * until the client answers its flush1.
+     */
+    public void flowControlFlush() {
+        flowControlFlushes++;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    public long getWireBytesSent() {
+        return wireBytesSent;
+    }
+
+    public long getWireBytesReceived() {
+        return wireBytesReceived;
+    }
+
+    public long getPacketsSent() {
+        return packetsSent;
+    }
+
+    public long getPacketsReceived() {
+        return packetsReceived;
+    }
+
+    public long getFlowControlFlushes() {
+        return flowControlFlushes;
+    }
+
+    /**
+     * @return a copy of the current counts.
+     */
+    public RpcConnectionTraffic copy() {
+        RpcConnectionTraffic ret = new RpcConnectionTraffic();
+        ret.add(this);
+        return ret;
+    }
+
+    /**
+     * Move the requests sent since {@code before} out of these counts.  Used for
+     * a command written ahead of the command whose results are still being read,
+     * so that its request isn't counted against that command.
+     *
+     * @param before the counts from before the request was sent.
+     * @return the moved counts, to {@link #add(RpcConnectionTraffic)} back when
+     *      the command's own results are read.
+     */
+    public RpcConnectionTraffic takeSentSince(RpcConnectionTraffic before) {
+        RpcConnectionTraffic ret = new RpcConnectionTraffic();
+        ret.bytesSent = bytesSent - before.bytesSent;
+        ret.wireBytesSent = wireBytesSent - before.wireBytesSent;
+        ret.packetsSent = packetsSent - before.packetsSent;
+        bytesSent = before.bytesSent;
+        wireBytesSent = before.wireBytesSent;
+        packetsSent = before.packetsSent;
+        return ret;
+    }
+
+    public void add(RpcConnectionTraffic other) {
+        bytesSent += other.bytesSent;
+        bytesReceived += other.bytesReceived;
+        wireBytesSent += other.wireBytesSent;
+        wireBytesReceived += other.wireBytesReceived;
+        packetsSent += other.packetsSent;
+        packetsReceived += other.packetsReceived;
+        flowControlFlushes += other.flowControlFlushes;
+    }
+
+    /**
+     * Start counting the next command's traffic.
+     */
+    public void reset() {
+        bytesSent = 0;
+        bytesReceived = 0;
+        wireBytesSent = 0;
+        wireBytesReceived = 0;
+        packetsSent = 0;
+        packetsReceived = 0;
+        flowControlFlushes = 0;
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.perforce.p4java.impl.mapbased.rpc.metrics;
+
+import com.perforce.p4java.Log;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-command RPC metrics: latency histograms, bytes and packets sent and
+ * received, flow control flushes and compression ratio for each command
+ * name, so slow operations can be traced back to the server commands they
+ * ran.
+ * <p>
+ * Nothing is measured unless metrics are enabled, either explicitly, by
+ * registering a listener, or by registering the JMX bean; when disabled, a
+ * command only pays for a volatile read.  The metrics are global to the JVM,
+ * as the server commands that need attributing may come from any server
+ * object.
+ */
+// p4ic4idea: added
+public final class RpcMetrics {
+    public static final String MBEAN_NAME = "com.perforce.p4java:type=RpcMetrics";
+
+    private static final long[] LATENCY_BUCKET_LIMITS_MILLIS = {
+            1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000, 60000
+    };
+
+    private static final List<IRpcMetricsListener> LISTENERS = new CopyOnWriteArrayList<>();
+    private static final ConcurrentHashMap<String, CommandAggregate> COMMANDS = new ConcurrentHashMap<>();
+    private static final AtomicLong COMMAND_COUNT = new AtomicLong();
+    private static volatile boolean explicitlyEnabled = false;
+    private static volatile boolean mbeanRegistered = false;
+    private static volatile boolean enabled = false;
+
+    private RpcMetrics() {
+        // static only
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Turn collection on or off, independent of any listeners or JMX registration.
+     */
+    public static void setEnabled(boolean enable) {
+        explicitlyEnabled = enable;
+        updateEnabled();
+    }
+
+    public static void addListener(IRpcMetricsListener listener) {
+        if (listener != null) {
+            LISTENERS.add(listener);
+            updateEnabled();
+        }
+    }
+
+    public static void removeListener(IRpcMetricsListener listener) {
+        LISTENERS.remove(listener);
+        updateEnabled();
+    }
+
+    /**
+     * Register the metrics with the platform MBean server under {@link #MBEAN_NAME}.
+     * This enables the metrics.
+     */
+    public static synchronized void registerMBean() {
+        if (mbeanRegistered) {
+            return;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(new MXBeanImpl(), new ObjectName(MBEAN_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            // Loaded by another class loader; that one reports its own metrics.
+            Log.warn("RPC metrics bean already registered: " + MBEAN_NAME);
+            return;
+        } catch (JMException e) {
+            Log.error("Could not register RPC metrics bean: " + e.getMessage());
+            Log.exception(e);
+            return;
+        }
+        mbeanRegistered = true;
+        updateEnabled();
+    }
+
+    public static synchronized void unregisterMBean() {
+        if (!mbeanRegistered) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(MBEAN_NAME));
+        } catch (InstanceNotFoundException e) {
+            // already gone
+        } catch (JMException e) {
+            Log.warn("Could not unregister RPC metrics bean: " + e.getMessage());
+        }
+        mbeanRegistered = false;
+        updateEnabled();
+    }
+
+    /**
+     * Called by the RPC dispatcher when a command completes, if metrics are enabled.
+     */
+    public static void commandCompleted(RpcCommandMetrics metrics) {
+        if (metrics == null || !enabled) {
+            return;
+        }
+        COMMAND_COUNT.incrementAndGet();
+        String name = metrics.getCommandName() == null ? "unknown" : metrics.getCommandName();
+        CommandAggregate aggregate = COMMANDS.get(name);
+        if (aggregate == null) {
+            aggregate = new CommandAggregate(name);
+            CommandAggregate prev = COMMANDS
+                    .putIfAbsent(name, aggregate);
+            if (prev != null) {
+                aggregate = prev;
+            }
+        }
+        aggregate.add(metrics);
+
+        for (IRpcMetricsListener listener : LISTENERS) {
+            try {
+                listener.commandCompleted(metrics);
+            } catch (RuntimeException e) {
+                Log.warn("RPC metrics listener " + listener + " failed: " + e.getMessage());
+                Log.exception(e);
+            }
+        }
+    }
+
+    public static long getCommandCount() {
+        return COMMAND_COUNT.get();
+    }
+
+    /**
+     * @return the statistics for each command name run since the last reset, by name.
+     */
+    public static List<RpcCommandStatistics> getCommandStatistics() {
+        List<RpcCommandStatistics> ret = new ArrayList<>(COMMANDS.size());
+        for (CommandAggregate aggregate : COMMANDS.values()) {
+            ret.add(aggregate.snapshot());
+        }
+        Collections.sort(ret, new Comparator<RpcCommandStatistics>() {
+            @Override
+            public int compare(RpcCommandStatistics o1, RpcCommandStatistics o2) {
+                return o1.getCommandName().compareTo(o2.getCommandName());
+            }
+        });
+        return ret;
+    }
+
+    public static void reset() {
+        COMMANDS.clear();
+        COMMAND_COUNT.set(0);
+    }
+
+    /**
+     * Log the per-command statistics, in the same way as the server stats.
+     */
+    public static void logStats() {
+        for (RpcCommandStatistics stats : getCommandStatistics()) {
+            Log.stats("RPC command " + stats);
+        }
+    }
+
+    private static void updateEnabled() {
+        enabled = explicitlyEnabled || mbeanRegistered || !LISTENERS.isEmpty();
+    }
+
+    private static class CommandAggregate {
+        private final String name;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicLongArray buckets = new AtomicLongArray(LATENCY_BUCKET_LIMITS_MILLIS.length + 1);
+        private final LongAdder bytesSent = new LongAdder();
+        private final LongAdder bytesReceived = new LongAdder();
+        private final LongAdder wireBytesSent = new LongAdder();
+        private final LongAdder wireBytesReceived = new LongAdder();
+        private final LongAdder packetsSent = new LongAdder();
+        private final LongAdder packetsReceived = new LongAdder();
+        private final LongAdder flowControlFlushes = new LongAdder();
+
+        private CommandAggregate(String name) {
+            this.name = name;
+        }
+
+        private void add(RpcCommandMetrics metrics) {
+            long nanos = metrics.getDurationNanos();
+            count.increment();
+            if (metrics.isFailed()) {
+                failures.increment();
+            }
+            totalNanos.add(nanos);
+            long max;
+            while (nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos)) {
+                // retry
+            }
+            buckets.incrementAndGet(bucketFor(metrics.getDurationMillis()));
+            bytesSent.add(metrics.getBytesSent());
+            bytesReceived.add(metrics.getBytesReceived());
+            wireBytesSent.add(metrics.getWireBytesSent());
+            wireBytesReceived.add(metrics.getWireBytesReceived());
+            packetsSent.add(metrics.getPacketsSent());
+            packetsReceived.add(metrics.getPacketsReceived());
+            flowControlFlushes.add(metrics.getFlowControlFlushes());
+        }
+
+        private RpcCommandStatistics snapshot() {
+            long[] counts = new long[buckets.length()];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = buckets.get(i);
+            }
+            return new RpcCommandStatistics(name, count.sum(), failures.sum(),
+                    totalNanos.sum() / 1_000_000L, maxNanos.get() / 1_000_000L,
+                    LATENCY_BUCKET_LIMITS_MILLIS.clone(), counts,
+                    bytesSent.sum(), bytesReceived.sum(), wireBytesSent.sum(), wireBytesReceived.sum(),
+                    packetsSent.sum(), packetsReceived.sum(), flowControlFlushes.sum());
+        }
+
+        private static int bucketFor(long millis) {
+            for (int i = 0; i < LATENCY_BUCKET_LIMITS_MILLIS.length; i++) {
+                if (millis <= LATENCY_BUCKET_LIMITS_MILLIS[i]) {
+                    return i;
+                }
+            }
+            return LATENCY_BUCKET_LIMITS_MILLIS.length;
+        }
+    }
+
+    private static class MXBeanImpl implements RpcMetricsMXBean {
+        @Override
+        public boolean isEnabled() {
+            return RpcMetrics.isEnabled();
+        }
+
+        @Override
+        public void setEnabled(boolean enabled) {
+            RpcMetrics.setEnabled(enabled);
+        }
+
+        @Override
+        public long getCommandCount() {
+            return RpcMetrics.getCommandCount();
+        }
+
+        @Override
+        public List<RpcCommandStatistics> getCommandStatistics() {
+            return RpcMetrics.getCommandStatistics();
+        }
+
+        @Override
+        public void reset() {
+            RpcMetrics.reset();
+        }
+    }
+}
@@ -5,6 +5,7 @@ package com.perforce.p4java.impl.mapbased.rpc.packet;
 
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -204,7 +205,19 @@ public class RpcPacket {
 												byte[] bytes, boolean isUnicodeServer,
 												Charset charset, RpcPacketFieldRule fieldRule,
 												IFilterCallback filterCallback) {
-		return new RpcPacket(preamble, bytes, isUnicodeServer, charset, fieldRule, filterCallback);
+		return new RpcPacket(preamble, bytes, RpcPacketFieldCodec.forServer(isUnicodeServer, charset),
+				fieldRule, filterCallback);
+	}
+
+	/**
+	 * Construct an RPC packet from the passed-in preamble, bytes, field codec and fieldRule.
+	 */
+	// p4ic4idea: added so connections can reuse their codec for every packet.
+	public static RpcPacket constructRpcPacket(RpcPacketPreamble preamble,
+												byte[] bytes, RpcPacketFieldCodec codec,
+												RpcPacketFieldRule fieldRule,
+												IFilterCallback filterCallback) {
+		return new RpcPacket(preamble, bytes, codec, fieldRule, filterCallback);
 	}
 
 	private RpcPacket(RpcFunctionSpec funcName, String realName, String[] args,
@@ -257,7 +270,7 @@ public class RpcPacket {
 	}
 	
 	private RpcPacket(RpcPacketPreamble preamble, byte[] payloadBytes,
-						boolean isUnicodeServer, Charset charset,
+						RpcPacketFieldCodec codec,
 						RpcPacketFieldRule fieldRule, IFilterCallback filterCallback) {
 		if (preamble == null) {
 			throw new NullPointerError("null RPC preamble passed to RpcPacket constructor");
@@ -277,6 +290,15 @@ public class RpcPacket {
 		}
 		
 		try {
+			// p4ic4idea: without a filter, the fields are left in the payload and only
+			// decoded when they are read.
+			if (filterCallback == null) {
+				resultsMap = retrieveFieldMap(payloadBytes, codec, fieldRule);
+				this.packetLength = payloadLength;
+				this.funcNameString = (String) resultsMap.get(RpcFunctionMapKey.FUNCTION);
+				return;
+			}
+
 			resultsMap = new HashMap<String, Object>();
 			ByteBuffer packetBuf = ByteBuffer.wrap(payloadBytes);
 			
@@ -284,7 +306,7 @@ public class RpcPacket {
 			final AtomicBoolean skipSubsequent = new AtomicBoolean(false);
 			
 			while (packetBuf.position() < packetBuf.limit()) {
-				Object[] fields = RpcPacketField.retrievePacketField(packetBuf, isUnicodeServer, charset, fieldRule);
+				Object[] fields = RpcPacketField.retrievePacketField(packetBuf, codec, fieldRule);
 
 				// Filter callback
 				if (filterCallback != null) {
@@ -364,6 +386,125 @@ public class RpcPacket {
 		}
 	}
 
+	/**
+	 * Pick off all the name / value field pairs from the payload, following the same rules
+	 * as {@link RpcPacketField#retrievePacketField(ByteBuffer, RpcPacketFieldCodec, RpcPacketFieldRule)}
+	 * and the duplicate field handling in the constructor, but without copying the values out
+	 * of the payload.
+	 */
+	// p4ic4idea: added
+	private static RpcPacketFieldMap retrieveFieldMap(byte[] payload, RpcPacketFieldCodec codec,
+							RpcPacketFieldRule fieldRule) {
+		final RpcPacketFieldMap ret = new RpcPacketFieldMap(payload, codec);
+		final int limit = payload.length;
+		int pos = 0;
+		while (pos < limit) {
+			// Name, terminated by a null byte; may be empty.
+			int nameStart = pos;
+			while (pos < limit && payload[pos] != 0) {
+				pos++;
+			}
+			if (pos >= limit) {
+				throw new ProtocolError("Unterminated field name in RPC packet");
+			}
+			String fieldName = pos > nameStart
+					? FieldNameCache.getName(payload, nameStart, pos - nameStart, codec)
+					: null;
+			pos++;
+
+			if (limit - pos < RPC_LENGTH_FIELD_LENGTH) {
+				throw new ProtocolError(
+						"Insufficient bytes in buffer to retrieve text value field length");
+			}
+			int valLength = (payload[pos] & 0xFF)
+					+ ((payload[pos + 1] & 0xFF) * 0x100)
+					+ ((payload[pos + 2] & 0xFF) * 0x10000)
+					+ ((payload[pos + 3] & 0xFF) * 0x1000000);
+			pos += RPC_LENGTH_FIELD_LENGTH;
+			if (valLength < 0) {
+				throw new ProtocolError(
+						"Negative text field value length in P4JRpcTextField initializer: "
+						+ valLength);
+			}
+			// The value is followed by a terminating null.
+			if (limit - pos <= valLength) {
+				throw new ProtocolError(
+						"Insufficient bytes in buffer to retrieve text value field");
+			}
+			int valOffset = pos;
+			pos += valLength + 1;
+
+			boolean skipConversion = false;
+			if (fieldRule != null) {
+				fieldRule.update(fieldName);
+				skipConversion = fieldRule.isSkipConversion();
+			}
+			boolean isText = !skipConversion
+					&& RpcPacketFieldType.getFieldType(fieldName) == RpcPacketFieldType.TEXT;
+
+			if (fieldName == null) {
+				ret.putSlice(null, valOffset, valLength, isText);
+			} else if (fieldName.equalsIgnoreCase(RpcFunctionMapKey.FUNC2)) {
+				// Only the first func2 value is correct; see the constructor.
+				if (!ret.containsKey(fieldName)) {
+					ret.putSlice(fieldName, valOffset, valLength, isText);
+				}
+			} else if (ret.containsKey(fieldName)) {
+				int suffixCounter = 0;
+				while (ret.containsKey(fieldName + suffixCounter)) {
+					suffixCounter++;
+				}
+				ret.putSlice(fieldName + suffixCounter, valOffset, valLength, isText);
+			} else {
+				ret.putSlice(fieldName, valOffset, valLength, isText);
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Field names are drawn from a small set, so keep the decoded strings around rather than
+	 * creating new ones for every field of every packet.  The entries are immutable, so
+	 * concurrent readers at worst see a miss.
+	 */
+	// p4ic4idea: added
+	private static final class FieldNameCache {
+		private static final int SIZE = 512;
+		private static final FieldNameCache[] CACHE = new FieldNameCache[SIZE];
+
+		private final byte[] encoded;
+		private final Charset charset;
+		private final String name;
+
+		private FieldNameCache(byte[] encoded, Charset charset, String name) {
+			this.encoded = encoded;
+			this.charset = charset;
+			this.name = name;
+		}
+
+		static String getName(byte[] bytes, int offset, int length, RpcPacketFieldCodec codec) {
+			final Charset charset = codec.getCharset();
+			int hash = length;
+			for (int i = offset; i < offset + length; i++) {
+				hash = 31 * hash + bytes[i];
+			}
+			int slot = (hash ^ (hash >>> 16)) & (SIZE - 1);
+			FieldNameCache entry = CACHE[slot];
+			if (entry != null && entry.charset.equals(charset) && entry.encoded.length == length) {
+				boolean same = true;
+				for (int i = 0; same && i < length; i++) {
+					same = entry.encoded[i] == bytes[offset + i];
+				}
+				if (same) {
+					return entry.name;
+				}
+			}
+			String name = codec.decodeName(bytes, offset, length);
+			CACHE[slot] = new FieldNameCache(Arrays.copyOfRange(bytes, offset, offset + length), charset, name);
+			return name;
+		}
+	}
+
 	public Map<String, Object> getResultsMap() {
 		return this.resultsMap;
 	}
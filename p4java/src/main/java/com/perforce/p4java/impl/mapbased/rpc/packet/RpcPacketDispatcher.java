@@ -3,11 +3,10 @@
  */
 package com.perforce.p4java.impl.mapbased.rpc.packet;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
-import java.util.concurrent.CopyOnWriteArrayList;
 
 import com.perforce.p4java.Log;
 import com.perforce.p4java.exception.AccessException;
@@ -23,6 +22,9 @@ import com.perforce.p4java.impl.mapbased.rpc.func.RpcFunctionSpec;
 import com.perforce.p4java.impl.mapbased.rpc.func.client.ClientFunctionDispatcher;
 import com.perforce.p4java.impl.mapbased.rpc.func.proto.FlowControl;
 import com.perforce.p4java.impl.mapbased.rpc.func.proto.ProtocolFunctionDispatcher;
+import com.perforce.p4java.impl.mapbased.rpc.metrics.RpcCommandMetrics;
+import com.perforce.p4java.impl.mapbased.rpc.metrics.RpcConnectionTraffic;
+import com.perforce.p4java.impl.mapbased.rpc.metrics.RpcMetrics;
 
 /**
  * Top-level client-side packet dispatcher. Responsible for dispatching
@@ -98,6 +100,40 @@ public class RpcPacketDispatcher {
 	
 	public List<Map<String, Object>> dispatch(CommandEnv cmdEnv)
 							throws ConnectionException, AccessException {
+		// p4ic4idea: per-command metrics.  The connection's traffic counters were reset at
+		// the end of the previous command, so they include this command's request.  A batch
+		// holds back the requests it writes ahead until their own command is dispatched.
+		RpcConnection rpcConnection = cmdEnv == null ? null : cmdEnv.getRpcConnection();
+		RpcConnectionTraffic traffic = rpcConnection == null ? null : rpcConnection.getTraffic();
+		if (traffic == null) {
+			return dispatchPackets(cmdEnv);
+		}
+		if (!RpcMetrics.isEnabled()) {
+			try {
+				return dispatchPackets(cmdEnv);
+			} finally {
+				traffic.reset();
+			}
+		}
+		long startMillis = System.currentTimeMillis();
+		long startNanos = System.nanoTime();
+		boolean failed = true;
+		try {
+			List<Map<String, Object>> ret = dispatchPackets(cmdEnv);
+			failed = false;
+			return ret;
+		} finally {
+			RpcMetrics.commandCompleted(new RpcCommandMetrics(
+					cmdEnv.getCmdSpec() == null ? null : cmdEnv.getCmdSpec().getCmdName(),
+					rpcConnection.getHostName() == null ? null
+							: rpcConnection.getHostName() + ':' + rpcConnection.getHostPort(),
+					startMillis, System.nanoTime() - startNanos, failed, traffic));
+			traffic.reset();
+		}
+	}
+
+	private List<Map<String, Object>> dispatchPackets(CommandEnv cmdEnv)
+							throws ConnectionException, AccessException {
 		
 		// Basic idea is to sit in the receive loop processing commands until we see
 		// a release command come back from the Perforce server.
@@ -113,7 +149,13 @@ public class RpcPacketDispatcher {
 		int cmdCallBackKey = cmdEnv.getCmdCallBackKey();
 		RpcConnection rpcConnection = cmdEnv.getRpcConnection();
 		
-		List<Map<String, Object>> resultMaps = new CopyOnWriteArrayList<>(new LinkedList<Map<String, Object>>());
+		// p4ic4idea: the copy-on-write list copied its whole array on every result, making large
+		// commands quadratic.  Only the dispatch (command) thread appends results; the parallel
+		// sync threads pass theirs through a queue that DefaultParallelSync drains on the command
+		// thread.  The list is only handed out once dispatch returns, so no concurrent list is
+		// needed.
+		//List<Map<String, Object>> resultMaps = new CopyOnWriteArrayList<>(new LinkedList<Map<String, Object>>());
+		List<Map<String, Object>> resultMaps = new ArrayList<>();
 		cmdEnv.setResultMaps(resultMaps);
 		
 		try {
@@ -13,7 +13,6 @@ import com.perforce.p4java.Log;
 import com.perforce.p4java.exception.NullPointerError;
 import com.perforce.p4java.exception.P4JavaError;
 import com.perforce.p4java.exception.ProtocolError;
-import com.perforce.p4java.impl.mapbased.rpc.connection.RpcConnection;
 import com.perforce.p4java.impl.mapbased.rpc.packet.helper.RpcPacketFieldRule;
 
 /**
@@ -94,6 +93,17 @@ public class RpcPacketField {
 	 */
 	public static Object[] retrievePacketField(ByteBuffer buf, boolean isUnicodeServer,
 												Charset charset, RpcPacketFieldRule fieldRule) {
+		return retrievePacketField(buf, RpcPacketFieldCodec.forServer(isUnicodeServer, charset), fieldRule);
+	}
+
+	/**
+	 * Attempt to pick off a name / value field pair from the passed-in byte
+	 * buffer, converting the text with the passed-in codec, which should be the
+	 * connection's own rather than a new one for each field.
+	 */
+	// p4ic4idea: added to avoid looking up the charset by name for every field.
+	public static Object[] retrievePacketField(ByteBuffer buf, RpcPacketFieldCodec codec,
+												RpcPacketFieldRule fieldRule) {
 		
 		if (buf == null) {
 			throw new NullPointerError(
@@ -128,15 +138,7 @@ public class RpcPacketField {
 			// Field names are currently always assumed to be in the default
 			// charset, i.e. RpcConnection.NON_UNICODE_SERVER_CHARSET unless
 			// the server is in Unicode mode.
-			try {
-				retVal[NAME_FIELD] = new String(bytes, 0, i, charset == null ?
-						RpcConnection.NON_UNICODE_SERVER_CHARSET_NAME :
-							(isUnicodeServer ? CharsetDefs.UTF8_NAME : charset.name()));
-			} catch (UnsupportedEncodingException e) {
-				// This should never be reached since we already have the Charset
-				// object needed.
-				Log.exception(e);
-			}
+			retVal[NAME_FIELD] = codec.decodeName(bytes, 0, i);
 		}
 		
 		// Get value string length which may be zero):
@@ -185,15 +187,7 @@ public class RpcPacketField {
 			// Incoming string is encoded in UTF-8 if we're talking to a Unicode server;
 			// otherwise it's in the specified charset, or maybe some 8 bit ASCI variant).
 			
-			try {
-				retVal[VALUE_FIELD] = new String(valBytes, charset == null ?
-						RpcConnection.NON_UNICODE_SERVER_CHARSET_NAME :
-								(isUnicodeServer ? CharsetDefs.UTF8_NAME : charset.name()));
-			} catch (UnsupportedEncodingException e) {
-				// This should never be reached since we already have the Charset
-				// object needed.
-				Log.exception(e);
-			}
+			retVal[VALUE_FIELD] = codec.decode(valBytes, 0, valLength);
 		} else {
 			retVal[VALUE_FIELD] = valBytes; // If unicode is involved here (as, e.g., file contents),
 											// it'll be converted elsewhere...
@@ -229,7 +223,7 @@ public class RpcPacketField {
 										throws BufferOverflowException, UnsupportedEncodingException {
 		marshal(buf, name,
 			(value == null ? null : value.getBytes(
-					charset == null ? CharsetDefs.DEFAULT.name() : charset.name())));
+					charset == null ? CharsetDefs.DEFAULT : charset)));
 	}
 	
 	/**
@@ -242,7 +236,7 @@ public class RpcPacketField {
 										throws BufferOverflowException, UnsupportedEncodingException {
 		marshal(buf, name,
 			(value == null ? null : value.toString().getBytes(
-							charset == null ? CharsetDefs.DEFAULT.name() : charset.name())));
+							charset == null ? CharsetDefs.DEFAULT : charset)));
 	}
 	/**
 	 * Marshal the passed-in packet fields onto a ByteBuffer. Affects
@@ -258,7 +252,7 @@ public class RpcPacketField {
 		
 		try {
 			if (name != null) {
-				buf.put(name.getBytes(CharsetDefs.DEFAULT.name()));
+				buf.put(RpcPacketFieldCodec.encodeName(name));
 			}
 			buf.put((byte) 0);
 			
@@ -310,7 +304,7 @@ public class RpcPacketField {
 
 		try {
 			if (name != null) {
-				buf.put(name.getBytes(CharsetDefs.DEFAULT.name()));
+				buf.put(RpcPacketFieldCodec.encodeName(name));
 			}
 			buf.put((byte) 0);
 			
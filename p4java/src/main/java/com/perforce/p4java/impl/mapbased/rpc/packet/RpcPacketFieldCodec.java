@@ -0,0 +1,185 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.perforce.p4java.impl.mapbased.rpc.packet;
+
+import com.perforce.p4java.CharsetDefs;
+import com.perforce.p4java.exception.NullPointerError;
+import com.perforce.p4java.impl.mapbased.rpc.connection.RpcConnection;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Converts packet field text to and from the bytes on the wire for a single charset.
+ * A connection keeps one of these for as long as its charset stays the same, so the
+ * charset is only looked up once, rather than by name for every field.
+ * <p>
+ * The JVM already has fast, allocation-free paths for UTF-8, ISO-8859-1 and US-ASCII,
+ * so those go straight through {@link String}.  Other charsets reuse a single decoder
+ * and encoder, which would otherwise be created for every field.  Field names are
+ * always ASCII, and most values are too, so pure ASCII text skips the charset
+ * entirely when the charset is ASCII compatible.
+ * <p>
+ * Malformed input is replaced, as the {@link String} conversions do.  Instances are
+ * safe to share between threads.
+ */
+// p4ic4idea: added
+public class RpcPacketFieldCodec {
+    // Every printable ASCII character; used to check if a charset encodes ASCII as itself.
+    private static final String ASCII_SAMPLE;
+    static {
+        StringBuilder sb = new StringBuilder();
+        for (char c = 0x20; c < 0x7f; c++) {
+            sb.append(c);
+        }
+        ASCII_SAMPLE = sb.toString();
+    }
+
+    // Field names are written in the default charset, whatever the connection uses.
+    private static final RpcPacketFieldCodec NAME_CODEC = new RpcPacketFieldCodec(CharsetDefs.DEFAULT);
+
+    private final Charset charset;
+    private final boolean jvmOptimized;
+    private final boolean asciiCompatible;
+
+    // Lazily created, and only used while holding the lock on this object.
+    private CharsetDecoder decoder;
+    private CharsetEncoder encoder;
+
+
+    public RpcPacketFieldCodec(Charset charset) {
+        if (charset == null) {
+            throw new NullPointerError("null charset passed to RpcPacketFieldCodec constructor");
+        }
+        this.charset = charset;
+        this.jvmOptimized = StandardCharsets.UTF_8.equals(charset)
+                || StandardCharsets.ISO_8859_1.equals(charset)
+                || StandardCharsets.US_ASCII.equals(charset);
+        this.asciiCompatible = jvmOptimized || (charset.canEncode()
+                && Arrays.equals(ASCII_SAMPLE.getBytes(charset),
+                        ASCII_SAMPLE.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+
+    /**
+     * The codec used for packet text, following the same rules as the field decoding:
+     * UTF-8 for Unicode servers, otherwise the client charset or the non-Unicode
+     * default.
+     */
+    public static RpcPacketFieldCodec forServer(boolean isUnicodeServer, Charset charset) {
+        return new RpcPacketFieldCodec(charset == null ? RpcConnection.NON_UNICODE_SERVER_CHARSET :
+                (isUnicodeServer ? CharsetDefs.UTF8 : charset));
+    }
+
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+
+    /**
+     * Decode a field name.  These are always ASCII in practice, so they don't need to
+     * go through the charset at all.
+     */
+    public String decodeName(byte[] bytes, int offset, int length) {
+        if (asciiCompatible && isAscii(bytes, offset, length)) {
+            return new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
+        }
+        return decode(bytes, offset, length);
+    }
+
+
+    public String decode(byte[] bytes, int offset, int length) {
+        if (jvmOptimized) {
+            return new String(bytes, offset, length, charset);
+        }
+        if (asciiCompatible && isAscii(bytes, offset, length)) {
+            return new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
+        }
+        synchronized (this) {
+            if (decoder == null) {
+                decoder = charset.newDecoder()
+                        .onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            }
+            try {
+                return decoder.reset().decode(ByteBuffer.wrap(bytes, offset, length)).toString();
+            } catch (CharacterCodingException e) {
+                // Can't happen with the REPLACE actions, but fall back to the
+                // JVM's own handling just in case.
+                return new String(bytes, offset, length, charset);
+            }
+        }
+    }
+
+
+    public byte[] encode(String str) {
+        if (jvmOptimized) {
+            return str.getBytes(charset);
+        }
+        if (asciiCompatible && isAscii(str)) {
+            return str.getBytes(StandardCharsets.ISO_8859_1);
+        }
+        synchronized (this) {
+            if (encoder == null) {
+                encoder = charset.newEncoder()
+                        .onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            }
+            try {
+                ByteBuffer buf = encoder.reset().encode(CharBuffer.wrap(str));
+                return Arrays.copyOfRange(buf.array(), buf.arrayOffset() + buf.position(),
+                        buf.arrayOffset() + buf.limit());
+            } catch (CharacterCodingException e) {
+                return str.getBytes(charset);
+            }
+        }
+    }
+
+
+    /**
+     * Encode a field name for the wire.
+     */
+    public static byte[] encodeName(String name) {
+        return NAME_CODEC.encode(name);
+    }
+
+
+    private static boolean isAscii(byte[] bytes, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            if (bytes[i] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    private static boolean isAscii(String str) {
+        for (int i = 0; i < str.length(); i++) {
+            if (str.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
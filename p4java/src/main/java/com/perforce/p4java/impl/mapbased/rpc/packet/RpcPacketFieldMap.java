@@ -0,0 +1,138 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.perforce.p4java.impl.mapbased.rpc.packet;
+
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The results map for a packet read off the wire.  The field values are kept as
+ * slices of the packet payload, and are only turned into a {@code String} or
+ * {@code byte[]} when they are read, so fields that the caller never looks at
+ * don't cost any allocations.
+ * <p>
+ * The payload array is owned by the packet; results maps are kept by callers
+ * long after the next packet is read, so the slices can't point into a shared
+ * receive buffer.
+ */
+// p4ic4idea: added to cut down on the per-field allocations when reading large results.
+public class RpcPacketFieldMap extends AbstractMap<String, Object> {
+    private final byte[] payload;
+    private final RpcPacketFieldCodec codec;
+
+    // Values are either the decoded object, or a Slice that has not been read yet.
+    private final HashMap<String, Object> values = new HashMap<>();
+
+
+    /**
+     * A value that has not been decoded yet.
+     */
+    private static final class Slice {
+        final int offset;
+        final int length;
+        final boolean isText;
+
+        Slice(int offset, int length, boolean isText) {
+            this.offset = offset;
+            this.length = length;
+            this.isText = isText;
+        }
+    }
+
+
+    RpcPacketFieldMap(byte[] payload, RpcPacketFieldCodec codec) {
+        this.payload = payload;
+        this.codec = codec;
+    }
+
+
+    /**
+     * Add a field that is read from the payload when it is first requested.
+     */
+    void putSlice(String name, int offset, int length, boolean isText) {
+        values.put(name, new Slice(offset, length, isText));
+    }
+
+
+    @Override
+    public Object get(Object key) {
+        Object ret = values.get(key);
+        if (ret instanceof Slice) {
+            ret = decode((Slice) ret);
+            values.put((String) key, ret);
+        }
+        return ret;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return values.containsKey(key);
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        Object ret = values.put(key, value);
+        return ret instanceof Slice ? decode((Slice) ret) : ret;
+    }
+
+    @Override
+    public Object remove(Object key) {
+        Object ret = values.remove(key);
+        return ret instanceof Slice ? decode((Slice) ret) : ret;
+    }
+
+    @Override
+    public int size() {
+        return values.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return values.isEmpty();
+    }
+
+    @Override
+    public Set<String> keySet() {
+        return values.keySet();
+    }
+
+    @Override
+    public void clear() {
+        values.clear();
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        // Anything that walks over the entries sees the values, so they all need decoding.
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            if (entry.getValue() instanceof Slice) {
+                entry.setValue(decode((Slice) entry.getValue()));
+            }
+        }
+        return values.entrySet();
+    }
+
+
+    private Object decode(Slice slice) {
+        if (slice.isText) {
+            return codec.decode(payload, slice.offset, slice.length);
+        }
+        // Callers are free to modify the returned bytes.
+        return Arrays.copyOfRange(payload, slice.offset, slice.offset + slice.length);
+    }
+}
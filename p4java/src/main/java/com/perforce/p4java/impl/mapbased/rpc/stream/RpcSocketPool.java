@@ -8,11 +8,19 @@ import com.perforce.p4java.impl.mapbased.rpc.stream.helper.RpcSocketHelper;
 
 import java.io.IOException;
 import java.net.Socket;
-import java.util.ArrayList;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Properties;
-import java.util.Queue;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author Kevin Sawicki (ksawicki@perforce.com)
@@ -34,112 +42,63 @@ public class RpcSocketPool {
 
 	}
 
+	// p4ic4idea: the single pool manager thread, which woke up every idle period to
+	// sweep all the pools while holding their locks, was replaced with per-pool
+	// eviction tasks on a shared scheduler, and the pool itself with a lock-free deque.
+
 	/**
-	 * Pool manager that closes sockets that have been left open for more than
-	 * the idle time allowed.
-	 * 
+	 * Socket idle time system property in milliseconds
 	 */
-	private static class PoolManager implements Runnable {
+	private static final String RPC_SOCKET_IDLE_TIME = "com.perforce.p4java.RPC_SOCKET_IDLE_TIME";
 
-		/**
-		 * Socket idle time system property in milliseconds
-		 */
-		private static final String RPC_SOCKET_IDLE_TIME = "com.perforce.p4java.RPC_SOCKET_IDLE_TIME";
+	/**
+	 * Default idle time to close sockets - 30 seconds
+	 */
+	private static final int DEFAULT_SOCKET_IDLE_TIME = 30000;
 
-		/**
-		 * Default idle time to close sockets - 30 seconds
-		 */
-		private static final int DEFAULT_SOCKET_IDLE_TIME = 30000;
+	/**
+	 * Socket maximum lifetime system property in milliseconds; sockets open
+	 * longer than this are closed rather than reused.  0 means no limit.
+	 */
+	private static final String RPC_SOCKET_MAX_LIFETIME = "com.perforce.p4java.RPC_SOCKET_MAX_LIFETIME";
 
-		private int idleTime;
-		private List<RpcSocketPool> pools;
-		private boolean started = false;
+	private static final int IDLE_TIME = getTimeProperty(RPC_SOCKET_IDLE_TIME, DEFAULT_SOCKET_IDLE_TIME);
+	private static final int MAX_LIFETIME = getTimeProperty(RPC_SOCKET_MAX_LIFETIME, 0);
 
-		/**
-		 * Create a new pool manager
-		 */
-		public PoolManager() {
-			this.pools = new ArrayList<RpcSocketPool>();
-			int time = DEFAULT_SOCKET_IDLE_TIME;
-			String configuredTime = System.getProperty(RPC_SOCKET_IDLE_TIME);
-			if (configuredTime != null) {
-				try {
-					time = Integer.parseInt(configuredTime);
-				} catch (NumberFormatException nfe) {
-					time = DEFAULT_SOCKET_IDLE_TIME;
-				}
-			}
-			this.idleTime = time;
-		}
+	private static final ScheduledThreadPoolExecutor EVICTOR = createEvictor();
 
-		public void register(RpcSocketPool pool) {
-			if (pool != null) {
-				synchronized (this) {
-					pools.add(pool);
-				}
-				if (started) {
-					synchronized (this.pools) {
-						this.pools.notify();
-					}
-				} else {
-					start();
-				}
+	private static ScheduledThreadPoolExecutor createEvictor() {
+		ScheduledThreadPoolExecutor ret = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r);
+				thread.setName("P4Java Socket Pool Manager");
+				thread.setPriority(Thread.MIN_PRIORITY);
+				thread.setDaemon(true);
+				return thread;
 			}
-		}
-
-		public void start() {
-			started = true;
-			Thread thread = new Thread(this);
-			thread.setName("P4Java Socket Pool Manager");
-			thread.setPriority(Thread.MIN_PRIORITY);
-			thread.setDaemon(true);
-			thread.start();
-		}
-
-		public void unregister(RpcSocketPool pool) {
-			if (pool != null) {
-				synchronized (this) {
-					pools.remove(pool);
-				}
-			}
-		}
+		});
+		// Disconnected pools must not stay referenced by the scheduler.
+		ret.setRemoveOnCancelPolicy(true);
+		return ret;
+	}
 
-		/**
-		 * @see java.lang.Runnable#run()
-		 */
-		public void run() {
-			while (true) {
-				while (this.pools.isEmpty()) {
-					synchronized (this.pools) {
-						try {
-							this.pools.wait();
-						} catch (InterruptedException e) {
-							break;
-						}
-					}
-				}
-				RpcSocketPool[] pools = null;
-				synchronized (this) {
-					pools = this.pools.toArray(new RpcSocketPool[this.pools
-							.size()]);
-				}
-				for (RpcSocketPool pool : pools) {
-					pool.timeout(this.idleTime);
-				}
-				try {
-					Thread.sleep(this.idleTime);
-				} catch (InterruptedException e) {
-					break;
-				}
+	private static int getTimeProperty(String name, int defaultValue) {
+		String configuredTime = System.getProperty(name);
+		if (configuredTime != null) {
+			try {
+				return Integer.parseInt(configuredTime);
+			} catch (NumberFormatException nfe) {
+				// fall through
 			}
 		}
+		return defaultValue;
 	}
 
-	private static PoolManager MANAGER = new PoolManager();
-
-	private class SocketEntry {
-		Socket socket;
-		long releaseTime;
+	private static class SocketEntry {
+		final Socket socket;
+		final long createTime;
+		volatile long releaseTime;
 
 		/**
 		 * Create a new socket entry with the specified socket with a release
@@ -147,18 +106,30 @@ public class RpcSocketPool {
 		 * 
 		 * @param socket
 		 */
-		public SocketEntry(Socket socket) {
+		SocketEntry(Socket socket, long createTime) {
 			this.socket = socket;
+			this.createTime = createTime;
 			this.releaseTime = System.currentTimeMillis();
 		}
 	}
 
-	private Properties socketProperties;
-	private String host;
-	private int port;
-	private int size;
-	private ShutdownHandler shutdownHandler;
-	private Queue<SocketEntry> pool;
+	private final Properties socketProperties;
+	private final String host;
+	private final int port;
+	private final int size;
+	private final ShutdownHandler shutdownHandler;
+	// Most recently released first, so the idle sockets collect at the end.
+	private final Deque<SocketEntry> pool = new ConcurrentLinkedDeque<SocketEntry>();
+	private final AtomicInteger pooledCount = new AtomicInteger();
+	// Open time of the sockets handed out by acquire, only tracked with a lifetime
+	// limit.  Weak, as sockets that fail aren't always released.
+	private final Map<Socket, Long> createTimes = Collections.synchronizedMap(new WeakHashMap<Socket, Long>());
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final int idleTime;
+	private final int maxLifetime;
+	private volatile ScheduledFuture<?> evictionTask;
 	private boolean secure = false;
 	
 	/**
@@ -190,13 +161,37 @@ public class RpcSocketPool {
 	 */
 	public RpcSocketPool(int poolSize, String host, int port,
 			Properties socketProperties, ShutdownHandler shutdownHandler) {
+		this(poolSize, host, port, socketProperties, shutdownHandler, IDLE_TIME, MAX_LIFETIME);
+	}
+
+	/**
+	 * Create a new socket pool with explicit idle time and maximum socket
+	 * lifetime, in milliseconds, instead of the system property values.
+	 * A maximum lifetime of 0 means no limit.
+	 */
+	public RpcSocketPool(int poolSize, String host, int port,
+			Properties socketProperties, ShutdownHandler shutdownHandler,
+			int idleTime, int maxLifetime) {
 		this.size = poolSize;
 		this.host = host;
 		this.port = port;
 		this.socketProperties = socketProperties;
-		this.pool = new LinkedList<SocketEntry>();
 		this.shutdownHandler = shutdownHandler;
-		MANAGER.register(this);
+		this.idleTime = idleTime;
+		this.maxLifetime = maxLifetime;
+		if (idleTime > 0) {
+			this.evictionTask = EVICTOR.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						evictExpired();
+					} catch (RuntimeException e) {
+						// Keep the task scheduled.
+						Log.exception(e);
+					}
+				}
+			}, idleTime, idleTime, TimeUnit.MILLISECONDS);
+		}
 	}
 
 	/**
@@ -206,16 +201,24 @@ public class RpcSocketPool {
 	 * @throws IOException
 	 */
 	public Socket acquire() throws IOException {
-		Socket socket = null;
-		synchronized (this.pool) {
-			SocketEntry entry = this.pool.poll();
-			if (entry != null) {
-				socket = entry.socket;
+		long now = System.currentTimeMillis();
+		SocketEntry entry;
+		while ((entry = this.pool.pollFirst()) != null) {
+			this.pooledCount.decrementAndGet();
+			// Validate on borrow; the eviction task may not have run yet.
+			if (isAlive(entry.socket) && !isExpired(entry, now)) {
+				this.hits.incrementAndGet();
+				if (this.maxLifetime > 0) {
+					this.createTimes.put(entry.socket, entry.createTime);
+				}
+				return entry.socket;
 			}
+			evict(entry);
 		}
-		if (!isAlive(socket)) {
-			quietClose(socket);
-			socket = RpcSocketHelper.createSocket(this.host, this.port, this.socketProperties, this.secure);
+		this.misses.incrementAndGet();
+		Socket socket = RpcSocketHelper.createSocket(this.host, this.port, this.socketProperties, this.secure);
+		if (this.maxLifetime > 0) {
+			this.createTimes.put(socket, now);
 		}
 		return socket;
 	}
@@ -252,12 +255,19 @@ public class RpcSocketPool {
 	 */
 	public void release(Socket socket, ShutdownHandler shutdownHandler)
 			throws IOException {
+		if (socket == null) {
+			return;
+		}
+		Long createTime = this.maxLifetime > 0 ? this.createTimes.remove(socket) : null;
 		if (isAlive(socket)) {
-			boolean close = false;
-			synchronized (this.pool) {
-				if (this.pool.size() < size) {
-					this.pool.add(new SocketEntry(socket));
+			SocketEntry entry = new SocketEntry(socket,
+					createTime == null ? System.currentTimeMillis() : createTime);
+			boolean close = isExpired(entry, entry.releaseTime);
+			if (!close) {
+				if (this.pooledCount.incrementAndGet() <= size) {
+					this.pool.addFirst(entry);
 				} else {
+					this.pooledCount.decrementAndGet();
 					close = true;
 				}
 			}
@@ -292,29 +302,22 @@ public class RpcSocketPool {
 	 * Disconnect all sockets from the specified host and port
 	 */
 	public void disconnect() {
-		Socket[] sockets = null;
-		try {
-			synchronized (this.pool) {
-				sockets = new Socket[this.pool.size()];
-				int count = 0;
-				for (SocketEntry entry : this.pool) {
-					sockets[count] = entry.socket;
-					count++;
-				}
-				this.pool.clear();
+		ScheduledFuture<?> task = this.evictionTask;
+		if (task != null) {
+			task.cancel(false);
+			this.evictionTask = null;
+		}
+		SocketEntry entry;
+		while ((entry = this.pool.pollFirst()) != null) {
+			this.pooledCount.decrementAndGet();
+			if (this.shutdownHandler != null) {
+				this.shutdownHandler.shutdown(entry.socket);
 			}
-			for (Socket socket : sockets) {
-				if (this.shutdownHandler != null) {
-					this.shutdownHandler.shutdown(socket);
-				}
-				try {
-					close(socket);
-				} catch (IOException e) {
-					Log.exception(e);
-				}
+			try {
+				close(entry.socket);
+			} catch (IOException e) {
+				Log.exception(e);
 			}
-		} finally {
-			MANAGER.unregister(this);
 		}
 	}
 
@@ -325,20 +328,65 @@ public class RpcSocketPool {
 	 * @param idleDuration
 	 */
 	public void timeout(int idleDuration) {
-		synchronized (this.pool) {
-			long openTime;
-			List<SocketEntry> closed = new ArrayList<SocketEntry>();
-			for (SocketEntry entry : this.pool) {
-				openTime = System.currentTimeMillis() - entry.releaseTime;
-				if (openTime >= idleDuration) {
-					if (this.shutdownHandler != null) {
-						this.shutdownHandler.shutdown(entry.socket);
-					}
-					quietClose(entry.socket);
-					closed.add(entry);
+		long now = System.currentTimeMillis();
+		// The oldest releases are at the end.
+		Iterator<SocketEntry> iter = this.pool.descendingIterator();
+		while (iter.hasNext()) {
+			SocketEntry entry = iter.next();
+			if (now - entry.releaseTime >= idleDuration
+					|| (maxLifetime > 0 && now - entry.createTime >= maxLifetime)) {
+				// Only evict it if acquire didn't take it in the meantime.
+				if (this.pool.removeFirstOccurrence(entry)) {
+					this.pooledCount.decrementAndGet();
+					evict(entry);
 				}
 			}
-			this.pool.removeAll(closed);
 		}
 	}
+
+	/**
+	 * @return number of acquires served by a pooled socket.
+	 */
+	public long getHitCount() {
+		return this.hits.get();
+	}
+
+	/**
+	 * @return number of acquires that had to open a new socket.
+	 */
+	public long getMissCount() {
+		return this.misses.get();
+	}
+
+	/**
+	 * @return number of pooled sockets closed for being idle, too old, or no
+	 * 		longer connected.
+	 */
+	public long getEvictionCount() {
+		return this.evictions.get();
+	}
+
+	/**
+	 * @return number of sockets currently waiting in the pool.
+	 */
+	public int getIdleCount() {
+		return this.pooledCount.get();
+	}
+
+	private void evictExpired() {
+		timeout(this.idleTime);
+	}
+
+	private boolean isExpired(SocketEntry entry, long now) {
+		return (this.idleTime > 0 && now - entry.releaseTime >= this.idleTime)
+				|| (this.maxLifetime > 0 && now - entry.createTime >= this.maxLifetime);
+	}
+
+	private void evict(SocketEntry entry) {
+		this.evictions.incrementAndGet();
+		if (this.shutdownHandler != null && isAlive(entry.socket)) {
+			this.shutdownHandler.shutdown(entry.socket);
+		}
+		quietClose(entry.socket);
+	}
 }
@@ -28,6 +28,8 @@ import javax.annotation.Nonnull;
 import javax.net.ssl.SSLSession;
 import javax.net.ssl.SSLSocket;
 import java.io.File;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -102,6 +104,11 @@ public class RpcStreamConnection extends RpcConnection {
     private OutputStream outputStream = null;
     private InputStream topInputStream = null;
     private OutputStream topOutputStream = null;
+    // p4ic4idea: true once the top streams compress.
+    private boolean compressedStreams = false;
+
+    // p4ic4idea: the preamble is copied out when it's parsed, so one buffer serves every read.
+    private final byte[] preambleBytes = new byte[RpcPacketPreamble.RPC_PREAMBLE_SIZE];
 
     // 'rsh' mode server launch command
     private String rsh = null;
@@ -477,7 +484,8 @@ public class RpcStreamConnection extends RpcConnection {
      */
     public RpcPacket getRpcPacket(final RpcPacketFieldRule fieldRule,
             final IFilterCallback filterCallback) throws ConnectionException {
-        byte[] preambleBytes = new byte[RpcPacketPreamble.RPC_PREAMBLE_SIZE];
+        // p4ic4idea: reuse the preamble buffer
+        //byte[] preambleBytes = new byte[RpcPacketPreamble.RPC_PREAMBLE_SIZE];
         RpcPacket packet = null;
 
         try {
@@ -492,6 +500,7 @@ public class RpcStreamConnection extends RpcConnection {
                     "Incomplete RPC packet preamble read from Perforce server; connection probably broken. bytes read: %s",
                     bytesRead);
             stats.totalBytesRecv.getAndAdd(bytesRead);
+            traffic.bytesReceived(bytesRead, compressedStreams);
 
             RpcPacketPreamble preamble = RpcPacketPreamble.retrievePreamble(preambleBytes);
             throwProtocolErrorIfConditionFails(preamble.isValidChecksum(),
@@ -514,6 +523,7 @@ public class RpcStreamConnection extends RpcConnection {
                     "Perforce server network connection closed unexpectedly");
             streamRecvs.incrementAndGet();
             stats.totalBytesRecv.getAndAdd(packetBytesRead);
+            traffic.bytesReceived(packetBytesRead, compressedStreams);
 
             packetBytesRead = continueReadIfIncompleteRead(streamRecvs, payloadLength, packetBytes,
                     packetBytesRead);
@@ -521,9 +531,11 @@ public class RpcStreamConnection extends RpcConnection {
                     "RPC packet payload read size mismatch; expected: %s; got: %s", payloadLength,
                     packetBytesRead);
 
-            packet = RpcPacket.constructRpcPacket(preamble, packetBytes, unicodeServer,
-                    p4Charset.getCharset(), fieldRule, filterCallback);
+            // p4ic4idea: reuse the connection's codec rather than resolving the charset per packet.
+            packet = RpcPacket.constructRpcPacket(preamble, packetBytes, getFieldCodec(),
+                    fieldRule, filterCallback);
             stats.packetsRecv.incrementAndGet();
+            traffic.packetReceived();
             stats.largestRpcPacketRecv
                     .set(Math.max(stats.largestRpcPacketRecv.get(), packet.getPacketLength()));
         } catch (IOException exc) {
@@ -581,6 +593,7 @@ public class RpcStreamConnection extends RpcConnection {
 
             streamRecvs.incrementAndGet();
             stats.totalBytesRecv.getAndAdd(moreBytesRead);
+            traffic.bytesReceived(moreBytesRead, compressedStreams);
             totalPacketBytesRead += moreBytesRead;
         }
         return totalPacketBytesRead;
@@ -740,6 +753,7 @@ public class RpcStreamConnection extends RpcConnection {
             stats.streamSends.incrementAndGet();
             stats.totalBytesSent.getAndAdd(sendPos);
             stats.packetsSent.incrementAndGet();
+            traffic.packetSent(sendPos, compressedStreams);
             if (stats.largestRpcPacketSent.get() < sendPos) {
                 stats.largestRpcPacketSent.set(sendPos);
             }
@@ -770,8 +784,10 @@ public class RpcStreamConnection extends RpcConnection {
                 putRpcPacket(RpcPacket.constructRpcPacket(RpcFunctionSpec.PROTOCOL_COMPRESS2,
                         "compress2", null, null));
                 topOutputStream.flush();
-                topOutputStream = new RpcGZIPOutputStream(outputStream);
-                topInputStream = new RpcGZIPInputStream(inputStream);
+                // p4ic4idea: count the compressed bytes, for the compression ratio metrics.
+                topOutputStream = new RpcGZIPOutputStream(new CountingOutputStream(outputStream));
+                topInputStream = new RpcGZIPInputStream(new CountingInputStream(inputStream));
+                compressedStreams = true;
             } catch (IOException exc) {
                 Log.error("I/O exception encountered while setting up GZIP streaming: %s",
                         exc.getLocalizedMessage());
@@ -877,4 +893,48 @@ public class RpcStreamConnection extends RpcConnection {
         }
         throw new ConnectionException("RSH command not executable: " + rshCmd);
     }
+
+    // p4ic4idea: counts the compressed bytes under the compression streams.
+    private class CountingOutputStream extends FilterOutputStream {
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            traffic.compressedBytesSent(1);
+        }
+
+        @Override
+        public void write(@Nonnull byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            traffic.compressedBytesSent(len);
+        }
+    }
+
+    // p4ic4idea: counts the compressed bytes under the compression streams.
+    private class CountingInputStream extends FilterInputStream {
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int ret = in.read();
+            if (ret >= 0) {
+                traffic.compressedBytesReceived(1);
+            }
+            return ret;
+        }
+
+        @Override
+        public int read(@Nonnull byte[] b, int off, int len) throws IOException {
+            int ret = in.read(b, off, len);
+            if (ret > 0) {
+                traffic.compressedBytesReceived(ret);
+            }
+            return ret;
+        }
+    }
 }
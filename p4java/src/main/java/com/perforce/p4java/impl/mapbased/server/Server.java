@@ -76,6 +76,7 @@ import com.perforce.p4java.server.callback.ICommandCallback;
 import com.perforce.p4java.server.callback.IProgressCallback;
 import com.perforce.p4java.server.callback.ISSOCallback;
 import com.perforce.p4java.server.callback.IStreamingCallback;
+import com.perforce.p4java.server.callback.IStreamingResultCallback;
 import com.perforce.p4java.server.delegator.*;
 import org.apache.commons.lang3.ObjectUtils;
 
@@ -1267,6 +1268,14 @@ public abstract class Server extends HelixCommandExecutor implements IServerCont
 		return changesDelegator.getChangelists(fileSpecs, opts);
 	}
 
+	// p4ic4idea: added
+	@Override
+	public void getChangelists(final List<IFileSpec> fileSpecs, final GetChangelistsOptions opts,
+	                           final IStreamingResultCallback<? super IChangelistSummary> callback)
+			throws P4JavaException {
+		changesDelegator.getChangelists(fileSpecs, opts, callback);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 *
@@ -1817,6 +1826,17 @@ public abstract class Server extends HelixCommandExecutor implements IServerCont
 		return fileLogDelegator.getRevisionHistory(fileSpecs, opts);
 	}
 
+	// p4ic4idea: added
+	@Override
+	public void getRevisionHistory(
+			final List<IFileSpec> fileSpecs,
+			final GetRevisionHistoryOptions opts,
+			final IStreamingResultCallback<? super Map.Entry<IFileSpec, List<IFileRevisionData>>> callback)
+			throws P4JavaException {
+
+		fileLogDelegator.getRevisionHistory(fileSpecs, opts, callback);
+	}
+
 	@Override
 	public Map<IFileSpec, List<IFileRevisionData>> getRevisionHistory(
 			final List<IFileSpec> fileSpecs,
@@ -1862,6 +1882,15 @@ public abstract class Server extends HelixCommandExecutor implements IServerCont
 		return filesDelegator.getDepotFiles(fileSpecs, opts);
 	}
 
+	// p4ic4idea: added
+	@Override
+	public void getDepotFiles(@Nonnull final List<IFileSpec> fileSpecs, final GetDepotFilesOptions opts,
+	                          @Nonnull final IStreamingResultCallback<? super IFileSpec> callback)
+			throws P4JavaException {
+
+		filesDelegator.getDepotFiles(fileSpecs, opts, callback);
+	}
+
 	@Override
 	public List<IFix> fixJobs(final List<String> jobIds, final int changeListId,
 	                          final String status, final boolean delete)
@@ -1905,6 +1934,14 @@ public abstract class Server extends HelixCommandExecutor implements IServerCont
 		return fstatDelegator.getExtendedFiles(fileSpecs, opts);
 	}
 
+	// p4ic4idea: added
+	@Override
+	public void getExtendedFiles(final List<IFileSpec> fileSpecs, final GetExtendedFilesOptions opts,
+	                             final IStreamingResultCallback<? super IExtendedFileSpec> callback)
+			throws P4JavaException {
+		fstatDelegator.getExtendedFiles(fileSpecs, opts, callback);
+	}
+
 	@Override
 	public List<IFileLineMatch> getMatchingLines(List<IFileSpec> fileSpecs,
 	                                             String pattern, MatchingLinesOptions options) throws P4JavaException {
@@ -2238,6 +2275,14 @@ public abstract class Server extends HelixCommandExecutor implements IServerCont
 		return openedDelegator.getOpenedFiles(fileSpecs, opts);
 	}
 
+	// p4ic4idea: added
+	@Override
+	public void getOpenedFiles(final List<IFileSpec> fileSpecs, final OpenedFilesOptions opts,
+	                           final IStreamingResultCallback<? super IFileSpec> callback)
+			throws P4JavaException {
+		openedDelegator.getOpenedFiles(fileSpecs, opts, callback);
+	}
+
 	@Override
 	public List<IFileSpec> moveFile(
 			final int changelistId,
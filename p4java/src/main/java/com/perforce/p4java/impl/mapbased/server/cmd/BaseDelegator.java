@@ -14,14 +14,17 @@ import java.util.Map;
 import javax.annotation.Nonnull;
 
 import com.perforce.p4java.client.IClient;
+import com.perforce.p4java.common.function.FunctionWithException;
 import com.perforce.p4java.core.file.FileSpecOpStatus;
 import com.perforce.p4java.core.file.IFileSpec;
 import com.perforce.p4java.exception.AccessException;
 import com.perforce.p4java.exception.ConnectionException;
+import com.perforce.p4java.exception.P4JavaException;
 import com.perforce.p4java.exception.RequestException;
 import com.perforce.p4java.impl.generic.core.file.FileSpec;
 import com.perforce.p4java.server.CmdSpec;
 import com.perforce.p4java.server.IOptionsServer;
+import com.perforce.p4java.server.callback.IStreamingResultCallback;
 import org.apache.commons.lang3.Validate;
 
 // p4ic4idea: use IServerMessage
@@ -166,6 +169,40 @@ public abstract class BaseDelegator {
         return server.execStreamCmd(cmdSpec.toString(), cmdArgs);
     }
 
+    /**
+     * Run the given command, passing each result to the callback as it arrives
+     * rather than collecting them into a list.
+     *
+     * @param cmdSpec
+     *            The command being run; e.g. FSTAT
+     *
+     * @param cmdArgs
+     *            The parameters transformed into an array of arguments
+     *
+     * @param construct
+     *            Turns each result map into the typed result; returns null for
+     *            maps that have no result
+     *
+     * @param callback
+     *            Receives the typed results
+     *
+     * @throws P4JavaException
+     *             When the command or the conversion of a result fails
+     */
+    // p4ic4idea: added
+    <T> void execStreamingMapCmd(
+            @Nonnull final CmdSpec cmdSpec,
+            String[] cmdArgs,
+            @Nonnull final FunctionWithException<Map<String, Object>, T> construct,
+            @Nonnull final IStreamingResultCallback<? super T> callback)
+            throws P4JavaException {
+        Validate.notNull(cmdSpec);
+        Validate.notNull(callback);
+        StreamingResultAdapter<T> adapter = new StreamingResultAdapter<>(construct, callback);
+        server.execStreamingMapCommand(cmdSpec.toString(), cmdArgs, null, adapter, 0);
+        adapter.rethrow();
+    }
+
     void checkMinSupportedPerforceVersion(final String userName, final int maxLimit,
                                           final String queryString, final String clientOrLabel)
             throws RequestException, ConnectionException {
@@ -9,6 +9,7 @@ import java.util.List;
 import java.util.Map;
 
 import com.perforce.p4java.common.function.Function;
+import com.perforce.p4java.common.function.FunctionWithException;
 import com.perforce.p4java.core.IChangelist.Type;
 import com.perforce.p4java.core.IChangelistSummary;
 import com.perforce.p4java.core.file.IFileSpec;
@@ -19,6 +20,7 @@ import com.perforce.p4java.exception.RequestException;
 import com.perforce.p4java.impl.generic.core.ChangelistSummary;
 import com.perforce.p4java.option.server.GetChangelistsOptions;
 import com.perforce.p4java.server.IOptionsServer;
+import com.perforce.p4java.server.callback.IStreamingResultCallback;
 import com.perforce.p4java.server.delegator.IChangesDelegator;
 
 /**
@@ -139,4 +141,26 @@ public class ChangesDelegator extends BaseDelegator implements IChangesDelegator
                     }
                 });
     }
+
+    // p4ic4idea: added
+    @Override
+    public void getChangelists(
+            final List<IFileSpec> fileSpecs,
+            final GetChangelistsOptions opts,
+            final IStreamingResultCallback<? super IChangelistSummary> callback)
+            throws P4JavaException {
+
+        execStreamingMapCmd(
+                CHANGES,
+                processParameters(opts, fileSpecs, server),
+                new FunctionWithException<Map<String, Object>, IChangelistSummary>() {
+                    @Override
+                    public IChangelistSummary apply(Map<String, Object> map) throws P4JavaException {
+                        // Same error handling as buildNonNullObjectListFromCommandResultMaps
+                        ResultMapParser.handleErrors(ResultMapParser.toServerMessage(map));
+                        return new ChangelistSummary(map, true);
+                    }
+                },
+                callback);
+    }
 }
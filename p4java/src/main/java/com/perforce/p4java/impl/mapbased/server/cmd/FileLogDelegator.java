@@ -11,14 +11,16 @@ import static com.perforce.p4java.impl.mapbased.server.cmd.ResultMapParser.handl
 import static com.perforce.p4java.server.CmdSpec.FILELOG;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 
+import java.util.AbstractMap.SimpleImmutableEntry;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import javax.annotation.Nonnull;
 
 import com.perforce.p4java.Log;
+import com.perforce.p4java.common.function.FunctionWithException;
 import com.perforce.p4java.core.file.IFileRevisionData;
 import com.perforce.p4java.core.file.IFileSpec;
 import com.perforce.p4java.exception.AccessException;
@@ -28,6 +30,7 @@ import com.perforce.p4java.impl.generic.core.file.FileRevisionData;
 import com.perforce.p4java.impl.generic.core.file.FileSpec;
 import com.perforce.p4java.option.server.GetRevisionHistoryOptions;
 import com.perforce.p4java.server.IOptionsServer;
+import com.perforce.p4java.server.callback.IStreamingResultCallback;
 import com.perforce.p4java.server.delegator.IFileLogDelegator;
 
 // p4ic4idea: use IServerMessage
@@ -79,7 +82,9 @@ public class FileLogDelegator extends BaseDelegator implements IFileLogDelegator
             final List<IFileSpec> fileSpecs,
             final GetRevisionHistoryOptions opts) throws P4JavaException {
 
-        Map<IFileSpec, List<IFileRevisionData>> fileRevisionDataMap = new HashMap<>();
+        // p4ic4idea: keep the server's order, which lists the requested files before the
+        // files their history was inherited from.
+        Map<IFileSpec, List<IFileRevisionData>> fileRevisionDataMap = new LinkedHashMap<>();
         List<Map<String, Object>> resultMaps = execMapCmdList(
                 FILELOG,
                 processParameters(opts, fileSpecs, server),
@@ -87,29 +92,58 @@ public class FileLogDelegator extends BaseDelegator implements IFileLogDelegator
 
         if (nonNull(resultMaps)) {
             for (Map<String, Object> resultMap : resultMaps) {
-                String depotPath = parseString(resultMap, DEPOT_FILE);
-                // p4ic4idea: use IServerMessage
-                IServerMessage errStr = handleFileErrorStr(resultMap);
-                if (nonNull(errStr)) {
-                    FileSpec fileSpec = new FileSpec(
-                            ERROR,
-                            errStr,
-                            resultMap);
-                    fileSpec.setDepotPath(depotPath);
-                    fileRevisionDataMap.put(fileSpec, null);
-                } else {
-                    List<IFileRevisionData> fileRevisionDataList = new ArrayList<>();
-                    fileRevisionDataList.addAll(parseFileRevisionDataList(resultMap));
-
-                    FileSpec fileSpec = new FileSpec();
-                    fileSpec.setDepotPath(depotPath);
-                    fileRevisionDataMap.put(fileSpec, fileRevisionDataList);
-                }
+                // p4ic4idea: shared with the streaming version
+                Map.Entry<IFileSpec, List<IFileRevisionData>> entry = buildRevisionHistoryEntry(resultMap);
+                fileRevisionDataMap.put(entry.getKey(), entry.getValue());
             }
         }
         return fileRevisionDataMap;
     }
 
+    // p4ic4idea: added
+    @Override
+    public void getRevisionHistory(
+            final List<IFileSpec> fileSpecs,
+            final GetRevisionHistoryOptions opts,
+            final IStreamingResultCallback<? super Map.Entry<IFileSpec, List<IFileRevisionData>>> callback)
+            throws P4JavaException {
+
+        execStreamingMapCmd(
+                FILELOG,
+                processParameters(opts, fileSpecs, server),
+                new FunctionWithException<Map<String, Object>, Map.Entry<IFileSpec, List<IFileRevisionData>>>() {
+                    @Override
+                    public Map.Entry<IFileSpec, List<IFileRevisionData>> apply(Map<String, Object> map)
+                            throws P4JavaException {
+                        return buildRevisionHistoryEntry(map);
+                    }
+                },
+                callback);
+    }
+
+    // p4ic4idea: split out of getRevisionHistory for the streaming version
+    private static Map.Entry<IFileSpec, List<IFileRevisionData>> buildRevisionHistoryEntry(
+            @Nonnull final Map<String, Object> resultMap)
+            throws ConnectionException, AccessException {
+        String depotPath = parseString(resultMap, DEPOT_FILE);
+        // p4ic4idea: use IServerMessage
+        IServerMessage errStr = handleFileErrorStr(resultMap);
+        if (nonNull(errStr)) {
+            FileSpec fileSpec = new FileSpec(
+                    ERROR,
+                    errStr,
+                    resultMap);
+            fileSpec.setDepotPath(depotPath);
+            return new SimpleImmutableEntry<IFileSpec, List<IFileRevisionData>>(fileSpec, null);
+        }
+        List<IFileRevisionData> fileRevisionDataList = new ArrayList<>();
+        fileRevisionDataList.addAll(parseFileRevisionDataList(resultMap));
+
+        FileSpec fileSpec = new FileSpec();
+        fileSpec.setDepotPath(depotPath);
+        return new SimpleImmutableEntry<IFileSpec, List<IFileRevisionData>>(fileSpec, fileRevisionDataList);
+    }
+
     private static List<FileRevisionData> parseFileRevisionDataList(
             @Nonnull final Map<String, Object> resultMap) {
 
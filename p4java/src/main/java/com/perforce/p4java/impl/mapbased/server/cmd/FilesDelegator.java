@@ -10,12 +10,14 @@ import java.util.Map;
 import javax.annotation.Nonnull;
 
 import com.perforce.p4java.Log;
+import com.perforce.p4java.common.function.FunctionWithException;
 import com.perforce.p4java.core.file.IFileSpec;
 import com.perforce.p4java.exception.AccessException;
 import com.perforce.p4java.exception.ConnectionException;
 import com.perforce.p4java.exception.P4JavaException;
 import com.perforce.p4java.option.server.GetDepotFilesOptions;
 import com.perforce.p4java.server.IOptionsServer;
+import com.perforce.p4java.server.callback.IStreamingResultCallback;
 import com.perforce.p4java.server.delegator.IFilesDelegator;
 import org.apache.commons.lang3.Validate;
 
@@ -68,4 +70,22 @@ public class FilesDelegator extends BaseDelegator implements IFilesDelegator {
         }
         return fileList;
     }
+
+    // p4ic4idea: added
+    @Override
+    public void getDepotFiles(@Nonnull final List<IFileSpec> fileSpecs,
+            final GetDepotFilesOptions opts,
+            @Nonnull final IStreamingResultCallback<? super IFileSpec> callback)
+            throws P4JavaException {
+
+        Validate.notNull(fileSpecs);
+        execStreamingMapCmd(FILES, processParameters(opts, fileSpecs, server),
+                new FunctionWithException<Map<String, Object>, IFileSpec>() {
+                    @Override
+                    public IFileSpec apply(Map<String, Object> map) throws P4JavaException {
+                        return ResultListBuilder.handleFileReturn(map, server);
+                    }
+                },
+                callback);
+    }
 }
@@ -8,6 +8,7 @@ import java.util.List;
 import java.util.Map;
 
 import com.perforce.p4java.Log;
+import com.perforce.p4java.common.function.FunctionWithException;
 import com.perforce.p4java.core.file.FileStatAncilliaryOptions;
 import com.perforce.p4java.core.file.FileStatOutputOptions;
 import com.perforce.p4java.core.file.IExtendedFileSpec;
@@ -17,6 +18,7 @@ import com.perforce.p4java.exception.ConnectionException;
 import com.perforce.p4java.exception.P4JavaException;
 import com.perforce.p4java.option.server.GetExtendedFilesOptions;
 import com.perforce.p4java.server.IOptionsServer;
+import com.perforce.p4java.server.callback.IStreamingResultCallback;
 import com.perforce.p4java.server.delegator.IFstatDelegator;
 
 /**
@@ -65,4 +67,21 @@ public class FstatDelegator extends BaseDelegator implements IFstatDelegator {
         return ResultListBuilder.buildNonNullExtendedFileSpecListFromCommandResultMaps(resultMaps,
                 server);
     }
+
+    // p4ic4idea: added
+    @Override
+    public void getExtendedFiles(final List<IFileSpec> fileSpecs,
+            final GetExtendedFilesOptions opts,
+            final IStreamingResultCallback<? super IExtendedFileSpec> callback)
+            throws P4JavaException {
+
+        execStreamingMapCmd(FSTAT, processParameters(opts, fileSpecs, server),
+                new FunctionWithException<Map<String, Object>, IExtendedFileSpec>() {
+                    @Override
+                    public IExtendedFileSpec apply(Map<String, Object> map) throws P4JavaException {
+                        return ResultListBuilder.buildExtendedFileSpecFromCommandResultMap(map, server);
+                    }
+                },
+                callback);
+    }
 }
@@ -16,6 +16,7 @@ import com.perforce.p4java.exception.ConnectionException;
 import com.perforce.p4java.exception.P4JavaException;
 import com.perforce.p4java.option.server.OpenedFilesOptions;
 import com.perforce.p4java.server.IOptionsServer;
+import com.perforce.p4java.server.callback.IStreamingResultCallback;
 import com.perforce.p4java.server.delegator.IOpenedDelegator;
 
 /**
@@ -79,4 +80,24 @@ public class OpenedDelegator extends BaseDelegator implements IOpenedDelegator {
                 })
         );
     }
+
+    // p4ic4idea: added
+    @Override
+    public void getOpenedFiles(
+            final List<IFileSpec> fileSpecs,
+            final OpenedFilesOptions opts,
+            final IStreamingResultCallback<? super IFileSpec> callback) throws P4JavaException {
+
+        execStreamingMapCmd(OPENED,
+                processParameters(opts, fileSpecs, server),
+                new FunctionWithException<Map<String, Object>, IFileSpec>() {
+                    @Override
+                    public IFileSpec apply(Map<String, Object> map) throws P4JavaException {
+                        // Same error handling as buildNonNullObjectListFromCommandResultMaps
+                        ResultMapParser.handleErrors(ResultMapParser.toServerMessage(map));
+                        return ResultListBuilder.handleFileReturn(map, server);
+                    }
+                },
+                callback);
+    }
 }
@@ -104,23 +104,37 @@ public class ResultListBuilder {
             // out any return map here that has no depot path and a "desc"
             // field
             // -- HR (see also job040680).
-            if (nonNull(map)) {
-                IServerMessage message = ResultMapParser.toServerMessage(map);
-                ResultMapParser.handleFileErrors(message);
-                if (nonNull(message) && message.isError()) {
-                    specList.add(new ExtendedFileSpec(ERROR, message, map));
-                } else if (nonNull(message) && message.isInfoOrError()) {
-                    specList.add(new ExtendedFileSpec(INFO, message, map));
-                } else {
-                    if (isContainsValidRevisionSpecificInformation(map)) {
-                        specList.add(new ExtendedFileSpec(map, server, -1));
-                    }
-                }
+            IExtendedFileSpec spec = buildExtendedFileSpecFromCommandResultMap(map, server);
+            if (nonNull(spec)) {
+                specList.add(spec);
             }
         }
         return specList;
     }
 
+    /**
+     * Build the extended file spec for a single fstat result map.
+     *
+     * @return the file spec, or null if the map has no file information.
+     */
+    // p4ic4idea: split out of buildNonNullExtendedFileSpecListFromCommandResultMaps for streaming results.
+    public static IExtendedFileSpec buildExtendedFileSpecFromCommandResultMap(
+            final Map<String, Object> map, final IOptionsServer server)
+            throws AccessException, ConnectionException {
+        if (nonNull(map)) {
+            IServerMessage message = ResultMapParser.toServerMessage(map);
+            ResultMapParser.handleFileErrors(message);
+            if (nonNull(message) && message.isError()) {
+                return new ExtendedFileSpec(ERROR, message, map);
+            } else if (nonNull(message) && message.isInfoOrError()) {
+                return new ExtendedFileSpec(INFO, message, map);
+            } else if (isContainsValidRevisionSpecificInformation(map)) {
+                return new ExtendedFileSpec(map, server, -1);
+            }
+        }
+        return null;
+    }
+
     public static IFileSpec handleIntegrationFileReturn(
             final Map<String, Object> map,
             final IServer server) throws AccessException, ConnectionException {
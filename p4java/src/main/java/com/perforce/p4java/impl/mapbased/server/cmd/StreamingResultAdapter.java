@@ -0,0 +1,94 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.perforce.p4java.impl.mapbased.server.cmd;
+
+import com.perforce.p4java.common.function.FunctionWithException;
+import com.perforce.p4java.exception.P4JavaException;
+import com.perforce.p4java.server.callback.IStreamingCallback;
+import com.perforce.p4java.server.callback.IStreamingResultCallback;
+
+import java.util.Map;
+
+/**
+ * Turns the raw result maps from a streaming command into typed results for an
+ * {@link IStreamingResultCallback}.
+ * <p>
+ * The RPC layer only logs exceptions thrown by an {@link IStreamingCallback}, so the
+ * first one is held here, and the rest of the results are ignored; it is rethrown
+ * by {@link #rethrow()} once the command completes.
+ *
+ * @param <T> result type
+ */
+// p4ic4idea: added
+class StreamingResultAdapter<T> implements IStreamingCallback {
+    private final FunctionWithException<Map<String, Object>, T> construct;
+    private final IStreamingResultCallback<? super T> callback;
+    private P4JavaException p4Error;
+    private RuntimeException runtimeError;
+    private boolean stopped;
+
+    /**
+     * @param construct converts each result map; a null return means the map has
+     *      no corresponding result.
+     * @param callback receives each result.
+     */
+    StreamingResultAdapter(FunctionWithException<Map<String, Object>, T> construct,
+            IStreamingResultCallback<? super T> callback) {
+        this.construct = construct;
+        this.callback = callback;
+    }
+
+    @Override
+    public boolean startResults(int key) {
+        return true;
+    }
+
+    @Override
+    public boolean endResults(int key) {
+        return true;
+    }
+
+    @Override
+    public boolean handleResult(Map<String, Object> resultMap, int key) {
+        if (stopped || resultMap == null) {
+            return !stopped;
+        }
+        try {
+            T result = construct.apply(resultMap);
+            if (result != null && !callback.handleResult(result)) {
+                stopped = true;
+            }
+        } catch (P4JavaException e) {
+            p4Error = e;
+            stopped = true;
+        } catch (RuntimeException e) {
+            runtimeError = e;
+            stopped = true;
+        }
+        return !stopped;
+    }
+
+    /**
+     * Throw the exception raised while handling the results, if there was one.
+     */
+    void rethrow() throws P4JavaException {
+        if (p4Error != null) {
+            throw p4Error;
+        }
+        if (runtimeError != null) {
+            throw runtimeError;
+        }
+    }
+}
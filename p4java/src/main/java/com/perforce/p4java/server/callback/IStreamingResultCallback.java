@@ -0,0 +1,47 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.perforce.p4java.server.callback;
+
+import com.perforce.p4java.exception.P4JavaException;
+
+/**
+ * Receives the typed results of a streaming delegator method, one at a time, as
+ * the packets arrive from the server, rather than as a list once the command
+ * completes.  Each result is the same object that would have been placed in
+ * the list returned by the non-streaming version of the method, including
+ * any error or info file specs.
+ * <p>
+ * This is built on {@link IStreamingCallback}, so the same restrictions apply:
+ * the callback runs inside the RPC protocol handler, so it must return quickly
+ * and must not call back into the server.
+ * <p>
+ * If the callback throws an exception, the remaining results are no longer
+ * passed to it, and the exception is thrown from the streaming method once the
+ * command has completed.
+ *
+ * @param <T> type of the results.
+ */
+// p4ic4idea: added to allow results to be handled without building the full list.
+public interface IStreamingResultCallback<T> {
+    /**
+     * Handle the next result.
+     *
+     * @param result non-null result
+     * @return true to continue receiving results, false to ignore the remaining results.
+     * @throws P4JavaException if there was a problem with the result; this stops the
+     *      results from being passed to the callback.
+     */
+    boolean handleResult(T result) throws P4JavaException;
+}
@@ -10,6 +10,7 @@ import com.perforce.p4java.exception.ConnectionException;
 import com.perforce.p4java.exception.P4JavaException;
 import com.perforce.p4java.exception.RequestException;
 import com.perforce.p4java.option.server.GetChangelistsOptions;
+import com.perforce.p4java.server.callback.IStreamingResultCallback;
 
 /**
  * Interface for a ChangesDelegator implementation.
@@ -68,4 +69,21 @@ public interface IChangesDelegator {
      */
     List<IChangelistSummary> getChangelists(List<IFileSpec> fileSpecs,
             GetChangelistsOptions opts) throws P4JavaException;
+
+    /**
+     * Stream the Perforce changelist summary objects to the callback, one at a time
+     * as the results arrive from the server.  The callback receives the same objects
+     * as the list returned by {@link #getChangelists(List, GetChangelistsOptions)}.
+     *
+     * @param fileSpecs if non-empty, limits the results to changelists that affect the specified
+     *                  files.
+     * @param opts      GetChangelistsOptions object describing optional parameters; if null, no
+     *                  options are set.
+     * @param callback  non-null callback for each qualifying changelist.
+     * @throws P4JavaException if any error occurs in the processing of this method, or if the
+     *                  callback throws an exception.
+     */
+    // p4ic4idea: added
+    void getChangelists(List<IFileSpec> fileSpecs, GetChangelistsOptions opts,
+            IStreamingResultCallback<? super IChangelistSummary> callback) throws P4JavaException;
 }
@@ -9,6 +9,7 @@ import com.perforce.p4java.exception.AccessException;
 import com.perforce.p4java.exception.ConnectionException;
 import com.perforce.p4java.exception.P4JavaException;
 import com.perforce.p4java.option.server.GetRevisionHistoryOptions;
+import com.perforce.p4java.server.callback.IStreamingResultCallback;
 
 /**
  * Interface for FileLogDelegator implementations.
@@ -53,4 +54,25 @@ public interface IFileLogDelegator {
     Map<IFileSpec, List<IFileRevisionData>> getRevisionHistory(
             List<IFileSpec> fileSpecs,
             GetRevisionHistoryOptions opts) throws P4JavaException;
+
+    /**
+     * Stream the revision history data for one or more Perforce files to the callback,
+     * one file at a time as the results arrive from the server.  Each entry is one
+     * key and value of the map returned by
+     * {@link #getRevisionHistory(List, GetRevisionHistoryOptions)}.
+     *
+     * @param fileSpecs fileSpecs to be processed; if null or empty, nothing is sent to the
+     *                  callback.
+     * @param opts      GetRevisionHistoryOptions object describing optional parameters; if null, no
+     *                  options are set.
+     * @param callback  non-null callback for each file's revision history.
+     * @throws P4JavaException if any error occurs in the processing of this method, or if the
+     *                  callback throws an exception.
+     */
+    // p4ic4idea: added
+    void getRevisionHistory(
+            List<IFileSpec> fileSpecs,
+            GetRevisionHistoryOptions opts,
+            IStreamingResultCallback<? super Map.Entry<IFileSpec, List<IFileRevisionData>>> callback)
+            throws P4JavaException;
 }
@@ -8,6 +8,7 @@ import com.perforce.p4java.exception.AccessException;
 import com.perforce.p4java.exception.ConnectionException;
 import com.perforce.p4java.exception.P4JavaException;
 import com.perforce.p4java.option.server.GetDepotFilesOptions;
+import com.perforce.p4java.server.callback.IStreamingResultCallback;
 
 /**
  * Interface for an implementation for 'p4 files'.
@@ -88,4 +89,25 @@ public interface IFilesDelegator {
      */
     List<IFileSpec> getDepotFiles(@Nonnull List<IFileSpec> fileSpecs,
             GetDepotFilesOptions opts) throws P4JavaException;
+
+    /**
+     * Stream the depot files matching the file specs to the callback, one at a
+     * time as the results arrive from the server.  The callback receives the same
+     * objects as the list returned by {@link #getDepotFiles(List, GetDepotFilesOptions)}.
+     *
+     * @param fileSpecs
+     *            a non-null list of one or more IFileSpecs to be used to
+     *            qualify Perforce depot files
+     * @param opts
+     *            GetDepotFilesOptions describing the associated options; if
+     *            null, no options are set.
+     * @param callback
+     *            non-null callback for each qualifying depot file.
+     * @throws P4JavaException
+     *             if any error occurs in the processing of this method, or if
+     *             the callback throws an exception.
+     */
+    // p4ic4idea: added
+    void getDepotFiles(@Nonnull List<IFileSpec> fileSpecs, GetDepotFilesOptions opts,
+            @Nonnull IStreamingResultCallback<? super IFileSpec> callback) throws P4JavaException;
 }
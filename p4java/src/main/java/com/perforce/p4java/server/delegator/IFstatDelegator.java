@@ -10,6 +10,7 @@ import com.perforce.p4java.exception.AccessException;
 import com.perforce.p4java.exception.ConnectionException;
 import com.perforce.p4java.exception.P4JavaException;
 import com.perforce.p4java.option.server.GetExtendedFilesOptions;
+import com.perforce.p4java.server.callback.IStreamingResultCallback;
 
 /**
  * Interface for 'p4 fstat'.
@@ -89,4 +90,28 @@ public interface IFstatDelegator {
      */
     List<IExtendedFileSpec> getExtendedFiles(List<IFileSpec> fileSpecs,
             GetExtendedFilesOptions opts) throws P4JavaException;
+
+    /**
+     * Stream everything Perforce knows about a set of Perforce files to the
+     * callback, one file at a time as the results arrive from the server.
+     * <p>
+     *
+     * The callback receives the same objects as the list returned by
+     * {@link #getExtendedFiles(List, GetExtendedFilesOptions)}, without the
+     * full list being held in memory.
+     *
+     * @param fileSpecs
+     *            non-null list of Perforce file specification(s).
+     * @param opts
+     *            GetExtendedFilesOptions object describing optional parameters;
+     *            if null, no options are set.
+     * @param callback
+     *            non-null callback for each qualifying file.
+     * @throws P4JavaException
+     *             if an error occurs processing this method and its parameters,
+     *             or if the callback throws an exception.
+     */
+    // p4ic4idea: added
+    void getExtendedFiles(List<IFileSpec> fileSpecs, GetExtendedFilesOptions opts,
+            IStreamingResultCallback<? super IExtendedFileSpec> callback) throws P4JavaException;
 }
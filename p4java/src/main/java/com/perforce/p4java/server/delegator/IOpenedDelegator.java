@@ -7,6 +7,7 @@ import com.perforce.p4java.exception.AccessException;
 import com.perforce.p4java.exception.ConnectionException;
 import com.perforce.p4java.exception.P4JavaException;
 import com.perforce.p4java.option.server.OpenedFilesOptions;
+import com.perforce.p4java.server.callback.IStreamingResultCallback;
 
 /**
  * Interface for p4 opened.
@@ -69,4 +70,25 @@ public interface IOpenedDelegator {
      */
     List<IFileSpec> getOpenedFiles(List<IFileSpec> fileSpecs, OpenedFilesOptions opts)
             throws P4JavaException;
+
+    /**
+     * Stream the opened files to the callback, one at a time as the results
+     * arrive from the server.  The callback receives the same objects as the list
+     * returned by {@link #getOpenedFiles(List, OpenedFilesOptions)}.
+     *
+     * @param fileSpecs
+     *            if non-empty, determine the status of the specified files;
+     *            otherwise return all qualifying files known to be open
+     * @param opts
+     *            possibly-null OpenedFilesOptions object object specifying
+     *            method options.
+     * @param callback
+     *            non-null callback for each open file.
+     * @throws P4JavaException
+     *             if an error occurs processing this method and its parameters,
+     *             or if the callback throws an exception.
+     */
+    // p4ic4idea: added
+    void getOpenedFiles(List<IFileSpec> fileSpecs, OpenedFilesOptions opts,
+            IStreamingResultCallback<? super IFileSpec> callback) throws P4JavaException;
 }
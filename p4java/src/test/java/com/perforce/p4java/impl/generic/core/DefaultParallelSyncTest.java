@@ -0,0 +1,121 @@
+package com.perforce.p4java.impl.generic.core;
+
+import com.perforce.p4java.exception.ConnectionException;
+import com.perforce.p4java.impl.mapbased.rpc.CommandEnv;
+import com.perforce.p4java.server.callback.IStreamingCallback;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+
+// p4ic4idea: added
+public class DefaultParallelSyncTest {
+    @Test
+    void failedThreadKeepsOtherResults() {
+        CommandEnv env = mock(CommandEnv.class);
+        final Set<Object> handled = new HashSet<>();
+        doAnswer(invocation -> {
+            // Only ever called from the command thread.
+            Map<?, ?> result = invocation.getArgument(0);
+            assertTrue(handled.add(result.get("depotFile")));
+            return null;
+        }).when(env).handleResult(anyMap());
+
+        DefaultParallelSync sync = new DefaultParallelSync() {
+            @Override
+            protected void transmitThread(CommandEnv cmdEnv, int thread, List<String> args,
+                    IStreamingCallback callback)
+                    throws Exception {
+                if (thread == 1) {
+                    callback.handleResult(result(thread, 0), thread);
+                    throw new ConnectionException("connection lost");
+                }
+                for (int i = 0; i < 50; i++) {
+                    callback.handleResult(result(thread, i), thread);
+                }
+            }
+        };
+
+        // Like the original implementation, a failed thread is logged, but doesn't fail the transmit.
+        assertTrue(sync.transmit(env, 3, new HashMap<String, String>(), new ArrayList<String>()));
+
+        // Everything sent before and after the failure is still passed on.
+        assertEquals(101, handled.size());
+        assertTrue(handled.contains("//depot/1/0"));
+        assertTrue(handled.contains("//depot/0/49"));
+        assertTrue(handled.contains("//depot/2/49"));
+    }
+
+    @Test
+    void allThreadsSucceed() {
+        CommandEnv env = mock(CommandEnv.class);
+        final List<Object> handled = new ArrayList<>();
+        doAnswer(invocation -> {
+            handled.add(((Map<?, ?>) invocation.getArgument(0)).get("depotFile"));
+            return null;
+        }).when(env).handleResult(anyMap());
+
+        DefaultParallelSync sync = new DefaultParallelSync() {
+            @Override
+            protected void transmitThread(CommandEnv cmdEnv, int thread, List<String> args,
+                    IStreamingCallback callback)
+                    throws Exception {
+                callback.handleResult(result(thread, 0), thread);
+            }
+        };
+
+        assertTrue(sync.transmit(env, 4, new HashMap<String, String>(), new ArrayList<String>()));
+        assertEquals(4, handled.size());
+    }
+
+    @Test
+    void failedResultHandlerReleasesThreads()
+            throws InterruptedException {
+        CommandEnv env = mock(CommandEnv.class);
+        doThrow(new IllegalStateException("bad result")).when(env).handleResult(anyMap());
+
+        final int threads = 2;
+        final CountDownLatch finished = new CountDownLatch(threads);
+        DefaultParallelSync sync = new DefaultParallelSync() {
+            @Override
+            protected void transmitThread(CommandEnv cmdEnv, int thread, List<String> args,
+                    IStreamingCallback callback)
+                    throws Exception {
+                try {
+                    // More results than the queue holds, so the thread waits on the command thread.
+                    for (int i = 0; i < 5000; i++) {
+                        if (!callback.handleResult(result(thread, i), thread)) {
+                            return;
+                        }
+                    }
+                } finally {
+                    finished.countDown();
+                }
+            }
+        };
+
+        assertThrows(IllegalStateException.class,
+                () -> sync.transmit(env, threads, new HashMap<String, String>(), new ArrayList<String>()));
+        assertTrue(finished.await(10, TimeUnit.SECONDS));
+    }
+
+    private static Map<String, Object> result(int thread, int index) {
+        Map<String, Object> ret = new HashMap<>();
+        ret.put("depotFile", "//depot/" + thread + "/" + index);
+        return ret;
+    }
+}
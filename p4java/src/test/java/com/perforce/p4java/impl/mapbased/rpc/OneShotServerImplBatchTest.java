@@ -0,0 +1,187 @@
+package com.perforce.p4java.impl.mapbased.rpc;
+
+import com.perforce.p4java.exception.ConnectionException;
+import com.perforce.p4java.impl.mapbased.rpc.connection.RpcConnection;
+import com.perforce.p4java.impl.mapbased.rpc.func.RpcFunctionSpec;
+import com.perforce.p4java.impl.mapbased.rpc.metrics.IRpcMetricsListener;
+import com.perforce.p4java.impl.mapbased.rpc.metrics.RpcCommandMetrics;
+import com.perforce.p4java.impl.mapbased.rpc.metrics.RpcConnectionTraffic;
+import com.perforce.p4java.impl.mapbased.rpc.metrics.RpcMetrics;
+import com.perforce.p4java.impl.mapbased.rpc.packet.RpcPacket;
+import com.perforce.p4java.impl.mapbased.rpc.packet.RpcPacketPreamble;
+import com.perforce.p4java.option.UsageOptions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// p4ic4idea: added
+public class OneShotServerImplBatchTest {
+    @Test
+    void pipelinedResultsSplitPerCommand()
+            throws Exception {
+        FakeConnection connection = new FakeConnection(100);
+        List<List<Map<String, Object>>> results = batch(connection, new Properties());
+
+        assertEquals(4, results.size());
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(2, results.get(i).size());
+            assertEquals("//depot/" + i + "/a", results.get(i).get(0).get("depotFile"));
+            assertEquals("//depot/" + i + "/b", results.get(i).get(1).get("depotFile"));
+        }
+        // The first command runs alone; the rest are all sent before any of their results are read.
+        assertEquals(Arrays.asList(1, 4, 4, 4), connection.sentBeforeRead);
+    }
+
+    @Test
+    void pipelineStaysUnderHighWaterMark()
+            throws Exception {
+        // Two of these requests fit under the default 2000 byte high water mark, but not three.
+        FakeConnection connection = new FakeConnection(900);
+        List<List<Map<String, Object>>> results = batch(connection, new Properties());
+
+        assertEquals(4, results.size());
+        assertEquals("//depot/3/b", results.get(3).get(1).get("depotFile"));
+        assertEquals(Arrays.asList(1, 3, 4, 4), connection.sentBeforeRead);
+    }
+
+    @Test
+    void pipelinedMetricsPerCommand()
+            throws Exception {
+        final List<RpcCommandMetrics> metrics = new ArrayList<>();
+        IRpcMetricsListener listener = new IRpcMetricsListener() {
+            @Override
+            public void commandCompleted(RpcCommandMetrics m) {
+                metrics.add(m);
+            }
+        };
+        RpcMetrics.addListener(listener);
+        try {
+            batch(new FakeConnection(100), new Properties());
+        } finally {
+            RpcMetrics.removeListener(listener);
+        }
+
+        // The requests written ahead are counted against their own command, not the one being read.
+        assertEquals(4, metrics.size());
+        for (RpcCommandMetrics m : metrics) {
+            assertEquals("fstat", m.getCommandName());
+            assertEquals(100, m.getBytesSent());
+            assertEquals(100, m.getWireBytesSent());
+            assertEquals(1, m.getPacketsSent());
+        }
+    }
+
+    @Test
+    void pipelineTurnedOff()
+            throws Exception {
+        Properties props = new Properties();
+        props.setProperty(RpcPropertyDefs.RPC_BATCH_PIPELINE_NICK, "false");
+        FakeConnection connection = new FakeConnection(100);
+        List<List<Map<String, Object>>> results = batch(connection, props);
+
+        assertEquals(4, results.size());
+        assertEquals("//depot/2/a", results.get(2).get(0).get("depotFile"));
+        assertEquals(Arrays.asList(1, 2, 3, 4), connection.sentBeforeRead);
+    }
+
+
+    private static List<List<Map<String, Object>>> batch(FakeConnection connection, Properties props)
+            throws Exception {
+        BatchServer server = new BatchServer(connection.connection);
+        server.init("localhost", 1666, props, new UsageOptions(props), false, null);
+        List<RpcBatchCommand> commands = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            commands.add(new RpcBatchCommand("fstat", "//depot/" + i + "/..."));
+        }
+        return server.execMapCmdBatch(commands);
+    }
+
+
+    private static class BatchServer extends OneShotServerImpl {
+        private final RpcConnection connection;
+
+        private BatchServer(RpcConnection connection) {
+            this.connection = connection;
+            // The batch never asks the server for anything else, so there's nothing to connect.
+            this.connected = true;
+        }
+
+        @Override
+        protected RpcConnection createBatchConnection() {
+            return connection;
+        }
+    }
+
+
+    /**
+     * A connection that answers each command with two results and a release, and
+     * records how many commands were sent when each command's results were first read.
+     */
+    private static class FakeConnection {
+        final RpcConnection connection = mock(RpcConnection.class);
+        final RpcConnectionTraffic traffic = new RpcConnectionTraffic();
+        final LinkedList<byte[]> replies = new LinkedList<>();
+        final LinkedList<Integer> replyOwners = new LinkedList<>();
+        final List<Integer> sentBeforeRead = new ArrayList<>();
+        int sent = 0;
+
+        FakeConnection(final int requestSize)
+                throws ConnectionException {
+            when(connection.getTraffic()).thenReturn(traffic);
+            doAnswer(invocation -> {
+                int command = sent++;
+                traffic.packetSent(requestSize, false);
+                reply(command, payload("func", RpcFunctionSpec.CLIENT_FSTATINFO.getEncoding(),
+                        "depotFile", "//depot/" + command + "/a"));
+                reply(command, payload("func", RpcFunctionSpec.CLIENT_FSTATINFO.getEncoding(),
+                        "depotFile", "//depot/" + command + "/b"));
+                reply(command, payload("func", RpcFunctionSpec.PROTOCOL_RELEASE.getEncoding()));
+                return (long) requestSize;
+            }).when(connection).putRpcPackets(any());
+            when(connection.getRpcPacket(any(), any())).thenAnswer(invocation -> {
+                int owner = replyOwners.removeFirst();
+                if (sentBeforeRead.size() == owner) {
+                    sentBeforeRead.add(sent);
+                }
+                byte[] payload = replies.removeFirst();
+                return RpcPacket.constructRpcPacket(
+                        RpcPacketPreamble.constructPreamble(payload.length),
+                        payload, false, null, null, null);
+            });
+        }
+
+        private void reply(int command, byte[] payload) {
+            replyOwners.add(command);
+            replies.add(payload);
+        }
+    }
+
+
+    private static byte[] payload(String... namesAndValues) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            byte[] name = namesAndValues[i].getBytes(StandardCharsets.UTF_8);
+            byte[] value = namesAndValues[i + 1].getBytes(StandardCharsets.UTF_8);
+            out.write(name, 0, name.length);
+            out.write(0);
+            byte[] len = RpcPacket.encodeInt4(value.length);
+            out.write(len, 0, len.length);
+            out.write(value, 0, value.length);
+            out.write(0);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,33 @@
+package com.perforce.p4java.impl.mapbased.rpc;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// p4ic4idea: added
+public class RpcBatchCommandTest {
+    @Test
+    void readOnlyCommandsPipeline() {
+        assertTrue(new RpcBatchCommand("fstat", "//depot/...").canPipeline());
+        assertTrue(new RpcBatchCommand("OPENED").canPipeline());
+        assertTrue(new RpcBatchCommand("describe", "-s", "12").canPipeline());
+
+        // These ask the client for files or input.
+        assertFalse(new RpcBatchCommand("sync", "//depot/...").canPipeline());
+        assertFalse(new RpcBatchCommand("submit").canPipeline());
+        assertFalse(new RpcBatchCommand("change", "-i").canPipeline());
+    }
+
+    @Test
+    void argsAreCopied() {
+        String[] args = { "-m", "10" };
+        RpcBatchCommand command = new RpcBatchCommand("changes", args);
+        args[1] = "20";
+        assertArrayEquals(new String[] { "-m", "10" }, command.getCmdArgs());
+        command.getCmdArgs()[0] = "-s";
+        assertArrayEquals(new String[] { "-m", "10" }, command.getCmdArgs());
+        assertArrayEquals(new String[0], new RpcBatchCommand("info", (String[]) null).getCmdArgs());
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.perforce.p4java.impl.mapbased.rpc.func.client;
+
+import com.perforce.p4java.Log;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClientIgnoreCheckerTest {
+    private static final String IGNORE = ".p4ignore";
+
+    @TempDir
+    Path root;
+
+
+    @Test
+    void patterns()
+            throws IOException {
+        write(root.resolve(IGNORE), "# comment\n*.log\nbuild\n!keep.log\n\n");
+        write(root.resolve("sub").resolve(IGNORE), "*.tmp\n");
+        ClientIgnoreChecker checker = checker();
+
+        assertTrue(checker.match(file("a.log")));
+        assertFalse(checker.match(file("keep.log")));
+        assertFalse(checker.match(file("a.txt")));
+        assertTrue(checker.match(file("build")));
+        assertTrue(checker.match(file("build", "out.txt")));
+        assertTrue(checker.match(file("sub", "build", "out.txt")));
+        assertTrue(checker.match(file("sub", "x.tmp")));
+        assertFalse(checker.match(file("x.tmp")));
+        assertTrue(checker.match(file("sub", "deeper", "b.log")));
+        assertFalse(checker.match(file("sub", "deeper", "b.txt")));
+    }
+
+
+    @Test
+    void cachedWithinCommand()
+            throws IOException {
+        Path ignore = write(root.resolve(IGNORE), "*.log\n");
+        ClientIgnoreChecker checker = checker();
+        assertTrue(checker.match(file("a.log")));
+        assertFalse(checker.match(file("sub", "a.tmp")));
+
+        // Changes aren't seen until the next command.
+        write(ignore, "*.tmp\n*.bak\n");
+        write(root.resolve("sub").resolve(IGNORE), "*.txt\n");
+        assertTrue(checker.match(file("a.log")));
+        assertFalse(checker.match(file("sub", "a.tmp")));
+        assertFalse(checker.match(file("sub", "a.txt")));
+
+        checker.startCommand();
+        assertFalse(checker.match(file("a.log")));
+        assertTrue(checker.match(file("sub", "a.tmp")));
+        assertTrue(checker.match(file("sub", "a.txt")));
+
+        Files.delete(ignore);
+        checker.startCommand();
+        assertFalse(checker.match(file("sub", "a.tmp")));
+        assertTrue(checker.match(file("sub", "a.txt")));
+    }
+
+
+    @Test
+    void unchangedFileIsKept()
+            throws IOException {
+        write(root.resolve(IGNORE), "*.log\n");
+        ClientIgnoreChecker checker = checker();
+        for (int i = 0; i < 3; i++) {
+            checker.startCommand();
+            assertTrue(checker.match(file("a.log")));
+            assertFalse(checker.match(file("a.txt")));
+        }
+    }
+
+
+    /**
+     * Cost of checking a large workspace with one checker against a new
+     * checker, and so a fresh read of every ignore file, for each file.
+     * Run with {@code -Dp4ic.benchmark=true}.
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "p4ic.benchmark", matches = "true")
+    void benchmark()
+            throws IOException {
+        write(root.resolve(IGNORE), "*.log\nbuild\n!keep.log\n*.class\n.idea\nout\n");
+        List<File> files = new ArrayList<>();
+        for (int a = 0; a < 20; a++) {
+            write(root.resolve("a" + a).resolve(IGNORE), "*.tmp\n");
+            for (int b = 0; b < 50; b++) {
+                for (int f = 0; f < 20; f++) {
+                    files.add(file("a" + a, "b" + b, "c", "f" + f + (f % 5 == 0 ? ".log" : ".txt")));
+                }
+            }
+        }
+
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            int uncachedMatches = 0;
+            for (File f : files) {
+                if (checker().match(f)) {
+                    uncachedMatches++;
+                }
+            }
+            long uncachedTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            ClientIgnoreChecker checker = checker();
+            int cachedMatches = 0;
+            for (File f : files) {
+                if (checker.match(f)) {
+                    cachedMatches++;
+                }
+            }
+            long cachedTime = System.nanoTime() - start;
+            assertEquals(uncachedMatches, cachedMatches);
+
+            Log.stats("Round " + round + ": " + files.size() + " files; reading ignore files each time "
+                    + (uncachedTime / 1_000_000) + " ms, cached " + (cachedTime / 1_000_000) + " ms");
+        }
+    }
+
+
+    private ClientIgnoreChecker checker() {
+        return new ClientIgnoreChecker(root.toString(), IGNORE, StandardCharsets.UTF_8);
+    }
+
+
+    private File file(String... parts) {
+        Path ret = root;
+        for (String part : parts) {
+            ret = ret.resolve(part);
+        }
+        return ret.toFile();
+    }
+
+
+    private static Path write(Path file, String content)
+            throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.perforce.p4java.impl.mapbased.rpc.func.client;
+
+import com.perforce.p4java.client.IClient;
+import com.perforce.p4java.impl.mapbased.rpc.CommandEnv;
+import com.perforce.p4java.impl.mapbased.rpc.RpcServer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ClientSystemFileMatchCommandsTest {
+    private static final String IGNORE = ".p4ignore";
+
+    @TempDir
+    Path root;
+
+
+    @Test
+    void ignoreFileChangesSeenByLaterCommands()
+            throws IOException {
+        Path ignore = root.resolve(IGNORE);
+        Files.write(ignore, "*.log\n".getBytes(StandardCharsets.UTF_8));
+        IClient client = mock(IClient.class);
+        when(client.getRoot()).thenReturn(root.toString());
+        RpcServer server = mock(RpcServer.class);
+        when(server.getCurrentClient()).thenReturn(client);
+        when(server.getIgnoreFileName()).thenReturn(IGNORE);
+        ClientSystemFileMatchCommands commands = new ClientSystemFileMatchCommands(new Properties(), server);
+
+        // Each 'p4 add' asks about its files one at a time, with the same command environment.
+        CommandEnv firstAdd = mock(CommandEnv.class);
+        assertTrue(commands.isIgnore(root.resolve("a.log").toFile(), StandardCharsets.UTF_8, firstAdd));
+        assertFalse(commands.isIgnore(root.resolve("a.txt").toFile(), StandardCharsets.UTF_8, firstAdd));
+
+        Files.write(ignore, "*.txt\n*.bak\n".getBytes(StandardCharsets.UTF_8));
+        assertFalse(commands.isIgnore(root.resolve("b.txt").toFile(), StandardCharsets.UTF_8, firstAdd));
+
+        CommandEnv secondAdd = mock(CommandEnv.class);
+        assertTrue(commands.isIgnore(root.resolve("b.txt").toFile(), StandardCharsets.UTF_8, secondAdd));
+        assertFalse(commands.isIgnore(root.resolve("b.log").toFile(), StandardCharsets.UTF_8, secondAdd));
+    }
+}
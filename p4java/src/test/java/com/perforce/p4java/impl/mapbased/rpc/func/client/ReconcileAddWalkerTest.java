@@ -0,0 +1,219 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.perforce.p4java.impl.mapbased.rpc.func.client;
+
+import com.perforce.p4java.Log;
+import com.perforce.p4java.impl.mapbased.rpc.func.helper.MD5Digester;
+import com.perforce.p4java.mapapi.MapFlag;
+import com.perforce.p4java.mapapi.MapTable;
+import com.perforce.p4java.mapapi.MapTableT;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReconcileAddWalkerTest {
+    private static final ReconcileAddWalker.IgnoreCheck IGNORE_NAMED_IGNORED =
+            new ReconcileAddWalker.IgnoreCheck() {
+                @Override
+                public boolean isIgnored(File file) {
+                    return file.getName().startsWith("ignored");
+                }
+            };
+
+    @TempDir
+    Path tmp;
+
+
+    @Test
+    void sameOrderAsSingleThreadedWalk()
+            throws IOException {
+        Path root = tmp.resolve("root");
+        for (int d = 0; d < 5; d++) {
+            for (int f = 0; f < 5; f++) {
+                write(root.resolve("d" + d).resolve("sub" + f).resolve("file" + f + ".txt"), "x" + d + f);
+                write(root.resolve("d" + d).resolve("file" + f + ".txt"), "y" + d + f);
+            }
+        }
+        write(root.resolve("top.txt"), "top");
+        write(root.resolve("ignored.txt"), "no");
+        write(root.resolve("d1").resolve("ignoredDir").resolve("in.txt"), "no");
+        write(root.resolve("d2").resolve("skip.log"), "unmapped");
+
+        MapTable map = map(root);
+        List<String> expected = referenceWalk(root.toFile(), map);
+
+        for (int threads : new int[] { 1, 4 }) {
+            List<ReconcileAddWalker.Entry> entries = new ReconcileAddWalker(map, true, false, false,
+                    null, StandardCharsets.UTF_8, IGNORE_NAMED_IGNORED, threads).walk(root.toFile());
+            assertEquals(expected, describe(entries), "threads: " + threads);
+        }
+    }
+
+
+    @Test
+    void noTraverse()
+            throws IOException {
+        Path root = tmp.resolve("root");
+        write(root.resolve("a.txt"), "a");
+        write(root.resolve("sub").resolve("b.txt"), "b");
+
+        List<ReconcileAddWalker.Entry> entries = new ReconcileAddWalker(map(root), false, false, false,
+                null, StandardCharsets.UTF_8, IGNORE_NAMED_IGNORED, 2).walk(root.toFile());
+        assertEquals(Collections.singletonList("add " + root.resolve("a.txt") + " 1"), describe(entries));
+    }
+
+
+    @Test
+    void digestsAndSkipFiles()
+            throws IOException {
+        Path root = tmp.resolve("root");
+        Path a = write(root.resolve("a.txt"), "some content");
+        Path b = write(root.resolve("b.txt"), "other content");
+
+        List<ReconcileAddWalker.Entry> entries = new ReconcileAddWalker(map(root), true, true, true,
+                Collections.singletonList(b.toString()), StandardCharsets.UTF_8, IGNORE_NAMED_IGNORED, 2)
+                .walk(root.toFile());
+        assertEquals(1, entries.size());
+        assertEquals(a.toString(), entries.get(0).getPath());
+        assertEquals(new MD5Digester().digestFileAs32ByteHex(a.toFile(), StandardCharsets.UTF_8),
+                entries.get(0).getDigest());
+
+        entries = new ReconcileAddWalker(map(root), true, true, false,
+                null, StandardCharsets.UTF_8, IGNORE_NAMED_IGNORED, 2).walk(root.toFile());
+        assertEquals(2, entries.size());
+        assertNull(entries.get(0).getDigest());
+    }
+
+
+    @Test
+    void symlinkedDirectoryIsAFile()
+            throws IOException {
+        Path root = tmp.resolve("root");
+        Path target = write(tmp.resolve("elsewhere").resolve("inside.txt"), "x").getParent();
+        Path link = root.resolve("link");
+        Files.createDirectories(root);
+        try {
+            Files.createSymbolicLink(link, target);
+        } catch (UnsupportedOperationException | IOException e) {
+            // Not supported here.
+            return;
+        }
+
+        List<ReconcileAddWalker.Entry> entries = new ReconcileAddWalker(map(root), true, false, false,
+                null, StandardCharsets.UTF_8, IGNORE_NAMED_IGNORED, 2).walk(root.toFile());
+        assertEquals(1, entries.size());
+        assertEquals(link.toString(), entries.get(0).getPath());
+    }
+
+
+    /**
+     * Walk time for a large workspace, single threaded against at least four
+     * threads, with and without digests.  Run with {@code -Dp4ic.benchmark=true}.
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "p4ic.benchmark", matches = "true")
+    void benchmark()
+            throws IOException {
+        Path root = tmp.resolve("root");
+        int fileCount = 0;
+        for (int a = 0; a < 20; a++) {
+            for (int b = 0; b < 20; b++) {
+                for (int f = 0; f < 50; f++) {
+                    write(root.resolve("a" + a).resolve("b" + b).resolve("f" + f + ".txt"),
+                            "file " + a + "/" + b + "/" + f + "\n");
+                    fileCount++;
+                }
+            }
+        }
+        MapTable map = map(root);
+        int threadCount = Math.max(4, Runtime.getRuntime().availableProcessors());
+        for (int round = 0; round < 3; round++) {
+            for (boolean digest : new boolean[] { false, true }) {
+                for (int threads : new int[] { 1, threadCount }) {
+                    long start = System.nanoTime();
+                    List<ReconcileAddWalker.Entry> entries = new ReconcileAddWalker(map, true, true, digest,
+                            null, StandardCharsets.UTF_8, IGNORE_NAMED_IGNORED, threads).walk(root.toFile());
+                    long time = System.nanoTime() - start;
+                    assertEquals(fileCount, entries.size());
+                    Log.stats("Round " + round + ": " + fileCount + " files, "
+                            + (digest ? "with" : "without") + " digests, " + threads + " threads: "
+                            + (time / 1_000_000) + " ms");
+                }
+            }
+        }
+    }
+
+
+    private static MapTable map(Path root) {
+        MapTable map = new MapTable();
+        map.insert(root + "/...", root + "/...", MapFlag.MfMap);
+        map.insert(root + "/....log", root + "/....log", MapFlag.MfUnmap);
+        return map;
+    }
+
+
+    private static Path write(Path file, String content)
+            throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+
+    private static List<String> describe(List<ReconcileAddWalker.Entry> entries) {
+        List<String> ret = new ArrayList<>(entries.size());
+        for (ReconcileAddWalker.Entry entry : entries) {
+            ret.add(entry.isIgnored()
+                    ? "ignore " + entry.getPath()
+                    : "add " + entry.getPath() + " " + entry.getSize());
+        }
+        return ret;
+    }
+
+
+    // The single threaded, java.io based walk, in listing order.
+    private static List<String> referenceWalk(File dir, MapTable map) {
+        List<String> ret = new ArrayList<>();
+        if (IGNORE_NAMED_IGNORED.isIgnored(dir)) {
+            ret.add("ignore " + dir.getAbsolutePath());
+            return ret;
+        }
+        File[] files = dir.listFiles();
+        assertTrue(files != null);
+        for (File f : files) {
+            if (f.isDirectory()) {
+                ret.addAll(referenceWalk(f, map));
+            } else if (map.translate(MapTableT.LHS, f.getAbsolutePath()) != null) {
+                ret.add(IGNORE_NAMED_IGNORED.isIgnored(f)
+                        ? "ignore " + f.getAbsolutePath()
+                        : "add " + f.getAbsolutePath() + " " + f.length());
+            }
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,130 @@
+package com.perforce.p4java.impl.mapbased.rpc.metrics;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// p4ic4idea: added
+public class RpcMetricsTest {
+    @AfterEach
+    void cleanUp() {
+        RpcMetrics.setEnabled(false);
+        RpcMetrics.unregisterMBean();
+        RpcMetrics.reset();
+    }
+
+    @Test
+    void disabledByDefault() {
+        assertFalse(RpcMetrics.isEnabled());
+        RpcMetrics.commandCompleted(metrics("fstat", 5, false));
+        assertEquals(0, RpcMetrics.getCommandCount());
+        assertTrue(RpcMetrics.getCommandStatistics().isEmpty());
+    }
+
+    @Test
+    void listener() {
+        final List<RpcCommandMetrics> seen = new ArrayList<>();
+        IRpcMetricsListener listener = new IRpcMetricsListener() {
+            @Override
+            public void commandCompleted(RpcCommandMetrics metrics) {
+                seen.add(metrics);
+            }
+        };
+        RpcMetrics.addListener(listener);
+        try {
+            assertTrue(RpcMetrics.isEnabled());
+            RpcCommandMetrics run = metrics("fstat", 5, false);
+            RpcMetrics.commandCompleted(run);
+            assertEquals(1, seen.size());
+            assertSame(run, seen.get(0));
+        } finally {
+            RpcMetrics.removeListener(listener);
+        }
+        assertFalse(RpcMetrics.isEnabled());
+    }
+
+    @Test
+    void perCommandStatistics() {
+        RpcMetrics.setEnabled(true);
+        for (int i = 1; i <= 100; i++) {
+            RpcMetrics.commandCompleted(metrics("fstat", i, i == 100));
+        }
+        RpcMetrics.commandCompleted(metrics("changes", 3, false));
+
+        assertEquals(101, RpcMetrics.getCommandCount());
+        List<RpcCommandStatistics> stats = RpcMetrics.getCommandStatistics();
+        assertEquals(2, stats.size());
+        assertEquals("changes", stats.get(0).getCommandName());
+        RpcCommandStatistics fstat = stats.get(1);
+        assertEquals("fstat", fstat.getCommandName());
+        assertEquals(100, fstat.getCount());
+        assertEquals(1, fstat.getFailures());
+        assertEquals(100, fstat.getMaxMillis());
+        assertEquals(5050, fstat.getTotalMillis());
+        // Bucket upper limits: 50 ms holds the median, 100 ms the p90.
+        assertEquals(50, fstat.getMedianMillis());
+        assertEquals(100, fstat.getP90Millis());
+        assertEquals(10000, fstat.getBytesSent());
+        assertEquals(50000, fstat.getBytesReceived());
+        assertEquals(200, fstat.getFlowControlFlushes());
+        assertEquals(0.5, fstat.getCompressionRatio(), 0.0001);
+    }
+
+    @Test
+    void uncompressedTraffic() {
+        RpcConnectionTraffic traffic = new RpcConnectionTraffic();
+        traffic.packetSent(100, false);
+        traffic.bytesReceived(300, false);
+        traffic.packetReceived();
+        RpcCommandMetrics metrics = new RpcCommandMetrics("info", null, 0, 0, false, traffic);
+        assertEquals(1.0, metrics.getCompressionRatio(), 0.0001);
+        assertEquals(100, metrics.getWireBytesSent());
+        assertEquals(300, metrics.getWireBytesReceived());
+
+        traffic.reset();
+        assertEquals(0, traffic.getBytesSent());
+        assertEquals(0, traffic.getPacketsReceived());
+    }
+
+    @Test
+    void jmx() throws Exception {
+        RpcMetrics.registerMBean();
+        assertTrue(RpcMetrics.isEnabled());
+        RpcMetrics.commandCompleted(metrics("opened", 12, false));
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(RpcMetrics.MBEAN_NAME);
+        assertEquals(1L, server.getAttribute(name, "CommandCount"));
+        CompositeData[] stats = (CompositeData[]) server.getAttribute(name, "CommandStatistics");
+        assertEquals(1, stats.length);
+        assertEquals("opened", stats[0].get("commandName"));
+        assertEquals(1L, stats[0].get("count"));
+
+        RpcMetrics.unregisterMBean();
+        assertFalse(server.isRegistered(name));
+    }
+
+    private static RpcCommandMetrics metrics(String name, long millis, boolean failed) {
+        RpcConnectionTraffic traffic = new RpcConnectionTraffic();
+        traffic.packetSent(100, true);
+        traffic.bytesReceived(500, true);
+        traffic.packetReceived();
+        traffic.compressedBytesSent(50);
+        traffic.compressedBytesReceived(250);
+        traffic.flowControlFlush();
+        traffic.flowControlFlush();
+        return new RpcCommandMetrics(name, "localhost:1666", System.currentTimeMillis(),
+                millis * 1_000_000L, failed, traffic);
+    }
+}
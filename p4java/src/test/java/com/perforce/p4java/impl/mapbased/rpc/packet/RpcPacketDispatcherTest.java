@@ -0,0 +1,162 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.perforce.p4java.impl.mapbased.rpc.packet;
+
+import com.perforce.p4java.Log;
+import com.perforce.p4java.impl.mapbased.rpc.CommandEnv;
+import com.perforce.p4java.impl.mapbased.rpc.RpcCmdSpec;
+import com.perforce.p4java.impl.mapbased.rpc.RpcServer;
+import com.perforce.p4java.impl.mapbased.rpc.connection.RpcConnection;
+import com.perforce.p4java.impl.mapbased.rpc.func.RpcFunctionSpec;
+import com.perforce.p4java.impl.mapbased.rpc.func.proto.ProtocolCommand;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RpcPacketDispatcherTest {
+    @Test
+    void dispatchKeepsResultOrder()
+            throws Exception {
+        List<Map<String, Object>> results = dispatch(1000);
+
+        assertEquals(1000, results.size());
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals("//depot/file" + i, results.get(i).get("depotFile"));
+        }
+    }
+
+
+    /**
+     * Dispatch throughput for large numbers of results, along with the cost of
+     * the old copy-on-write result list on its own.  Run with
+     * {@code -Dp4ic.benchmark=true}.
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "p4ic.benchmark", matches = "true")
+    void benchmark()
+            throws Exception {
+        for (int count : new int[] { 10_000, 100_000 }) {
+            for (int round = 0; round < 3; round++) {
+                long start = System.nanoTime();
+                assertEquals(count, dispatch(count).size());
+                long dispatchTime = System.nanoTime() - start;
+
+                long oldListTime = accumulate(
+                        new CopyOnWriteArrayList<>(new LinkedList<Map<String, Object>>()), count);
+                long newListTime = accumulate(new ArrayList<Map<String, Object>>(), count);
+
+                Log.stats("Round " + round + ": " + count + " results; dispatch "
+                        + (dispatchTime / 1_000_000) + " ms ("
+                        + (count * 1_000_000_000L / Math.max(1, dispatchTime)) + " packets/s); "
+                        + "accumulating in copy-on-write list " + (oldListTime / 1_000_000)
+                        + " ms, array list " + (newListTime / 1_000_000) + " ms");
+            }
+        }
+    }
+
+
+    private static List<Map<String, Object>> dispatch(final int resultCount)
+            throws Exception {
+        final byte[][] payloads = new byte[resultCount][];
+        for (int i = 0; i < resultCount; i++) {
+            payloads[i] = fstatPayload(i);
+        }
+        final byte[] release = payload("func", RpcFunctionSpec.PROTOCOL_RELEASE.getEncoding());
+
+        RpcConnection connection = mock(RpcConnection.class);
+        when(connection.getRpcPacket(any(), any()))
+                .thenAnswer(new Answer<RpcPacket>() {
+                    private int index = 0;
+
+                    @Override
+                    public RpcPacket answer(InvocationOnMock invocation) {
+                        byte[] payload = index < payloads.length ? payloads[index++] : release;
+                        return RpcPacket.constructRpcPacket(
+                                RpcPacketPreamble.constructPreamble(payload.length),
+                                payload, false, null, null, null);
+                    }
+                });
+
+        RpcServer server = mock(RpcServer.class);
+        CommandEnv cmdEnv = commandEnv(server, connection);
+        return new RpcPacketDispatcher(new Properties(), server).dispatch(cmdEnv);
+    }
+
+
+    private static long accumulate(List<Map<String, Object>> resultMaps, int count) {
+        CommandEnv cmdEnv = commandEnv(mock(RpcServer.class), mock(RpcConnection.class));
+        cmdEnv.setResultMaps(resultMaps);
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            Map<String, Object> map = new HashMap<>();
+            map.put("depotFile", "//depot/file" + i);
+            cmdEnv.handleResult(map);
+        }
+        return System.nanoTime() - start;
+    }
+
+
+    private static CommandEnv commandEnv(RpcServer server, RpcConnection connection) {
+        return new CommandEnv(server,
+                new RpcCmdSpec("fstat", new String[0], null, null, null, null),
+                connection, new ProtocolCommand(), new HashMap<String, Object>(), null,
+                0, false, false);
+    }
+
+
+    private static byte[] fstatPayload(int index) {
+        return payload(
+                "func", RpcFunctionSpec.CLIENT_FSTATINFO.getEncoding(),
+                "depotFile", "//depot/file" + index,
+                "clientFile", "/home/user/work/file" + index,
+                "headAction", "edit",
+                "headType", "text",
+                "headRev", "3",
+                "headChange", "1234",
+                "haveRev", "3");
+    }
+
+
+    private static byte[] payload(String... namesAndValues) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            byte[] name = namesAndValues[i].getBytes(StandardCharsets.UTF_8);
+            byte[] value = namesAndValues[i + 1].getBytes(StandardCharsets.UTF_8);
+            out.write(name, 0, name.length);
+            out.write(0);
+            byte[] len = RpcPacket.encodeInt4(value.length);
+            out.write(len, 0, len.length);
+            out.write(value, 0, value.length);
+            out.write(0);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.perforce.p4java.impl.mapbased.rpc.packet;
+
+import com.perforce.p4java.Log;
+import com.perforce.p4java.impl.mapbased.rpc.connection.RpcConnection;
+import com.perforce.p4java.impl.mapbased.rpc.func.RpcFunctionSpec;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RpcPacketFieldCodecTest {
+    private static final String[] SAMPLES = {
+            "", "depotFile", "//depot/plain/ascii.txt", "café crème", "日本語ファイル",
+            "mixed ü and 日", "€ 5", "tab\tand\nnewline"
+    };
+
+    private static final Charset[] CHARSETS = {
+            StandardCharsets.UTF_8, StandardCharsets.ISO_8859_1, StandardCharsets.US_ASCII,
+            Charset.forName("windows-1252"), Charset.forName("Shift_JIS"), Charset.forName("EUC-JP"),
+            StandardCharsets.UTF_16LE
+    };
+
+
+    @Test
+    void sameAsStringConversion()
+            throws UnsupportedEncodingException {
+        for (Charset charset : CHARSETS) {
+            RpcPacketFieldCodec codec = new RpcPacketFieldCodec(charset);
+            for (String sample : SAMPLES) {
+                byte[] expectedBytes = sample.getBytes(charset.name());
+                assertArrayEquals(expectedBytes, codec.encode(sample), charset + ": " + sample);
+
+                String expected = new String(expectedBytes, charset.name());
+                assertEquals(expected, codec.decode(expectedBytes, 0, expectedBytes.length),
+                        charset + ": " + sample);
+                assertEquals(expected, codec.decodeName(expectedBytes, 0, expectedBytes.length),
+                        charset + ": " + sample);
+
+                // Offsets into a larger array.
+                byte[] padded = new byte[expectedBytes.length + 6];
+                System.arraycopy(expectedBytes, 0, padded, 3, expectedBytes.length);
+                assertEquals(expected, codec.decode(padded, 3, expectedBytes.length),
+                        charset + ": " + sample);
+            }
+        }
+    }
+
+
+    @Test
+    void malformedInputIsReplaced()
+            throws UnsupportedEncodingException {
+        byte[] bad = { 'a', (byte) 0xff, (byte) 0xfe, 'b', (byte) 0x81 };
+        for (Charset charset : CHARSETS) {
+            assertEquals(new String(bad, charset.name()),
+                    new RpcPacketFieldCodec(charset).decode(bad, 0, bad.length), charset.name());
+        }
+    }
+
+
+    @Test
+    void connectionRules() {
+        Charset sjis = Charset.forName("Shift_JIS");
+        assertEquals(StandardCharsets.UTF_8, RpcPacketFieldCodec.forServer(true, sjis).getCharset());
+        assertEquals(sjis, RpcPacketFieldCodec.forServer(false, sjis).getCharset());
+        assertEquals(RpcConnection.NON_UNICODE_SERVER_CHARSET,
+                RpcPacketFieldCodec.forServer(true, null).getCharset());
+    }
+
+
+    @Test
+    void fieldsMatchNamedCharsetDecoding()
+            throws UnsupportedEncodingException {
+        Charset charset = Charset.forName("windows-1252");
+        byte[] payload = fstatPayload(7, charset);
+        RpcPacketFieldCodec codec = new RpcPacketFieldCodec(charset);
+
+        ByteBuffer buf = ByteBuffer.wrap(payload);
+        Map<String, Object> lazy = RpcPacket.constructRpcPacket(
+                RpcPacketPreamble.constructPreamble(payload.length), payload, codec, null, null)
+                .getResultsMap();
+        int fields = 0;
+        while (buf.hasRemaining()) {
+            Object[] field = RpcPacketField.retrievePacketField(buf, codec, null);
+            String name = (String) field[RpcPacketField.NAME_FIELD];
+            assertEquals(field[RpcPacketField.VALUE_FIELD], lazy.get(name), name);
+            fields++;
+        }
+        assertEquals(fields, lazy.size());
+        assertEquals(new String("/home/user/café/file7".getBytes(charset.name()), charset.name()),
+                lazy.get("clientFile"));
+    }
+
+
+    /**
+     * Text decoding cost for the fields of a large fstat stream, comparing the old
+     * per-field charset name lookups against a reused codec; the field boundaries
+     * are found beforehand, so only the conversions are timed.  Run with
+     * {@code -Dp4ic.benchmark=true}.
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "p4ic.benchmark", matches = "true")
+    void benchmark()
+            throws UnsupportedEncodingException {
+        final int count = 100_000;
+        for (Charset charset : new Charset[] {
+                StandardCharsets.UTF_8, Charset.forName("windows-1252"), Charset.forName("Shift_JIS") }) {
+            byte[][] payloads = new byte[count][];
+            int[][] slices = new int[count][];
+            for (int i = 0; i < count; i++) {
+                payloads[i] = fstatPayload(i, charset);
+                slices[i] = slices(payloads[i]);
+            }
+            for (int round = 0; round < 5; round++) {
+                String charsetName = charset.name();
+                long start = System.nanoTime();
+                long oldChars = 0;
+                for (int i = 0; i < count; i++) {
+                    byte[] payload = payloads[i];
+                    int[] slice = slices[i];
+                    for (int f = 0; f < slice.length; f += 2) {
+                        oldChars += new String(payload, slice[f], slice[f + 1], charsetName).length();
+                    }
+                }
+                long oldTime = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                long newChars = 0;
+                RpcPacketFieldCodec codec = new RpcPacketFieldCodec(charset);
+                for (int i = 0; i < count; i++) {
+                    byte[] payload = payloads[i];
+                    int[] slice = slices[i];
+                    for (int f = 0; f < slice.length; f += 4) {
+                        newChars += codec.decodeName(payload, slice[f], slice[f + 1]).length();
+                        newChars += codec.decode(payload, slice[f + 2], slice[f + 3]).length();
+                    }
+                }
+                long newTime = System.nanoTime() - start;
+                assertEquals(oldChars, newChars);
+
+                Log.stats("Round " + round + ": " + count + " fstat results in " + charset
+                        + "; charset name per field " + (oldTime / 1_000_000)
+                        + " ms, reused codec " + (newTime / 1_000_000) + " ms");
+            }
+        }
+    }
+
+
+    // Offset and length of each name and value in the payload, in order.
+    private static int[] slices(byte[] payload) {
+        int[] ret = new int[0];
+        int pos = 0;
+        while (pos < payload.length) {
+            int nameStart = pos;
+            while (payload[pos] != 0) {
+                pos++;
+            }
+            int nameLength = pos - nameStart;
+            pos++;
+            int len = RpcPacket.decodeInt4(new byte[] {
+                    payload[pos], payload[pos + 1], payload[pos + 2], payload[pos + 3] });
+            pos += RpcPacket.RPC_LENGTH_FIELD_LENGTH;
+            ret = Arrays.copyOf(ret, ret.length + 4);
+            ret[ret.length - 4] = nameStart;
+            ret[ret.length - 3] = nameLength;
+            ret[ret.length - 2] = pos;
+            ret[ret.length - 1] = len;
+            pos += len + 1;
+        }
+        return ret;
+    }
+
+
+    private static byte[] fstatPayload(int index, Charset charset) {
+        return payload(charset,
+                "func", RpcFunctionSpec.CLIENT_FSTATINFO.getEncoding(),
+                "depotFile", "//depot/café/file" + index,
+                "clientFile", "/home/user/café/file" + index,
+                "headAction", "edit",
+                "headType", "text",
+                "headTime", "1500000000",
+                "headRev", "3",
+                "headChange", "1234",
+                "headModTime", "1500000000",
+                "haveRev", "3",
+                "desc", "Fix the build\n");
+    }
+
+
+    private static byte[] payload(Charset charset, String... namesAndValues) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            byte[] name = namesAndValues[i].getBytes(StandardCharsets.US_ASCII);
+            byte[] value = namesAndValues[i + 1].getBytes(charset);
+            out.write(name, 0, name.length);
+            out.write(0);
+            byte[] len = RpcPacket.encodeInt4(value.length);
+            out.write(len, 0, len.length);
+            out.write(value, 0, value.length);
+            out.write(0);
+        }
+        return out.toByteArray();
+    }
+}
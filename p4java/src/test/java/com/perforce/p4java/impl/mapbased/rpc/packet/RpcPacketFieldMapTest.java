@@ -0,0 +1,170 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.perforce.p4java.impl.mapbased.rpc.packet;
+
+import com.perforce.p4java.CharsetDefs;
+import com.perforce.p4java.exception.ProtocolError;
+import com.perforce.p4java.impl.mapbased.rpc.func.RpcFunctionMapKey;
+import com.perforce.p4java.server.callback.IFilterCallback;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RpcPacketFieldMapTest {
+    @Test
+    void sameAsFilteredRead() {
+        byte[] payload = payload(
+                RpcFunctionMapKey.FUNCTION, "client-Message",
+                "depotFile", "//depot/a/b.txt",
+                "change", "12",
+                "change", "13",
+                "change", "14",
+                RpcFunctionMapKey.FUNC2, "first",
+                RpcFunctionMapKey.FUNC2, "second",
+                RpcFunctionMapKey.DATA, "some é bytes",
+                "", "no name",
+                "empty", "");
+
+        for (boolean unicode : new boolean[] { true, false }) {
+            for (Charset charset : new Charset[] { null, CharsetDefs.UTF8, StandardCharsets.ISO_8859_1 }) {
+                Map<String, Object> lazy = read(payload, unicode, charset, null);
+                Map<String, Object> eager = read(payload, unicode, charset, new KeepAll());
+
+                assertTrue(lazy instanceof RpcPacketFieldMap);
+                assertEquals(eager.keySet(), lazy.keySet());
+                for (String key : eager.keySet()) {
+                    Object expected = eager.get(key);
+                    Object actual = lazy.get(key);
+                    if (expected instanceof byte[]) {
+                        assertArrayEquals((byte[]) expected, (byte[]) actual, key);
+                    } else {
+                        assertEquals(expected, actual, key);
+                    }
+                }
+            }
+        }
+    }
+
+
+    @Test
+    void duplicateFields() {
+        Map<String, Object> map = read(payload(
+                "change", "1",
+                "change", "2",
+                "change", "3",
+                RpcFunctionMapKey.FUNC2, "first",
+                RpcFunctionMapKey.FUNC2, "second"),
+                false, null, null);
+
+        assertEquals("1", map.get("change"));
+        assertEquals("2", map.get("change0"));
+        assertEquals("3", map.get("change1"));
+        assertEquals("first", map.get(RpcFunctionMapKey.FUNC2));
+        assertEquals(4, map.size());
+    }
+
+
+    @Test
+    void binaryValuesAreCopies() {
+        byte[] payload = payload(RpcFunctionMapKey.DATA, "abc");
+        Map<String, Object> map = read(payload, false, null, null);
+
+        byte[] value = (byte[]) map.get(RpcFunctionMapKey.DATA);
+        assertArrayEquals("abc".getBytes(StandardCharsets.UTF_8), value);
+        value[0] = 'x';
+
+        // The payload itself is untouched.
+        assertArrayEquals("abc".getBytes(StandardCharsets.UTF_8),
+                (byte[]) read(payload, false, null, null).get(RpcFunctionMapKey.DATA));
+    }
+
+
+    @Test
+    void modifications() {
+        Map<String, Object> map = read(payload("a", "1", "b", "2", "c", "3"), false, null, null);
+
+        assertEquals("1", map.put("a", "x"));
+        assertEquals("x", map.get("a"));
+        assertEquals("2", map.remove("b"));
+        assertEquals(2, map.size());
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            assertTrue(entry.getValue() instanceof String, entry.getKey());
+        }
+        map.clear();
+        assertTrue(map.isEmpty());
+    }
+
+
+    @Test
+    void truncatedPayload() {
+        byte[] payload = payload("depotFile", "//depot/a");
+        byte[] truncated = Arrays.copyOf(payload, payload.length - 1);
+        assertThrows(ProtocolError.class, () -> read(truncated, false, null, null));
+
+        byte[] noLength = Arrays.copyOf(payload, "depotFile".length() + 3);
+        assertThrows(ProtocolError.class, () -> read(noLength, false, null, null));
+    }
+
+
+    private static Map<String, Object> read(byte[] payload, boolean unicode, Charset charset,
+            IFilterCallback filter) {
+        return RpcPacket.constructRpcPacket(RpcPacketPreamble.constructPreamble(payload.length),
+                payload, unicode, charset, null, filter).getResultsMap();
+    }
+
+
+    private static byte[] payload(String... namesAndValues) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            byte[] name = namesAndValues[i].getBytes(StandardCharsets.UTF_8);
+            byte[] value = namesAndValues[i + 1].getBytes(StandardCharsets.UTF_8);
+            out.write(name, 0, name.length);
+            out.write(0);
+            byte[] len = RpcPacket.encodeInt4(value.length);
+            out.write(len, 0, len.length);
+            out.write(value, 0, value.length);
+            out.write(0);
+        }
+        return out.toByteArray();
+    }
+
+
+    // Forces the original, eager field handling.
+    private static class KeepAll implements IFilterCallback {
+        @Override
+        public void reset() {
+        }
+
+        @Override
+        public boolean skip(String key, Object value, AtomicBoolean skipSubsequent) {
+            return false;
+        }
+
+        @Override
+        public Map<String, String> getDoNotSkipKeysMap() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.perforce.p4java.impl.mapbased.rpc.stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// p4ic4idea: added
+public class RpcSocketPoolTest {
+    private ServerSocket server;
+    private final List<Socket> accepted = new ArrayList<>();
+    private Thread acceptor;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        acceptor = new Thread(() -> {
+            try {
+                while (true) {
+                    Socket socket = server.accept();
+                    synchronized (accepted) {
+                        accepted.add(socket);
+                    }
+                }
+            } catch (IOException e) {
+                // server closed
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    @AfterEach
+    void stopServer() throws IOException {
+        server.close();
+        synchronized (accepted) {
+            for (Socket socket : accepted) {
+                socket.close();
+            }
+        }
+    }
+
+    @Test
+    void reuseReleasedSocket() throws IOException {
+        RpcSocketPool pool = createPool(2, 60000, 0);
+        try {
+            Socket first = pool.acquire();
+            assertEquals(1, pool.getMissCount());
+            pool.release(first, null);
+            assertEquals(1, pool.getIdleCount());
+
+            assertSame(first, pool.acquire());
+            assertEquals(1, pool.getHitCount());
+            assertEquals(0, pool.getIdleCount());
+            pool.release(first, null);
+        } finally {
+            pool.disconnect();
+        }
+    }
+
+    @Test
+    void poolSizeLimit() throws IOException {
+        RpcSocketPool pool = createPool(1, 60000, 0);
+        try {
+            Socket first = pool.acquire();
+            Socket second = pool.acquire();
+            assertNotSame(first, second);
+            pool.release(first, null);
+            pool.release(second, null);
+            assertEquals(1, pool.getIdleCount());
+            assertTrue(second.isClosed());
+        } finally {
+            pool.disconnect();
+        }
+    }
+
+    @Test
+    void idleTimeout() throws IOException {
+        RpcSocketPool pool = createPool(2, 60000, 0);
+        try {
+            Socket socket = pool.acquire();
+            pool.release(socket, null);
+            pool.timeout(0);
+            assertEquals(0, pool.getIdleCount());
+            assertEquals(1, pool.getEvictionCount());
+            assertTrue(socket.isClosed());
+
+            assertNotSame(socket, pool.acquire());
+            assertEquals(2, pool.getMissCount());
+        } finally {
+            pool.disconnect();
+        }
+    }
+
+    @Test
+    void maxLifetime() throws IOException, InterruptedException {
+        RpcSocketPool pool = createPool(2, 60000, 1);
+        try {
+            Socket socket = pool.acquire();
+            Thread.sleep(5);
+            // Past its lifetime, so it's not kept.
+            pool.release(socket, null);
+            assertEquals(0, pool.getIdleCount());
+            assertTrue(socket.isClosed());
+        } finally {
+            pool.disconnect();
+        }
+    }
+
+    @Test
+    void validateOnBorrow() throws IOException {
+        RpcSocketPool pool = createPool(2, 60000, 0);
+        try {
+            Socket socket = pool.acquire();
+            pool.release(socket, null);
+            socket.close();
+            // A closed socket is replaced.
+            assertNotSame(socket, pool.acquire());
+            assertEquals(1, pool.getEvictionCount());
+            assertEquals(0, pool.getHitCount());
+        } finally {
+            pool.disconnect();
+        }
+    }
+
+    @Test
+    void disconnectClosesIdleSockets() throws IOException {
+        RpcSocketPool pool = createPool(2, 60000, 0);
+        Socket socket = pool.acquire();
+        pool.release(socket, null);
+        pool.disconnect();
+        assertEquals(0, pool.getIdleCount());
+        assertTrue(socket.isClosed());
+    }
+
+    private RpcSocketPool createPool(int size, int idleTime, int maxLifetime) {
+        return new RpcSocketPool(size, server.getInetAddress().getHostAddress(), server.getLocalPort(),
+                new Properties(), null, idleTime, maxLifetime);
+    }
+}
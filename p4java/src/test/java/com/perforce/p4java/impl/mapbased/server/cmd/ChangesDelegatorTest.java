@@ -7,9 +7,13 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -36,6 +40,8 @@ import com.perforce.p4java.exception.P4JavaException;
 import com.perforce.p4java.exception.RequestException;
 import com.perforce.p4java.impl.mapbased.server.Server;
 import com.perforce.p4java.option.server.GetChangelistsOptions;
+import com.perforce.p4java.server.callback.IStreamingCallback;
+import com.perforce.p4java.server.callback.IStreamingResultCallback;
 
 /**
  * Tests ChangesDelegator.
@@ -349,6 +355,86 @@ public class ChangesDelegatorTest {
         }
     }
 
+    /**
+     * Test streaming changes results.
+     *
+     * @throws P4JavaException
+     *             the p4 java exception
+     */
+    // p4ic4idea: added
+    @Test
+    public void testGetChangesStreaming() throws P4JavaException {
+        List<Map<String, Object>> results = buildChangesList("pending");
+        results.addAll(buildChangesList("pending"));
+        streamResults(results);
+        final List<IChangelistSummary> changeLists = new ArrayList<>();
+        changesDelegator.getChangelists(mockFileSpecs, new GetChangelistsOptions(),
+                new IStreamingResultCallback<IChangelistSummary>() {
+                    @Override
+                    public boolean handleResult(IChangelistSummary result) {
+                        changeLists.add(result);
+                        return true;
+                    }
+                });
+        verify(server, never()).execMapCmdList(anyString(), any(String[].class), any());
+        assertEquals(2, changeLists.size());
+        assertChangeListSummary(changeLists.get(0), ChangelistStatus.PENDING);
+        assertChangeListSummary(changeLists.get(1), ChangelistStatus.PENDING);
+    }
+
+    /**
+     * Test that an error result from a streaming changes command is thrown once
+     * the command completes, after the earlier results.
+     *
+     * @throws P4JavaException
+     *             the p4 java exception
+     */
+    // p4ic4idea: added
+    @Test
+    public void testGetChangesStreamingError() throws P4JavaException {
+        List<Map<String, Object>> results = buildChangesList("pending");
+        Map<String, Object> error = new HashMap<>();
+        error.put("fmt0", "%path% - must refer to client '%client%'.");
+        error.put("code0", "838998116");
+        error.put("client", CLIENT);
+        error.put("path", PATH);
+        results.add(error);
+        results.addAll(buildChangesList("pending"));
+        streamResults(results);
+        final List<IChangelistSummary> changeLists = new ArrayList<>();
+        try {
+            changesDelegator.getChangelists(mockFileSpecs, new GetChangelistsOptions(),
+                    new IStreamingResultCallback<IChangelistSummary>() {
+                        @Override
+                        public boolean handleResult(IChangelistSummary result) {
+                            changeLists.add(result);
+                            return true;
+                        }
+                    });
+            fail("RequestException was expected.");
+        } catch (RequestException e) {
+            assertTrue(e.getMessage().contains("must refer to client"));
+        }
+        assertEquals(1, changeLists.size());
+    }
+
+    /**
+     * Have the mocked server send the results to the streaming callback.
+     */
+    private void streamResults(final List<Map<String, Object>> results) throws P4JavaException {
+        doAnswer(invocation -> {
+            IStreamingCallback callback = invocation.getArgument(3);
+            int key = invocation.getArgument(4);
+            callback.startResults(key);
+            for (Map<String, Object> result : results) {
+                callback.handleResult(result, key);
+            }
+            callback.endResults(key);
+            return null;
+        }).when(server).execStreamingMapCommand(eq(CHANGES.toString()), any(String[].class), eq(null),
+                any(IStreamingCallback.class), anyInt());
+    }
+
     /**
      * Builds the changes.
      *
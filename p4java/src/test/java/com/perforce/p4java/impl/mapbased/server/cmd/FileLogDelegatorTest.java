@@ -278,4 +278,41 @@ public class FileLogDelegatorTest {
         List<IFileRevisionData> fileRevisionDataList = new ArrayList(values);
         assertNotNull(fileRevisionDataList.get(0));
     }
-}
\ No newline at end of file
+
+    /**
+     * Test get revision history by fileSpec and <code>GetRevisionHistoryOptions</code>
+     * keeps the order of the files returned by the server, so the requested file comes
+     * before the files its history was inherited from.
+     *
+     * @throws Exception if the <code>Exception</code> is thrown, it's mean an unexpected error occurs
+     */
+    // p4ic4idea: added
+    @Test
+    public void testGetRevisionHistoryByFileSpecsAndGetRevisionHistoryOptionsExpectedServerOrder() throws Exception {
+        //given
+        List<String> depotPaths = List.of("//depot/e.txt", "//depot/d.txt", "//depot/c.txt",
+                "//depot/b.txt", "//depot/a.txt", "//depot/f.txt");
+        List<Map<String, Object>> fileMaps = new ArrayList<>();
+        for (String depotPath : depotPaths) {
+            Map<String, Object> fileMap = new HashMap<>();
+            fileMap.put(DEPOT_FILE, depotPath);
+            fileMap.put("rev0", "3");
+            fileMap.put("time0", "20160923");
+            fileMap.put("change0", "123");
+            fileMaps.add(fileMap);
+        }
+        when(server.execMapCmdList(eq(FILELOG.toString()),
+                any(String[].class),
+                eq(null))).thenReturn(fileMaps);
+        //when
+        Map<IFileSpec, List<IFileRevisionData>> revisionHistory = fileLogDelegator.getRevisionHistory(
+                mockFileSpecs,
+                mockOpts);
+        //then
+        List<String> returnedPaths = new ArrayList<>();
+        for (IFileSpec fileSpec : revisionHistory.keySet()) {
+            returnedPaths.add(fileSpec.getDepotPathString());
+        }
+        assertThat(returnedPaths, is(depotPaths));
+    }
+}
@@ -1,9 +1,14 @@
 package com.perforce.p4java.impl.mapbased.server.cmd;
 
 import static com.perforce.p4java.server.CmdSpec.FSTAT;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -11,12 +16,14 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.perforce.p4java.server.IOptionsServer;
 import org.junit.Before;
 import org.junit.Test;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
 
 import com.perforce.p4java.CommandLineArgumentMatcher;
 import com.perforce.p4java.core.file.FileAction;
@@ -30,6 +37,10 @@ import com.perforce.p4java.exception.P4JavaException;
 import com.perforce.p4java.exception.RequestException;
 import com.perforce.p4java.impl.mapbased.server.Server;
 import com.perforce.p4java.option.server.GetExtendedFilesOptions;
+import com.perforce.p4java.server.callback.IStreamingCallback;
+import com.perforce.p4java.server.callback.IStreamingResultCallback;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 /**
  * Tests for FstatDelegator.
@@ -249,6 +260,87 @@ public class FstatDelegatorTest {
         assertFileSpecs(exSpecs);
     }
 
+    /**
+     * Test streaming Fstat results.
+     *
+     * @throws P4JavaException
+     *             the p4 java exception
+     */
+    // p4ic4idea: added
+    @Test
+    public void testFstatStreaming() throws P4JavaException {
+        streamResults(FIX_FS_MATCHER, buildValidResultMap());
+        List<IFileSpec> specs = FileSpecBuilder.makeFileSpecList(CLIENT_FILE);
+        final List<IExtendedFileSpec> exSpecs = new ArrayList<>();
+        fstatDelegator.getExtendedFiles(specs, new GetExtendedFilesOptions(),
+                new IStreamingResultCallback<IExtendedFileSpec>() {
+                    @Override
+                    public boolean handleResult(IExtendedFileSpec result) {
+                        exSpecs.add(result);
+                        return true;
+                    }
+                });
+        verify(server, never()).execMapCmdList(anyString(), any(String[].class), any());
+        assertFileSpecs(exSpecs);
+    }
+
+    /**
+     * Test that an exception from the streaming callback stops the results and
+     * is thrown once the command completes.
+     *
+     * @throws P4JavaException
+     *             the p4 java exception
+     */
+    // p4ic4idea: added
+    @Test
+    public void testFstatStreamingCallbackException() throws P4JavaException {
+        List<Map<String, Object>> results = buildValidResultMap();
+        results.addAll(buildValidResultMap());
+        final List<Map<String, Object>> sent = streamResults(FIX_FS_MATCHER, results);
+        List<IFileSpec> specs = FileSpecBuilder.makeFileSpecList(CLIENT_FILE);
+        final AtomicInteger calls = new AtomicInteger();
+        try {
+            fstatDelegator.getExtendedFiles(specs, new GetExtendedFilesOptions(),
+                    new IStreamingResultCallback<IExtendedFileSpec>() {
+                        @Override
+                        public boolean handleResult(IExtendedFileSpec result) throws P4JavaException {
+                            calls.incrementAndGet();
+                            throw new RequestException("stop");
+                        }
+                    });
+            fail("did not throw the callback exception");
+        } catch (RequestException e) {
+            assertEquals("stop", e.getMessage());
+        }
+        // The command still runs to the end, but the callback isn't called again.
+        assertEquals(2, sent.size());
+        assertEquals(1, calls.get());
+    }
+
+    /**
+     * Have the mocked server send the results to the streaming callback.
+     */
+    private List<Map<String, Object>> streamResults(CommandLineArgumentMatcher matcher,
+            final List<Map<String, Object>> results) throws P4JavaException {
+        final List<Map<String, Object>> sent = new ArrayList<>();
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                IStreamingCallback callback = invocation.getArgument(3);
+                int key = invocation.getArgument(4);
+                callback.startResults(key);
+                for (Map<String, Object> result : results) {
+                    sent.add(result);
+                    callback.handleResult(result, key);
+                }
+                callback.endResults(key);
+                return null;
+            }
+        }).when(server).execStreamingMapCommand(eq(FSTAT.toString()), argThat(matcher), eq(null),
+                any(IStreamingCallback.class), anyInt());
+        return sent;
+    }
+
     /**
      * Assert that the file specs built are as expected.
      *
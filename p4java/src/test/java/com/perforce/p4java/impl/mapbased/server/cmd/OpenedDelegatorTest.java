@@ -12,6 +12,8 @@ import com.perforce.p4java.exception.RequestException;
 import com.perforce.p4java.impl.mapbased.server.Server;
 import com.perforce.p4java.option.server.OpenedFilesOptions;
 import com.perforce.p4java.server.IOptionsServer;
+import com.perforce.p4java.server.callback.IStreamingCallback;
+import com.perforce.p4java.server.callback.IStreamingResultCallback;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -23,10 +25,16 @@ import java.util.Map;
 import static com.perforce.p4java.server.CmdSpec.OPENED;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -243,6 +251,82 @@ public class OpenedDelegatorTest {
         assertFileSpecs(opened);
     }
 
+    /**
+     * Test streaming opened results.
+     *
+     * @throws P4JavaException the p4 java exception
+     */
+    // p4ic4idea: added
+    @Test
+    public void testOpenedStreaming() throws P4JavaException {
+        streamResults(buildResultMap());
+        List<IFileSpec> specs = FileSpecBuilder.makeFileSpecList(DEPOT_FILE);
+        final List<IFileSpec> opened = new ArrayList<>();
+        openedDelegator.getOpenedFiles(specs, new OpenedFilesOptions(),
+                new IStreamingResultCallback<IFileSpec>() {
+                    @Override
+                    public boolean handleResult(IFileSpec result) {
+                        opened.add(result);
+                        return true;
+                    }
+                });
+        verify(server, never()).execMapCmdList(anyString(), any(String[].class), any());
+        assertFileSpecs(opened);
+    }
+
+    /**
+     * Test that an error result from a streaming opened command is thrown once
+     * the command completes, after the earlier results.
+     *
+     * @throws P4JavaException the p4 java exception
+     */
+    // p4ic4idea: added
+    @Test
+    public void testOpenedStreamingError() throws P4JavaException {
+        List<Map<String, Object>> results = buildResultMap();
+        Map<String, Object> error = new HashMap<>();
+        error.put("fmt0", "%path% - must refer to client '%client%'.");
+        error.put("code0", "838998116");
+        error.put("client", CLIENT);
+        error.put("path", DEPOT_FILE);
+        results.add(error);
+        results.addAll(buildResultMap());
+        streamResults(results);
+        List<IFileSpec> specs = FileSpecBuilder.makeFileSpecList(DEPOT_FILE);
+        final List<IFileSpec> opened = new ArrayList<>();
+        try {
+            openedDelegator.getOpenedFiles(specs, new OpenedFilesOptions(),
+                    new IStreamingResultCallback<IFileSpec>() {
+                        @Override
+                        public boolean handleResult(IFileSpec result) {
+                            opened.add(result);
+                            return true;
+                        }
+                    });
+            fail("RequestException was expected.");
+        } catch (RequestException e) {
+            assertTrue(e.getMessage().contains("must refer to client"));
+        }
+        assertFileSpecs(opened);
+    }
+
+    /**
+     * Have the mocked server send the results to the streaming callback.
+     */
+    private void streamResults(final List<Map<String, Object>> results) throws P4JavaException {
+        doAnswer(invocation -> {
+            IStreamingCallback callback = invocation.getArgument(3);
+            int key = invocation.getArgument(4);
+            callback.startResults(key);
+            for (Map<String, Object> result : results) {
+                callback.handleResult(result, key);
+            }
+            callback.endResults(key);
+            return null;
+        }).when(server).execStreamingMapCommand(eq(OPENED.toString()), any(String[].class), eq(null),
+                any(IStreamingCallback.class), anyInt());
+    }
+
     /**
      * Assert file specs.
      *
@@ -15,6 +15,7 @@
 package net.groboclown.p4plugin.components;
 
 import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.PathManager;
 import com.intellij.openapi.components.PersistentStateComponent;
 import com.intellij.openapi.components.ProjectComponent;
 import com.intellij.openapi.components.State;
@@ -24,8 +25,10 @@ import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Disposer;
 import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.vcs.FilePath;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.vcsUtil.VcsUtil;
+import net.groboclown.p4.server.api.ClientServerRef;
 import net.groboclown.p4.server.api.RootedClientConfig;
 import net.groboclown.p4.server.api.P4CommandRunner;
 import net.groboclown.p4.server.api.async.Answer;
@@ -38,18 +41,27 @@ import net.groboclown.p4.server.api.commands.sync.SyncListOpenedFilesChangesQuer
 import net.groboclown.p4.server.api.exceptions.VcsInterruptedException;
 import net.groboclown.p4.server.api.messagebus.ErrorEvent;
 import net.groboclown.p4.server.api.messagebus.InternalErrorMessage;
+import net.groboclown.p4.server.api.util.FileTreeUtil;
 import net.groboclown.p4.server.impl.cache.CachePendingActionHandlerImpl;
 import net.groboclown.p4.server.impl.cache.CacheQueryHandlerImpl;
 import net.groboclown.p4.server.impl.cache.CacheStoreUpdateListener;
 import net.groboclown.p4.server.impl.cache.IdeChangelistMapImpl;
 import net.groboclown.p4.server.impl.cache.IdeFileMapImpl;
+import net.groboclown.p4.server.impl.cache.RefreshTracker;
+import net.groboclown.p4.server.impl.cache.store.ProjectCacheSnapshot;
 import net.groboclown.p4.server.impl.cache.store.ProjectCacheStore;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 @State(
@@ -70,18 +82,30 @@ public class CacheComponent implements
     private static final String DESERIALIZE_CACHE_TIMEOUT_MESSAGE =
             "Timed out while writing to the cache.  Could not deserialize the cache state.";
 
+    // Refreshing more files than this is done with the full opened files query.
+    private static final int MAX_INCREMENTAL_REFRESH_FILES = 200;
+    // Files opened or changelists created outside the IDE are only found by a full refresh,
+    // so one is made at least this often.
+    private static final long MAX_INCREMENTAL_REFRESH_AGE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
     @Nullable
     private final Project project;
     private final int instanceId;
 
 
     private final ProjectCacheStore projectCache = new ProjectCacheStore();
+    // The cache is kept in its own file rather than the workspace file, which is only read to
+    // migrate the cache stored by earlier versions.
+    @Nullable
+    private final ProjectCacheSnapshot snapshot;
     private IdeChangelistMap changelistMap;
     private IdeFileMap fileMap;
-    private CacheQueryHandler queryHandler;
+    private CacheQueryHandlerImpl queryHandler;
     private CachePendingActionHandler pendingHandler;
     private CacheStoreUpdateListener updateListener;
     private boolean disposed = false;
+    private volatile long lastFullRefreshMillis = 0;
+    private final RefreshTracker<ClientServerRef> activeRefreshes = new RefreshTracker<>();
 
 
     @NotNull
@@ -107,6 +131,10 @@ public class CacheComponent implements
         // See #193 - this is a good contender for tracking memory usage.
         this.instanceId = CREATION_COUNT.incrementAndGet();
         this.project = project;
+        this.snapshot = project == null
+                ? null
+                : new ProjectCacheSnapshot(
+                        new File(PathManager.getSystemPath(), "p4ic/" + project.getLocationHash() + ".cache"), true);
         final int postCreationCount = ACTIVE_COUNT.incrementAndGet();
         if (LOG.isDebugEnabled()) {
             LOG.debug("Created " + this + " for " + project + "; " + postCreationCount
@@ -137,6 +165,12 @@ public class CacheComponent implements
 
     /**
      * Force a cache refresh on the opened server objects (changelists and files).
+     * <p>
+     * The opened files query covers the whole client, so it runs once for each client,
+     * no matter how many VCS roots use it.  The clients are refreshed at the same time,
+     * limited by the server connection restriction.  If a client's refresh is already
+     * running, another one is started after it finishes, so the answer includes any change
+     * made while the running refresh was in flight.
      *
      * @return the pending answer.
      */
@@ -146,42 +180,134 @@ public class CacheComponent implements
             // Null project cannot have anything to refresh.
             throw new IllegalStateException("project not set for call");
         }
-        // Keep a chain of promises, headed by `ret`.  The type of the
-        // answer doesn't matter, because it's only being used to tie the
-        // series of promises together.
+        Map<ClientServerRef, Pair<RootedClientConfig, VirtualFile>> clientRoots = new LinkedHashMap<>();
+        for (RootedClientConfig clientRoot : clients) {
+            for (VirtualFile vcsRoot : clientRoot.getProjectVcsRootDirs()) {
+                clientRoots.putIfAbsent(clientRoot.getClientConfig().getClientServerRef(),
+                        new Pair<>(clientRoot, vcsRoot));
+            }
+        }
+
+        // Start all the refreshes, then keep a chain of promises, headed by `ret`, that waits
+        // for each of them.  The type of the answer doesn't matter, because it's only being
+        // used to tie the series of promises together.
+        Answer<?> ret = Answer.resolve(null);
+        for (Pair<RootedClientConfig, VirtualFile> clientRoot : clientRoots.values()) {
+            final Answer<?> refresh = refreshClientOpenedCache(clientRoot.first, clientRoot.second);
+            ret = ret.mapAsync((x) -> refresh);
+        }
+
+        return ret.map((x) -> {
+            lastFullRefreshMillis = System.currentTimeMillis();
+            return getServerOpenedCache();
+        });
+    }
+
+    private Answer<?> refreshClientOpenedCache(@NotNull RootedClientConfig clientRoot, @NotNull VirtualFile vcsRoot) {
+        return activeRefreshes.refresh(clientRoot.getClientConfig().getClientServerRef(), () -> {
+            final File root = VcsUtil.getFilePath(vcsRoot).getIOFile();
+            return Answer.background((sink) -> P4ServerComponent.syncQuery(
+                    project,
+                    clientRoot.getClientConfig(),
+                    new SyncListOpenedFilesChangesQuery(
+                            root,
+                            UserProjectPreferences.getMaxChangelistRetrieveCount(project),
+                            UserProjectPreferences.getMaxFileRetrieveCount(project))
+            ).getPromise()
+            .whenCompleted((changesResult) -> {
+                if (updateListener != null) {
+                    // TODO is this a duplicate call for the updateListener's CacheListener?
+                    updateListener.setOpenedChanges(
+                            changesResult.getClientConfig().getClientServerRef(),
+                            changesResult.getPendingChangelists(), changesResult.getOpenedFiles());
+                }
+                // Else - timing issue with dispose and when this ran.
+                sink.resolve(null);
+                if (LOG.isDebugEnabled() && changelistMap != null && fileMap != null) {
+                    LOG.debug(this + " opened cache refreshed; " + clientRoot.getClientRootDir()
+                            + " contains " + changelistMap.getEstimateCount() + " pending changes, "
+                            + fileMap.getEstimateSize() + " opened files.");
+                }
+            })
+            .whenServerError(sink::reject));
+        });
+    }
+
+    /**
+     * Refresh the opened state of just the given files, merging it into the cached opened
+     * files and changelists.  If the files can't be merged, then this performs a full refresh.
+     *
+     * @return the pending answer.
+     */
+    private Answer<Pair<IdeChangelistMap, IdeFileMap>> refreshServerOpenedFiles(Collection<RootedClientConfig> clients,
+            Collection<FilePath> files) {
+        initComponent();
+        if (project == null) {
+            // Null project cannot have anything to refresh.
+            throw new IllegalStateException("project not set for call");
+        }
+        final AtomicBoolean needsFullRefresh = new AtomicBoolean(false);
         Answer<?> ret = Answer.resolve(null);
 
         for (RootedClientConfig clientRoot : clients) {
             for (VirtualFile vcsRoot : clientRoot.getProjectVcsRootDirs()) {
-                final File root = VcsUtil.getFilePath(vcsRoot).getIOFile();
-                ret = ret.mapAsync((x) -> Answer.background((sink) -> P4ServerComponent.syncQuery(
-                        project,
-                        clientRoot.getClientConfig(),
-                        new SyncListOpenedFilesChangesQuery(
-                                root,
-                                UserProjectPreferences.getMaxChangelistRetrieveCount(project),
-                                UserProjectPreferences.getMaxFileRetrieveCount(project))
-                ).getPromise()
-                .whenCompleted((changesResult) -> {
-                    if (updateListener != null) {
-                        // TODO is this a duplicate call for the updateListener's CacheListener?
-                        updateListener.setOpenedChanges(
-                                changesResult.getClientConfig().getClientServerRef(),
-                                changesResult.getPendingChangelists(), changesResult.getOpenedFiles());
+                final List<FilePath> rootFiles = new ArrayList<>();
+                for (FilePath file : files) {
+                    if (FileTreeUtil.isSameOrUnder(vcsRoot, file)) {
+                        rootFiles.add(file);
                     }
-                    // Else - timing issue with dispose and when this ran.
-                    sink.resolve(null);
-                    if (LOG.isDebugEnabled() && changelistMap != null && fileMap != null) {
-                        LOG.debug(this + " opened cache refreshed; " + clientRoot.getClientRootDir()
-                                + " contains " + changelistMap.getEstimateCount() + " pending changes, "
-                                + fileMap.getEstimateSize() + " opened files.");
+                }
+                if (rootFiles.isEmpty()) {
+                    continue;
+                }
+                final File root = VcsUtil.getFilePath(vcsRoot).getIOFile();
+                ret = ret.mapAsync((x) -> {
+                    // The merge must not run at the same time as a full refresh of the client,
+                    // or the full refresh could overwrite it with older results.  If one is
+                    // running, then a full refresh is queued after it instead.
+                    Answer<?> refresh = activeRefreshes.refreshIfIdle(
+                            clientRoot.getClientConfig().getClientServerRef(),
+                            () -> refreshClientOpenedFiles(clientRoot, root, rootFiles, needsFullRefresh));
+                    if (refresh == null) {
+                        needsFullRefresh.set(true);
+                        return Answer.resolve(null);
                     }
-                })
-                .whenServerError(sink::reject)));
+                    return refresh;
+                });
             }
         }
 
-        return ret.map((x) -> getServerOpenedCache());
+        return ret.mapAsync((x) -> {
+            if (needsFullRefresh.get()) {
+                LOG.debug("Opened files could not be merged into the cache; performing a full refresh");
+                return refreshServerOpenedCache(clients);
+            }
+            return Answer.resolve(getServerOpenedCache());
+        });
+    }
+
+    private Answer<?> refreshClientOpenedFiles(@NotNull RootedClientConfig clientRoot, @NotNull File root,
+            @NotNull List<FilePath> rootFiles, @NotNull AtomicBoolean needsFullRefresh) {
+        return Answer.background((sink) -> P4ServerComponent.syncQuery(
+                project,
+                clientRoot.getClientConfig(),
+                new SyncListOpenedFilesChangesQuery(
+                        root, rootFiles,
+                        UserProjectPreferences.getMaxChangelistRetrieveCount(project),
+                        UserProjectPreferences.getMaxFileRetrieveCount(project))
+        ).getPromise()
+        .whenCompleted((changesResult) -> {
+            // A result without queried files comes from the cache when offline, so there's
+            // nothing new to merge.
+            if (updateListener != null && changesResult.getQueriedFiles() != null &&
+                    !updateListener.updateOpenedFiles(
+                            changesResult.getClientConfig().getClientServerRef(),
+                            changesResult.getQueriedFiles(), changesResult.getOpenedFiles())) {
+                needsFullRefresh.set(true);
+            }
+            sink.resolve(null);
+        })
+        .whenServerError(sink::reject));
     }
 
     /**
@@ -209,6 +335,44 @@ public class CacheComponent implements
         }
     }
 
+    /**
+     * Refresh the opened cache for the dirty files.  Only the opened state of those files is
+     * loaded, unless the full cache needs a refresh; that's when there are no dirty files given,
+     * when there are too many or they include directories, or when the last full refresh is too old.
+     *
+     * @param dirtyFiles files to refresh, or null if everything should be refreshed.
+     * @return the opened cache pair.  The values can be null if the cache has not yet been initialized.
+     */
+    public Pair<IdeChangelistMap, IdeFileMap> blockingRefreshServerOpenedCache(Collection<RootedClientConfig> clients,
+            @Nullable Collection<FilePath> dirtyFiles, int timeout, TimeUnit timeoutUnit) {
+        if (!canRefreshIncrementally(dirtyFiles)) {
+            return blockingRefreshServerOpenedCache(clients, timeout, timeoutUnit);
+        }
+        try {
+            return BlockingAnswer.defaultBlockingGet(refreshServerOpenedFiles(clients, dirtyFiles),
+                    timeout, timeoutUnit, this::getServerOpenedCache);
+        } catch (P4CommandRunner.ServerResultException e) {
+            // User error handling is done through events.
+            LOG.debug(e);
+            return getServerOpenedCache();
+        }
+    }
+
+    private boolean canRefreshIncrementally(@Nullable Collection<FilePath> dirtyFiles) {
+        if (dirtyFiles == null || dirtyFiles.isEmpty() || dirtyFiles.size() > MAX_INCREMENTAL_REFRESH_FILES) {
+            return false;
+        }
+        if (System.currentTimeMillis() - lastFullRefreshMillis > MAX_INCREMENTAL_REFRESH_AGE_MILLIS) {
+            return false;
+        }
+        for (FilePath file : dirtyFiles) {
+            if (file.isDirectory()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @NotNull
     @Override
     public String getComponentName() {
@@ -258,6 +422,11 @@ public class CacheComponent implements
     @Override
     public ProjectCacheStore.State getState() {
         try {
+            if (snapshot != null && writeSnapshot(snapshot)) {
+                // Clears out anything stored in the workspace file by earlier versions.
+                return new ProjectCacheStore.State();
+            }
+            // Without a written snapshot, the workspace file is the only copy of the cache.
             return projectCache.getState();
         } catch (InterruptedException e) {
             if (project != null) {
@@ -273,7 +442,11 @@ public class CacheComponent implements
     @Override
     public void loadState(@NotNull ProjectCacheStore.State state) {
         try {
-            this.projectCache.setState(state);
+            if (snapshot != null && isEmpty(state)) {
+                readSnapshot(snapshot);
+            } else {
+                this.projectCache.setState(state);
+            }
         } catch (InterruptedException e) {
             if (project != null) {
                 InternalErrorMessage.send(project).cacheLockTimeoutError(new ErrorEvent<>(
@@ -286,7 +459,55 @@ public class CacheComponent implements
 
     @Override
     public void noStateLoaded() {
-        // do nothing
+        if (snapshot != null) {
+            try {
+                readSnapshot(snapshot);
+            } catch (InterruptedException e) {
+                if (project != null) {
+                    InternalErrorMessage.send(project).cacheLockTimeoutError(new ErrorEvent<>(
+                            new VcsInterruptedException(DESERIALIZE_CACHE_TIMEOUT_MESSAGE, e)));
+                } else {
+                    LOG.warn(DESERIALIZE_CACHE_TIMEOUT_MESSAGE, e);
+                }
+            }
+        }
+    }
+
+    private void readSnapshot(@NotNull ProjectCacheSnapshot snapshot)
+            throws InterruptedException {
+        ProjectCacheSnapshot.Contents contents = snapshot.read();
+        if (!contents.isEmpty()) {
+            // Most of the cache isn't needed until the first refresh, so don't decode it until then.
+            projectCache.setLazyState(contents.getChangelistState(), contents::getState);
+        }
+    }
+
+    /**
+     * @return true if the snapshot file now holds the cache, false if it could not be written.
+     */
+    private boolean writeSnapshot(@NotNull ProjectCacheSnapshot snapshot)
+            throws InterruptedException {
+        try {
+            // If the stored state was never loaded, only the changelist mappings can have changed.
+            // The second check catches the state being loaded while the mappings were written.
+            if (projectCache.hasLazyState()
+                    && snapshot.writeChangelistState(projectCache.getChangelistState())
+                    && projectCache.hasLazyState()) {
+                return true;
+            }
+            snapshot.write(projectCache.getState());
+            return true;
+        } catch (IOException e) {
+            LOG.warn("Could not write the cache file " + snapshot.getFile(), e);
+            return false;
+        }
+    }
+
+    private static boolean isEmpty(@NotNull ProjectCacheStore.State state) {
+        return (state.serverState == null || state.serverState.isEmpty())
+                && (state.clientState == null || state.clientState.isEmpty())
+                && (state.pendingActions == null || state.pendingActions.isEmpty())
+                && state.changelistState == null;
     }
 
     @Override
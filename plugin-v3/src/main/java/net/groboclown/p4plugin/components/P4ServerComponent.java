@@ -15,6 +15,7 @@
 package net.groboclown.p4plugin.components;
 
 import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.PathManager;
 import com.intellij.openapi.components.ProjectComponent;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Disposer;
@@ -30,8 +31,10 @@ import net.groboclown.p4.server.api.commands.client.ListOpenedFilesChangesResult
 import net.groboclown.p4.server.api.config.ClientConfig;
 import net.groboclown.p4.server.api.config.OptionalClientServerConfig;
 import net.groboclown.p4.server.api.messagebus.MessageBusClient;
+import net.groboclown.p4.server.api.messagebus.ReconnectRequestMessage;
 import net.groboclown.p4.server.api.messagebus.UserProjectPreferencesUpdatedMessage;
 import net.groboclown.p4.server.impl.AbstractServerCommandRunner;
+import net.groboclown.p4.server.impl.cache.RevisionContentCache;
 import net.groboclown.p4.server.impl.commands.DoneActionAnswer;
 import net.groboclown.p4.server.impl.connection.ConnectCommandRunner;
 import net.groboclown.p4.server.impl.connection.ConnectionManager;
@@ -42,10 +45,20 @@ import net.groboclown.p4plugin.messages.MessageErrorHandler;
 import net.groboclown.p4plugin.util.TempDirUtil;
 import org.jetbrains.annotations.NotNull;
 
+import java.io.File;
 import java.util.concurrent.TimeUnit;
 
 public class P4ServerComponent implements ProjectComponent, Disposable {
     public static final String COMPONENT_NAME = "Perforce Server Primary Connection";
+
+    // Keep a small number of authenticated connections around for reuse, so that
+    // bursts of requests don't each pay for the connection and login round trips.
+    private static final int POOLED_CONNECTIONS_PER_CLIENT = 2;
+    private static final long POOLED_CONNECTION_IDLE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    // Depot revision contents never change, so the cache is shared by all the open projects.
+    private static RevisionContentCache revisionContentCache;
+
     private final Project project;
     private P4CommandRunner commandRunner;
     private AbstractServerCommandRunner connectRunner;
@@ -276,7 +289,8 @@ public class P4ServerComponent implements ProjectComponent, Disposable {
             throw new IllegalStateException("disposed");
         }
         if (connectRunner == null) {
-            connectRunner = new ConnectCommandRunner(project, createConnectionManager());
+            connectRunner = new ConnectCommandRunner(project, createConnectionManager(),
+                    getRevisionContentCache());
         }
         if (commandRunner == null) {
             commandRunner = new TopCommandRunner(project,
@@ -310,14 +324,27 @@ public class P4ServerComponent implements ProjectComponent, Disposable {
     }
 
 
+    @NotNull
+    private static synchronized RevisionContentCache getRevisionContentCache() {
+        if (revisionContentCache == null) {
+            revisionContentCache = new RevisionContentCache(
+                    new File(PathManager.getSystemPath(), "p4ic-revision-cache"));
+        }
+        return revisionContentCache;
+    }
+
     @NotNull
     protected ConnectionManager createConnectionManager() {
         final SimpleConnectionManager scm = new SimpleConnectionManager(
                 TempDirUtil.getTempDir(project),
                 UserProjectPreferences.getSocketSoTimeoutMillis(project),
                 P4PluginVersion.getPluginVersion(),
-                createErrorHandler()
+                createErrorHandler(),
+                POOLED_CONNECTIONS_PER_CLIENT,
+                POOLED_CONNECTION_IDLE_MILLIS
         );
+        // The pooled connections are still logged in, so don't leave them open after the project closes.
+        Disposer.register(this, scm::disconnectAll);
         ConnectionManager ret = scm;
         final LimitedConnectionManager lcm;
         final int connectionRestriction = UserProjectPreferences.getMaxServerConnections(project);
@@ -342,6 +369,19 @@ public class P4ServerComponent implements ProjectComponent, Disposable {
                         TimeUnit.MILLISECONDS);
             }
         });
+        // A reconnect request means the user wants a fresh connection, so stop reusing the
+        // pooled ones.
+        ReconnectRequestMessage.addListener(mbus, scm, new ReconnectRequestMessage.Listener() {
+            @Override
+            public void reconnectToAllClients(@NotNull ReconnectRequestMessage.ReconnectAllEvent e) {
+                scm.disconnectAll();
+            }
+
+            @Override
+            public void reconnectToClient(@NotNull ReconnectRequestMessage.ReconnectEvent e) {
+                scm.disconnect(e.getRef().getServerName());
+            }
+        });
         return ret;
     }
 
@@ -194,15 +194,21 @@ public class P4ChangeProvider
 
             // For the purposes of this implementation, we'll always attempt to
             // refresh the cache from the server.  Then we'll update the requested file
-            // status.
+            // status.  When only some files are dirty, just their opened state is
+            // refreshed; the cache component decides when a full refresh is needed anyway.
 
             Collection<RootedClientConfig> allClientRoots = getClientConfigRoots();
+            Collection<FilePath> refreshFiles = null;
+            if (!dirtyScope.wasEveryThingDirty() && dirtyScope.getRecursivelyDirtyDirectories().isEmpty()) {
+                refreshFiles = dirtyScope.getDirtyFiles();
+            }
 
             // This request is performed by the IDE in a background thread, so it can block.
 
             Pair<IdeChangelistMap, IdeFileMap> cachedMaps = CacheComponent.getInstance(project)
                     .blockingRefreshServerOpenedCache(
                             allClientRoots,
+                            refreshFiles,
                             UserProjectPreferences.getLockWaitTimeoutMillis(project),
                             TimeUnit.MILLISECONDS
                     );
@@ -70,6 +70,9 @@ public class P4HistoryProvider
         implements VcsHistoryProviderEx {
     private static final Logger LOG = Logger.getInstance(P4HistoryProvider.class);
 
+    // Number of revisions fetched per request when loading the history view.
+    private static final int HISTORY_PAGE_SIZE = 100;
+
     private final Project project;
     private final DiffFromHistoryHandler diffHandler = new P4DiffFromHistoryHandler();
     private final HistoryMessageFormatter formatter = new HistoryMessageFormatterImpl();
@@ -158,16 +161,70 @@ public class P4HistoryProvider
             return;
         }
 
-        // Async operation.
+        // Async operation.  Only the newest page is fetched first, so the view fills quickly
+        // for files with a long history.
+        getHistory(root, path, HISTORY_PAGE_SIZE)
+                .whenCompleted((r) -> {
+                    if (r.getOldestRevision() > 1) {
+                        // Report the page's own revisions, then load everything older with a
+                        // single full request.
+                        List<VcsFileRevision> page = r.getRevisions(formatter, loader);
+                        page.subList(0, Math.min(r.getResultCount(), page.size()))
+                                .forEach(partner::acceptRevision);
+                        reportOlderHistory(root, path, r.getOldestRevision(), partner);
+                    } else if (r.hasInheritedRevisions()) {
+                        // Reached the first revision, but the inherited history may have been
+                        // cut off by the page limit.
+                        getHistory(root, path, -1)
+                                .whenCompleted((all) ->
+                                        all.getRevisions(formatter, loader).forEach(partner::acceptRevision))
+                                .whenServerError((e) -> {
+                                    LOG.warn(e);
+                                    partner.reportException(e);
+                                });
+                    } else {
+                        // The whole history fit in one page.
+                        r.getRevisions(formatter, loader).forEach(partner::acceptRevision);
+                    }
+                })
+                .whenServerError((e) -> {
+                    LOG.warn(e);
+                    partner.reportException(e);
+                });
+    }
+
+    /**
+     * Load the full history, and report the revisions older than {@code oldestReported}.  This
+     * includes the inherited history, which a revision range would leave out.
+     */
+    private void reportOlderHistory(@NotNull RootedClientConfig root, @NotNull FilePath path,
+            int oldestReported, @NotNull VcsAppendableHistorySessionPartner partner) {
+        if (project.isDisposed()) {
+            return;
+        }
         getHistory(root, path, -1)
-                .whenCompleted((r) ->
-                    r.getRevisions(formatter, loader).forEach(partner::acceptRevision))
+                .whenCompleted((all) -> {
+                    List<VcsFileRevision> revisions = all.getRevisions(formatter, loader);
+                    // The file's own revisions come first, newest to oldest; skip the ones
+                    // already reported with the first page.
+                    int skip = 0;
+                    while (skip < all.getResultCount() && skip < revisions.size()
+                            && isAtLeast(revisions.get(skip), oldestReported)) {
+                        skip++;
+                    }
+                    revisions.subList(skip, revisions.size()).forEach(partner::acceptRevision);
+                })
                 .whenServerError((e) -> {
                     LOG.warn(e);
                     partner.reportException(e);
                 });
     }
 
+    private static boolean isAtLeast(@NotNull VcsFileRevision rev, int revision) {
+        VcsRevisionNumber rn = rev.getRevisionNumber();
+        return rn instanceof VcsRevisionNumber.Int && ((VcsRevisionNumber.Int) rn).getValue() >= revision;
+    }
+
     @Override
     @Nullable
     public VcsFileRevision getLastRevision(FilePath filePath)
@@ -16,9 +16,12 @@ package net.groboclown.p4plugin.revision;
 
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.vcs.FilePath;
+import com.intellij.openapi.vcs.VcsException;
 import com.intellij.openapi.vcs.changes.ContentRevision;
 import com.intellij.openapi.vcs.history.VcsRevisionNumber;
 import net.groboclown.p4.server.api.commands.HistoryContentLoader;
+import net.groboclown.p4.server.api.config.ClientConfig;
+import net.groboclown.p4.server.api.values.P4RemoteFile;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -77,4 +80,23 @@ public abstract class AbstractP4FileContentRevision
     HistoryContentLoader getLoader() {
         return loader;
     }
+
+    /**
+     * Load the contents of this revision.  When the depot path is known and the revision is
+     * fixed, the contents are requested by depot path and revision, which the server's
+     * revision content cache can answer without going back to the server.
+     */
+    @Nullable
+    String loadContent(@NotNull ClientConfig config, @Nullable P4RemoteFile depotFile)
+            throws VcsException {
+        if (loader == null) {
+            return null;
+        }
+        if (depotFile != null && rev.getValue() > 0
+                && depotFile.getDepotPath().indexOf('#') < 0 && depotFile.getDepotPath().indexOf('@') < 0) {
+            return ContentRevisionUtil.getContentForRev(config, loader, depotFile.getDepotPath(), rev.getValue(),
+                    charset);
+        }
+        return ContentRevisionUtil.getContent(config, loader, filePath, rev.getValue(), charset);
+    }
 }
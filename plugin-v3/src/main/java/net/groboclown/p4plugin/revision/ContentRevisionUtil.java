@@ -50,4 +50,20 @@ public class ContentRevisionUtil {
             throw new VcsException(e);
         }
     }
+
+
+    @Nullable
+    public static String getContentForRev(@NotNull ClientConfig clientConfig,
+            @NotNull HistoryContentLoader loader, @NotNull String depotPath, int rev, @NotNull Charset charset)
+            throws VcsException {
+        try {
+            byte[] ret = loader.loadContentForRev(clientConfig, depotPath, rev);
+            if (ret == null) {
+                return null;
+            }
+            return new String(ret, charset);
+        } catch (IOException e) {
+            throw new VcsException(e);
+        }
+    }
 }
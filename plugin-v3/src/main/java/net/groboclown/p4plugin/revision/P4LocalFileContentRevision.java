@@ -67,7 +67,6 @@ public class P4LocalFileContentRevision extends AbstractP4FileContentRevision {
         if (getLoader() == null || clientConfig.getClientname() == null) {
             return null;
         }
-        return ContentRevisionUtil.getContent(clientConfig,
-                getLoader(), getFile(), getIntRevisionNumber().getValue(), getCharset());
+        return loadContent(clientConfig, file.getDepotPath());
     }
 }
@@ -121,8 +121,7 @@ public class P4RemoteFileContentRevision extends AbstractP4FileContentRevision {
         if (getLoader() == null || config == null || config.getClientname() == null) {
             return null;
         }
-        return ContentRevisionUtil.getContent(config, getLoader(),
-                getFile(), getIntRevisionNumber().getValue(), getCharset());
+        return loadContent(config, file);
     }
 
     @Override